@@ -192,6 +192,7 @@ public class Main {
     Logging.gapisLogLevel,
     Logging.gapirLogLevel,
     Logging.logDir,
+    Logging.logSegments,
     Follower.logFollowRequests,
     Server.useCache,
   };
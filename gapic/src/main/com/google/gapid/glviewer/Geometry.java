@@ -17,46 +17,81 @@ package com.google.gapid.glviewer;
 
 import com.google.gapid.glviewer.camera.Emitter;
 import com.google.gapid.glviewer.geo.BoundingBox;
+import com.google.gapid.glviewer.geo.BoundingVolumeHierarchy;
 import com.google.gapid.glviewer.geo.Model;
 import com.google.gapid.glviewer.gl.IndexBuffer;
 import com.google.gapid.glviewer.gl.Renderer;
 import com.google.gapid.glviewer.gl.VertexBuffer;
 import com.google.gapid.glviewer.vec.MatD;
+import com.google.gapid.glviewer.vec.MutableVecD;
 import com.google.gapid.proto.service.api.API;
 
 import org.lwjgl.opengl.GL11;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 /**
  * Renders a {@link Model}. Can render the geometry using either y-up or z-up and as either a
- * point cloud, wire mesh, or solid.
+ * point cloud, wire mesh, or solid. An optional reduced level of detail version of the model can
+ * be rendered instead while the user is interacting with the view.
  */
 public class Geometry {
   public static final Geometry NULL = new Geometry(null, false);
 
   public final Model model;
+  public final Model lod;
   public final boolean zUp;
   public final MatD modelMatrix;
 
   public Geometry(Model model, boolean zUp) {
+    this(model, null, zUp);
+  }
+
+  public Geometry(Model model, Model lod, boolean zUp) {
     this.model = model;
+    this.lod = lod;
     this.zUp = zUp;
     this.modelMatrix = getBounds().getCenteringMatrix(Constants.SCENE_SCALE_FACTOR, zUp);
   }
 
+  public Geometry withLod(Model newLod) {
+    return new Geometry(model, newLod, zUp);
+  }
+
+  /**
+   * @return whether the given geometry renders the same model in the same way as this geometry.
+   */
+  public boolean isSameModel(Geometry other) {
+    return other != null && model == other.model && zUp == other.zUp;
+  }
+
   public BoundingBox getBounds() {
     return (model == null) ? new BoundingBox() : model.getBounds();
   }
 
   public Renderable asRenderable(DisplayMode displayMode) {
+    return asRenderable(model, displayMode);
+  }
+
+  /**
+   * @return the {@link Renderable} of the reduced level of detail model, or {@code null} if this
+   * geometry has none.
+   */
+  public Renderable asLodRenderable(DisplayMode displayMode) {
+    return (lod == null) ? null : asRenderable(lod, displayMode);
+  }
+
+  private Renderable asRenderable(Model model, DisplayMode displayMode) {
     if (model == null) {
       return Renderable.NOOP;
     }
 
     final int polygonMode = displayMode.glPolygonMode;
     final int modelPrimitive = translatePrimitive(model.getPrimitive());
-    final float[] positions = model.getPositions();
-    final float[] normals = model.getNormals();
-    final int[] indices = isNonPolygonPoints(displayMode) ? null : model.getIndices();
+    final FloatBuffer positions = model.getPositions();
+    final FloatBuffer normals = model.getNormals();
+    final IntBuffer indices = isNonPolygonPoints(displayMode) ? null : model.getIndices();
 
     return new Renderable() {
       private VertexBuffer positionBuffer;
@@ -90,7 +125,7 @@ public class Geometry {
         if (indexBuffer != null) {
           Renderer.draw(state.shader, modelPrimitive, indexBuffer);
         } else {
-          Renderer.draw(state.shader, GL11.GL_POINTS, positions.length / 3);
+          Renderer.draw(state.shader, GL11.GL_POINTS, positions.limit() / 3);
         }
         GL11.glPolygonMode(GL11.GL_FRONT_AND_BACK, GL11.GL_FILL);
 
@@ -115,6 +150,14 @@ public class Geometry {
     };
   }
 
+  /**
+   * @return the closest intersection of the model with the ray through the given normalized
+   * device coordinates when viewed through the given camera, or {@code null} if there is none.
+   */
+  public BoundingVolumeHierarchy.Hit pick(CameraModel camera, double x, double y) {
+    return new Picker().pick(this, camera, x, y);
+  }
+
   /**
    * @return an {@link Emitter} based on the bounding box.
    */
@@ -169,6 +212,44 @@ public class Geometry {
     }
   }
 
+  /**
+   * Picks the geometry under the mouse repeatedly. The inverse of the model-view-projection
+   * transform is kept until the geometry or camera changes, and the ray is computed in scratch
+   * vectors, so that picking as the mouse moves does not allocate.
+   */
+  public static class Picker {
+    private final MutableVecD near = new MutableVecD(), far = new MutableVecD();
+    private Geometry geometry;
+    private MatD projection, view, inverse;
+
+    /**
+     * @see Geometry#pick(CameraModel, double, double)
+     */
+    public BoundingVolumeHierarchy.Hit pick(
+        Geometry newGeometry, CameraModel camera, double x, double y) {
+      if (newGeometry.model == null) {
+        return null;
+      }
+
+      // The camera replaces its matrices when it changes, so they are compared by identity.
+      MatD newProjection = camera.getProjection(), newView = camera.getViewTransform();
+      if (newGeometry != geometry || newProjection != projection || newView != view) {
+        geometry = newGeometry;
+        projection = newProjection;
+        view = newView;
+        inverse = projection.multiply(view.multiply(geometry.modelMatrix)).inverse();
+      }
+      if (inverse == null) {
+        return null;
+      }
+
+      inverse.multiplyPerspective(x, y, -1, near);
+      inverse.multiplyPerspective(x, y, 0, far).subtract(near);
+      return geometry.model.getBoundingVolumeHierarchy()
+          .intersect(near.x, near.y, near.z, far.x, far.y, far.z);
+    }
+  }
+
   public static enum DisplayMode {
     POINTS(GL11.GL_POINT),
     LINES(GL11.GL_LINE),
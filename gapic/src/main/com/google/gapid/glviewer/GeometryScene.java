@@ -80,11 +80,15 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
   }
 
   private static final Logger LOG = Logger.getLogger(GeometryScene.class.getName());
+  // How long after the last camera movement the full detail model is rendered again.
+  private static final int INTERACTION_IDLE_MS = 250;
 
   private final CameraModel camera;
   private Shaders shaders;
   private Renderable renderable;
+  private Renderable lodRenderable;
   private Data data;
+  private boolean interacting;
 
   public GeometryScene(CameraModel camera) {
     this.camera = camera;
@@ -92,7 +96,7 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
 
   // TODO: This is wrong - the camera state is mutated outside of the renderer / scene systems.
   public void bindCamera(ScenePanel<?> canvas) {
-    MouseHandler handler = new MouseHandler(camera, canvas);
+    MouseHandler handler = new MouseHandler(this, camera, canvas);
     canvas.addMouseListener(handler);
     canvas.addMouseMoveListener(handler);
     canvas.addMouseWheelListener(handler);
@@ -109,6 +113,9 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
     if (renderable != null) {
       renderable.init(renderer);
     }
+    if (lodRenderable != null) {
+      lodRenderable.init(renderer);
+    }
 
     GL11.glEnable(GL11.GL_DEPTH_TEST);
     GL11.glClearColor(background[0], background[1], background[2], background[3]);
@@ -123,12 +130,36 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
 
   @Override
   public void update(Renderer renderer, Data newData) {
+    Data oldData = data;
     data = newData;
-    if (renderable != null) {
-      renderable.dispose(renderer);
+    // Only re-upload the geometry if it changed, not when just the shading, winding or culling
+    // has changed.
+    boolean sameMode = oldData != null && oldData.displayMode == newData.displayMode;
+    boolean sameModel = sameMode && newData.geometry.isSameModel(oldData.geometry);
+    if (renderable == null || !sameModel) {
+      if (renderable != null) {
+        renderable.dispose(renderer);
+      }
+      renderable = newData.geometry.asRenderable(newData.displayMode);
+      renderable.init(renderer);
     }
-    renderable = newData.geometry.asRenderable(newData.displayMode);
-    renderable.init(renderer);
+    if (!sameModel || oldData.geometry.lod != newData.geometry.lod) {
+      if (lodRenderable != null) {
+        lodRenderable.dispose(renderer);
+      }
+      lodRenderable = newData.geometry.asLodRenderable(newData.displayMode);
+      if (lodRenderable != null) {
+        lodRenderable.init(renderer);
+      }
+    }
+  }
+
+  /**
+   * Sets whether the user is currently moving the camera, in which case the reduced level of
+   * detail version of the geometry is rendered, if it has one.
+   */
+  public void setInteracting(boolean interacting) {
+    this.interacting = interacting;
   }
 
   @Override
@@ -142,7 +173,11 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
 
       state.transform.setProjection(camera.getProjection());
       state.transform.setModelView(camera.getViewTransform());
-      renderable.render(renderer, state);
+      if (interacting && lodRenderable != null) {
+        lodRenderable.render(renderer, state);
+      } else {
+        renderable.render(renderer, state);
+      }
     }
   }
 
@@ -256,19 +291,28 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
   }
 
   private static class MouseHandler extends MouseAdapter {
+    private final GeometryScene scene;
     private final CameraModel camera;
     private final ScenePanel<?> canvas;
+    private final Runnable onIdle;
     private int lastX, lastY;
 
-    public MouseHandler(CameraModel camera, ScenePanel<?> canvas) {
+    public MouseHandler(GeometryScene scene, CameraModel camera, ScenePanel<?> canvas) {
+      this.scene = scene;
       this.camera = camera;
       this.canvas = canvas;
+      this.onIdle = () -> {
+        if (!canvas.isDisposed()) {
+          scene.setInteracting(false);
+          canvas.paint();
+        }
+      };
     }
 
     @Override
     public void mouseScrolled(MouseEvent e) {
       camera.onZoom(-e.count / 18.0f);
-      canvas.paint();
+      paintInteracting();
     }
 
     @Override
@@ -281,11 +325,18 @@ public class GeometryScene implements Scene<GeometryScene.Data> {
     public void mouseMove(MouseEvent e) {
       if ((e.stateMask & SWT.BUTTON1) != 0) {
         camera.onDrag(e.x - lastX, e.y - lastY);
-        canvas.paint();
+        paintInteracting();
       }
       lastX = e.x;
       lastY = e.y;
     }
+
+    private void paintInteracting() {
+      scene.setInteracting(true);
+      canvas.paint();
+      // Re-scheduling the same runnable resets the timer.
+      canvas.getDisplay().timerExec(INTERACTION_IDLE_MS, onIdle);
+    }
   }
 
   private static class Shaders {
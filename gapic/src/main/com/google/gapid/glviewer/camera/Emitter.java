@@ -39,7 +39,11 @@ public interface Emitter {
    * @return the potential of this emitter's field at the given point. Must be positive. The
    * isosurface is defined by all the points where this returns 0.
    */
-  public double getPotentialAt(VecD pos);
+  public double getPotentialAt(double x, double y, double z);
+
+  public default double getPotentialAt(VecD pos) {
+    return getPotentialAt(pos.x, pos.y, pos.z);
+  }
 
   /**
    * {@link Emitter} based on a box. The potential is 0 at the given radius outside the box, thus
@@ -79,15 +83,19 @@ public interface Emitter {
     }
 
     @Override
-    public double getPotentialAt(VecD pos) {
-      VecD d = pos.subtract(center).abs().subtract(size);
-      double r = Math.max(d.x, Math.max(d.y, d.z));
+    public double getPotentialAt(double x, double y, double z) {
+      double dx = Math.abs(x - center.x) - size.x;
+      double dy = Math.abs(y - center.y) - size.y;
+      double dz = Math.abs(z - center.z) - size.z;
+      double r = Math.max(dx, Math.max(dy, dz));
       if (r < 0) {
         // Inside box.
         return -(r * r + this.radiusSquared);
       }
-      d = d.max(0);
-      return d.magnitudeSquared() - radiusSquared;
+      dx = Math.max(dx, 0);
+      dy = Math.max(dy, 0);
+      dz = Math.max(dz, 0);
+      return dx * dx + dy * dy + dz * dz - radiusSquared;
     }
   }
 }
@@ -20,7 +20,7 @@ import static com.google.gapid.glviewer.Constants.MIN_DISTANCE;
 
 import com.google.gapid.glviewer.CameraModel;
 import com.google.gapid.glviewer.vec.MatD;
-import com.google.gapid.glviewer.vec.VecD;
+import com.google.gapid.glviewer.vec.MutableVecD;
 
 //  _______     .     _____     ___
 // |       |   / \   /     \  ."   ",
@@ -57,8 +57,26 @@ public class IsoSurfaceCameraModel implements CameraModel {
 
   private double lastDistance = 1;
 
+  // Scratch vectors, reused for every update, since each update casts many rays. Only the
+  // resulting view transform is allocated, as it is handed out and must not change afterwards.
+  private final double[] inverseView = new double[9];
+  private final MutableVecD up = new MutableVecD();
+  private final MutableVecD direction = new MutableVecD();
+  private final MutableVecD pos = new MutableVecD();
+  private final MutableVecD center = new MutableVecD();
+  private final MutableVecD newUp = new MutableVecD();
+  private final MutableVecD right = new MutableVecD();
+  private final MutableVecD upStep = new MutableVecD();
+  private final MutableVecD normal = new MutableVecD();
+  private final MutableVecD upOffset = new MutableVecD();
+  private final MutableVecD rightOffset = new MutableVecD();
+  private final MutableVecD[] grid = new MutableVecD[SMOOTHNESS_GRID_SIZE * SMOOTHNESS_GRID_SIZE];
+
   public IsoSurfaceCameraModel(CameraModel base) {
     this.base = base;
+    for (int i = 0; i < grid.length; i++) {
+      grid[i] = new MutableVecD();
+    }
     update();
   }
 
@@ -91,58 +109,56 @@ public class IsoSurfaceCameraModel implements CameraModel {
   }
 
   private boolean updateUsingIsoSurface() {
-    double[] m = base.getViewTransform().inverseOfTop3x3();
-    VecD up = new VecD(m[3], m[4], m[5]).normalize();
-    VecD direction = new VecD(-m[6], -m[7], -m[8]).normalize();
-    return evaluateIsoSurface(up, direction);
+    double[] m = base.getViewTransform().inverseOfTop3x3(inverseView);
+    up.set(m[3], m[4], m[5]).normalize();
+    direction.set(-m[6], -m[7], -m[8]).normalize();
+    return evaluateIsoSurface();
   }
 
-  private boolean evaluateIsoSurface(VecD up, VecD direction) {
-    VecD pos = getFirstIntersectionWithHint(direction);
-    if (pos == null) {
+  private boolean evaluateIsoSurface() {
+    if (!getFirstIntersectionWithHint(direction, pos)) {
       return false;
     }
 
-    VecD right = direction.cross(up).normalize().multiply(
-        SMOOTHNESS_ROTATION / SMOOTHNESS_GRID_SIZE);
-    up = up.multiply(SMOOTHNESS_ROTATION / SMOOTHNESS_GRID_SIZE);
+    right.cross(direction, up).normalize().multiply(SMOOTHNESS_ROTATION / SMOOTHNESS_GRID_SIZE);
+    upStep.set(up).multiply(SMOOTHNESS_ROTATION / SMOOTHNESS_GRID_SIZE);
 
     // Generate the samples to compute the normal.
-    VecD[] grid = new VecD[SMOOTHNESS_GRID_SIZE * SMOOTHNESS_GRID_SIZE];
     int size = (SMOOTHNESS_GRID_SIZE - 1) / 2;
     for (int y = -size, index = 0; y <= size; y++) {
       for (int x = -size; x <= size; x++, index++) {
-        grid[index] = pos.addScaled(up, y).addScaled(right, x);
-        VecD dir = grid[index].multiply(-1).normalize();
-        if ((grid[index] = rayCaster.getIntersection(grid[index], dir)) == null) {
+        MutableVecD sample = grid[index].set(pos).addScaled(upStep, y).addScaled(right, x);
+        double magnitude = sample.magnitude();
+        double s = (magnitude == 0) ? 0 : -1 / magnitude;
+        if (!rayCaster.getIntersection(sample, sample.x * s, sample.y * s, sample.z * s)) {
           return false;
         }
       }
     }
 
     // Compute the normal based on the sampling grid.
-    VecD normal = new VecD();
+    normal.set(0, 0, 0);
     for (int y = 0; y < SMOOTHNESS_GRID_SIZE - 1; y++) {
       for (int x = 0; x < SMOOTHNESS_GRID_SIZE - 1; x++) {
         int p0 = y * SMOOTHNESS_GRID_SIZE + x;
         int p1 = (y + 1) * SMOOTHNESS_GRID_SIZE + x;
         int p2 = y * SMOOTHNESS_GRID_SIZE + x + 1;
 
-        VecD upOffset = grid[p1].subtract(grid[p0]);
-        VecD rightOffset = grid[p2].subtract(grid[p0]);
-        normal = normal.add(rightOffset.cross(upOffset).normalize());
+        upOffset.set(grid[p1]).subtract(grid[p0]);
+        rightOffset.set(grid[p2]).subtract(grid[p0]);
+        normal.add(rightOffset.cross(rightOffset, upOffset).normalize());
       }
     }
 
-    normal = normal.normalize();
-    up = grid[INDEX_OF_Y1_X0].subtract(pos).normalize();
-    pos = pos.addScaled(normal, inflation);
+    normal.normalize();
+    newUp.set(grid[INDEX_OF_Y1_X0]).subtract(pos).normalize();
+    pos.addScaled(normal, inflation);
 
     // Interpolate the isosurface position & direction with the base's based on the zoom amount.
     double zoom = getZoom();
-    normal = normal.multiply(-1).lerp(direction, zoom);
-    pos = pos.lerp(direction.multiply(-MAX_DISTANCE), zoom);
-    viewTransform = MatD.lookAt(pos, pos.add(normal), up);
+    normal.multiply(-1).lerp(direction, zoom);
+    pos.lerp(center.set(direction).multiply(-MAX_DISTANCE), zoom);
+    viewTransform = MatD.lookAt(pos, center.set(pos).add(normal), newUp);
     return true;
   }
 
@@ -151,14 +167,13 @@ public class IsoSurfaceCameraModel implements CameraModel {
    * computed distance as a starting point for optimization (typically, the isosurface ought to be
    * smooth for smooth camera movement).
    */
-  private VecD getFirstIntersectionWithHint(VecD direction) {
-    VecD pos = direction.multiply(-lastDistance);
-    VecD result = rayCaster.getIntersection(pos, direction);
-    if (result != null) {
+  private boolean getFirstIntersectionWithHint(MutableVecD dir, MutableVecD result) {
+    result.set(dir).multiply(-lastDistance);
+    if (rayCaster.getIntersection(result, dir.x, dir.y, dir.z)) {
       lastDistance = result.magnitude();
-      return result;
+      return true;
     }
-    return null;
+    return false;
   }
 
   @Override
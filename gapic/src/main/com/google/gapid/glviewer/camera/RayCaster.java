@@ -15,10 +15,12 @@
  */
 package com.google.gapid.glviewer.camera;
 
+import com.google.gapid.glviewer.vec.MutableVecD;
 import com.google.gapid.glviewer.vec.VecD;
 
 /**
- * Casts rays to find intersections with the isosurface of an {@link Emitter}.
+ * Casts rays to find intersections with the isosurface of an {@link Emitter}. Uses scratch
+ * vectors to avoid allocating for every step along the ray, thus is not thread safe.
  */
 public class RayCaster {
   private static final int MAX_LINEAR_STEPS = 128;
@@ -27,6 +29,7 @@ public class RayCaster {
   private static final double MIN_STEP = 0.05;
 
   private final Emitter emitter;
+  private final MutableVecD prev = new MutableVecD();
 
   public RayCaster(Emitter emitter) {
     this.emitter = emitter;
@@ -35,44 +38,60 @@ public class RayCaster {
   // direction needs to be normalized
   // result is null if no intersection is found.
   public VecD getIntersection(VecD src, VecD direction) {
-    double potential = emitter.getPotentialAt(src);
+    MutableVecD pos = new MutableVecD().set(src);
+    return getIntersection(pos, direction.x, direction.y, direction.z) ? pos.toVecD() : null;
+  }
+
+  /**
+   * Casts a ray from the given position in the given normalized direction. If an intersection is
+   * found, the position is updated to the intersection and true is returned. Otherwise, false is
+   * returned and the position is left unspecified.
+   */
+  public boolean getIntersection(MutableVecD pos, double dx, double dy, double dz) {
+    double potential = emitter.getPotentialAt(pos.x, pos.y, pos.z);
     boolean inside = potential < 0;
-    VecD prev = src;
+    prev.set(pos);
     for (int i = 0; true; i++) {
       double absPotential = Math.abs(potential);
       if (absPotential < PRECISION) {
-        return src;
+        return true;
       } else if ((potential < 0) != inside) {
         break;
       } else if (absPotential < MIN_STEP) {
         potential = Math.signum(potential) * MIN_STEP;
       }
-      prev = src;
-      src = src.addScaled(direction, potential);
-      potential = emitter.getPotentialAt(src);
+      prev.set(pos);
+      pos.addScaled(dx, dy, dz, potential);
+      potential = emitter.getPotentialAt(pos.x, pos.y, pos.z);
 
       if (i >= MAX_LINEAR_STEPS) {
-        return null;
+        return false;
       }
     }
 
-    return inside ? binarySearch(prev, src) : binarySearch(src, prev);
+    return inside ? binarySearch(prev, pos, pos) : binarySearch(pos, prev, pos);
   }
 
-  private VecD binarySearch(VecD start, VecD end) {
+  private boolean binarySearch(MutableVecD start, MutableVecD end, MutableVecD result) {
+    double sx = start.x, sy = start.y, sz = start.z, ex = end.x, ey = end.y, ez = end.z;
     for (int i = 0; i < MAX_BINARY_STEPS; i++) {
-      VecD mid = start.add(end).multiply(0.5);
-      double potential = emitter.getPotentialAt(mid);
+      double mx = (sx + ex) * 0.5, my = (sy + ey) * 0.5, mz = (sz + ez) * 0.5;
+      double potential = emitter.getPotentialAt(mx, my, mz);
       if (Math.abs(potential) < PRECISION) {
-        return mid;
+        result.set(mx, my, mz);
+        return true;
       }
 
       if (potential < 0) {
-        start = mid;
+        sx = mx;
+        sy = my;
+        sz = mz;
       } else {
-        end = mid;
+        ex = mx;
+        ey = my;
+        ez = mz;
       }
     }
-    return null;
+    return false;
   }
 }
@@ -20,6 +20,9 @@ import static com.google.gapid.glviewer.vec.MatD.makeScaleTranslationZupToYup;
 import com.google.gapid.glviewer.vec.MatD;
 import com.google.gapid.glviewer.vec.VecD;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 /**
  * Bounding box of a model aligned to the standard cartesian directions.
  */
@@ -48,6 +51,36 @@ public class BoundingBox {
     VecD.max(max, x, y, z);
   }
 
+  /**
+   * Adds the x, y, z positions referenced by the given vertex indices, or all the positions if the
+   * indices are {@code null}. Indices referencing positions out of range are ignored.
+   */
+  public void add(FloatBuffer positions, IntBuffer indices) {
+    double minX = min[0], minY = min[1], minZ = min[2];
+    double maxX = max[0], maxY = max[1], maxZ = max[2];
+    int length = positions.limit();
+    int count = (indices == null) ? length / 3 : indices.limit();
+    for (int i = 0; i < count; i++) {
+      int idx = 3 * ((indices == null) ? i : indices.get(i));
+      if (idx < 0 || idx + 2 >= length) {
+        continue;
+      }
+      float x = positions.get(idx + 0), y = positions.get(idx + 1), z = positions.get(idx + 2);
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      minZ = Math.min(minZ, z);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+      maxZ = Math.max(maxZ, z);
+    }
+    min[0] = minX;
+    min[1] = minY;
+    min[2] = minZ;
+    max[0] = maxX;
+    max[1] = maxY;
+    max[2] = maxZ;
+  }
+
   /**
    * @return a matrix that will center the model at the origin and scale it to the given size.
    */
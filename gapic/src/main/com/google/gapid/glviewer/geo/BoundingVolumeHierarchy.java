@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.geo;
+
+import com.google.gapid.glviewer.vec.VecD;
+import com.google.gapid.proto.service.api.API;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A bounding volume hierarchy over the triangles of a {@link Model}, used to find the exact
+ * intersection of rays with the model's triangles. The hierarchy is a binary tree of axis aligned
+ * bounding boxes, split at the median triangle along the longest axis, stored in flat arrays.
+ */
+public class BoundingVolumeHierarchy {
+  private static final int MAX_LEAF_SIZE = 4;
+  private static final int MAX_DEPTH = 48;
+  private static final double EPSILON = 1e-12;
+
+  private final FloatBuffer positions;
+  // The position offsets of the three corners of each triangle, in tree order.
+  private final int[] corners;
+  // The index of each triangle within the model's primitive, in tree order.
+  private final int[] triangles;
+  // The min x, y, z and max x, y, z of each node.
+  private final float[] bounds;
+  // For inner nodes, the index of the second child (the first child directly follows its parent).
+  // For leaf nodes, the index of the node's first triangle.
+  private final int[] data;
+  // The number of triangles of leaf nodes, 0 for inner nodes.
+  private final int[] counts;
+  private int nodes;
+
+  private BoundingVolumeHierarchy(
+      FloatBuffer positions, int[] corners, int[] triangles, int count) {
+    this.positions = positions;
+    this.corners = new int[3 * count];
+    this.triangles = new int[count];
+    int maxNodes = Math.max(1, 2 * count);
+    this.bounds = new float[6 * maxNodes];
+    this.data = new int[maxNodes];
+    this.counts = new int[maxNodes];
+
+    float[] centroids = new float[3 * count];
+    int[] order = new int[count];
+    for (int t = 0; t < count; t++) {
+      order[t] = t;
+      for (int axis = 0; axis < 3; axis++) {
+        centroids[3 * t + axis] = (positions.get(corners[3 * t + 0] + axis) +
+            positions.get(corners[3 * t + 1] + axis) +
+            positions.get(corners[3 * t + 2] + axis)) / 3;
+      }
+    }
+
+    build(corners, centroids, order, 0, count, 0);
+
+    for (int i = 0; i < count; i++) {
+      System.arraycopy(corners, 3 * order[i], this.corners, 3 * i, 3);
+      this.triangles[i] = triangles[order[i]];
+    }
+  }
+
+  /**
+   * @return the hierarchy over the triangles of the given model. Models that are not indexed
+   * polygon models result in an empty hierarchy.
+   */
+  public static BoundingVolumeHierarchy build(Model model) {
+    API.DrawPrimitive primitive = model.getPrimitive();
+    FloatBuffer positions = model.getPositions();
+    IntBuffer indices = model.getIndices();
+    if (indices == null) {
+      return new BoundingVolumeHierarchy(positions, new int[0], new int[0], 0);
+    }
+
+    int triangleCount = Model.getTriangleCount(primitive, indices.limit());
+    int[] corners = new int[3 * triangleCount];
+    int[] triangles = new int[triangleCount];
+    int count = 0;
+    for (int t = 0; t < triangleCount; t++) {
+      boolean valid = true;
+      for (int c = 0; c < 3; c++) {
+        int idx = 3 * indices.get(Model.getTriangleIndex(primitive, t, c));
+        valid &= idx >= 0 && idx + 2 < positions.limit();
+        corners[3 * count + c] = idx;
+      }
+      if (valid) {
+        triangles[count++] = t;
+      }
+    }
+    return new BoundingVolumeHierarchy(positions, corners, triangles, count);
+  }
+
+  private int build(int[] srcCorners, float[] centroids, int[] order, int start, int end,
+      int depth) {
+    int node = nodes++;
+    float[] centroidBounds = {
+        Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+    };
+    for (int axis = 0; axis < 3; axis++) {
+      bounds[6 * node + axis] = Float.POSITIVE_INFINITY;
+      bounds[6 * node + 3 + axis] = Float.NEGATIVE_INFINITY;
+    }
+    for (int i = start; i < end; i++) {
+      int t = order[i];
+      for (int axis = 0; axis < 3; axis++) {
+        for (int c = 0; c < 3; c++) {
+          float value = positions.get(srcCorners[3 * t + c] + axis);
+          bounds[6 * node + axis] = Math.min(bounds[6 * node + axis], value);
+          bounds[6 * node + 3 + axis] = Math.max(bounds[6 * node + 3 + axis], value);
+        }
+        centroidBounds[axis] = Math.min(centroidBounds[axis], centroids[3 * t + axis]);
+        centroidBounds[3 + axis] = Math.max(centroidBounds[3 + axis], centroids[3 * t + axis]);
+      }
+    }
+
+    int axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (centroidBounds[3 + a] - centroidBounds[a] >
+          centroidBounds[3 + axis] - centroidBounds[axis]) {
+        axis = a;
+      }
+    }
+
+    if (end - start <= MAX_LEAF_SIZE || depth >= MAX_DEPTH ||
+        !(centroidBounds[3 + axis] > centroidBounds[axis])) {
+      data[node] = start;
+      counts[node] = end - start;
+      return node;
+    }
+
+    int mid = (start + end) >>> 1;
+    select(centroids, order, start, end - 1, mid, axis);
+    build(srcCorners, centroids, order, start, mid, depth + 1);
+    data[node] = build(srcCorners, centroids, order, mid, end, depth + 1);
+    counts[node] = 0;
+    return node;
+  }
+
+  /**
+   * Partially sorts order[left..right] by the centroids along the given axis, such that the k-th
+   * element is in its sorted position.
+   */
+  private static void select(float[] centroids, int[] order, int left, int right, int k,
+      int axis) {
+    while (left < right) {
+      float pivot = centroids[3 * order[(left + right) >>> 1] + axis];
+      int i = left, j = right;
+      while (i <= j) {
+        while (centroids[3 * order[i] + axis] < pivot) {
+          i++;
+        }
+        while (centroids[3 * order[j] + axis] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int tmp = order[i];
+          order[i] = order[j];
+          order[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the closest intersection of the given ray with the triangles, or {@code null} if the
+   * ray misses all of them. Both sides of the triangles are considered.
+   */
+  public Hit intersect(VecD origin, VecD direction) {
+    return intersect(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
+  }
+
+  /**
+   * @return the closest intersection of the ray from the given origin along the given direction
+   * with the triangles, or {@code null} if the ray misses all of them.
+   */
+  public Hit intersect(double ox, double oy, double oz, double dx, double dy, double dz) {
+    if (nodes == 0 || triangles.length == 0) {
+      return null;
+    }
+
+    // Avoid infinities for axis parallel rays, which would result in NaNs in the slab tests.
+    double ix = 1 / nonZero(dx), iy = 1 / nonZero(dy), iz = 1 / nonZero(dz);
+
+    int bestTriangle = -1;
+    double bestT = Double.POSITIVE_INFINITY, bestU = 0, bestV = 0;
+    int[] stack = new int[MAX_DEPTH + 2];
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int node = stack[--top];
+      if (!hitsBox(node, ox, oy, oz, ix, iy, iz, bestT)) {
+        continue;
+      }
+
+      if (counts[node] == 0) {
+        stack[top++] = data[node];
+        stack[top++] = node + 1;
+        continue;
+      }
+
+      for (int i = data[node], end = i + counts[node]; i < end; i++) {
+        int a = corners[3 * i + 0], b = corners[3 * i + 1], c = corners[3 * i + 2];
+        double ax = positions.get(a + 0), ay = positions.get(a + 1), az = positions.get(a + 2);
+        double e1x = positions.get(b + 0) - ax, e1y = positions.get(b + 1) - ay;
+        double e1z = positions.get(b + 2) - az;
+        double e2x = positions.get(c + 0) - ax, e2y = positions.get(c + 1) - ay;
+        double e2z = positions.get(c + 2) - az;
+
+        // Möller-Trumbore ray-triangle intersection.
+        double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < EPSILON) {
+          continue;
+        }
+        double invDet = 1 / det;
+        double sx = ox - ax, sy = oy - ay, sz = oz - az;
+        double u = (sx * px + sy * py + sz * pz) * invDet;
+        if (u < 0 || u > 1) {
+          continue;
+        }
+        double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (v < 0 || u + v > 1) {
+          continue;
+        }
+        double t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+        if (t >= 0 && t < bestT) {
+          bestTriangle = triangles[i];
+          bestT = t;
+          bestU = u;
+          bestV = v;
+        }
+      }
+    }
+    return (bestTriangle < 0) ? null : new Hit(bestTriangle, bestT, bestU, bestV);
+  }
+
+  private static double nonZero(double value) {
+    return (value == 0) ? Double.MIN_NORMAL : value;
+  }
+
+  private boolean hitsBox(int node, double ox, double oy, double oz, double ix, double iy,
+      double iz, double maxT) {
+    int b = 6 * node;
+    double t0 = (bounds[b + 0] - ox) * ix, t1 = (bounds[b + 3] - ox) * ix;
+    double near = Math.min(t0, t1), far = Math.max(t0, t1);
+    t0 = (bounds[b + 1] - oy) * iy;
+    t1 = (bounds[b + 4] - oy) * iy;
+    near = Math.max(near, Math.min(t0, t1));
+    far = Math.min(far, Math.max(t0, t1));
+    t0 = (bounds[b + 2] - oz) * iz;
+    t1 = (bounds[b + 5] - oz) * iz;
+    near = Math.max(near, Math.min(t0, t1));
+    far = Math.min(far, Math.max(t0, t1));
+    return near <= far && far >= 0 && near <= maxT;
+  }
+
+  /**
+   * The intersection of a ray with a triangle.
+   */
+  public static class Hit {
+    /** The index of the triangle within the model's primitive. */
+    public final int triangle;
+    /** The distance along the ray, in multiples of the ray's direction. */
+    public final double distance;
+    /** The barycentric coordinates of the intersection for the second and third corner. */
+    public final double u, v;
+
+    public Hit(int triangle, double distance, double u, double v) {
+      this.triangle = triangle;
+      this.distance = distance;
+      this.u = u;
+      this.v = v;
+    }
+
+    /**
+     * @return the corner (0, 1 or 2) of the triangle closest to the intersection.
+     */
+    public int getClosestCorner() {
+      double w = 1 - u - v;
+      return (w >= u && w >= v) ? 0 : (u >= v) ? 1 : 2;
+    }
+  }
+}
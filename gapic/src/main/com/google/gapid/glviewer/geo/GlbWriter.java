@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.geo;
+
+import static com.google.gapid.glviewer.geo.MeshExporter.addChunks;
+import static com.google.gapid.glviewer.geo.MeshExporter.floats;
+import static com.google.gapid.glviewer.geo.MeshExporter.ints;
+import static com.google.gapid.glviewer.geo.MeshExporter.newBuffer;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import com.google.common.collect.Lists;
+import com.google.gapid.proto.service.api.API;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes {@link Model models} to binary glTF 2.0 (GLB) files. The positions, normals and indices
+ * are stored as is in the binary chunk, in that order, with a single mesh referencing them.
+ */
+public class GlbWriter {
+  private static final int GLB_MAGIC = 0x46546C67; // "glTF"
+  private static final int GLB_VERSION = 2;
+  private static final int CHUNK_JSON = 0x4E4F534A; // "JSON"
+  private static final int CHUNK_BIN = 0x004E4942; // "BIN\0"
+  private static final int GL_FLOAT = 5126;
+  private static final int GL_UNSIGNED_INT = 5125;
+  private static final int GL_ARRAY_BUFFER = 34962;
+  private static final int GL_ELEMENT_ARRAY_BUFFER = 34963;
+
+  private GlbWriter() {
+  }
+
+  protected static List<Callable<ByteBuffer>> getChunks(Model model) throws IOException {
+    FloatBuffer positions = model.getPositions();
+    FloatBuffer normals = model.getNormals();
+    IntBuffer indices = model.getIndices();
+    int vertices = positions.limit() / 3;
+    if (vertices == 0) {
+      throw new IOException("The model has no vertices");
+    }
+    boolean hasNormals = normals != null && normals.limit() >= 3 * vertices;
+    boolean hasIndices = indices != null && indices.limit() > 0;
+
+    int positionBytes = 12 * vertices;
+    int normalBytes = hasNormals ? 12 * vertices : 0;
+    int indexBytes = hasIndices ? 4 * indices.limit() : 0;
+    int binBytes = positionBytes + normalBytes + indexBytes;
+
+    byte[] json = pad(getJson(model, vertices, hasNormals, hasIndices, binBytes)
+        .getBytes(US_ASCII));
+    ByteBuffer header = newBuffer(12 + 8 + json.length + 8);
+    header.putInt(GLB_MAGIC).putInt(GLB_VERSION).putInt(header.capacity() + binBytes);
+    header.putInt(json.length).putInt(CHUNK_JSON).put(json);
+    header.putInt(binBytes).putInt(CHUNK_BIN);
+    header.flip();
+
+    List<Callable<ByteBuffer>> chunks = Lists.newArrayList();
+    chunks.add(() -> header);
+    addChunks(chunks, vertices, (from, to) -> floats(positions, 3 * from, 3 * to));
+    if (hasNormals) {
+      addChunks(chunks, vertices, (from, to) -> floats(normals, 3 * from, 3 * to));
+    }
+    if (hasIndices) {
+      addChunks(chunks, indices.limit(), (from, to) -> ints(indices, from, to));
+    }
+    return chunks;
+  }
+
+  private static String getJson(
+      Model model, int vertices, boolean hasNormals, boolean hasIndices, int binBytes)
+      throws IOException {
+    FloatBuffer positions = model.getPositions();
+    float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+    float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+    for (int i = 0; i < 3 * vertices; i++) {
+      // JSON can't represent infinities and NaNs, so they can't be part of the bounds.
+      float value = positions.get(i);
+      if (Float.isFinite(value)) {
+        min[i % 3] = Math.min(min[i % 3], value);
+        max[i % 3] = Math.max(max[i % 3], value);
+      }
+    }
+
+    int normalView = hasNormals ? 1 : -1;
+    int indexView = hasIndices ? (hasNormals ? 2 : 1) : -1;
+    int positionBytes = 12 * vertices, normalBytes = hasNormals ? positionBytes : 0;
+
+    StringBuilder sb = new StringBuilder()
+        .append("{\"asset\":{\"version\":\"2.0\",\"generator\":\"GAPID\"},")
+        .append("\"scene\":0,\"scenes\":[{\"nodes\":[0]}],\"nodes\":[{\"mesh\":0}],")
+        .append("\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0");
+    if (hasNormals) {
+      sb.append(",\"NORMAL\":").append(normalView);
+    }
+    sb.append('}');
+    if (hasIndices) {
+      sb.append(",\"indices\":").append(indexView);
+    }
+    sb.append(",\"mode\":").append(getMode(model.getPrimitive())).append("}]}],");
+
+    sb.append("\"buffers\":[{\"byteLength\":").append(binBytes).append("}],");
+
+    sb.append("\"bufferViews\":[");
+    appendBufferView(sb, 0, positionBytes, GL_ARRAY_BUFFER);
+    if (hasNormals) {
+      sb.append(',');
+      appendBufferView(sb, positionBytes, normalBytes, GL_ARRAY_BUFFER);
+    }
+    if (hasIndices) {
+      sb.append(',');
+      appendBufferView(sb, positionBytes + normalBytes, binBytes - positionBytes - normalBytes,
+          GL_ELEMENT_ARRAY_BUFFER);
+    }
+    sb.append("],");
+
+    sb.append("\"accessors\":[");
+    appendAccessor(sb, 0, GL_FLOAT, vertices, "VEC3");
+    // A component without any finite values has no bounds, so leave them out.
+    if (min[0] <= max[0] && min[1] <= max[1] && min[2] <= max[2]) {
+      sb.append(",\"min\":[").append(min[0]).append(',').append(min[1]).append(',')
+          .append(min[2]).append("],\"max\":[").append(max[0]).append(',').append(max[1])
+          .append(',').append(max[2]).append(']');
+    }
+    sb.append('}');
+    if (hasNormals) {
+      sb.append(',');
+      appendAccessor(sb, normalView, GL_FLOAT, vertices, "VEC3");
+      sb.append('}');
+    }
+    if (hasIndices) {
+      sb.append(',');
+      appendAccessor(sb, indexView, GL_UNSIGNED_INT, model.getIndices().limit(), "SCALAR");
+      sb.append('}');
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  private static void appendBufferView(StringBuilder sb, int offset, int length, int target) {
+    sb.append("{\"buffer\":0,\"byteOffset\":").append(offset)
+        .append(",\"byteLength\":").append(length)
+        .append(",\"target\":").append(target).append('}');
+  }
+
+  /**
+   * Appends the accessor without its closing brace.
+   */
+  private static void appendAccessor(
+      StringBuilder sb, int view, int componentType, int count, String type) {
+    sb.append("{\"bufferView\":").append(view)
+        .append(",\"componentType\":").append(componentType)
+        .append(",\"count\":").append(count)
+        .append(",\"type\":\"").append(type).append('"');
+  }
+
+  private static int getMode(API.DrawPrimitive primitive) throws IOException {
+    switch (primitive) {
+      case Points: return 0;
+      case Lines: return 1;
+      case LineLoop: return 2;
+      case LineStrip: return 3;
+      case Triangles: return 4;
+      case TriangleStrip: return 5;
+      case TriangleFan: return 6;
+      default: throw new IOException("Unsupported draw primitive: " + primitive);
+    }
+  }
+
+  /**
+   * @return the given JSON padded with spaces to a multiple of four bytes.
+   */
+  private static byte[] pad(byte[] json) {
+    int padding = (4 - (json.length & 3)) & 3;
+    if (padding == 0) {
+      return json;
+    }
+    byte[] result = new byte[json.length + padding];
+    System.arraycopy(json, 0, result, 0, json.length);
+    for (int i = json.length; i < result.length; i++) {
+      result[i] = ' ';
+    }
+    return result;
+  }
+}
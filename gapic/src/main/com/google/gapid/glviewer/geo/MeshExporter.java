@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.geo;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gapid.util.Scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Exports {@link Model models} to disk. The file is split into chunks, which are formatted on the
+ * shared background executor and written in order as they become available. Only a bounded number
+ * of formatted chunks are held in memory at any time. The chunks are written to a temporary file
+ * next to the destination, which only replaces the destination once the export succeeds.
+ */
+public class MeshExporter {
+  // Number of vertices or primitives formatted by each chunk.
+  protected static final int CHUNK_SIZE = 1 << 16;
+  // Number of chunks that may be formatted ahead of the one being written.
+  private static final int CHUNKS_AHEAD =
+      2 * Math.max(1, Runtime.getRuntime().availableProcessors());
+
+  private MeshExporter() {
+  }
+
+  /**
+   * Starts exporting the given model to the given file. Cancelling the returned future stops the
+   * export and leaves the file untouched.
+   */
+  public static ListenableFuture<Void> export(
+      Model model, File file, Format format, Listener listener) {
+    try {
+      Export export =
+          new Export(format.getChunks(model), file.getAbsoluteFile().toPath(), listener);
+      export.start();
+      return export.result;
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * A running export. The chunks are formatted on the {@link Scheduler#EXECUTOR}. Rather than
+   * blocking a thread of the executor while waiting for them, each chunk is written by a listener
+   * of its future, once it and the chunks before it are done.
+   */
+  private static class Export {
+    public final SettableFuture<Void> result = SettableFuture.create();
+    private final List<Callable<ByteBuffer>> chunks;
+    private final Path file;
+    private final Path temp;
+    private final FileChannel out;
+    private final Listener listener;
+    private final Deque<ListenableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+    private int next, done;
+    private boolean closed;
+
+    public Export(List<Callable<ByteBuffer>> chunks, Path file, Listener listener)
+        throws IOException {
+      this.chunks = chunks;
+      this.file = file;
+      // Created like the destination would be, so that it ends up with the same permissions.
+      this.temp = file.resolveSibling(
+          file.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+      this.out = FileChannel.open(temp, CREATE_NEW, WRITE);
+      this.listener = listener;
+    }
+
+    public void start() {
+      result.addListener(() -> {
+        if (result.isCancelled()) {
+          cancel();
+        }
+      }, MoreExecutors.directExecutor());
+      synchronized (this) {
+        submitChunks();
+        writeNextChunk();
+      }
+    }
+
+    private synchronized void submitChunks() {
+      while (next < chunks.size() && pending.size() < CHUNKS_AHEAD) {
+        pending.add(Scheduler.EXECUTOR.submit(chunks.get(next++)));
+      }
+    }
+
+    private synchronized void writeNextChunk() {
+      if (done == chunks.size()) {
+        finish();
+        return;
+      }
+      ListenableFuture<ByteBuffer> chunk = pending.peek();
+      chunk.addListener(this::onChunkDone, Scheduler.EXECUTOR);
+    }
+
+    private synchronized void onChunkDone() {
+      if (closed) {
+        return;
+      }
+      try {
+        writeFully(out, getChunk(pending.remove()));
+        listener.onProgress(++done, chunks.size());
+        submitChunks();
+        writeNextChunk();
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    private synchronized void finish() {
+      try {
+        close();
+        try {
+          Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp, file, REPLACE_EXISTING);
+        }
+        result.set(null);
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    private synchronized void fail(Throwable t) {
+      cancel();
+      result.setException(t);
+    }
+
+    private synchronized void cancel() {
+      for (ListenableFuture<ByteBuffer> chunk : pending) {
+        chunk.cancel(true);
+      }
+      pending.clear();
+      try {
+        close();
+      } catch (IOException e) {
+        // Ignore, as the export has failed already.
+      }
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException e) {
+        // Ignore, leaving the temporary file behind.
+      }
+    }
+
+    private void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        out.close();
+      }
+    }
+  }
+
+  private static ByteBuffer getChunk(ListenableFuture<ByteBuffer> future) throws Exception {
+    try {
+      return Futures.getDone(future);
+    } catch (ExecutionException e) {
+      throw (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  /**
+   * Adds the chunks formatting the given number of elements, {@link #CHUNK_SIZE} at a time.
+   */
+  protected static void addChunks(
+      List<Callable<ByteBuffer>> chunks, int count, RangeFormatter formatter) {
+    for (int from = 0; from < count; from += CHUNK_SIZE) {
+      int start = from, end = Math.min(count, from + CHUNK_SIZE);
+      chunks.add(() -> formatter.format(start, end));
+    }
+  }
+
+  protected static ByteBuffer newBuffer(int bytes) {
+    return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  protected static ByteBuffer ascii(CharSequence text) {
+    return ByteBuffer.wrap(text.toString().getBytes(US_ASCII));
+  }
+
+  /**
+   * @return the little endian floats [from, to) of the given buffer.
+   */
+  protected static ByteBuffer floats(FloatBuffer values, int from, int to) {
+    FloatBuffer range = values.duplicate();
+    range.position(from);
+    range.limit(to);
+    ByteBuffer buffer = newBuffer(4 * (to - from));
+    buffer.asFloatBuffer().put(range);
+    return buffer;
+  }
+
+  /**
+   * @return the little endian ints [from, to) of the given buffer.
+   */
+  protected static ByteBuffer ints(IntBuffer values, int from, int to) {
+    IntBuffer range = values.duplicate();
+    range.position(from);
+    range.limit(to);
+    ByteBuffer buffer = newBuffer(4 * (to - from));
+    buffer.asIntBuffer().put(range);
+    return buffer;
+  }
+
+  /**
+   * Formats a range of elements of a model.
+   */
+  protected static interface RangeFormatter {
+    public ByteBuffer format(int from, int to) throws IOException;
+  }
+
+  /**
+   * Listener notified about the progress of an export.
+   */
+  public static interface Listener {
+    /**
+     * Invoked on a background thread whenever another chunk has been written.
+     */
+    public void onProgress(int done, int total);
+  }
+
+  /**
+   * The supported export file formats.
+   */
+  public static enum Format {
+    /**
+     * Wavefront OBJ text files.
+     */
+    OBJ("obj", "OBJ Files (*.obj)") {
+      @Override
+      protected List<Callable<ByteBuffer>> getChunks(Model model) throws IOException {
+        return ObjWriter.getChunks(model);
+      }
+    },
+
+    /**
+     * Binary little endian PLY files.
+     */
+    PLY("ply", "PLY Files (*.ply)") {
+      @Override
+      protected List<Callable<ByteBuffer>> getChunks(Model model) throws IOException {
+        return PlyWriter.getChunks(model);
+      }
+    },
+
+    /**
+     * Binary glTF 2.0 files.
+     */
+    GLB("glb", "glTF Binary Files (*.glb)") {
+      @Override
+      protected List<Callable<ByteBuffer>> getChunks(Model model) throws IOException {
+        return GlbWriter.getChunks(model);
+      }
+    };
+
+    public final String extension;
+    public final String filterName;
+
+    private Format(String extension, String filterName) {
+      this.extension = extension;
+      this.filterName = filterName;
+    }
+
+    /**
+     * @return the format with the extension of the given file name, or {@code null} if none
+     * matches.
+     */
+    public static Format fromFileName(String name) {
+      String lower = name.toLowerCase();
+      for (Format format : values()) {
+        if (lower.endsWith("." + format.extension)) {
+          return format;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return the chunks of the file, in file order. Each chunk may be formatted on any thread.
+     */
+    protected abstract List<Callable<ByteBuffer>> getChunks(Model model) throws IOException;
+  }
+}
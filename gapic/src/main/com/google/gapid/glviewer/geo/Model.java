@@ -17,59 +17,202 @@ package com.google.gapid.glviewer.geo;
 
 import com.google.gapid.proto.service.api.API;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 /**
- * The geometry data of a model to be displayed.
+ * The geometry data of a model to be displayed. The data is kept in buffers, which may be views of
+ * the data received from the server, and is only ever read with absolute gets.
  */
 public class Model {
   private final API.DrawPrimitive primitive;
   private final API.Mesh.Stats stats;
-  private final float[] positions; // x, y, z
-  private final float[] normals; // x, y, z
-  private final int[] indices;
+  private final FloatBuffer positions; // x, y, z
+  private final FloatBuffer normals; // x, y, z
+  private final IntBuffer indices;
   private final BoundingBox bounds = new BoundingBox();
+  private volatile BoundingVolumeHierarchy bvh;
 
   public Model(API.DrawPrimitive primitive, API.Mesh.Stats stats, float[] positions,
       float[] normals, int[] indices) {
+    this(primitive, stats, FloatBuffer.wrap(positions),
+        (normals == null) ? null : FloatBuffer.wrap(normals),
+        (indices == null) ? null : IntBuffer.wrap(indices));
+  }
+
+  public Model(API.DrawPrimitive primitive, API.Mesh.Stats stats, FloatBuffer positions,
+      FloatBuffer normals, IntBuffer indices) {
     this.primitive = primitive;
     this.stats = stats;
-    this.positions = positions;
-    this.normals = normals;
-    this.indices = indices;
+    this.positions = positions.slice();
+    this.normals = (normals == null) ? null : normals.slice();
+    this.indices = (indices == null) ? null : indices.slice();
 
-    if (indices == null) {
-      for (int i = 0; i < positions.length; i += 3) {
-        bounds.add(positions[i + 0], positions[i + 1], positions[i + 2]);
-      }
-    } else {
-      for (int i = 0; i < indices.length; i++) {
-        int idx = 3 * indices[i];
-        if (idx >= 0 && idx + 2 < positions.length) {
-          bounds.add(positions[idx + 0], positions[idx + 1], positions[idx + 2]);
-        }
-      }
-    }
+    bounds.add(this.positions, this.indices);
   }
 
   public API.DrawPrimitive getPrimitive() {
     return primitive;
   }
 
-  public float[] getPositions() {
-    return positions;
+  public API.Mesh.Stats getStats() {
+    return stats;
   }
 
-  public float[] getNormals() {
-    return normals;
+  /**
+   * @return a view of the positions, which can be read or uploaded without affecting others.
+   */
+  public FloatBuffer getPositions() {
+    return positions.duplicate();
   }
 
-  public int[] getIndices() {
-    return indices;
+  public FloatBuffer getNormals() {
+    return (normals == null) ? null : normals.duplicate();
+  }
+
+  public IntBuffer getIndices() {
+    return (indices == null) ? null : indices.duplicate();
   }
 
   public BoundingBox getBounds() {
     return bounds;
   }
 
+  /**
+   * @return the {@link BoundingVolumeHierarchy} of this model's triangles, building it on first
+   * use.
+   */
+  public BoundingVolumeHierarchy getBoundingVolumeHierarchy() {
+    BoundingVolumeHierarchy result = bvh;
+    if (result == null) {
+      synchronized (this) {
+        result = bvh;
+        if (result == null) {
+          bvh = result = BoundingVolumeHierarchy.build(this);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return whether the {@link BoundingVolumeHierarchy} has been built already.
+   */
+  public boolean hasBoundingVolumeHierarchy() {
+    return bvh != null;
+  }
+
+  /**
+   * @return the number of triangles drawn by the given number of indices of the primitive.
+   */
+  public static int getTriangleCount(API.DrawPrimitive primitive, int indexCount) {
+    switch (primitive) {
+      case Triangles:
+        return indexCount / 3;
+      case TriangleStrip:
+      case TriangleFan:
+        return Math.max(0, indexCount - 2);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @return the offset into the index buffer of the given corner (0, 1 or 2) of the given triangle
+   * of the polygon primitive.
+   */
+  public static int getTriangleIndex(API.DrawPrimitive primitive, int triangle, int corner) {
+    switch (primitive) {
+      case Triangles:
+        return 3 * triangle + corner;
+      case TriangleStrip:
+        // Every other triangle of a strip has its winding order reversed.
+        return ((triangle & 1) == 0 || corner == 1) ? triangle + corner : triangle + 2 - corner;
+      case TriangleFan:
+        return (corner == 0) ? 0 : triangle + corner;
+      default:
+        throw new IllegalArgumentException("Not a polygon primitive: " + primitive);
+    }
+  }
+
+  /**
+   * @return the number of lines drawn by the given number of indices of the primitive.
+   */
+  public static int getLineCount(API.DrawPrimitive primitive, int indexCount) {
+    switch (primitive) {
+      case Lines:
+        return indexCount / 2;
+      case LineStrip:
+        return Math.max(0, indexCount - 1);
+      case LineLoop:
+        return (indexCount < 2) ? 0 : indexCount;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @return the offset into the index buffer of the given end (0 or 1) of the given line of the
+   * line primitive with the given number of indices.
+   */
+  public static int getLineIndex(
+      API.DrawPrimitive primitive, int indexCount, int line, int end) {
+    switch (primitive) {
+      case Lines:
+        return 2 * line + end;
+      case LineStrip:
+        return line + end;
+      case LineLoop:
+        return (line + end) % indexCount;
+      default:
+        throw new IllegalArgumentException("Not a line primitive: " + primitive);
+    }
+  }
+
+  /**
+   * Splits the shared vertices of the triangles [from, to) of the given polygon primitive. The
+   * positions of each triangle's vertices, and the triangle's normal for each vertex, are written
+   * to the output arrays at nine floats per triangle. Disjoint ranges of triangles may be faceted
+   * concurrently.
+   */
+  public static void facet(API.DrawPrimitive primitive, FloatBuffer positions, IntBuffer indices,
+      int from, int to, float[] outPositions, float[] outNormals) {
+    for (int t = from; t < to; t++) {
+      int o = 9 * t;
+      copyPosition(positions, indices.get(getTriangleIndex(primitive, t, 0)), outPositions, o);
+      copyPosition(positions, indices.get(getTriangleIndex(primitive, t, 1)), outPositions, o + 3);
+      copyPosition(positions, indices.get(getTriangleIndex(primitive, t, 2)), outPositions, o + 6);
+
+      float abx = outPositions[o + 3] - outPositions[o + 0];
+      float aby = outPositions[o + 4] - outPositions[o + 1];
+      float abz = outPositions[o + 5] - outPositions[o + 2];
+      float acx = outPositions[o + 6] - outPositions[o + 0];
+      float acy = outPositions[o + 7] - outPositions[o + 1];
+      float acz = outPositions[o + 8] - outPositions[o + 2];
+      float nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+      float length = (float)Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (length > 0) {
+        nx /= length;
+        ny /= length;
+        nz /= length;
+      }
+      for (int v = o; v < o + 9; v += 3) {
+        outNormals[v + 0] = nx;
+        outNormals[v + 1] = ny;
+        outNormals[v + 2] = nz;
+      }
+    }
+  }
+
+  private static void copyPosition(FloatBuffer positions, int index, float[] out, int offset) {
+    int idx = 3 * index;
+    if (idx >= 0 && idx + 2 < positions.limit()) {
+      out[offset + 0] = positions.get(idx + 0);
+      out[offset + 1] = positions.get(idx + 1);
+      out[offset + 2] = positions.get(idx + 2);
+    }
+  }
+
   public String getStatusMessage() {
     StringBuilder sb = new StringBuilder();
     int v = stats.getVertices(), i = stats.getIndices(), p = stats.getPrimitives();
@@ -15,98 +15,114 @@
  */
 package com.google.gapid.glviewer.geo;
 
+import static com.google.gapid.glviewer.geo.MeshExporter.addChunks;
+import static com.google.gapid.glviewer.geo.MeshExporter.ascii;
+
+import com.google.common.collect.Lists;
+import com.google.gapid.proto.service.api.API;
+
 import java.io.IOException;
-import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
- * Writes {@link Model models} to OBJ files.
+ * Writes {@link Model models} to OBJ files. The vertices and faces are formatted in independent
+ * chunks, which the {@link MeshExporter} formats concurrently.
  */
 public class ObjWriter {
   private ObjWriter() {
   }
 
-  public static void write(Writer out, Model model) throws IOException {
+  protected static List<Callable<ByteBuffer>> getChunks(Model model) throws IOException {
     // TODO: could possibly make the OBJ smaller by deduping vertices and normals.
-    writePositions(out, model.getPositions());
-    writeNormals(out, model.getNormals());
-    out.write("s 1\n");
-    switch (model.getPrimitive()) {
-      case Points: writePoints(out, model.getIndices()); break;
-      case Lines: writeLines(out, model.getIndices()); break;
-      case LineStrip: writeLineStrip(out, model.getIndices()); break;
-      case LineLoop: writeLineLoop(out, model.getIndices()); break;
-      case Triangles: writeTriangles(out, model.getIndices()); break;
-      case TriangleStrip: writeTriangleStrip(out, model.getIndices()); break;
-      case TriangleFan: writeTriangleFan(out, model.getIndices()); break;
-      default: throw new IOException("Unsupported draw primitive: " + model.getPrimitive());
-    }
-  }
+    API.DrawPrimitive primitive = model.getPrimitive();
+    FloatBuffer positions = model.getPositions();
+    FloatBuffer normals = model.getNormals();
+    IntBuffer indices = model.getIndices();
+    boolean hasNormals = normals != null;
 
-  private static void writePositions(Writer out, float[] pos) throws IOException {
-    for (int i = 2; i < pos.length; i += 3) {
-      out.write("v " + pos[i - 2] + " " + pos[i - 1] + " " + pos[i - 0] + "\n");
+    List<Callable<ByteBuffer>> chunks = Lists.newArrayList();
+    addChunks(chunks, positions.limit() / 3,
+        (from, to) -> formatVectors("v ", positions, from, to));
+    if (hasNormals) {
+      addChunks(chunks, normals.limit() / 3,
+          (from, to) -> formatVectors("vn ", normals, from, to));
     }
-  }
-
-  private static void writeNormals(Writer out, float[] normals) throws IOException {
-    for (int i = 2; i < normals.length; i += 3) {
-      out.write("vn " + normals[i - 2] + " " + normals[i - 1] + " " + normals[i - 0] + "\n");
+    chunks.add(() -> ascii("s 1\n"));
+    if (indices == null) {
+      return chunks;
     }
-  }
 
-  private static void writePoints(Writer out, int[] indices) throws IOException {
-    for (int i : indices) {
-      out.write("p " + (i + 1) + "\n");
-    }
-  }
-
-  private static void writeLines(Writer out, int[] indices) throws IOException {
-    for (int i = 1; i < indices.length; i += 2) {
-      writeLine(out, indices[i - 1], indices[i - 0]);
+    switch (primitive) {
+      case Points:
+        addChunks(chunks, indices.limit(), (from, to) -> formatPoints(indices, from, to));
+        break;
+      case Lines:
+      case LineStrip:
+      case LineLoop:
+        addChunks(chunks, Model.getLineCount(primitive, indices.limit()),
+            (from, to) -> formatLines(primitive, indices, from, to));
+        break;
+      case Triangles:
+      case TriangleStrip:
+      case TriangleFan:
+        addChunks(chunks, Model.getTriangleCount(primitive, indices.limit()),
+            (from, to) -> formatTriangles(primitive, indices, hasNormals, from, to));
+        break;
+      default:
+        throw new IOException("Unsupported draw primitive: " + primitive);
     }
+    return chunks;
   }
 
-  private static void writeLineStrip(Writer out, int[] indices) throws IOException {
-    for (int i = 1; i < indices.length; i++) {
-      writeLine(out, indices[i - 1], indices[i]);
+  private static ByteBuffer formatVectors(String prefix, FloatBuffer values, int from, int to) {
+    StringBuilder sb = new StringBuilder(40 * (to - from));
+    for (int i = 3 * from; i < 3 * to; i += 3) {
+      sb.append(prefix)
+          .append(values.get(i + 0)).append(' ')
+          .append(values.get(i + 1)).append(' ')
+          .append(values.get(i + 2)).append('\n');
     }
+    return ascii(sb);
   }
 
-  private static void writeLineLoop(Writer out, int[] indices) throws IOException {
-    for (int i = 1; i < indices.length; i++) {
-      writeLine(out, indices[i - 1], indices[i]);
+  private static ByteBuffer formatPoints(IntBuffer indices, int from, int to) {
+    StringBuilder sb = new StringBuilder(10 * (to - from));
+    for (int i = from; i < to; i++) {
+      sb.append("p ").append(indices.get(i) + 1).append('\n');
     }
-    writeLine(out, indices[indices.length - 1], 0);
+    return ascii(sb);
   }
 
-  private static void writeLine(Writer out, int a, int b) throws IOException {
-    out.write("l " + (a + 1) + " " + (b + 1) + "\n");
-  }
-
-  private static void writeTriangles(Writer out, int[] indices) throws IOException {
-    for (int i = 2; i < indices.length; i += 3) {
-      writeTriangle(out, indices[i - 2], indices[i - 1], indices[i - 0]);
+  private static ByteBuffer formatLines(API.DrawPrimitive primitive, IntBuffer indices,
+      int from, int to) {
+    int count = indices.limit();
+    StringBuilder sb = new StringBuilder(20 * (to - from));
+    for (int l = from; l < to; l++) {
+      sb.append("l ")
+          .append(indices.get(Model.getLineIndex(primitive, count, l, 0)) + 1).append(' ')
+          .append(indices.get(Model.getLineIndex(primitive, count, l, 1)) + 1).append('\n');
     }
+    return ascii(sb);
   }
 
-  private static void writeTriangleStrip(Writer out, int[] indices) throws IOException {
-    for (int i = 2; i < indices.length; i += 3) {
-      writeTriangle(out, indices[i - 2], indices[i - 1], indices[i - 0]);
-      if ((i += 3) >= indices.length) {
-        break;
+  private static ByteBuffer formatTriangles(API.DrawPrimitive primitive, IntBuffer indices,
+      boolean hasNormals, int from, int to) {
+    StringBuilder sb = new StringBuilder((hasNormals ? 40 : 24) * (to - from));
+    for (int t = from; t < to; t++) {
+      sb.append('f');
+      for (int c = 0; c < 3; c++) {
+        int index = indices.get(Model.getTriangleIndex(primitive, t, c)) + 1;
+        sb.append(' ').append(index);
+        if (hasNormals) {
+          sb.append("//").append(index);
+        }
       }
-      writeTriangle(out, indices[i - 1], indices[i - 2], indices[i - 0]);
+      sb.append('\n');
     }
-  }
-
-  private static void writeTriangleFan(Writer out, int[] indices) throws IOException {
-    for (int i = 2; i < indices.length; i++) {
-      writeTriangle(out, indices[0], indices[i - 1], indices[i]);
-    }
-  }
-
-  private static void writeTriangle(Writer out, int a, int b, int c) throws IOException {
-    out.write("f " + (a + 1) + "//" + (a + 1) + " " + (b + 1) + "//" + (b + 1) +
-        " " + (c + 1) + "//" + (c + 1) + "\n");
+    return ascii(sb);
   }
 }
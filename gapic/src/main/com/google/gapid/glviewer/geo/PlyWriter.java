@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.geo;
+
+import static com.google.gapid.glviewer.geo.MeshExporter.addChunks;
+import static com.google.gapid.glviewer.geo.MeshExporter.ascii;
+import static com.google.gapid.glviewer.geo.MeshExporter.floats;
+import static com.google.gapid.glviewer.geo.MeshExporter.newBuffer;
+
+import com.google.common.collect.Lists;
+import com.google.gapid.proto.service.api.API;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes {@link Model models} to binary little endian PLY files. Triangles are written as faces
+ * and lines as edges. Point primitives are written as just their vertices.
+ */
+public class PlyWriter {
+  private PlyWriter() {
+  }
+
+  protected static List<Callable<ByteBuffer>> getChunks(Model model) throws IOException {
+    API.DrawPrimitive primitive = model.getPrimitive();
+    FloatBuffer positions = model.getPositions();
+    FloatBuffer normals = model.getNormals();
+    IntBuffer indices = model.getIndices();
+    int vertices = positions.limit() / 3;
+    boolean hasNormals = normals != null && normals.limit() >= 3 * vertices;
+    int triangles = 0, lines = 0;
+    if (indices != null) {
+      switch (primitive) {
+        case Points:
+          break;
+        case Lines:
+        case LineStrip:
+        case LineLoop:
+          lines = Model.getLineCount(primitive, indices.limit());
+          break;
+        case Triangles:
+        case TriangleStrip:
+        case TriangleFan:
+          triangles = Model.getTriangleCount(primitive, indices.limit());
+          break;
+        default:
+          throw new IOException("Unsupported draw primitive: " + primitive);
+      }
+    }
+
+    StringBuilder header = new StringBuilder()
+        .append("ply\n")
+        .append("format binary_little_endian 1.0\n")
+        .append("element vertex ").append(vertices).append('\n')
+        .append("property float x\n")
+        .append("property float y\n")
+        .append("property float z\n");
+    if (hasNormals) {
+      header.append("property float nx\n")
+          .append("property float ny\n")
+          .append("property float nz\n");
+    }
+    if (triangles > 0) {
+      header.append("element face ").append(triangles).append('\n')
+          .append("property list uchar int vertex_indices\n");
+    }
+    if (lines > 0) {
+      header.append("element edge ").append(lines).append('\n')
+          .append("property int vertex1\n")
+          .append("property int vertex2\n");
+    }
+    header.append("end_header\n");
+
+    List<Callable<ByteBuffer>> chunks = Lists.newArrayList();
+    chunks.add(() -> ascii(header));
+    if (hasNormals) {
+      addChunks(chunks, vertices, (from, to) -> formatVertices(positions, normals, from, to));
+    } else {
+      addChunks(chunks, vertices, (from, to) -> floats(positions, 3 * from, 3 * to));
+    }
+    if (triangles > 0) {
+      addChunks(chunks, triangles, (from, to) -> formatFaces(primitive, indices, from, to));
+    }
+    if (lines > 0) {
+      addChunks(chunks, lines, (from, to) -> formatEdges(primitive, indices, from, to));
+    }
+    return chunks;
+  }
+
+  private static ByteBuffer formatVertices(
+      FloatBuffer positions, FloatBuffer normals, int from, int to) {
+    ByteBuffer buffer = newBuffer(24 * (to - from));
+    for (int i = 3 * from; i < 3 * to; i += 3) {
+      buffer.putFloat(positions.get(i + 0)).putFloat(positions.get(i + 1))
+          .putFloat(positions.get(i + 2));
+      buffer.putFloat(normals.get(i + 0)).putFloat(normals.get(i + 1))
+          .putFloat(normals.get(i + 2));
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer formatFaces(API.DrawPrimitive primitive, IntBuffer indices, int from,
+      int to) {
+    ByteBuffer buffer = newBuffer(13 * (to - from));
+    for (int t = from; t < to; t++) {
+      buffer.put((byte)3)
+          .putInt(indices.get(Model.getTriangleIndex(primitive, t, 0)))
+          .putInt(indices.get(Model.getTriangleIndex(primitive, t, 1)))
+          .putInt(indices.get(Model.getTriangleIndex(primitive, t, 2)));
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer formatEdges(API.DrawPrimitive primitive, IntBuffer indices, int from,
+      int to) {
+    ByteBuffer buffer = newBuffer(8 * (to - from));
+    for (int l = from; l < to; l++) {
+      buffer.putInt(indices.get(Model.getLineIndex(primitive, indices.limit(), l, 0)))
+          .putInt(indices.get(Model.getLineIndex(primitive, indices.limit(), l, 1)));
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
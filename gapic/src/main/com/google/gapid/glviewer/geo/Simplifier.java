@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.geo;
+
+import com.google.gapid.proto.service.api.API;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Creates reduced level of detail versions of a {@link Model} using vertex clustering. The
+ * vertices are snapped to a uniform grid, each occupied grid cell becomes a single vertex at the
+ * average position of its vertices, and all triangles that collapse are dropped. The result only
+ * depends on the input model, so simplifying the same model always produces the same result.
+ */
+public class Simplifier {
+  // Number of attempts at finding a grid resolution that results in few enough triangles.
+  private static final int MAX_PASSES = 4;
+  // Cluster indices need to fit into 21 bits to identify duplicate triangles.
+  private static final int MAX_DEDUP_CLUSTERS = 1 << 21;
+
+  private Simplifier() {
+  }
+
+  /**
+   * @return a triangle list model approximating the given polygon model with at most around the
+   * given number of triangles, or {@code null} if the model is not an indexed polygon model or
+   * already has no more than the given number of triangles.
+   */
+  public static Model simplify(Model model, int maxTriangles) {
+    if (model.getIndices() == null) {
+      return null;
+    }
+    int triangles = Model.getTriangleCount(model.getPrimitive(), model.getIndices().limit());
+    if (triangles <= maxTriangles || maxTriangles <= 0) {
+      return null;
+    }
+
+    // Surface meshes occupy roughly the square of the grid resolution in cells, each of which
+    // results in about two triangles.
+    double resolution = Math.sqrt(maxTriangles / 2.0);
+    Model result = null;
+    for (int pass = 0; pass < MAX_PASSES; pass++) {
+      result = simplify(model, triangles, Math.max(1, (int)resolution));
+      int count = result.getIndices().limit() / 3;
+      if (count <= maxTriangles) {
+        break;
+      }
+      resolution *= Math.sqrt((double)maxTriangles / count) * 0.95;
+    }
+    return result;
+  }
+
+  private static Model simplify(Model model, int triangles, int resolution) {
+    FloatBuffer positions = model.getPositions();
+    FloatBuffer normals = model.getNormals();
+    int vertices = positions.limit() / 3;
+    BoundingBox bounds = model.getBounds();
+
+    double extent = Math.max(bounds.max[0] - bounds.min[0],
+        Math.max(bounds.max[1] - bounds.min[1], bounds.max[2] - bounds.min[2]));
+    double scale = (extent > 0) ? resolution / extent : 0;
+    long cells = resolution + 1L;
+
+    // Assign each vertex to its cluster, numbering the clusters in order of first occurrence.
+    LongIntMap cellToCluster = new LongIntMap(Math.min(vertices, 1 << 20));
+    int[] vertexToCluster = new int[vertices];
+    double[] sums = new double[Math.max(1, Math.min(vertices, 1 << 16)) * 3];
+    double[] normalSums = (normals == null) ? null : new double[sums.length];
+    int[] counts = new int[sums.length / 3];
+    int clusters = 0;
+    for (int v = 0, p = 0; v < vertices; v++, p += 3) {
+      long x = cell(positions.get(p + 0), bounds.min[0], scale, cells);
+      long y = cell(positions.get(p + 1), bounds.min[1], scale, cells);
+      long z = cell(positions.get(p + 2), bounds.min[2], scale, cells);
+      long key = (x * cells + y) * cells + z;
+      int cluster = cellToCluster.putIfAbsent(key, clusters);
+      if (cluster < 0) {
+        cluster = clusters++;
+        if (cluster == counts.length) {
+          counts = Arrays.copyOf(counts, 2 * counts.length);
+          sums = Arrays.copyOf(sums, 3 * counts.length);
+          if (normalSums != null) {
+            normalSums = Arrays.copyOf(normalSums, sums.length);
+          }
+        }
+      }
+      vertexToCluster[v] = cluster;
+      counts[cluster]++;
+      sums[3 * cluster + 0] += positions.get(p + 0);
+      sums[3 * cluster + 1] += positions.get(p + 1);
+      sums[3 * cluster + 2] += positions.get(p + 2);
+      if (normalSums != null && p + 2 < normals.limit()) {
+        normalSums[3 * cluster + 0] += normals.get(p + 0);
+        normalSums[3 * cluster + 1] += normals.get(p + 1);
+        normalSums[3 * cluster + 2] += normals.get(p + 2);
+      }
+    }
+
+    float[] outPositions = new float[3 * clusters];
+    float[] outNormals = (normalSums == null) ? null : new float[3 * clusters];
+    for (int c = 0, p = 0; c < clusters; c++, p += 3) {
+      outPositions[p + 0] = (float)(sums[p + 0] / counts[c]);
+      outPositions[p + 1] = (float)(sums[p + 1] / counts[c]);
+      outPositions[p + 2] = (float)(sums[p + 2] / counts[c]);
+      if (outNormals != null) {
+        double nx = normalSums[p + 0], ny = normalSums[p + 1], nz = normalSums[p + 2];
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+          outNormals[p + 0] = (float)(nx / length);
+          outNormals[p + 1] = (float)(ny / length);
+          outNormals[p + 2] = (float)(nz / length);
+        }
+      }
+    }
+
+    // Keep the triangles whose corners are in three different clusters, dropping duplicates.
+    API.DrawPrimitive primitive = model.getPrimitive();
+    IntBuffer indices = model.getIndices();
+    LongIntMap seen = (clusters <= MAX_DEDUP_CLUSTERS) ? new LongIntMap(1 << 16) : null;
+    int[] outIndices = new int[3 * Math.max(1, Math.min(triangles, 1 << 16))];
+    int count = 0;
+    for (int t = 0; t < triangles; t++) {
+      int a = cluster(vertexToCluster, indices.get(Model.getTriangleIndex(primitive, t, 0)));
+      int b = cluster(vertexToCluster, indices.get(Model.getTriangleIndex(primitive, t, 1)));
+      int c = cluster(vertexToCluster, indices.get(Model.getTriangleIndex(primitive, t, 2)));
+      if (a < 0 || b < 0 || c < 0 || a == b || b == c || a == c) {
+        continue;
+      }
+      if (seen != null && seen.putIfAbsent(triangleKey(a, b, c), t) >= 0) {
+        continue;
+      }
+
+      if (count == outIndices.length) {
+        outIndices = Arrays.copyOf(outIndices, 2 * outIndices.length);
+      }
+      outIndices[count++] = a;
+      outIndices[count++] = b;
+      outIndices[count++] = c;
+    }
+
+    return new Model(API.DrawPrimitive.Triangles, model.getStats(), outPositions, outNormals,
+        Arrays.copyOf(outIndices, count));
+  }
+
+  private static long cell(float value, double min, double scale, long cells) {
+    return Math.max(0, Math.min(cells - 1, (long)((value - min) * scale)));
+  }
+
+  private static int cluster(int[] vertexToCluster, int index) {
+    return (index >= 0 && index < vertexToCluster.length) ? vertexToCluster[index] : -1;
+  }
+
+  /**
+   * @return a key identifying the triangle regardless of which of its corners comes first, but
+   * preserving its winding order.
+   */
+  private static long triangleKey(int a, int b, int c) {
+    if (b < a && b < c) {
+      return key(b, c, a);
+    } else if (c < a && c < b) {
+      return key(c, a, b);
+    }
+    return key(a, b, c);
+  }
+
+  private static long key(int a, int b, int c) {
+    return ((long)a << 42) | ((long)b << 21) | c;
+  }
+
+  /**
+   * Open addressing hash map from non-negative long keys to non-negative int values.
+   */
+  private static class LongIntMap {
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap(int expectedSize) {
+      int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+      keys = new long[capacity];
+      values = new int[capacity];
+      Arrays.fill(keys, -1);
+    }
+
+    /**
+     * @return the value of the key if present, otherwise associates the key with the given value
+     * and returns -1.
+     */
+    public int putIfAbsent(long key, int value) {
+      int mask = keys.length - 1;
+      for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+        if (keys[i] == key) {
+          return values[i];
+        } else if (keys[i] < 0) {
+          keys[i] = key;
+          values[i] = value;
+          if (++size > keys.length / 2) {
+            grow();
+          }
+          return -1;
+        }
+      }
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new long[2 * oldKeys.length];
+      values = new int[keys.length];
+      Arrays.fill(keys, -1);
+      int mask = keys.length - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldKeys[j] >= 0) {
+          int i = hash(oldKeys[j]) & mask;
+          while (keys[i] >= 0) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+
+    private static int hash(long key) {
+      long h = key * 0x9e3779b97f4a7c15L;
+      return (int)(h ^ (h >>> 32));
+    }
+  }
+}
@@ -17,6 +17,9 @@ package com.google.gapid.glviewer.gl;
 
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
 
 /**
  * An OpenGL GL_ELEMENT_ARRAY_BUFFER buffer.
@@ -27,14 +30,37 @@ public class IndexBuffer extends GlObject {
   final int type;
 
   IndexBuffer(Renderer owner, int[] data) {
+    this(owner, data.length);
+    GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+  }
+
+  /**
+   * Uploads the remaining indices of the given buffer. Heap buffers are staged through a temporary
+   * native copy, since GL can only read native memory.
+   */
+  IndexBuffer(Renderer owner, IntBuffer data) {
+    this(owner, data.remaining());
+    if (data.isDirect()) {
+      GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+    } else {
+      IntBuffer staging = MemoryUtil.memAllocInt(data.remaining());
+      try {
+        staging.put(data.duplicate()).flip();
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, staging, GL15.GL_STATIC_DRAW);
+      } finally {
+        MemoryUtil.memFree(staging);
+      }
+    }
+  }
+
+  private IndexBuffer(Renderer owner, int count) {
     super(owner);
     this.handle = GL15.glGenBuffers();
-    this.count = data.length;
+    this.count = count;
     this.type = GL11.GL_UNSIGNED_INT;
     owner.register(this);
 
     bind();
-    GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
   }
 
   void bind() {
@@ -27,6 +27,8 @@ import org.eclipse.swt.internal.DPIUtil;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL30;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.Set;
 
@@ -111,6 +113,16 @@ public final class Renderer {
     return new VertexBuffer(this, data, elementsPerVertex);
   }
 
+  /**
+   * Constructs and returns a new {@link VertexBuffer} filled with the remaining data of the given
+   * buffer. The returned {@link VertexBuffer} must only be used with this {@link Renderer}.
+   *
+   * @param data the vertex data.
+   * @param elementsPerVertex number of data elements per vertex.
+   */
+  public VertexBuffer newVertexBuffer(FloatBuffer data, int elementsPerVertex) {
+    return new VertexBuffer(this, data, elementsPerVertex);
+  }
 
   public VertexBuffer newVertexBuffer(List<Float> data, int elementsPerVertex) {
     float[] floats = new float[data.size()];
@@ -130,6 +142,16 @@ public final class Renderer {
     return new IndexBuffer(this, data);
   }
 
+  /**
+   * Constructs and returns a new {@link IndexBuffer} filled with the remaining data of the given
+   * buffer. The returned {@link IndexBuffer} must only be used with this {@link Renderer}.
+   *
+   * @param data the index data.
+   */
+  public IndexBuffer newIndexBuffer(IntBuffer data) {
+    return new IndexBuffer(this, data);
+  }
+
   /**
    * Constructs and returns a new {@link Texture}.
    * The returned {@link Texture} must only be used with this {@link Renderer}.
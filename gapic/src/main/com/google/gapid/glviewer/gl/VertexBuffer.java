@@ -17,6 +17,9 @@ package com.google.gapid.glviewer.gl;
 
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
 
 /**
  * An OpenGL vertex buffer.
@@ -28,15 +31,39 @@ public class VertexBuffer extends GlObject {
   final int elementType;
 
   VertexBuffer(Renderer owner, float[] data, int elementsPerVertex) {
+    this(owner, data.length, elementsPerVertex);
+    GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+  }
+
+  /**
+   * Uploads the remaining floats of the given buffer. Heap buffers, such as views of the data
+   * received from the server, are staged through a temporary native copy, since GL can only read
+   * native memory.
+   */
+  VertexBuffer(Renderer owner, FloatBuffer data, int elementsPerVertex) {
+    this(owner, data.remaining(), elementsPerVertex);
+    if (data.isDirect()) {
+      GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+    } else {
+      FloatBuffer staging = MemoryUtil.memAllocFloat(data.remaining());
+      try {
+        staging.put(data.duplicate()).flip();
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, staging, GL15.GL_STATIC_DRAW);
+      } finally {
+        MemoryUtil.memFree(staging);
+      }
+    }
+  }
+
+  private VertexBuffer(Renderer owner, int length, int elementsPerVertex) {
     super(owner);
     this.handle = GL15.glGenBuffers();
     this.elementsPerVertex = elementsPerVertex;
-    this.vertexCount = data.length / elementsPerVertex;
+    this.vertexCount = length / elementsPerVertex;
     this.elementType = GL11.GL_FLOAT;
     owner.register(this);
 
     bind();
-    GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
   }
 
   void bind() {
@@ -101,13 +101,68 @@ public class MatD {
   }
 
   public double[] inverseOfTop3x3() {
+    return inverseOfTop3x3(new double[9]);
+  }
+
+  /**
+   * Same as {@link #inverseOfTop3x3()}, but stores the result in the given array of 9 elements.
+   */
+  public double[] inverseOfTop3x3(double[] out) {
     double a = m[0], d = m[1], g = m[2], b = m[4], e = m[5], h = m[6], c = m[8], f = m[9], k = m[10];
     double ek = e * k, fh = f * h, fg = f * g, dk = d * k, dh = d * h, eg = e * g;
     double det = 1 / (a * (ek - fh) + b * (fg - dk) + c * (dh - eg));
-    return new double[] {
-      (ek - fh) * det, (fg - dk) * det, (dh - eg) * det,
-      (c * h - b * k) * det, (a * k - c * g) * det, (b * g - a * h) * det,
-      (b * f - c * e) * det, (c * d - a * f) * det, (a * e - b * d) * det };
+    out[0] = (ek - fh) * det;
+    out[1] = (fg - dk) * det;
+    out[2] = (dh - eg) * det;
+    out[3] = (c * h - b * k) * det;
+    out[4] = (a * k - c * g) * det;
+    out[5] = (b * g - a * h) * det;
+    out[6] = (b * f - c * e) * det;
+    out[7] = (c * d - a * f) * det;
+    out[8] = (a * e - b * d) * det;
+    return out;
+  }
+
+  /**
+   * @return the inverse of this matrix, or {@code null} if it is not invertible.
+   */
+  public MatD inverse() {
+    double a00 = m[ 0], a01 = m[ 1], a02 = m[ 2], a03 = m[ 3];
+    double a10 = m[ 4], a11 = m[ 5], a12 = m[ 6], a13 = m[ 7];
+    double a20 = m[ 8], a21 = m[ 9], a22 = m[10], a23 = m[11];
+    double a30 = m[12], a31 = m[13], a32 = m[14], a33 = m[15];
+
+    double b00 = a00 * a11 - a01 * a10, b01 = a00 * a12 - a02 * a10;
+    double b02 = a00 * a13 - a03 * a10, b03 = a01 * a12 - a02 * a11;
+    double b04 = a01 * a13 - a03 * a11, b05 = a02 * a13 - a03 * a12;
+    double b06 = a20 * a31 - a21 * a30, b07 = a20 * a32 - a22 * a30;
+    double b08 = a20 * a33 - a23 * a30, b09 = a21 * a32 - a22 * a31;
+    double b10 = a21 * a33 - a23 * a31, b11 = a22 * a33 - a23 * a32;
+
+    double det = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+    if (det == 0) {
+      return null;
+    }
+    det = 1 / det;
+
+    return new MatD(new double[] {
+      (a11 * b11 - a12 * b10 + a13 * b09) * det,
+      (a02 * b10 - a01 * b11 - a03 * b09) * det,
+      (a31 * b05 - a32 * b04 + a33 * b03) * det,
+      (a22 * b04 - a21 * b05 - a23 * b03) * det,
+      (a12 * b08 - a10 * b11 - a13 * b07) * det,
+      (a00 * b11 - a02 * b08 + a03 * b07) * det,
+      (a32 * b02 - a30 * b05 - a33 * b01) * det,
+      (a20 * b05 - a22 * b02 + a23 * b01) * det,
+      (a10 * b10 - a11 * b08 + a13 * b06) * det,
+      (a01 * b08 - a00 * b10 - a03 * b06) * det,
+      (a30 * b04 - a31 * b02 + a33 * b00) * det,
+      (a21 * b02 - a20 * b04 - a23 * b00) * det,
+      (a11 * b07 - a10 * b09 - a12 * b06) * det,
+      (a00 * b09 - a01 * b07 + a02 * b06) * det,
+      (a31 * b01 - a30 * b03 - a32 * b00) * det,
+      (a20 * b03 - a21 * b01 + a22 * b00) * det
+    });
   }
 
   public MatD multiply(MatD mat) {
@@ -153,6 +208,31 @@ public class MatD {
     );
   }
 
+  /**
+   * @return the given point transformed by this matrix, including the perspective divide.
+   */
+  public VecD multiplyPerspective(double x, double y, double z) {
+    double w = x * m[3] + y * m[7] + z * m[11] + m[15];
+    return new VecD(
+      (x * m[0] + y * m[4] + z * m[8] + m[12]) / w,
+      (x * m[1] + y * m[5] + z * m[9] + m[13]) / w,
+      (x * m[2] + y * m[6] + z * m[10] + m[14]) / w
+    );
+  }
+
+  /**
+   * Same as {@link #multiplyPerspective(double, double, double)}, but stores the result in the
+   * given vector, rather than allocating a new one.
+   */
+  public MutableVecD multiplyPerspective(double x, double y, double z, MutableVecD out) {
+    double w = x * m[3] + y * m[7] + z * m[11] + m[15];
+    return out.set(
+      (x * m[0] + y * m[4] + z * m[8] + m[12]) / w,
+      (x * m[1] + y * m[5] + z * m[9] + m[13]) / w,
+      (x * m[2] + y * m[6] + z * m[10] + m[14]) / w
+    );
+  }
+
   public void multiply(double[] vecIn, int inOffset, double[] vecOut, int outOffset) {
     double x = vecIn[inOffset + 0], y = vecIn[inOffset + 1], z = vecIn[inOffset + 2];
     vecOut[outOffset + 0] = x * m[0] + y * m[4] + z * m[8] + m[12];
@@ -185,6 +265,42 @@ public class MatD {
     });
   }
 
+  /**
+   * Same as {@link #lookAt(VecD, VecD, VecD)}, but without allocating any intermediate vectors.
+   */
+  public static MatD lookAt(MutableVecD eye, MutableVecD center, MutableVecD up) {
+    double fx = center.x - eye.x, fy = center.y - eye.y, fz = center.z - eye.z;
+    double fs = Math.sqrt(fx * fx + fy * fy + fz * fz);
+    if (fs != 0) {
+      fx /= fs;
+      fy /= fs;
+      fz /= fs;
+    }
+    double sx = fy * up.z - fz * up.y, sy = fz * up.x - fx * up.z, sz = fx * up.y - fy * up.x;
+    double ss = Math.sqrt(sx * sx + sy * sy + sz * sz);
+    if (ss != 0) {
+      sx /= ss;
+      sy /= ss;
+      sz /= ss;
+    }
+    double ux = sy * fz - sz * fy, uy = sz * fx - sx * fz, uz = sx * fy - sy * fx;
+    double us = Math.sqrt(ux * ux + uy * uy + uz * uz);
+    if (us != 0) {
+      ux /= us;
+      uy /= us;
+      uz /= us;
+    }
+    return new MatD(new double[] {
+      sx, ux, -fx, 0,
+      sy, uy, -fy, 0,
+      sz, uz, -fz, 0,
+      -eye.x * sx - eye.y * sy - eye.z * sz,
+      -eye.x * ux - eye.y * uy - eye.z * uz,
+       eye.x * fx + eye.y * fy + eye.z * fz,
+      1
+    });
+  }
+
   public static MatD translation(double tx, double ty, double tz) {
     return new MatD(new double[] {
       1, 0, 0, 0,
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.vec;
+
+/**
+ * A mutable 3 element double precision vector. All operations update this vector in place and
+ * return it for chaining, so instances can be reused as scratch space in code that runs many
+ * times per frame, where allocating a {@link VecD} for each intermediate result is too costly.
+ */
+public class MutableVecD {
+  public double x, y, z;
+
+  public MutableVecD() {
+  }
+
+  public MutableVecD(double x, double y, double z) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[%f, %f, %f]", x, y, z);
+  }
+
+  public MutableVecD set(double newX, double newY, double newZ) {
+    this.x = newX;
+    this.y = newY;
+    this.z = newZ;
+    return this;
+  }
+
+  public MutableVecD set(VecD v) {
+    return set(v.x, v.y, v.z);
+  }
+
+  public MutableVecD set(MutableVecD v) {
+    return set(v.x, v.y, v.z);
+  }
+
+  public MutableVecD add(MutableVecD v) {
+    return set(x + v.x, y + v.y, z + v.z);
+  }
+
+  public MutableVecD addScaled(MutableVecD v, double s) {
+    return set(x + v.x * s, y + v.y * s, z + v.z * s);
+  }
+
+  public MutableVecD addScaled(double dx, double dy, double dz, double s) {
+    return set(x + dx * s, y + dy * s, z + dz * s);
+  }
+
+  public MutableVecD subtract(MutableVecD v) {
+    return set(x - v.x, y - v.y, z - v.z);
+  }
+
+  public MutableVecD multiply(double s) {
+    return set(x * s, y * s, z * s);
+  }
+
+  /**
+   * Sets this vector to the cross product of the two given vectors, either of which may be this.
+   */
+  public MutableVecD cross(MutableVecD a, MutableVecD b) {
+    return set(a.y * b.z - a.z * b.y, a.z * b.x - a.x * b.z, a.x * b.y - a.y * b.x);
+  }
+
+  /**
+   * Same as {@link VecD#lerp}: a value of 0 results in the given vector, 1 in this vector.
+   */
+  public MutableVecD lerp(VecD v, double a) {
+    return set(v.x + (x - v.x) * a, v.y + (y - v.y) * a, v.z + (z - v.z) * a);
+  }
+
+  public MutableVecD lerp(MutableVecD v, double a) {
+    return set(v.x + (x - v.x) * a, v.y + (y - v.y) * a, v.z + (z - v.z) * a);
+  }
+
+  public MutableVecD normalize() {
+    double s = magnitude();
+    return (s == 0) ? this : set(x / s, y / s, z / s);
+  }
+
+  public double magnitudeSquared() {
+    return x * x + y * y + z * z;
+  }
+
+  public double magnitude() {
+    return Math.sqrt(magnitudeSquared());
+  }
+
+  public VecD toVecD() {
+    return new VecD(x, y, z);
+  }
+}
@@ -27,6 +27,8 @@ import com.google.gapid.glviewer.gl.Texture;
 import com.google.gapid.image.Histogram.Binner;
 import com.google.gapid.proto.stream.Stream;
 import com.google.gapid.util.Colors;
+import com.google.gapid.util.Float16;
+import com.google.protobuf.ByteString;
 
 import org.eclipse.swt.graphics.ImageData;
 import org.lwjgl.BufferUtils;
@@ -36,14 +38,18 @@ import org.lwjgl.opengl.GL30;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * An {@link Image} backed by a byte array.
  */
 public abstract class ArrayImage implements com.google.gapid.image.Image {
   protected static final Cache<Image.Key, PixelInfo> PIXEL_INFO_CACHE = softCache();
+  // Number of floats half-float data is expanded to at a time. Multiple of 4 to keep RGBA intact.
+  private static final int HALF_CHUNK_SIZE = 4 * 1024;
 
   public final int width, height, depth, bytesPerPixel;
   protected final byte[] data;
@@ -120,6 +126,22 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
     return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
   }
 
+  /**
+   * Expands the given half-float buffer into floats, one fixed size chunk at a time, and passes
+   * each chunk to the given consumer. Chunks are reused and never split an RGBA pixel.
+   */
+  protected static void forEachFloatChunk(ShortBuffer halfs, Consumer<FloatBuffer> consumer) {
+    float[] chunk = new float[Math.min(HALF_CHUNK_SIZE, halfs.remaining())];
+    FloatBuffer buffer = FloatBuffer.wrap(chunk);
+    for (int i = 0, n = halfs.remaining(); i < n; i += chunk.length) {
+      int count = Math.min(chunk.length, n - i);
+      Float16.shortBitsToFloat(halfs, i, chunk, 0, count);
+      buffer.clear();
+      buffer.limit(count);
+      consumer.accept(buffer);
+    }
+  }
+
   /**
    * An {@link ArrayImage} builder.
    */
@@ -159,6 +181,21 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
       return this;
     }
 
+    /**
+     * Copies the 2D source image directly into the given region of this builder, vertically
+     * flipping it with respect to the whole image. This has the same effect as calling
+     * {@link #update} followed by {@link #flip()}, without touching any of the other regions, which
+     * means regions can be filled in concurrently as their data becomes available.
+     */
+    public Builder updateFlipped(ByteString src, int x, int y, int w, int h) {
+      int rowSize = pixelSize * w;
+      for (int row = 0, s = 0, p = (height - 1 - y) * width; row < h && s + rowSize <= src.size();
+          row++, s += rowSize, p -= width) {
+        src.copyTo(data, s, pixelSize * (p + x), rowSize);
+      }
+      return this;
+    }
+
     public Builder flip() {
       int s = pixelSize * width;
       byte[] row = new byte[s];
@@ -171,6 +208,12 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
     }
 
     protected abstract ArrayImage build();
+
+    /**
+     * Returns an {@link ArrayImage} of the possibly incomplete data in this builder. The returned
+     * image shares the data with this builder and should only be used for displaying progress.
+     */
+    protected abstract ArrayImage buildPartial();
   }
 
   /**
@@ -217,6 +260,15 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
           ((data[i + 2] & 0xFF) << 0));
     }
 
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      for (int x = 0, s = 4 * y * width, d = 0; x < width; x++, s += 4, d += 3) {
+        rgb[d + 0] = UnsignedBytes.toInt(data[s + 0]) / 255f;
+        rgb[d + 1] = UnsignedBytes.toInt(data[s + 1]) / 255f;
+        rgb[d + 2] = UnsignedBytes.toInt(data[s + 2]) / 255f;
+      }
+    }
+
     @Override
     public Set<Stream.Channel> getChannels() {
       return Images.RGB_CHANNELS;
@@ -304,6 +356,15 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
       return new Pixel(buffer.get(i + 0), buffer.get(i + 1), buffer.get(i + 2), buffer.get(i + 3));
     }
 
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      for (int x = 0, s = 4 * y * width, d = 0; x < width; x++, s += 4, d += 3) {
+        rgb[d + 0] = buffer.get(s + 0);
+        rgb[d + 1] = buffer.get(s + 1);
+        rgb[d + 2] = buffer.get(s + 2);
+      }
+    }
+
     @Override
     public Set<Stream.Channel> getChannels() {
       return Images.RGB_CHANNELS;
@@ -316,6 +377,10 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
 
     @Override
     public void bin(Histogram.Binner binner) {
+      bin(buffer, binner);
+    }
+
+    protected static void bin(FloatBuffer buffer, Histogram.Binner binner) {
       for (int i = 0, end = buffer.remaining() - 3; i <= end; ) {
         float value = buffer.get(i++);
         if (!Float.isNaN(value) && !Float.isInfinite(value)) {
@@ -388,6 +453,13 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
       texture.setSwizzle(GL11.GL_RED, GL11.GL_RED, GL11.GL_RED, GL11.GL_ONE);
     }
 
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      for (int x = 0, s = y * width, d = 0; x < width; x++, s++, d += 3) {
+        rgb[d + 0] = rgb[d + 1] = rgb[d + 2] = UnsignedBytes.toInt(data[s]) / 255f;
+      }
+    }
+
     @Override
     public Set<Stream.Channel> getChannels() {
       return Images.LUMINANCE_CHANNELS;
@@ -478,6 +550,13 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
       texture.setSwizzle(GL11.GL_RED, GL11.GL_RED, GL11.GL_RED, GL11.GL_ONE);
     }
 
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      for (int x = 0, s = y * width, d = 0; x < width; x++, s++, d += 3) {
+        rgb[d + 0] = rgb[d + 1] = rgb[d + 2] = buffer.get(s);
+      }
+    }
+
     @Override
     public Set<Stream.Channel> getChannels() {
       return Images.LUMINANCE_CHANNELS;
@@ -490,6 +569,10 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
 
     @Override
     public void bin(Binner binner) {
+      bin(buffer, binner);
+    }
+
+    protected static void bin(FloatBuffer buffer, Histogram.Binner binner) {
       for (int i = 0; i < buffer.remaining(); i++) {
         float value = buffer.get(i);
         if (!Float.isNaN(value) && !Float.isInfinite(value)) {
@@ -541,6 +624,162 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
     }
   }
 
+  /**
+   * An {@link ArrayImage} that represents an RGBA image with 16bit float color channels.
+   */
+  public static class RGBAHalfImage extends ArrayImage {
+    private final ShortBuffer buffer;
+    private final PixelInfo info;
+
+    public RGBAHalfImage(Image.Key key, int width, int height, int depth, byte[] data) {
+      super(width, height, depth, 8, data, GL30.GL_RGBA16F, GL11.GL_RGBA, GL30.GL_HALF_FLOAT);
+      this.buffer = buffer(data).asShortBuffer();
+      this.info = getUnchecked(PIXEL_INFO_CACHE, key, () -> FloatPixelInfo.compute(buffer, true));
+    }
+
+    private RGBAHalfImage(int width, int height, int depth, byte[] data, PixelInfo info) {
+      super(width, height, depth, 8, data, GL30.GL_RGBA16F, GL11.GL_RGBA, GL30.GL_HALF_FLOAT);
+      this.buffer = buffer(data).asShortBuffer();
+      this.info = info;
+    }
+
+    @Override
+    protected Image create(int w, int h, int d, byte[] pixels) {
+      return new RGBAHalfImage(w, h, d, pixels, info);
+    }
+
+    @Override
+    protected void convert2D(byte[] src, byte[] dst, byte[] alpha, int stride) {
+      float[] pixels = new float[4 * width];
+      for (int row = 0, di = 0, si = 4 * (height - 1) * width, ai = 0; row < height;
+          row++, si -= 4 * width, di += stride) {
+        Float16.shortBitsToFloat(buffer, si, pixels, 0, pixels.length);
+        for (int col = 0, s = 0, d = di; col < width; col++, s += 4, d += 3, ai++) {
+          dst[d + 0] = clamp(pixels[s + 0]);
+          dst[d + 1] = clamp(pixels[s + 1]);
+          dst[d + 2] = clamp(pixels[s + 2]);
+          alpha[ai] = clamp(pixels[s + 3]);
+        }
+      }
+    }
+
+    @Override
+    protected PixelValue getPixel(int x, int y) {
+      int i = 4 * (y * width + x);
+      return new RGBAFloatImage.Pixel(
+          Float16.shortBitsToFloat(buffer.get(i + 0)), Float16.shortBitsToFloat(buffer.get(i + 1)),
+          Float16.shortBitsToFloat(buffer.get(i + 2)), Float16.shortBitsToFloat(buffer.get(i + 3)));
+    }
+
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      for (int x = 0, s = 4 * y * width, d = 0; x < width; x++, s += 4, d += 3) {
+        rgb[d + 0] = Float16.shortBitsToFloat(buffer.get(s + 0));
+        rgb[d + 1] = Float16.shortBitsToFloat(buffer.get(s + 1));
+        rgb[d + 2] = Float16.shortBitsToFloat(buffer.get(s + 2));
+      }
+    }
+
+    @Override
+    public Set<Stream.Channel> getChannels() {
+      return Images.RGB_CHANNELS;
+    }
+
+    @Override
+    public boolean isHDR() {
+      return true;
+    }
+
+    @Override
+    public void bin(Histogram.Binner binner) {
+      forEachFloatChunk(buffer, chunk -> RGBAFloatImage.bin(chunk, binner));
+    }
+
+    @Override
+    public PixelInfo getInfo() {
+      return info;
+    }
+  }
+
+  /**
+   * An {@link ArrayImage} that represents a 16bit float luminance image.
+   */
+  public static class LuminanceHalfImage extends ArrayImage {
+    private final ShortBuffer buffer;
+    private final PixelInfo info;
+
+    public LuminanceHalfImage(Image.Key key, int width, int height, int depth, byte[] data) {
+      super(width, height, depth, 2, data, GL30.GL_R16F, GL11.GL_RED, GL30.GL_HALF_FLOAT);
+      this.buffer = buffer(data).asShortBuffer();
+      this.info = getUnchecked(PIXEL_INFO_CACHE, key, () -> FloatPixelInfo.compute(buffer, false));
+    }
+
+    private LuminanceHalfImage(int width, int height, int depth, byte[] data, PixelInfo info) {
+      super(width, height, depth, 2, data, GL30.GL_R16F, GL11.GL_RED, GL30.GL_HALF_FLOAT);
+      this.buffer = buffer(data).asShortBuffer();
+      this.info = info;
+    }
+
+    @Override
+    protected Image create(int w, int h, int d, byte[] pixels) {
+      return new LuminanceHalfImage(w, h, d, pixels, info);
+    }
+
+    @Override
+    public void uploadToTexture(Texture texture) {
+      super.uploadToTexture(texture);
+      texture.setSwizzle(GL11.GL_RED, GL11.GL_RED, GL11.GL_RED, GL11.GL_ONE);
+    }
+
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      for (int x = 0, s = y * width, d = 0; x < width; x++, s++, d += 3) {
+        rgb[d + 0] = rgb[d + 1] = rgb[d + 2] = Float16.shortBitsToFloat(buffer.get(s));
+      }
+    }
+
+    @Override
+    public Set<Stream.Channel> getChannels() {
+      return Images.LUMINANCE_CHANNELS;
+    }
+
+    @Override
+    public boolean isHDR() {
+      return true;
+    }
+
+    @Override
+    public void bin(Binner binner) {
+      forEachFloatChunk(buffer, chunk -> LuminanceFloatImage.bin(chunk, binner));
+    }
+
+    @Override
+    protected void convert2D(byte[] src, byte[] dst, byte[] alpha, int stride) {
+      float[] pixels = new float[width];
+      for (int row = 0, di = 0, si = (height - 1) * width, ai = 0; row < height;
+          row++, si -= width, di += stride) {
+        Float16.shortBitsToFloat(buffer, si, pixels, 0, pixels.length);
+        for (int col = 0, d = di; col < width; col++, d += 3, ai++) {
+          byte value = clamp(pixels[col]);
+          dst[d + 0] = value;
+          dst[d + 1] = value;
+          dst[d + 2] = value;
+          alpha[ai] = -1;
+        }
+      }
+    }
+
+    @Override
+    protected PixelValue getPixel(int x, int y) {
+      return new LuminanceFloatImage.Pixel(Float16.shortBitsToFloat(buffer.get(y * width + x)));
+    }
+
+    @Override
+    public PixelInfo getInfo() {
+      return info;
+    }
+  }
+
   private static class FloatPixelInfo implements PixelInfo {
     private final double min, max, average;
     private final double alphaMin, alphaMax;
@@ -558,55 +797,86 @@ public abstract class ArrayImage implements com.google.gapid.image.Image {
       if (!buffer.hasRemaining()) {
         return PixelInfo.NULL_INFO;
       }
+      return new Accumulator(isRGBA).add(buffer).build();
+    }
 
-      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, alphaMin, alphaMax;
-      double average = 0;
-      long count = 0;
-      if (isRGBA) {
-        alphaMin = Float.POSITIVE_INFINITY;
-        alphaMax = Float.NEGATIVE_INFINITY;
-        for (int i = 0, end = buffer.remaining() - 3; i <= end; ) {
-          float value = buffer.get(i++);
-          if (!Float.isNaN(value) && !Float.isInfinite(value)) {
-            min = Math.min(min, value);
-            max = Math.max(max, value);
-            average += value;
-            count++;
-          }
-          value = buffer.get(i++);
-          if (!Float.isNaN(value) && !Float.isInfinite(value)) {
-            min = Math.min(min, value);
-            max = Math.max(max, value);
-            average += value;
-            count++;
-          }
-          value = buffer.get(i++);
-          if (!Float.isNaN(value) && !Float.isInfinite(value)) {
-            min = Math.min(min, value);
-            max = Math.max(max, value);
-            average += value;
-            count++;
-          }
-          value = buffer.get(i++);
-          if (!Float.isNaN(value) && !Float.isInfinite(value)) {
-            alphaMin = Math.min(alphaMin, value);
-            alphaMax = Math.max(alphaMax, value);
-          }
+    public static PixelInfo compute(ShortBuffer buffer, boolean isRGBA) {
+      if (!buffer.hasRemaining()) {
+        return PixelInfo.NULL_INFO;
+      }
+      Accumulator accumulator = new Accumulator(isRGBA);
+      forEachFloatChunk(buffer, accumulator::add);
+      return accumulator.build();
+    }
+
+    /**
+     * Accumulates the {@link FloatPixelInfo} of float data that is provided in chunks.
+     */
+    private static class Accumulator {
+      private final boolean isRGBA;
+      private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      private double alphaMin, alphaMax;
+      private double average = 0;
+      private long count = 0;
+
+      public Accumulator(boolean isRGBA) {
+        this.isRGBA = isRGBA;
+        if (isRGBA) {
+          alphaMin = Float.POSITIVE_INFINITY;
+          alphaMax = Float.NEGATIVE_INFINITY;
+        } else {
+          alphaMin = alphaMax = 1;
         }
-      } else {
-        alphaMin = alphaMax = 1;
-        for (int i = 0; i < buffer.remaining(); i++) {
-          float value = buffer.get(i);
-          if (!Float.isNaN(value) && !Float.isInfinite(value)) {
-            min = Math.min(min, value);
-            max = Math.max(max, value);
-            average += value;
-            count++;
+      }
+
+      public Accumulator add(FloatBuffer buffer) {
+        if (isRGBA) {
+          for (int i = 0, end = buffer.remaining() - 3; i <= end; ) {
+            float value = buffer.get(i++);
+            if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+              min = Math.min(min, value);
+              max = Math.max(max, value);
+              average += value;
+              count++;
+            }
+            value = buffer.get(i++);
+            if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+              min = Math.min(min, value);
+              max = Math.max(max, value);
+              average += value;
+              count++;
+            }
+            value = buffer.get(i++);
+            if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+              min = Math.min(min, value);
+              max = Math.max(max, value);
+              average += value;
+              count++;
+            }
+            value = buffer.get(i++);
+            if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+              alphaMin = Math.min(alphaMin, value);
+              alphaMax = Math.max(alphaMax, value);
+            }
+          }
+        } else {
+          for (int i = 0; i < buffer.remaining(); i++) {
+            float value = buffer.get(i);
+            if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+              min = Math.min(min, value);
+              max = Math.max(max, value);
+              average += value;
+              count++;
+            }
           }
         }
+        return this;
+      }
+
+      public PixelInfo build() {
+        return new FloatPixelInfo(
+            min, max, (count == 0) ? 0.5 : (average / count), alphaMin, alphaMax);
       }
-      return new FloatPixelInfo(
-          min, max, (count == 0) ? 0.5 : (average / count), alphaMin, alphaMax);
     }
 
     @Override
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.image;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A deflate compressed copy of an {@link ImageData}, used to keep images that are not currently
+ * shown on the heap in a compact form, rather than as native image handles.
+ */
+public class CompressedImageData {
+  private final int width, height, depth, scanlinePad;
+  private final PaletteData palette;
+  private final int transparentPixel, alpha;
+  private final byte[] data;
+  private final int dataLength;
+  private final byte[] alphaData;
+  private final int alphaLength;
+
+  private CompressedImageData(ImageData image) {
+    this.width = image.width;
+    this.height = image.height;
+    this.depth = image.depth;
+    this.scanlinePad = image.scanlinePad;
+    this.palette = image.palette;
+    this.transparentPixel = image.transparentPixel;
+    this.alpha = image.alpha;
+    this.data = deflate(image.data);
+    this.dataLength = image.data.length;
+    this.alphaData = (image.alphaData == null) ? null : deflate(image.alphaData);
+    this.alphaLength = (image.alphaData == null) ? 0 : image.alphaData.length;
+  }
+
+  /**
+   * Compresses the given image. May be called on any thread.
+   */
+  public static CompressedImageData compress(ImageData image) {
+    return new CompressedImageData(image);
+  }
+
+  /**
+   * @return a new {@link ImageData} with the contents of the compressed image. May be called on
+   * any thread.
+   */
+  public ImageData decompress() {
+    ImageData result =
+        new ImageData(width, height, depth, palette, scanlinePad, inflate(data, dataLength));
+    result.transparentPixel = transparentPixel;
+    result.alpha = alpha;
+    if (alphaData != null) {
+      result.alphaData = inflate(alphaData, alphaLength);
+    }
+    return result;
+  }
+
+  /**
+   * @return the approximate number of bytes used by this compressed image.
+   */
+  public int getSize() {
+    return data.length + ((alphaData == null) ? 0 : alphaData.length);
+  }
+
+  private static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes, int length) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      byte[] result = new byte[length];
+      for (int done = 0; done < length && !inflater.finished(); ) {
+        int n = inflater.inflate(result, done, length - done);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Truncated compressed image data");
+        }
+        done += n;
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt compressed image data", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
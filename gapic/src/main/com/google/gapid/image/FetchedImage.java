@@ -28,7 +28,6 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gapid.image.Image.Key;
 import com.google.gapid.proto.image.Image.Info;
-import com.google.gapid.proto.service.Service;
 import com.google.gapid.proto.service.api.API;
 import com.google.gapid.proto.service.path.Path;
 import com.google.gapid.server.Client;
@@ -36,7 +35,9 @@ import com.google.gapid.util.Values;
 
 import org.eclipse.swt.graphics.ImageData;
 
+import java.lang.ref.SoftReference;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -235,9 +236,15 @@ public class FetchedImage implements MultiLayerAndLevelImage {
 
   @Override
   public ListenableFuture<Image> getImage(int layerIdx, int levelIdx) {
+    return getImage(layerIdx, levelIdx, i -> { /* ignore */ });
+  }
+
+  @Override
+  public ListenableFuture<Image> getImage(
+      int layerIdx, int levelIdx, Consumer<Image> onPartial) {
     return (layerIdx < 0 || layerIdx >= layers.length) ?
         immediateFailedFuture(new IllegalArgumentException("Invalid image layer " + layerIdx)) :
-        layers[layerIdx].getImage(levelIdx);
+        layers[layerIdx].getImage(levelIdx, onPartial);
   }
 
   @Override
@@ -259,10 +266,10 @@ public class FetchedImage implements MultiLayerAndLevelImage {
       this.levels = levels;
     }
 
-    public ListenableFuture<Image> getImage(int level) {
+    public ListenableFuture<Image> getImage(int level, Consumer<Image> onPartial) {
       return level < 0 || level >= levels.length ?
           immediateFailedFuture(new IllegalArgumentException("Invalid image level " + level)) :
-          levels[level].get();
+          levels[level].get(onPartial);
     }
 
     public void appendLevelTo(int level, Image.Key.Builder keyBuilder) {
@@ -276,12 +283,12 @@ public class FetchedImage implements MultiLayerAndLevelImage {
   private abstract static class Level implements Function<Image, Image> {
     public static final Level EMPTY_LEVEL = new Level(null) {
       @Override
-      public ListenableFuture<Image> get() {
+      public ListenableFuture<Image> get(Consumer<Image> onPartial) {
         return immediateFuture(Image.EMPTY);
       }
 
       @Override
-      protected ListenableFuture<Image> doLoad() {
+      protected ListenableFuture<Image> doLoad(Consumer<Image> onPartial) {
         return null;
       }
 
@@ -292,29 +299,32 @@ public class FetchedImage implements MultiLayerAndLevelImage {
     };
 
     protected final Images.Format format;
-    private Image image;
+    // Softly referenced, so that iterating over all levels of large images, e.g. to export them,
+    // does not keep every level in memory.
+    private SoftReference<Image> image = new SoftReference<Image>(null);
 
     public Level(Images.Format format) {
       this.format = format;
     }
 
-    public ListenableFuture<Image> get() {
+    public ListenableFuture<Image> get(Consumer<Image> onPartial) {
       Image result;
       synchronized (this) {
-        result = image;
+        result = image.get();
       }
-      return (result == null) ? Futures.transform(doLoad(), this) : immediateFuture(result);
+      return (result == null) ?
+          Futures.transform(doLoad(onPartial), this) : immediateFuture(result);
     }
 
     @Override
     public Image apply(Image input) {
       synchronized (this) {
-        image = input;
+        image = new SoftReference<Image>(input);
       }
-      return image;
+      return input;
     }
 
-    protected abstract ListenableFuture<Image> doLoad();
+    protected abstract ListenableFuture<Image> doLoad(Consumer<Image> onPartial);
 
     public abstract void appendTo(Image.Key.Builder keyBuilder);
 
@@ -323,37 +333,6 @@ public class FetchedImage implements MultiLayerAndLevelImage {
           .update(data, 0, 0, 0, info.getWidth(), info.getHeight(), info.getDepth())
           .build();
     }
-
-    protected static Image convertImage(Info[] infos, Images.Format format, byte[][] data) {
-      assert (infos.length == data.length && infos.length == 6);
-      // Typically these are all the same, but let's be safe.
-      int width = Math.max(
-          Math.max(Math.max(Math.max(Math.max(infos[0].getWidth(), infos[1].getWidth()),
-              infos[2].getWidth()), infos[3].getWidth()), infos[4].getWidth()),
-          infos[5].getWidth());
-      int height =
-          Math.max(Math.max(
-              Math.max(Math.max(Math.max(infos[0].getHeight(), infos[1].getHeight()),
-                  infos[2].getHeight()), infos[3].getHeight()),
-              infos[4].getHeight()), infos[5].getHeight());
-
-      // +----+----+----+----+
-      // |    | -Y |    |    |
-      // +----+----+----+----+
-      // | -X | +Z | +X | -Z |
-      // +----+----+----+----+
-      // |    | +Y |    |    |
-      // +----+----+----+----+
-      return format.builder(Image.Key.of(infos), 4 * width, 3 * height, 1)
-          .update(data[0], 0 * width, 1 * height, 0, infos[0].getWidth(), infos[0].getHeight(), 1) // -X
-          .update(data[1], 2 * width, 1 * height, 0, infos[1].getWidth(), infos[1].getHeight(), 1) // +X
-          .update(data[2], 1 * width, 2 * height, 0, infos[2].getWidth(), infos[2].getHeight(), 1) // -Y
-          .update(data[3], 1 * width, 0 * height, 0, infos[3].getWidth(), infos[3].getHeight(), 1) // +Y
-          .update(data[4], 3 * width, 1 * height, 0, infos[4].getWidth(), infos[4].getHeight(), 1) // -Z
-          .update(data[5], 1 * width, 1 * height, 0, infos[5].getWidth(), infos[5].getHeight(), 1) // +Z
-          .flip()
-          .build();
-    }
   }
 
   /**
@@ -370,7 +349,7 @@ public class FetchedImage implements MultiLayerAndLevelImage {
     }
 
     @Override
-    protected ListenableFuture<Image> doLoad() {
+    protected ListenableFuture<Image> doLoad(Consumer<Image> onPartial) {
       return Futures.transform(client.get(blob(imageInfo.getBytes())), data ->
         convertImage(imageInfo, format, Values.getBytes(data)));
     }
@@ -382,9 +361,24 @@ public class FetchedImage implements MultiLayerAndLevelImage {
   }
 
   /**
-   * A {@link Level} of a cubemap texture.
+   * A {@link Level} of a cubemap texture. The faces are assembled into a single cross image:
+   * <pre>
+   * +----+----+----+----+
+   * |    | -Y |    |    |
+   * +----+----+----+----+
+   * | -X | +Z | +X | -Z |
+   * +----+----+----+----+
+   * |    | +Y |    |    |
+   * +----+----+----+----+
+   * </pre>
+   * The cross image is allocated up front and each face is copied into it as soon as its data
+   * has been fetched, reporting the partially assembled image after each face.
    */
   private static class SixFacedLevel extends Level {
+    // Position of the -X, +X, -Y, +Y, -Z, +Z faces in the cross in units of the face size.
+    private static final int[] FACE_X = { 0, 2, 1, 1, 3, 1 };
+    private static final int[] FACE_Y = { 1, 1, 2, 0, 1, 1 };
+
     private final Client client;
     protected final Info[] imageInfos;
 
@@ -399,19 +393,33 @@ public class FetchedImage implements MultiLayerAndLevelImage {
     }
 
     @Override
-    protected ListenableFuture<Image> doLoad() {
+    protected ListenableFuture<Image> doLoad(Consumer<Image> onPartial) {
+      // Typically these are all the same, but let's be safe.
+      int width = 0, height = 0;
+      for (Info info : imageInfos) {
+        width = Math.max(width, info.getWidth());
+        height = Math.max(height, info.getHeight());
+      }
+
+      ArrayImage.Builder builder =
+          format.builder(Image.Key.of(imageInfos), 4 * width, 3 * height, 1);
+      AtomicInteger remaining = new AtomicInteger(imageInfos.length);
       @SuppressWarnings("unchecked")
-      ListenableFuture<Service.Value>[] futures = new ListenableFuture[imageInfos.length];
+      ListenableFuture<Void>[] futures = new ListenableFuture[imageInfos.length];
       for (int i = 0; i < imageInfos.length; i++) {
-        futures[i] = client.get(blob(imageInfos[i].getBytes()));
+        Info info = imageInfos[i];
+        int x = FACE_X[i] * width, y = FACE_Y[i] * height;
+        futures[i] = Futures.transform(client.get(blob(info.getBytes())), value -> {
+          // Faces are written to disjoint regions of the builder, so need no synchronization.
+          builder.updateFlipped(
+              Values.getByteString(value), x, y, info.getWidth(), info.getHeight());
+          if (remaining.decrementAndGet() > 0) {
+            onPartial.accept(builder.buildPartial());
+          }
+          return null;
+        });
       }
-      return Futures.transform(Futures.allAsList(futures), values -> {
-        byte[][] data = new byte[values.size()][];
-        for (int i = 0; i < data.length; i++) {
-          data[i] = Values.getBytes(values.get(i));
-        }
-        return convertImage(imageInfos, format, data);
-      });
+      return Futures.transform(Futures.allAsList(futures), ignored -> builder.build());
     }
 
     @Override
@@ -70,6 +70,12 @@ public interface Image {
    */
   public PixelValue getPixel(int x, int y, int z);
 
+  /**
+   * Stores the red, green and blue values of the given row of this 2D image into the given
+   * array as floats. Rows are indexed the same as by {@link #getPixel(int, int, int)}.
+   */
+  public void getRGBFloatRow(int y, float[] rgb);
+
   /**
    * @return all the channels of this image.
    */
@@ -129,6 +135,11 @@ public interface Image {
       return PixelValue.NULL_PIXEL;
     }
 
+    @Override
+    public void getRGBFloatRow(int y, float[] rgb) {
+      Arrays.fill(rgb, 0, 3, 0);
+    }
+
     @Override
     public Set<Stream.Channel> getChannels() {
       return Collections.emptySet();
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.image;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports every layer, level and slice of a {@link MultiLayerAndLevelImage} to disk. Images are
+ * fetched, encoded and written by a pool of background threads, each working on one image at a
+ * time, so only a bounded number of images are ever held in memory.
+ */
+public class ImageExporter {
+  private ImageExporter() {
+  }
+
+  /**
+   * Starts exporting the given image. If the image consists of more than a single 2D image, the
+   * given file name is used as the base name and a suffix is appended for each layer, level and
+   * slice. Cancelling the returned future stops the export.
+   */
+  public static ListenableFuture<Void> export(
+      MultiLayerAndLevelImage image, File file, Format format, Listener listener) {
+    int layers = image.getLayerCount(), levels = image.getLevelCount();
+    int total = layers * levels;
+    if (total == 0) {
+      return Futures.immediateFuture(null);
+    }
+
+    String base = stripExtension(file.getPath(), format);
+    int threads = Math.min(total, Runtime.getRuntime().availableProcessors());
+    ListeningExecutorService executor = MoreExecutors.listeningDecorator(
+        Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("image-export-%d")
+            .setDaemon(true)
+            .build()));
+
+    SettableFuture<Void> result = SettableFuture.create();
+    AtomicInteger next = new AtomicInteger(), done = new AtomicInteger();
+    List<ListenableFuture<Void>> workers = Lists.newArrayList();
+    for (int i = 0; i < threads; i++) {
+      workers.add(executor.submit(() -> {
+        for (int idx; !result.isDone() && (idx = next.getAndIncrement()) < total; ) {
+          int layer = idx / levels, level = idx % levels;
+          StringBuilder name = new StringBuilder(base);
+          if (layers > 1) {
+            name.append("_layer").append(layer);
+          }
+          if (levels > 1) {
+            name.append("_level").append(level);
+          }
+          export(image.getImage(layer, level).get(), name.toString(), format);
+          listener.onProgress(done.incrementAndGet(), total);
+        }
+        return null;
+      }));
+    }
+    executor.shutdown();
+
+    Futures.addCallback(Futures.allAsList(workers), new FutureCallback<List<Void>>() {
+      @Override
+      public void onSuccess(List<Void> ignored) {
+        result.set(null);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException((t instanceof ExecutionException) ? t.getCause() : t);
+      }
+    });
+    result.addListener(() -> {
+      if (result.isCancelled()) {
+        executor.shutdownNow();
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  private static void export(Image image, String name, Format format) throws IOException {
+    int depth = image.getDepth();
+    if (depth == 1) {
+      format.write(image, new File(name + "." + format.extension));
+    } else {
+      for (int z = 0; z < depth; z++) {
+        format.write(image.getSlice(z), new File(name + "_slice" + z + "." + format.extension));
+      }
+    }
+  }
+
+  private static String stripExtension(String path, Format format) {
+    String suffix = "." + format.extension;
+    return path.toLowerCase().endsWith(suffix) ?
+        path.substring(0, path.length() - suffix.length()) : path;
+  }
+
+  /**
+   * Listener notified about the progress of an export.
+   */
+  public static interface Listener {
+    /**
+     * Invoked on a background thread whenever another layer and level has been written.
+     */
+    public void onProgress(int done, int total);
+  }
+
+  /**
+   * The supported export file formats.
+   */
+  public static enum Format {
+    /**
+     * 8bit RGBA PNG images.
+     */
+    PNG("png") {
+      @Override
+      protected void write(Image image, File file) throws IOException {
+        ImageLoader loader = new ImageLoader();
+        loader.data = new ImageData[] { image.getImageData() };
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+          loader.save(out, SWT.IMAGE_PNG);
+        }
+      }
+    },
+
+    /**
+     * Portable float map images, keeping the full range and precision of HDR images. The rows
+     * are streamed to the file one at a time.
+     */
+    PFM("pfm") {
+      @Override
+      protected void write(Image image, File file) throws IOException {
+        int width = image.getWidth(), height = image.getHeight();
+        try (FileChannel out = FileChannel.open(file.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)) {
+          // A negative scale denotes little endian data. Rows are stored bottom to top.
+          writeFully(out, ByteBuffer.wrap(
+              ("PF\n" + width + " " + height + "\n-1.0\n").getBytes(US_ASCII)));
+
+          float[] row = new float[3 * width];
+          ByteBuffer buffer = ByteBuffer.allocateDirect(4 * row.length)
+              .order(ByteOrder.LITTLE_ENDIAN);
+          for (int y = 0; y < height; y++) {
+            image.getRGBFloatRow(y, row);
+            buffer.clear();
+            buffer.asFloatBuffer().put(row);
+            writeFully(out, buffer);
+          }
+        }
+      }
+    };
+
+    public final String extension;
+
+    private Format(String extension) {
+      this.extension = extension;
+    }
+
+    protected abstract void write(Image image, File file) throws IOException;
+
+    protected static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+    }
+  }
+}
@@ -46,6 +46,12 @@ public class Images {
   public static final Image.Format FMT_RGBA_FLOAT = Image.Format.newBuilder()
       .setUncompressed(Image.FmtUncompressed.newBuilder().setFormat(Streams.FMT_RGBA_FLOAT))
       .build();
+  public static final Image.Format FMT_RGBA_HALF = Image.Format.newBuilder()
+      .setUncompressed(Image.FmtUncompressed.newBuilder().setFormat(Streams.FMT_RGBA_HALF))
+      .build();
+  public static final Image.Format FMT_LUMINANCE_HALF = Image.Format.newBuilder()
+      .setUncompressed(Image.FmtUncompressed.newBuilder().setFormat(Streams.FMT_LUMINANCE_HALF))
+      .build();
   public static final Image.Format FMT_LUMINANCE_FLOAT = Image.Format.newBuilder()
       .setUncompressed(Image.FmtUncompressed.newBuilder().setFormat(Streams.FMT_LUMINANCE_FLOAT))
       .build();
@@ -125,16 +131,7 @@ public class Images {
   }
 
   public static Image.Format getFormatToRequest(Image.Format format) {
-    boolean color = isColorFormat(format);
-    int channels = getChannelCount(format, color ? COLOR_CHANNELS : DEPTH_CHANNELS);
-    boolean is8bit = are8BitsEnough(format, color ? COLOR_CHANNELS : DEPTH_CHANNELS);
-    if (is8bit) {
-      return color ? FMT_RGBA_U8_NORM : FMT_DEPTH_U8_NORM;
-    } else if (channels == 1) {
-      return color ? FMT_LUMINANCE_FLOAT : FMT_DEPTH_FLOAT;
-    } else {
-      return FMT_RGBA_FLOAT;
-    }
+    return Format.from(format).format;
   }
 
   public static int getChannelCount(Image.Format format, Set<Stream.Channel> interestedChannels) {
@@ -208,6 +205,44 @@ public class Images {
     }
   }
 
+  /**
+   * Returns whether the interested channels of the given format can be represented as 16bit
+   * floats without any loss of precision or range.
+   */
+  public static boolean are16BitFloatsEnough(
+      Image.Format format, Set<Stream.Channel> interestedChannels) {
+    switch (format.getFormatCase()) {
+      case UNCOMPRESSED:
+        return are16BitFloatsEnough(format.getUncompressed().getFormat(), interestedChannels);
+      default:
+        // All Compressed formats can fully be represented as 8 bits (at this time).
+        return true;
+    }
+  }
+
+  public static boolean are16BitFloatsEnough(
+      Stream.Format format, Set<Stream.Channel> interestedChannels) {
+    for (Stream.Component c : format.getComponentsList()) {
+      if (interestedChannels.contains(c.getChannel()) && !are16BitFloatsEnough(c.getDataType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean are16BitFloatsEnough(Stream.DataType type) {
+    switch (type.getKindCase()) {
+      case INTEGER:
+        return are8BitsEnough(type);
+      case FLOAT:
+        Stream.Float f = type.getFloat();
+        return f.getExponentBits() <= Streams.F16.getFloat().getExponentBits() &&
+            f.getMantissaBits() <= Streams.F16.getFloat().getMantissaBits();
+      default:
+        return false;
+    }
+  }
+
   public static boolean isColorFormat(Image.Format format) {
     switch (format.getFormatCase()) {
       case UNCOMPRESSED: return isColorFormat(format.getUncompressed().getFormat());
@@ -249,6 +284,13 @@ public class Images {
         return new ArrayImage.RGBAFloatImage(key, width, height, depth, data);
       }
     },
+    ColorHalf(FMT_RGBA_HALF, 4 * 2) {
+      @Override
+      protected ArrayImage build(
+          com.google.gapid.image.Image.Key key, int width, int height, int depth, byte[] data) {
+        return new ArrayImage.RGBAHalfImage(key, width, height, depth, data);
+      }
+    },
     DepthFloat(FMT_DEPTH_FLOAT, 1 * 4) {
       @Override
       protected ArrayImage build(
@@ -262,6 +304,13 @@ public class Images {
           com.google.gapid.image.Image.Key key, int width, int height, int depth, byte[] data) {
         return new ArrayImage.LuminanceFloatImage(key, width, height, depth, data);
       }
+    },
+    LuminanceHalf(FMT_LUMINANCE_HALF, 1 * 2) {
+      @Override
+      protected ArrayImage build(
+          com.google.gapid.image.Image.Key key, int width, int height, int depth, byte[] data) {
+        return new ArrayImage.LuminanceHalfImage(key, width, height, depth, data);
+      }
     };
 
     public final Image.Format format;
@@ -276,12 +325,13 @@ public class Images {
       boolean color = isColorFormat(format);
       int channels = getChannelCount(format, color ? COLOR_CHANNELS : DEPTH_CHANNELS);
       boolean is8bit = are8BitsEnough(format, color ? COLOR_CHANNELS : DEPTH_CHANNELS);
+      boolean isHalf = color && are16BitFloatsEnough(format, COLOR_CHANNELS);
       if (is8bit) {
         return color ? Color8 : Depth8;
       } else if (channels == 1) {
-        return color ? LuminanceFloat : DepthFloat;
+        return color ? (isHalf ? LuminanceHalf : LuminanceFloat) : DepthFloat;
       } else {
-        return ColorFloat;
+        return isHalf ? ColorHalf : ColorFloat;
       }
     }
 
@@ -292,6 +342,14 @@ public class Images {
         protected ArrayImage build() {
           return Format.this.build(key, width, height, depth, data);
         }
+
+        @Override
+        protected ArrayImage buildPartial() {
+          // Use a unique key, so the partial image's pixel info is never shared.
+          return Format.this.build(new com.google.gapid.image.Image.Key() {
+            /* empty */
+          }, width, height, depth, data);
+        }
       };
     }
 
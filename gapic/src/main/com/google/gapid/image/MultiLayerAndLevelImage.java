@@ -18,6 +18,8 @@ package com.google.gapid.image;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.function.Consumer;
+
 /**
  * An image with (optionally) multiple layers and mipmap levels.
  */
@@ -42,6 +44,15 @@ public interface MultiLayerAndLevelImage {
    */
   public ListenableFuture<Image> getImage(int layer, int level);
 
+  /**
+   * Same as {@link #getImage(int, int)}, but incomplete versions of the image may be passed to the
+   * given consumer, on any thread, as the image is being loaded and before the future completes.
+   */
+  public default ListenableFuture<Image> getImage(
+      int layer, int level, @SuppressWarnings("unused") Consumer<Image> onPartial) {
+    return getImage(layer, level);
+  }
+
   public static final MultiLayerAndLevelImage EMPTY = new MultiLayerAndLevelImage() {
     @Override
     public int getLayerCount() {
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.lang.glsl;
+
+import static com.google.gapid.lang.glsl.GlslTokenizer.STATE_CODE;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Document} of GLSL source that caches the {@link GlslTokenizer} state at the start of
+ * each line. On every change, the lines are re-tokenized from the first changed line until the
+ * state at the start of a line following the change matches the cached state again. The whole
+ * text is tokenized on construction, which may happen on any thread.
+ */
+public class GlslDocument extends Document {
+  // The lexer state at the start of each line.
+  private byte[] states;
+  // The highlighted tokens of the initial text as offset, length, kind triples.
+  private int[] initialTokens;
+  private int initialTokenCount;
+  // The line of the last change and the number of lines it replaced.
+  private int changedLine, removedLines;
+  private DocumentEvent lastEvent;
+  private IRegion lastDamage;
+
+  public GlslDocument(String text) {
+    super(text);
+    int lines = getNumberOfLines();
+    states = new byte[lines + 16];
+    initialTokens = new int[3 * 1024];
+    GlslTokenizer.Sink sink = (offset, length, kind) -> {
+      if (initialTokenCount + 3 > initialTokens.length) {
+        initialTokens = Arrays.copyOf(initialTokens, 2 * initialTokens.length);
+      }
+      initialTokens[initialTokenCount++] = offset;
+      initialTokens[initialTokenCount++] = length;
+      initialTokens[initialTokenCount++] = kind;
+    };
+
+    int state = STATE_CODE;
+    try {
+      for (int line = 0; line < lines; line++) {
+        states[line] = (byte)state;
+        IRegion info = getLineInformation(line);
+        state = GlslTokenizer.tokenizeLine(
+            text, info.getOffset(), info.getOffset() + info.getLength(), state, sink);
+      }
+    } catch (BadLocationException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * @return the lexer state at the start of the given line.
+   */
+  public int getLineState(int line) {
+    return states[line];
+  }
+
+  /**
+   * @return the tokens of the initial text as offset, length, kind triples, or {@code null} if
+   * they have been taken already or the document has changed since. The tokens can only be taken
+   * once.
+   */
+  public int[] takeInitialTokens() {
+    int[] result =
+        (initialTokens == null) ? null : Arrays.copyOf(initialTokens, initialTokenCount);
+    initialTokens = null;
+    return result;
+  }
+
+  /**
+   * @return the region whose highlighting is affected by the given change, if it was the last
+   * change to this document, or {@code null} otherwise.
+   */
+  public IRegion getDamage(DocumentEvent event) {
+    return (event == lastEvent) ? lastDamage : null;
+  }
+
+  @Override
+  protected void fireDocumentAboutToBeChanged(DocumentEvent event) {
+    initialTokens = null;
+    try {
+      changedLine = getLineOfOffset(event.getOffset());
+      removedLines = getLineOfOffset(event.getOffset() + event.getLength()) - changedLine;
+    } catch (BadLocationException e) {
+      throw new AssertionError(e);
+    }
+    super.fireDocumentAboutToBeChanged(event);
+  }
+
+  @Override
+  protected void fireDocumentChanged(DocumentEvent event) {
+    try {
+      update(event);
+    } catch (BadLocationException e) {
+      throw new AssertionError(e);
+    }
+    super.fireDocumentChanged(event);
+  }
+
+  private void update(DocumentEvent event) throws BadLocationException {
+    int textLength = (event.getText() == null) ? 0 : event.getText().length();
+    int addedLines = getLineOfOffset(event.getOffset() + textLength) - changedLine;
+    int lines = getNumberOfLines();
+
+    // Move the states of the lines after the change, the states of the changed lines are
+    // recomputed below.
+    int oldLines = lines - addedLines + removedLines;
+    int tail = oldLines - (changedLine + 1 + removedLines);
+    if (lines > states.length) {
+      states = Arrays.copyOf(states, lines + lines / 2);
+    }
+    System.arraycopy(states, changedLine + 1 + removedLines, states, changedLine + 1 + addedLines,
+        tail);
+
+    int line = changedLine, state = states[line];
+    for (; line < lines; line++) {
+      IRegion info = getLineInformation(line);
+      String text = get(info.getOffset(), info.getLength());
+      state = GlslTokenizer.tokenizeLine(text, 0, text.length(), state, null);
+      if (line + 1 >= lines || (line >= changedLine + addedLines && states[line + 1] == state)) {
+        break;
+      }
+      states[line + 1] = (byte)state;
+    }
+
+    int start = getLineOffset(changedLine);
+    int end = (line + 1 >= lines) ? getLength() : getLineOffset(line + 1);
+    lastEvent = event;
+    lastDamage = new Region(start, end - start);
+  }
+}
@@ -15,125 +15,44 @@
  */
 package com.google.gapid.lang.glsl;
 
-import com.google.common.collect.ImmutableSet;
 import com.google.gapid.widgets.Theme;
 
-import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.text.IDocumentExtension3;
-import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextDoubleClickStrategy;
 import org.eclipse.jface.text.ITextViewer;
-import org.eclipse.jface.text.TextAttribute;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.presentation.IPresentationDamager;
 import org.eclipse.jface.text.presentation.IPresentationReconciler;
+import org.eclipse.jface.text.presentation.IPresentationRepairer;
 import org.eclipse.jface.text.presentation.PresentationReconciler;
-import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
-import org.eclipse.jface.text.rules.EndOfLineRule;
-import org.eclipse.jface.text.rules.FastPartitioner;
-import org.eclipse.jface.text.rules.ICharacterScanner;
-import org.eclipse.jface.text.rules.IPredicateRule;
-import org.eclipse.jface.text.rules.IRule;
-import org.eclipse.jface.text.rules.IToken;
-import org.eclipse.jface.text.rules.ITokenScanner;
-import org.eclipse.jface.text.rules.IWordDetector;
-import org.eclipse.jface.text.rules.MultiLineRule;
-import org.eclipse.jface.text.rules.NumberRule;
-import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
-import org.eclipse.jface.text.rules.RuleBasedScanner;
-import org.eclipse.jface.text.rules.Token;
-import org.eclipse.jface.text.rules.WordPatternRule;
-import org.eclipse.jface.text.rules.WordRule;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.SourceViewerConfiguration;
 import org.eclipse.swt.SWT;
-
-import java.util.Set;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.graphics.Color;
 
 /**
- * {@link SourceViewerConfiguration} to use for syntax highlighting of GLSL code.
+ * {@link SourceViewerConfiguration} to use for syntax highlighting of GLSL code. Highlighting is
+ * incremental and requires the documents to be created with {@link #createDocument(String)}.
  */
 public class GlslSourceConfiguration extends SourceViewerConfiguration {
-  private static final String PARTIONING = GlslSourceConfiguration.class.getName();
-  private static final String SOURCE = IDocument.DEFAULT_CONTENT_TYPE;
-  private static final String SINGLE_COMMENT = "SINGLE_COMMENT";
-  private static final String MULTI_COMMENT = "MULTI_COMMENT";
-  private static final String[] CONTENT_TYPES = {
-      SOURCE, SINGLE_COMMENT, MULTI_COMMENT
-  };
-
-  private static final IWordDetector WORD_DETECTOR = new IWordDetector() {
-    @Override
-    public boolean isWordStart(char c) {
-      return Character.isJavaIdentifierStart(c);
-    }
-
-    @Override
-    public boolean isWordPart(char c) {
-      return Character.isJavaIdentifierPart(c);
-    }
-  };
-
-  private static final String[] KEYWORDS = {
-      "attribute", "const", "uniform", "buffer", "shared", "coherent", "volatile", "restrict",
-      "readonly", "writeonly", "atomic_uint", "layout", "centroid", "flat", "smooth", "patch",
-      "sample", "precise", "break", "continue", "do", "for", "while", "switch", "case", "default",
-      "if", "else", "in", "out", "inout", "float", "int", "void", "bool", "true", "false",
-      "invariant", "discard", "return", "mat2", "mat3", "mat4", "mat2x2", "mat2x3", "mat2x4",
-      "mat3x2", "mat3x3", "mat3x4", "mat4x2", "mat4x3", "mat4x4", "vec2", "vec3", "vec4", "ivec2",
-      "ivec3", "ivec4", "bvec2", "bvec3", "bvec4", "uint", "uvec2", "uvec3", "uvec4", "lowp",
-      "mediump", "highp", "precision", "sampler2D", "sampler3D", "samplerCube", "sampler2DShadow",
-      "samplerCubeShadow", "sampler2DArray", "sampler2DArrayShadow", "isampler2D", "isampler3D",
-      "isamplerCube", "isampler2DArray", "usampler2D", "usampler3D", "usamplerCube",
-      "usampler2DArray", "sampler2DMS", "isampler2DMS", "usampler2DMS", "samplerBuffer",
-      "isamplerBuffer", "usamplerBuffer", "imageBuffer", "iimageBuffer", "uimageBuffer",
-      "imageCubeArray", "iimageCubeArray", "uimageCubeArray", "samplerCubeArray",
-      "isamplerCubeArray", "usamplerCubeArray", "samplerCubeArrayShadow", "sampler2DMSArray",
-      "isampler2DMSArray", "usampler2DMSArray", "image2DArray", "iimage2DArray", "uimage2DArray",
-      "image2D", "iimage2D", "uimage2D", "image3D", "iimage3D", "uimage3D", "imageCube",
-      "iimageCube", "uimageCube", "struct", "varying"
-  };
-
-  protected static final Set<String> PREPROCESSOR_KEYWORDS = ImmutableSet.of(
-      "define", "undef", "if", "ifdef", "ifndef", "else", "elif", "endif", "error", "pragma",
-      "extension", "version", "line"
-  );
-
-
   private final Theme theme;
 
   public GlslSourceConfiguration(Theme theme) {
     this.theme = theme;
   }
 
-  public static IDocument createDocument(String text) {
-    Document document = new Document(text);
-    setup(document);
-    return document;
-  }
-
-  public static <D extends IDocument & IDocumentExtension3> void setup(D document) {
-    IDocumentPartitioner partitioner = createPartioner();
-    ((IDocumentExtension3)document).setDocumentPartitioner(PARTIONING, partitioner);
-    partitioner.connect(document);
-  }
-
-  private static IDocumentPartitioner createPartioner() {
-    RuleBasedPartitionScanner scanner = new RuleBasedPartitionScanner();
-    scanner.setPredicateRules(new IPredicateRule[] {
-        new EndOfLineRule("//", new Token(SINGLE_COMMENT), (char)0),
-        new MultiLineRule("/*", "*/", new Token(MULTI_COMMENT), (char)0, true)
-    });
-    return new FastPartitioner(scanner, CONTENT_TYPES);
-  }
-
-  @Override
-  public String getConfiguredDocumentPartitioning(ISourceViewer sourceViewer) {
-    return PARTIONING;
-  }
-
-  @Override
-  public String[] getConfiguredContentTypes(ISourceViewer sourceViewer) {
-    return CONTENT_TYPES;
+  /**
+   * Creates a document for the given source, tokenizing all of it. As this can take a while for
+   * large shaders, this should be called off the UI thread.
+   */
+  public static GlslDocument createDocument(String text) {
+    return new GlslDocument(text);
   }
 
   @Override
@@ -141,9 +60,9 @@ public class GlslSourceConfiguration extends SourceViewerConfiguration {
     PresentationReconciler reconciler= new PresentationReconciler();
     reconciler.setDocumentPartitioning(getConfiguredDocumentPartitioning(sourceViewer));
 
-    addDamagerRepairer(reconciler, createCommentScanner(), SINGLE_COMMENT);
-    addDamagerRepairer(reconciler, createCommentScanner(), MULTI_COMMENT);
-    addDamagerRepairer(reconciler, createCodeScanner(), SOURCE);
+    Highlighter highlighter = new Highlighter(theme);
+    reconciler.setDamager(highlighter, IDocument.DEFAULT_CONTENT_TYPE);
+    reconciler.setRepairer(highlighter, IDocument.DEFAULT_CONTENT_TYPE);
     return reconciler;
   }
 
@@ -158,114 +77,89 @@ public class GlslSourceConfiguration extends SourceViewerConfiguration {
     };
   }
 
-  private static void addDamagerRepairer(
-      PresentationReconciler reconciler, ITokenScanner scanner, String type) {
-    DefaultDamagerRepairer commentDamagerRepairer = new DefaultDamagerRepairer(scanner);
-    reconciler.setDamager(commentDamagerRepairer, type);
-    reconciler.setRepairer(commentDamagerRepairer, type);
-  }
-
-  private ITokenScanner createCommentScanner() {
-    RuleBasedScanner scanner = new RuleBasedScanner();
-    scanner.setDefaultReturnToken(new Token(new TextAttribute(theme.commentColor())));
-    return scanner;
-  }
-
-  private ITokenScanner createCodeScanner() {
-    RuleBasedScanner scanner = new RuleBasedScanner();
-    scanner.setRules(new IRule[] {
-        createKeywordRule(),
-        createGlIdentifierRule(),
-        createIdentifierRule(),
-        createNumberRule(),
-        createPreprocessorRul()
-    });
-    return scanner;
-  }
-
-  private IRule createKeywordRule() {
-    Token token = new Token(new TextAttribute(theme.keywordColor()));
-    WordRule rule = new WordRule(WORD_DETECTOR, Token.UNDEFINED, false);
-    for (String keyword : KEYWORDS) {
-      rule.addWord(keyword, token);
+  /**
+   * Damager and repairer using the line states cached by the {@link GlslDocument}. Only the lines
+   * whose tokens may have changed are damaged and only the damaged lines are tokenized again.
+   */
+  private static class Highlighter implements IPresentationDamager, IPresentationRepairer {
+    private final StyleRange[] styles;
+    private GlslDocument document;
+
+    public Highlighter(Theme theme) {
+      styles = new StyleRange[5];
+      styles[GlslTokenizer.COMMENT] = style(theme.commentColor(), SWT.NORMAL);
+      styles[GlslTokenizer.KEYWORD] = style(theme.keywordColor(), SWT.NORMAL);
+      styles[GlslTokenizer.IDENTIFIER] = style(theme.identifierColor(), SWT.BOLD);
+      styles[GlslTokenizer.NUMBER] = style(theme.numericConstantColor(), SWT.NORMAL);
+      styles[GlslTokenizer.PREPROCESSOR] = style(theme.preprocessorColor(), SWT.NORMAL);
     }
-    return rule;
-  }
-
-  private IRule createGlIdentifierRule() {
-    return new WordPatternRule(WORD_DETECTOR, "gl_", null,
-        new Token(new TextAttribute(theme.identifierColor(), null, SWT.BOLD)), (char)-1);
-  }
-
-  private IRule createIdentifierRule() {
-    WordRule rule = new WordRule(WORD_DETECTOR, new Token(null), false);
-    rule.addWord("main", new Token(new TextAttribute(theme.identifierColor(), null, SWT.BOLD)));
-    return rule;
-  }
-
-  private IRule createNumberRule() {
-    return new NumberRule(new Token(new TextAttribute(theme.numericConstantColor())));
-  }
-
-  private IRule createPreprocessorRul() {
-    return new PreprocessorRule(new Token(new TextAttribute(theme.preprocessorColor())));
-  }
 
-  private static class PreprocessorRule implements IRule {
-    private final StringBuilder buffer = new StringBuilder();
-    private final Token token;
+    private static StyleRange style(Color foreground, int fontStyle) {
+      return new StyleRange(0, 0, foreground, null, fontStyle);
+    }
 
-    public PreprocessorRule(Token token) {
-      this.token = token;
+    @Override
+    public void setDocument(IDocument newDocument) {
+      this.document = (GlslDocument)newDocument;
     }
 
     @Override
-    public IToken evaluate(ICharacterScanner scanner) {
-      if (scanner.getColumn() != 0) {
-        // Wait for line start
-        return Token.UNDEFINED;
+    public IRegion getDamageRegion(
+        ITypedRegion partition, DocumentEvent event, boolean documentPartitioningChanged) {
+      IRegion damage = document.getDamage(event);
+      if (damage != null) {
+        return damage;
       }
 
-      // Ignore any whitespace at the beginning.
-      int count = 0;
-      int c;
-      do {
-        c = scanner.read();
-        count++;
-      } while (c != ICharacterScanner.EOF && Character.isWhitespace(c) && c != '\r' && c != '\n');
-
-      if (c == '#') {
-        count = 0; // Everything up to here will be marked as a preprocessor rule for sure.
-
-        // Ignore whitespace between '#' and token.
-        do {
-          c = scanner.read();
-          count++;
-        } while (c != ICharacterScanner.EOF && Character.isWhitespace(c) && c != '\r' && c != '\n');
-
-        if (c != ICharacterScanner.EOF && Character.isAlphabetic(c)) {
-          buffer.setLength(0);
-          do {
-            buffer.append((char)c);
-            c = scanner.read();
-            count++;
-          } while (c != ICharacterScanner.EOF && Character.isAlphabetic(c));
-          scanner.unread();
+      // Not a change to the document, but a request to repair the event's lines.
+      try {
+        int start = document.getLineOffset(document.getLineOfOffset(event.getOffset()));
+        IRegion last = document.getLineInformationOfOffset(
+            Math.min(document.getLength(), event.getOffset() + event.getLength()));
+        return new Region(start, last.getOffset() + last.getLength() - start);
+      } catch (BadLocationException e) {
+        return partition;
+      }
+    }
 
-          if (PREPROCESSOR_KEYWORDS.contains(buffer.toString())) {
-            return token;
-          }
-          count--;
+    @Override
+    public void createPresentation(TextPresentation presentation, ITypedRegion region) {
+      int from = region.getOffset(), to = from + region.getLength();
+      // The initial presentation of the whole document uses the tokens of the bulk tokenization.
+      int[] tokens =
+          (from == 0 && to == document.getLength()) ? document.takeInitialTokens() : null;
+      if (tokens != null) {
+        for (int i = 0; i < tokens.length; i += 3) {
+          addStyleRange(presentation, from, to, tokens[i], tokens[i + 1], tokens[i + 2]);
         }
-        for (; count > 0; count--) {
-          scanner.unread();
+        return;
+      }
+
+      try {
+        int firstLine = document.getLineOfOffset(from), lastLine = document.getLineOfOffset(to);
+        int state = document.getLineState(firstLine);
+        for (int line = firstLine; line <= lastLine; line++) {
+          IRegion info = document.getLineInformation(line);
+          int offset = info.getOffset();
+          String text = document.get(offset, info.getLength());
+          state = GlslTokenizer.tokenizeLine(text, 0, text.length(), state, (start, length, kind) ->
+              addStyleRange(presentation, from, to, offset + start, length, kind));
         }
-        return token;
+      } catch (BadLocationException e) {
+        // Ignore, the document changed concurrently.
       }
-      for (; count > 0; count--) {
-        scanner.unread();
+    }
+
+    private void addStyleRange(
+        TextPresentation presentation, int from, int to, int start, int length, int kind) {
+      int end = Math.min(to, start + length);
+      start = Math.max(from, start);
+      if (start < end) {
+        StyleRange range = (StyleRange)styles[kind].clone();
+        range.start = start;
+        range.length = end - start;
+        presentation.addStyleRange(range);
       }
-      return Token.UNDEFINED;
     }
   }
 }
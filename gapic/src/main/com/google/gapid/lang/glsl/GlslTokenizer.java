@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.lang.glsl;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * Line based tokenizer of GLSL source used for syntax highlighting. The only state carried from
+ * one line to the next is whether the line starts within a block comment, so the state at the
+ * start of each line can be cached and a line can be tokenized without looking at any others.
+ */
+public class GlslTokenizer {
+  /** Lexer state of a line starting in code. */
+  public static final int STATE_CODE = 0;
+  /** Lexer state of a line starting within a block comment. */
+  public static final int STATE_COMMENT = 1;
+
+  public static final int COMMENT = 0;
+  public static final int KEYWORD = 1;
+  public static final int IDENTIFIER = 2;
+  public static final int NUMBER = 3;
+  public static final int PREPROCESSOR = 4;
+
+  private static final Set<String> KEYWORDS = ImmutableSet.of(
+      "attribute", "const", "uniform", "buffer", "shared", "coherent", "volatile", "restrict",
+      "readonly", "writeonly", "atomic_uint", "layout", "centroid", "flat", "smooth", "patch",
+      "sample", "precise", "break", "continue", "do", "for", "while", "switch", "case", "default",
+      "if", "else", "in", "out", "inout", "float", "int", "void", "bool", "true", "false",
+      "invariant", "discard", "return", "mat2", "mat3", "mat4", "mat2x2", "mat2x3", "mat2x4",
+      "mat3x2", "mat3x3", "mat3x4", "mat4x2", "mat4x3", "mat4x4", "vec2", "vec3", "vec4", "ivec2",
+      "ivec3", "ivec4", "bvec2", "bvec3", "bvec4", "uint", "uvec2", "uvec3", "uvec4", "lowp",
+      "mediump", "highp", "precision", "sampler2D", "sampler3D", "samplerCube", "sampler2DShadow",
+      "samplerCubeShadow", "sampler2DArray", "sampler2DArrayShadow", "isampler2D", "isampler3D",
+      "isamplerCube", "isampler2DArray", "usampler2D", "usampler3D", "usamplerCube",
+      "usampler2DArray", "sampler2DMS", "isampler2DMS", "usampler2DMS", "samplerBuffer",
+      "isamplerBuffer", "usamplerBuffer", "imageBuffer", "iimageBuffer", "uimageBuffer",
+      "imageCubeArray", "iimageCubeArray", "uimageCubeArray", "samplerCubeArray",
+      "isamplerCubeArray", "usamplerCubeArray", "samplerCubeArrayShadow", "sampler2DMSArray",
+      "isampler2DMSArray", "usampler2DMSArray", "image2DArray", "iimage2DArray", "uimage2DArray",
+      "image2D", "iimage2D", "uimage2D", "image3D", "iimage3D", "uimage3D", "imageCube",
+      "iimageCube", "uimageCube", "struct", "varying"
+  );
+
+  private static final Set<String> PREPROCESSOR_KEYWORDS = ImmutableSet.of(
+      "define", "undef", "if", "ifdef", "ifndef", "else", "elif", "endif", "error", "pragma",
+      "extension", "version", "line"
+  );
+
+  private GlslTokenizer() {
+  }
+
+  /**
+   * Tokenizes the line [from, to) of the given text, which starts in the given lexer state. Only
+   * the highlighted tokens are passed to the sink, which may be {@code null} if only the state is
+   * of interest.
+   *
+   * @return the lexer state at the start of the next line.
+   */
+  public static int tokenizeLine(String text, int from, int to, int state, Sink sink) {
+    int i = from;
+    if (state == STATE_COMMENT) {
+      int end = findCommentEnd(text, i, to);
+      if (end < 0) {
+        emit(sink, from, to, COMMENT);
+        return STATE_COMMENT;
+      }
+      i = end + 2;
+      emit(sink, from, i, COMMENT);
+    } else {
+      i = tokenizePreprocessor(text, from, to, sink);
+    }
+
+    if (sink == null) {
+      // Only comments affect the state, so skip straight to the next comment.
+      for (; i + 1 < to; i++) {
+        if (text.charAt(i) == '/') {
+          char next = text.charAt(i + 1);
+          if (next == '/') {
+            return STATE_CODE;
+          } else if (next == '*') {
+            int end = findCommentEnd(text, i + 2, to);
+            if (end < 0) {
+              return STATE_COMMENT;
+            }
+            i = end + 1;
+          }
+        }
+      }
+      return STATE_CODE;
+    }
+
+    while (i < to) {
+      char c = text.charAt(i);
+      if (c == '/' && i + 1 < to && text.charAt(i + 1) == '/') {
+        emit(sink, i, to, COMMENT);
+        return STATE_CODE;
+      } else if (c == '/' && i + 1 < to && text.charAt(i + 1) == '*') {
+        int end = findCommentEnd(text, i + 2, to);
+        if (end < 0) {
+          emit(sink, i, to, COMMENT);
+          return STATE_COMMENT;
+        }
+        emit(sink, i, end + 2, COMMENT);
+        i = end + 2;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        int start = i;
+        for (i++; i < to && Character.isJavaIdentifierPart(text.charAt(i)); i++) {
+          // Find the end of the word.
+        }
+        String word = text.substring(start, i);
+        if (KEYWORDS.contains(word)) {
+          emit(sink, start, i, KEYWORD);
+        } else if (word.startsWith("gl_") || word.equals("main")) {
+          emit(sink, start, i, IDENTIFIER);
+        }
+      } else if (Character.isDigit(c)) {
+        int start = i;
+        for (i++; i < to && Character.isDigit(text.charAt(i)); i++) {
+          // Find the end of the number.
+        }
+        emit(sink, start, i, NUMBER);
+      } else {
+        i++;
+      }
+    }
+    return STATE_CODE;
+  }
+
+  /**
+   * Tokenizes the preprocessor directive at the start of the line, if any.
+   * @return the offset after the directive.
+   */
+  private static int tokenizePreprocessor(String text, int from, int to, Sink sink) {
+    int i = skipWhitespace(text, from, to);
+    if (i >= to || text.charAt(i) != '#') {
+      return from;
+    }
+
+    int end = skipWhitespace(text, i + 1, to);
+    int wordEnd = end;
+    while (wordEnd < to && Character.isAlphabetic(text.charAt(wordEnd))) {
+      wordEnd++;
+    }
+    if (PREPROCESSOR_KEYWORDS.contains(text.substring(end, wordEnd))) {
+      end = wordEnd;
+    }
+    emit(sink, from, end, PREPROCESSOR);
+    return end;
+  }
+
+  /**
+   * @return the offset of the block comment terminator in [from, to), or -1 if there is none.
+   */
+  private static int findCommentEnd(String text, int from, int to) {
+    for (int i = from; i + 1 < to; i++) {
+      if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int skipWhitespace(String text, int from, int to) {
+    int i = from;
+    while (i < to && Character.isWhitespace(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static void emit(Sink sink, int from, int to, int kind) {
+    if (sink != null && to > from) {
+      sink.token(from, to - from, kind);
+    }
+  }
+
+  /**
+   * Receives the highlighted tokens of a line.
+   */
+  public static interface Sink {
+    public void token(int offset, int length, int kind);
+  }
+}
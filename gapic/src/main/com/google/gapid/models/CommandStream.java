@@ -19,16 +19,21 @@ import static com.google.gapid.proto.service.memory.Memory.PoolNames.Application
 import static com.google.gapid.util.Paths.commandTree;
 import static com.google.gapid.util.Paths.lastCommand;
 import static com.google.gapid.util.Paths.observationsAfter;
+import static com.google.gapid.widgets.Widgets.scheduleIfNotDisposed;
 import static com.google.gapid.widgets.Widgets.submitIfNotDisposed;
 import static java.util.logging.Level.FINE;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.primitives.UnsignedInts;
+import com.google.common.primitives.UnsignedLongs;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gapid.models.ApiContext.FilteringContext;
+import com.google.gapid.proto.core.pod.Pod;
 import com.google.gapid.proto.service.Service;
 import com.google.gapid.proto.service.api.API;
+import com.google.gapid.proto.service.box.Box;
 import com.google.gapid.proto.service.path.Path;
 import com.google.gapid.rpc.Rpc;
 import com.google.gapid.rpc.RpcException;
@@ -36,12 +41,18 @@ import com.google.gapid.rpc.UiCallback;
 import com.google.gapid.server.Client;
 import com.google.gapid.util.Events;
 import com.google.gapid.util.Loadable;
+import com.google.gapid.util.LoggingCallback;
 import com.google.gapid.util.Messages;
 import com.google.gapid.util.Paths;
 import com.google.gapid.util.Ranges;
 
 import org.eclipse.swt.widgets.Shell;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -116,12 +127,126 @@ public class CommandStream extends ModelBase.ForPath<CommandStream.Node, Void, C
           Service.CommandTreeNode data = v1.getCommandTreeNode();
           if (data.getGroup().isEmpty() && data.hasCommands()) {
             return Futures.transform(
-                loadCommand(lastCommand(data.getCommands())), cmd -> new NodeData(data, cmd));
+                loadCommand(lastCommand(data.getCommands())), cmd -> index(node, data, cmd));
           }
-          return Futures.immediateFuture(new NodeData(data, null));
+          return Futures.immediateFuture(index(node, data, null));
         }));
   }
 
+  /**
+   * Adds the loaded node to its tree's {@link CommandTextIndex}, with the text the server matches
+   * searches against. Commands whose text cannot be reproduced here are added as unknown.
+   */
+  private NodeData index(Node node, Service.CommandTreeNode data, API.Command command) {
+    CommandTextIndex textIndex = node.getRoot().textIndex;
+    List<Long> indices = node.getPath(Path.CommandTreeNode.newBuilder()).getIndicesList();
+    String text = (command == null) ? data.getGroup() : searchText(command);
+    if (text == null) {
+      textIndex.addUnknown(indices, data.getNumChildren());
+    } else {
+      textIndex.add(indices, text, data.getNumChildren());
+    }
+    return new NodeData(data, command);
+  }
+
+  /**
+   * @return the command formatted like the server's generated String() method, i.e. as
+   * {@code name(param: value, ...)} followed by an arrow and the result, with the values
+   * formatted by Go's %v, or {@code null} if a value's formatting is not known to match. Values
+   * with constants are formatted by their Go enum type rather than the parameter's constant set,
+   * and floats, pointers and compound values use Go's own formatting, so only plain integers,
+   * bools and strings are known to match.
+   */
+  private static String searchText(API.Command command) {
+    StringBuilder text = new StringBuilder().append(command.getName()).append('(');
+    for (int i = 0; i < command.getParametersCount(); i++) {
+      API.Parameter param = command.getParameters(i);
+      if (i > 0) {
+        text.append(", ");
+      }
+      text.append(param.getName()).append(": ");
+      if (!appendSearchText(text, param)) {
+        return null;
+      }
+    }
+    text.append(')');
+    if (command.hasResult()) {
+      text.append(" \u2192 ");
+      if (!appendSearchText(text, command.getResult())) {
+        return null;
+      }
+    }
+    return text.toString();
+  }
+
+  private static boolean appendSearchText(StringBuilder text, API.Parameter param) {
+    if (param.hasConstants() || param.getValue().getValCase() != Box.Value.ValCase.POD) {
+      return false;
+    }
+    Pod.Value value = param.getValue().getPod();
+    switch (value.getValCase()) {
+      case STRING:
+        text.append(value.getString());
+        return true;
+      case BOOL:
+        text.append(value.getBool());
+        return true;
+      case SINT:
+        text.append(value.getSint());
+        return true;
+      case SINT8:
+        text.append(value.getSint8());
+        return true;
+      case SINT16:
+        text.append(value.getSint16());
+        return true;
+      case SINT32:
+        text.append(value.getSint32());
+        return true;
+      case SINT64:
+        text.append(value.getSint64());
+        return true;
+      case UINT:
+        text.append(UnsignedLongs.toString(value.getUint()));
+        return true;
+      case UINT8:
+        text.append(value.getUint8());
+        return true;
+      case UINT16:
+        text.append(value.getUint16());
+        return true;
+      case UINT32:
+        text.append(UnsignedInts.toString(value.getUint32()));
+        return true;
+      case UINT64:
+        text.append(UnsignedLongs.toString(value.getUint64()));
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return the {@link CommandTextIndex} of the loaded nodes of the current tree, or {@code null}
+   * if no tree is loaded.
+   */
+  public CommandTextIndex getTextIndex() {
+    Node root = getData();
+    return (root == null) ? null : ((RootNode)root).textIndex;
+  }
+
+  /**
+   * Loads every node of the current tree in the background, so that its {@link CommandTextIndex}
+   * covers the whole tree. At most a few nodes are loaded at a time, and loading stops once the
+   * tree is replaced or the index is full.
+   */
+  public void indexAll() {
+    Node root = getData();
+    if (root != null) {
+      new Indexer((RootNode)root).start();
+    }
+  }
+
   public ListenableFuture<API.Command> loadCommand(Path.Command path) {
     return Futures.transformAsync(client.get(Paths.toAny(path)), value ->
         Futures.transform(constants.loadConstants(value.getCommand()), ignore ->
@@ -402,6 +527,10 @@ public class CommandStream extends ModelBase.ForPath<CommandStream.Node, Void, C
       return parent.getPath(path).addIndices(index);
     }
 
+    protected RootNode getRoot() {
+      return parent.getRoot();
+    }
+
     public CommandIndex getIndex() {
       return (data == null) ? null : CommandIndex.forNode(data.getRepresentation(),
           getPath(Path.CommandTreeNode.newBuilder()).build());
@@ -449,10 +578,12 @@ public class CommandStream extends ModelBase.ForPath<CommandStream.Node, Void, C
 
   private static class RootNode extends Node {
     public final Path.ID tree;
+    public final CommandTextIndex textIndex = new CommandTextIndex();
 
     public RootNode(Path.ID tree, Service.CommandTreeNode data) {
       super(data);
       this.tree = tree;
+      textIndex.add(Collections.emptyList(), null, data.getNumChildren());
     }
 
     @Override
@@ -460,6 +591,11 @@ public class CommandStream extends ModelBase.ForPath<CommandStream.Node, Void, C
       return path.setTree(tree);
     }
 
+    @Override
+    protected RootNode getRoot() {
+      return this;
+    }
+
     @Override
     public String toString() {
       return "Root";
@@ -481,6 +617,59 @@ public class CommandStream extends ModelBase.ForPath<CommandStream.Node, Void, C
     }
   }
 
+  /**
+   * Walks the tree breadth first on the UI thread, loading all the nodes that are not loaded yet.
+   */
+  private class Indexer {
+    private static final int MAX_IN_FLIGHT = 16;
+
+    private final RootNode root;
+    private final Deque<Node> queue = new ArrayDeque<Node>();
+    private int inFlight = 0;
+
+    public Indexer(RootNode root) {
+      this.root = root;
+    }
+
+    public void start() {
+      queue.add(root);
+      next();
+    }
+
+    private void next() {
+      while (getData() == root && !root.textIndex.isFull() && inFlight < MAX_IN_FLIGHT &&
+          !queue.isEmpty()) {
+        Node node = queue.remove();
+        ListenableFuture<Node> future = load(node);
+        if (future == null) {
+          queue.addAll(Arrays.asList(node.getChildren()));
+          continue;
+        }
+
+        inFlight++;
+        Futures.addCallback(future, new LoggingCallback<Node>(LOG) {
+          @Override
+          public void onSuccess(Node loaded) {
+            scheduleIfNotDisposed(shell, () -> {
+              inFlight--;
+              queue.addAll(Arrays.asList(loaded.getChildren()));
+              next();
+            });
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            super.onFailure(t);
+            scheduleIfNotDisposed(shell, () -> {
+              inFlight--;
+              next();
+            });
+          }
+        });
+      }
+    }
+  }
+
   private static class NodeData {
     public final Service.CommandTreeNode data;
     public final API.Command command;
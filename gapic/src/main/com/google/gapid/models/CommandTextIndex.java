@@ -0,0 +1,756 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.models;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Trigram index over the text of the loaded {@link CommandStream} nodes: the group names and the
+ * commands, formatted the way the server formats them. Searches are answered from the index for
+ * the nodes up to the first part of the tree that has not been loaded, or whose text is unknown. The rest of the tree has to be searched by the server, in
+ * one search, so its results follow the local ones in tree order. The index stops growing once it
+ * reaches a fixed memory budget.
+ */
+public class CommandTextIndex {
+  // Upper bound of the estimated memory used by an index.
+  private static final long MAX_BYTES = 64L << 20;
+  // Estimated overhead of a node, its text and a distinct trigram.
+  private static final int NODE_BYTES = 64, TEXT_BYTES = 48, TRIGRAM_BYTES = 24;
+  private static final int[] EMPTY_POSTINGS = new int[0];
+  // Matches Go's \b, which only considers ASCII word characters.
+  private static final String WORD_BOUNDARY = "(?:(?<=\\w)(?!\\w)|(?<!\\w)(?=\\w))";
+  // Matches Go's \s, which unlike Java's does not include \x0B.
+  private static final String SPACE_CHARS = "\\t\\n\\f\\r ";
+
+  private Node root;
+  private long nodeCount = 0;
+  // The number of nodes in the parts of the tree known so far, i.e. the root and all the children
+  // of the added nodes. The whole tree is covered once all of them have been added.
+  private long expectedNodes = 1;
+  private long bytes = 0;
+  private boolean full = false;
+  // Incremented whenever a node is added, to invalidate the cached layout.
+  private int version = 0;
+  private Layout layout;
+
+  // The added nodes with text, by entry number, and the entries containing each trigram.
+  private Node[] entries = new Node[64];
+  private int entryCount = 0;
+  private final TrigramTable trigrams = new TrigramTable();
+
+  /**
+   * Adds the node with the given indices and text, which is {@code null} for nodes that cannot
+   * match, such as the root. Nodes that have been added before, whose parent has not been added,
+   * or that do not fit in the memory budget are ignored.
+   */
+  public void add(List<Long> indices, String text, long numChildren) {
+    add(indices, text, numChildren, false);
+  }
+
+  /**
+   * Adds the node with the given indices, whose text the server may match, but is not known
+   * here. Searches are only answered locally up to this node, the server searches from it on.
+   */
+  public void addUnknown(List<Long> indices, long numChildren) {
+    add(indices, null, numChildren, true);
+  }
+
+  private synchronized void add(
+      List<Long> indices, String text, long numChildren, boolean unknown) {
+    if (full || numChildren < 0) {
+      return;
+    }
+
+    Node parent = null;
+    int childIndex = 0;
+    if (indices.isEmpty()) {
+      if (root != null) {
+        return;
+      }
+    } else {
+      parent = find(indices, indices.size() - 1);
+      long idx = indices.get(indices.size() - 1);
+      if (parent == null || idx < 0 || idx >= parent.children.length ||
+          parent.children[(int)idx] != null) {
+        return;
+      }
+      childIndex = (int)idx;
+    }
+
+    long size = NODE_BYTES + 8L * indices.size() + 8L * numChildren +
+        ((text == null) ? 0 : TEXT_BYTES + 6L * text.length());
+    if (numChildren > Integer.MAX_VALUE || bytes + size > MAX_BYTES) {
+      full = true;
+      return;
+    }
+    bytes += size;
+
+    Node node = new Node(
+        toArray(indices), (text == null) ? null : lower(text), unknown, (int)numChildren);
+    if (parent == null) {
+      root = node;
+    } else {
+      parent.children[childIndex] = node;
+    }
+    nodeCount++;
+    expectedNodes += numChildren;
+    version++;
+
+    if (node.text != null) {
+      int entry = entryCount++;
+      if (entry == entries.length) {
+        entries = Arrays.copyOf(entries, 2 * entry);
+      }
+      entries[entry] = node;
+      for (int i = 0; i + 3 <= node.text.length(); i++) {
+        if (trigrams.add(trigram(node.text, i), entry)) {
+          bytes += TRIGRAM_BYTES;
+        }
+      }
+    }
+  }
+
+  private Node find(List<Long> indices, int depth) {
+    Node node = root;
+    for (int i = 0; node != null && i < depth; i++) {
+      long idx = indices.get(i);
+      node = (idx < 0 || idx >= node.children.length) ? null : node.children[(int)idx];
+    }
+    return node;
+  }
+
+  /**
+   * @return whether every node of the tree has been added to this index.
+   */
+  public synchronized boolean isComplete() {
+    return root != null && nodeCount == expectedNodes;
+  }
+
+  /**
+   * @return whether this index has reached its memory budget and no longer accepts nodes.
+   */
+  public synchronized boolean isFull() {
+    return full;
+  }
+
+  /**
+   * Searches the added nodes for the given case insensitive query. Like the server, the query and
+   * the texts are lower cased before matching. Regular expressions are only answered locally if
+   * they mean the same in Java as in the server's RE2 syntax.
+   *
+   * @return the matches and where the unindexed part of the tree starts, or {@code null} if the
+   * query is not supported and the server has to search the whole tree.
+   */
+  public Result find(String text, boolean regex) {
+    Pattern pattern = null;
+    String literal;
+    if (regex) {
+      Regex translated = Regex.translate(lower(text));
+      if (translated == null) {
+        return null;
+      }
+      try {
+        pattern = Pattern.compile(translated.pattern, Pattern.UNIX_LINES);
+      } catch (PatternSyntaxException e) {
+        // Let the server report the error.
+        return null;
+      }
+      literal = translated.literal;
+    } else {
+      literal = lower(text);
+    }
+    return find(pattern, literal);
+  }
+
+  private synchronized Result find(Pattern pattern, String literal) {
+    if (root == null) {
+      return null;
+    }
+
+    Layout current = getLayout();
+    int[] candidates = getCandidates(literal);
+    List<Node> found = Lists.newArrayList();
+    for (int i = 0, count = (candidates == null) ? entryCount : candidates.length; i < count;
+        i++) {
+      Node node = entries[(candidates == null) ? i : candidates[i]];
+      if (current.isUnindexed(node.order)) {
+        continue;
+      }
+      if ((pattern == null) ? node.text.contains(literal) : pattern.matcher(node.text).find()) {
+        found.add(node);
+      }
+    }
+    // Entries are in the order they were added, not in tree order.
+    Collections.sort(found, (a, b) -> Integer.compare(a.order, b.order));
+
+    List<long[]> matches = Lists.newArrayListWithCapacity(found.size());
+    for (Node node : found) {
+      matches.add(node.indices);
+    }
+    return new Result(matches, (current.gapAfter == null) ? null : current.gapAfter.indices);
+  }
+
+  /**
+   * @return the entries containing all the trigrams of the given literal, or
+   * {@code null} if the literal is too short to narrow down the entries.
+   */
+  private int[] getCandidates(String literal) {
+    if (literal.length() < 3) {
+      return null;
+    }
+
+    int[] result = null;
+    for (int i = 0; i + 3 <= literal.length(); i++) {
+      int[] postings = trigrams.get(trigram(literal, i));
+      if (postings == null) {
+        return EMPTY_POSTINGS;
+      }
+      result = (result == null) ? postings : intersect(result, postings);
+      if (result.length == 0) {
+        return result;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the pre-order positions of the added nodes and the first unindexed part of the tree,
+   * recomputed only after nodes have been added.
+   */
+  private Layout getLayout() {
+    if (layout == null || layout.version != version) {
+      LayoutBuilder builder = new LayoutBuilder();
+      builder.visit(root);
+      layout = new Layout(version, builder.gapAfter);
+    }
+    return layout;
+  }
+
+  private static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int n = 0;
+    for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[n++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, n);
+  }
+
+  private static long trigram(String text, int offset) {
+    return ((long)text.charAt(offset) << 32) | ((long)text.charAt(offset + 1) << 16) |
+        text.charAt(offset + 2);
+  }
+
+  /**
+   * @return the given text lower cased one code point at a time, like Go's strings.ToLower,
+   * independent of the default locale.
+   */
+  private static String lower(String text) {
+    StringBuilder result = new StringBuilder(text.length());
+    text.codePoints().forEach(c -> result.appendCodePoint(Character.toLowerCase(c)));
+    return result.toString();
+  }
+
+  private static long[] toArray(List<Long> indices) {
+    long[] result = new long[indices.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = indices.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * The result of a search of the index.
+   */
+  public static class Result {
+    /** The indices of the matching added nodes in tree order. */
+    public final List<long[]> matches;
+    /**
+     * The indices of the node preceding the first part of the tree that has not been added or
+     * whose text is unknown, or {@code null} if the whole tree has been added with known text. The matches cover the tree up to this node,
+     * the tree after it has to be searched by the server.
+     */
+    public final long[] unindexedAfter;
+
+    public Result(List<long[]> matches, long[] unindexedAfter) {
+      this.matches = matches;
+      this.unindexedAfter = unindexedAfter;
+    }
+  }
+
+  /**
+   * Assigns the pre-order positions of the added nodes and finds the first gap in between them,
+   * i.e. the first run of children that have not been added, or the first node of unknown text.
+   */
+  private static class LayoutBuilder {
+    // The node preceding the first gap in tree order, or null if there is none.
+    public Node gapAfter;
+    private int order = 0;
+    private Node last;
+
+    public LayoutBuilder() {
+    }
+
+    public void visit(Node node) {
+      node.order = order++;
+      if (node.unknown && gapAfter == null) {
+        gapAfter = last;
+      }
+      last = node;
+      for (Node child : node.children) {
+        if (child != null) {
+          visit(child);
+        } else if (gapAfter == null) {
+          gapAfter = last;
+        }
+      }
+    }
+  }
+
+  /**
+   * The pre-order layout of the added nodes at an index version.
+   */
+  private static class Layout {
+    public final int version;
+    public final Node gapAfter;
+
+    public Layout(int version, Node gapAfter) {
+      this.version = version;
+      this.gapAfter = gapAfter;
+    }
+
+    /**
+     * @return whether the added node at the given position lies after the first gap, where the
+     * server searches instead.
+     */
+    public boolean isUnindexed(int order) {
+      return gapAfter != null && order > gapAfter.order;
+    }
+  }
+
+  private static class Node {
+    public final long[] indices;
+    public final String text;
+    // Whether the server may match this node, but its text is not known.
+    public final boolean unknown;
+    public final Node[] children;
+    // The pre-order position among the added nodes, assigned by the layout.
+    public int order;
+
+    public Node(long[] indices, String text, boolean unknown, int numChildren) {
+      this.indices = indices;
+      this.text = text;
+      this.unknown = unknown;
+      this.children = new Node[numChildren];
+    }
+  }
+
+  /**
+   * Open addressing hash table from trigrams to the sorted entries containing them, kept in
+   * primitive arrays.
+   */
+  private static class TrigramTable {
+    private static final long EMPTY = -1;
+
+    private long[] keys = newKeys(1024);
+    private int[][] postings = new int[1024][];
+    private int[] counts = new int[1024];
+    private int size = 0;
+
+    public TrigramTable() {
+    }
+
+    /**
+     * @return the entries containing the trigram, or {@code null} if there are none.
+     */
+    public int[] get(long key) {
+      int slot = slot(keys, key);
+      return (keys[slot] == EMPTY) ? null : Arrays.copyOf(postings[slot], counts[slot]);
+    }
+
+    /**
+     * Adds the entry to the postings of the trigram. Entries are added in increasing order, but a
+     * trigram may occur more than once per entry.
+     *
+     * @return whether the trigram is new.
+     */
+    public boolean add(long key, int entry) {
+      int slot = slot(keys, key);
+      if (keys[slot] == EMPTY) {
+        if (2 * (size + 1) > keys.length) {
+          grow();
+          slot = slot(keys, key);
+        }
+        keys[slot] = key;
+        postings[slot] = new int[2];
+        size++;
+      }
+
+      int count = counts[slot];
+      int[] list = postings[slot];
+      if (count > 0 && list[count - 1] == entry) {
+        return false;
+      } else if (count == list.length) {
+        postings[slot] = list = Arrays.copyOf(list, count + (count >> 1) + 1);
+      }
+      list[count] = entry;
+      counts[slot] = count + 1;
+      return count == 0;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[][] oldPostings = postings;
+      int[] oldCounts = counts;
+      keys = newKeys(2 * oldKeys.length);
+      postings = new int[keys.length][];
+      counts = new int[keys.length];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != EMPTY) {
+          int slot = slot(keys, oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          postings[slot] = oldPostings[i];
+          counts[slot] = oldCounts[i];
+        }
+      }
+    }
+
+    private static int slot(long[] keys, long key) {
+      int mask = keys.length - 1;
+      long hash = key * 0x9E3779B97F4A7C15L;
+      for (int slot = (int)(hash >>> 32) & mask; ; slot = (slot + 1) & mask) {
+        if (keys[slot] == key || keys[slot] == EMPTY) {
+          return slot;
+        }
+      }
+    }
+
+    private static long[] newKeys(int size) {
+      long[] result = new long[size];
+      Arrays.fill(result, EMPTY);
+      return result;
+    }
+  }
+
+  /**
+   * A regular expression translated from the server's RE2 syntax to Java's. Only the subset of
+   * the syntax that can be translated exactly is accepted.
+   */
+  private static class Regex {
+    public final String pattern;
+    // A run of plain characters every match has to contain, possibly empty.
+    public final String literal;
+
+    private Regex(String pattern, String literal) {
+      this.pattern = pattern;
+      this.literal = literal;
+    }
+
+    /**
+     * @return the translation of the given lower case expression, or {@code null} if it uses
+     * syntax that differs between RE2 and Java, such as look-arounds, back references, possessive
+     * quantifiers, inline flags, POSIX and Unicode classes, or is invalid.
+     */
+    public static Regex translate(String regex) {
+      StringBuilder out = new StringBuilder();
+      StringBuilder current = new StringBuilder();
+      String best = "";
+      boolean alternation = false;
+      // Whether the preceding element can be repeated. Java allows repeating anchors, RE2 doesn't.
+      boolean atom = false;
+      int depth = 0;
+      for (int i = 0; i < regex.length(); i++) {
+        char c = regex.charAt(i);
+        if (c != '\\' && c != '[' && "()|*+?{}$^.]".indexOf(c) < 0) {
+          out.append(c);
+          atom = true;
+          if (depth == 0) {
+            current.append(c);
+          }
+          continue;
+        }
+
+        boolean quantifier = c == '*' || c == '+' || c == '?' || c == '{';
+        if (quantifier && !atom) {
+          return null;
+        } else if (quantifier && current.length() > 0) {
+          // The previous character may be optional.
+          current.setLength(current.length() - 1);
+        }
+        if (current.length() > best.length()) {
+          best = current.toString();
+        }
+        current.setLength(0);
+
+        switch (c) {
+          case '\\':
+            atom = !regex.startsWith("\\b", i);
+            i = escape(regex, i, false, out);
+            break;
+          case '[':
+            i = characterClass(regex, i, out);
+            atom = true;
+            break;
+          case '(':
+            if (regex.startsWith("(?", i) && !regex.startsWith("(?:", i)) {
+              return null;
+            }
+            depth++;
+            out.append(c);
+            if (regex.startsWith("(?:", i)) {
+              out.append("?:");
+              i += 2;
+            }
+            atom = false;
+            break;
+          case ')':
+            if (--depth < 0) {
+              return null;
+            }
+            out.append(c);
+            atom = true;
+            break;
+          case '|':
+            alternation = true;
+            out.append(c);
+            atom = false;
+            break;
+          case '*':
+          case '+':
+          case '?':
+            out.append(c);
+            i = lazy(regex, i, out);
+            atom = false;
+            break;
+          case '{':
+            i = repeat(regex, i, out);
+            atom = false;
+            break;
+          case '$':
+            // Without the multi-line flag, RE2 only matches $ at the very end.
+            out.append("\\z");
+            atom = false;
+            break;
+          case '^':
+            out.append(c);
+            atom = false;
+            break;
+          case '}':
+          case ']':
+            out.append('\\').append(c);
+            atom = true;
+            break;
+          default:
+            // The dot.
+            out.append(c);
+            atom = true;
+        }
+        if (i < 0) {
+          return null;
+        }
+      }
+      if (depth != 0) {
+        return null;
+      }
+      if (current.length() > best.length()) {
+        best = current.toString();
+      }
+      // Alternatives don't require any one literal.
+      return new Regex(out.toString(), alternation ? "" : best);
+    }
+
+    /**
+     * Translates the escape sequence at the given position.
+     *
+     * @return the position of its last character, or -1 if it is not supported.
+     */
+    private static int escape(String regex, int i, boolean inClass, StringBuilder out) {
+      if (i + 1 >= regex.length()) {
+        return -1;
+      }
+      char c = regex.charAt(++i);
+      if (c < 0x80 && !Character.isLetterOrDigit(c) && c > ' ') {
+        out.append('\\').append(c);
+        return i;
+      }
+      switch (c) {
+        case 'd':
+        case 'w':
+        case 't':
+        case 'n':
+        case 'r':
+        case 'f':
+        case 'a':
+          out.append('\\').append(c);
+          return i;
+        case 's':
+          out.append(inClass ? SPACE_CHARS : "[" + SPACE_CHARS + "]");
+          return i;
+        case 'b':
+          if (inClass) {
+            return -1;
+          }
+          out.append(WORD_BOUNDARY);
+          return i;
+        case 'x':
+          return hex(regex, i, out);
+        default:
+          return -1;
+      }
+    }
+
+    private static int hex(String regex, int i, StringBuilder out) {
+      int end;
+      if (regex.startsWith("{", i + 1)) {
+        end = regex.indexOf('}', i + 2);
+        if (end < 0 || end == i + 2 || !isHex(regex, i + 2, end)) {
+          return -1;
+        }
+      } else {
+        end = i + 2;
+        if (end >= regex.length() || !isHex(regex, i + 1, end + 1)) {
+          return -1;
+        }
+      }
+      out.append('\\').append(regex, i, end + 1);
+      return end;
+    }
+
+    private static boolean isHex(String regex, int from, int to) {
+      for (int i = from; i < to; i++) {
+        if (Character.digit(regex.charAt(i), 16) < 0 || regex.charAt(i) >= 0x80) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Translates the character class at the given position. Nested classes, intersections and a
+     * leading ], which mean different things or are invalid in either syntax, are not supported.
+     *
+     * @return the position of its closing bracket, or -1 if it is not supported.
+     */
+    private static int characterClass(String regex, int i, StringBuilder out) {
+      out.append('[');
+      if (regex.startsWith("^", ++i)) {
+        out.append('^');
+        i++;
+      }
+      if (regex.startsWith("]", i)) {
+        return -1;
+      }
+      for (; i < regex.length(); i++) {
+        char c = regex.charAt(i);
+        switch (c) {
+          case ']':
+            out.append(c);
+            return i;
+          case '[':
+            return -1;
+          case '&':
+            if (regex.startsWith("&&", i)) {
+              return -1;
+            }
+            out.append(c);
+            break;
+          case '\\':
+            i = escape(regex, i, true, out);
+            if (i < 0) {
+              return -1;
+            }
+            break;
+          default:
+            out.append(c);
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Translates the bounded repetition at the given position. RE2 treats braces that do not form
+     * a valid repetition as literals, Java rejects them.
+     *
+     * @return the position of its closing brace, or -1 if it is not supported.
+     */
+    private static int repeat(String regex, int i, StringBuilder out) {
+      int end = regex.indexOf('}', i);
+      if (end < 0) {
+        return -1;
+      }
+      String[] bounds = regex.substring(i + 1, end).split(",", -1);
+      if (bounds.length > 2 || !isCount(bounds[0], false) ||
+          (bounds.length == 2 && !isCount(bounds[1], true))) {
+        return -1;
+      }
+      int min = Integer.parseInt(bounds[0]);
+      // An open upper bound is only checked against the lower one.
+      boolean bounded = bounds.length == 2 && !bounds[1].isEmpty();
+      int max = bounded ? Integer.parseInt(bounds[1]) : min;
+      if (max < min) {
+        return -1;
+      }
+      out.append(regex, i, end + 1);
+      return lazy(regex, end, out);
+    }
+
+    // RE2 does not allow more than 1000 repetitions.
+    private static boolean isCount(String count, boolean allowEmpty) {
+      if (count.isEmpty()) {
+        return allowEmpty;
+      }
+      if (count.length() > 4) {
+        return false;
+      }
+      for (int i = 0; i < count.length(); i++) {
+        if (count.charAt(i) < '0' || count.charAt(i) > '9') {
+          return false;
+        }
+      }
+      return Integer.parseInt(count) <= 1000;
+    }
+
+    /**
+     * Copies the lazy modifier following the quantifier ending at the given position. Possessive
+     * and repeated quantifiers are not supported.
+     *
+     * @return the position of the last character of the quantifier, or -1.
+     */
+    private static int lazy(String regex, int i, StringBuilder out) {
+      if (regex.startsWith("?", i + 1)) {
+        out.append('?');
+        i++;
+      }
+      if (i + 1 < regex.length() && "*+?{".indexOf(regex.charAt(i + 1)) >= 0) {
+        return -1;
+      }
+      return i;
+    }
+  }
+}
@@ -42,4 +42,11 @@ public class Info {
   public static Version getServerVersion() {
     return Version.fromProto(serverInfo);
   }
+
+  /**
+   * @return whether the server supports the given feature, see {@link Service.ServerInfo}.
+   */
+  public static boolean hasServerFeature(String feature) {
+    return serverInfo.getFeaturesList().contains(feature);
+  }
 }
@@ -89,6 +89,7 @@ public class Settings {
   public String analyticsClientId = ""; // Empty means do not track.
   public boolean disableReplayOptimization = false;
   public boolean reportCrashes = false;
+  public boolean indexAllCommands = false;
 
   /**
    * Registers the listener for changes.
@@ -228,6 +229,7 @@ public class Settings {
     disableReplayOptimization =
         getBoolean(properties, "replay.disableOptimization", disableReplayOptimization);
     reportCrashes = getBoolean(properties, "crash.reporting", reportCrashes);
+    indexAllCommands = getBoolean(properties, "commands.indexAll", indexAllCommands);
   }
 
   private void updateTo(Properties properties) {
@@ -269,6 +271,7 @@ public class Settings {
     properties.setProperty(
         "replay.disableOptimization",  Boolean.toString(disableReplayOptimization));
     properties.setProperty("crash.reporting", Boolean.toString(reportCrashes));
+    properties.setProperty("commands.indexAll", Boolean.toString(indexAllCommands));
   }
 
   private static Point getPoint(Properties properties, String name) {
@@ -17,6 +17,7 @@ package com.google.gapid.util;
 
 import com.google.common.collect.Maps;
 import com.google.gapid.proto.service.box.Box;
+import com.google.protobuf.ByteString;
 
 import java.util.Map;
 
@@ -57,8 +58,12 @@ public class Boxes {
   }
 
   public static byte[] getBytes(Box.Value box) {
+    return getByteString(box).toByteArray();
+  }
+
+  public static ByteString getByteString(Box.Value box) {
     switch (box.getValCase()) {
-      case POD: return Pods.getBytes(box.getPod());
+      case POD: return Pods.getByteString(box.getPod());
       default:
         throw new RuntimeException("Don't know how to get bytes out of " + box.getValCase());
     }
@@ -15,6 +15,7 @@
  */
 package com.google.gapid.util;
 
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 
 /**
@@ -64,4 +65,18 @@ public class Float16 {
     return Float.intBitsToFloat(
         MANTISSA_LOOKUP[OFFSET_LOOKUP[upper] + lower] | EXPONENT_LOOKUP[upper]);
   }
+
+  /**
+   * Converts count half-floats, starting at the absolute index srcOffset in src, to floats,
+   * storing them in dst starting at dstOffset. The position of src is not modified.
+   */
+  public static void shortBitsToFloat(
+      ShortBuffer src, int srcOffset, float[] dst, int dstOffset, int count) {
+    for (int i = 0; i < count; i++) {
+      int bits = src.get(srcOffset + i);
+      int upper = (bits >> 10) & 0x3f, lower = bits & 0x3ff;
+      dst[dstOffset + i] = Float.intBitsToFloat(
+          MANTISSA_LOOKUP[OFFSET_LOOKUP[upper] + lower] | EXPONENT_LOOKUP[upper]);
+    }
+  }
 }
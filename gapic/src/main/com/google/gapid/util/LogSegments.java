@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.util;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.logging.Level.WARNING;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gapid.proto.log.Log;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Persists the log to rotating segment files of length-delimited
+ * {@link com.google.gapid.proto.log.Log.Message} protos, so the log of a session is kept, up to
+ * a maximum size, and not just the messages still in memory. Messages are identified by their position, the
+ * number of messages logged before them, which is shared with {@link Logging.MessageIterator}.
+ *
+ * All file access happens on a single background thread. Each segment keeps a small in-memory
+ * index of the latest time and the severities of its blocks of messages, which is used to skip the
+ * blocks that cannot match a query without reading them.
+ */
+public class LogSegments {
+  private static final Logger LOG = Logger.getLogger(LogSegments.class.getName());
+
+  private static final String DIRECTORY = "gapic-log";
+  private static final String EXTENSION = ".log";
+  // Locked by the process writing the session for as long as it is running.
+  private static final String LOCK_FILE = "session.lock";
+  // The number of session directories kept, including the current one.
+  private static final int MAX_SESSIONS = 5;
+  private static final long MAX_SEGMENT_SIZE = 8 << 20;
+  private static final int BLOCK_SIZE = 256;
+  // Batches are not written if the disk cannot keep up and this many are waiting already.
+  private static final int MAX_PENDING_BATCHES = 256;
+
+  private final File directory;
+  // The oldest segments are deleted once there are more than this many.
+  private final int maxSegments;
+  // Held until the process exits, so other instances do not delete this session.
+  @SuppressWarnings("unused")
+  private final FileLock lock;
+  private final ListeningExecutorService executor;
+  private final AtomicInteger pending = new AtomicInteger();
+  // The below are only accessed on the executor's thread.
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private int nextSegment = 0;
+  private boolean failed = false;
+  // Whether segments have been deleted to stay within the maximum size.
+  private boolean truncated = false;
+
+  private LogSegments(File directory, FileLock lock, int maxSegments) {
+    this.directory = directory;
+    this.maxSegments = maxSegments;
+    this.lock = lock;
+    this.executor = MoreExecutors.listeningDecorator(
+        Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("log-segments-%d")
+            .setDaemon(true)
+            .build()));
+  }
+
+  /**
+   * @return the segments of a new session in the given log directory, or {@code null} if the
+   * session directory could not be created. The oldest sessions are deleted, unless they belong
+   * to instances that are still running. Once the session's log grows larger than the given size,
+   * its oldest messages are deleted.
+   */
+  public static LogSegments create(File logDir, long maxSize) {
+    File root = new File(logDir, DIRECTORY);
+    try {
+      Files.createDirectories(root.toPath());
+      String prefix = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-";
+      File directory = Files.createTempDirectory(root.toPath(), prefix).toFile();
+      FileLock lock = tryLock(directory);
+      deleteOldSessions(root, directory);
+      int maxSegments = (int)Math.max(1, Math.min(Integer.MAX_VALUE,
+          (maxSize + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE));
+      return new LogSegments(directory, lock, maxSegments);
+    } catch (IOException | SecurityException e) {
+      LOG.log(WARNING, "Failed to create the log segment directory in " + root, e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the lock of the given session directory, or {@code null} if it is held by another
+   * instance.
+   */
+  private static FileLock tryLock(File session) throws IOException {
+    FileChannel channel = FileChannel.open(new File(session, LOCK_FILE).toPath(), CREATE, WRITE);
+    FileLock result = null;
+    try {
+      result = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // Held by this instance.
+    } finally {
+      if (result == null) {
+        channel.close();
+      }
+    }
+    return result;
+  }
+
+  private static void deleteOldSessions(File root, File current) {
+    File[] sessions = root.listFiles(File::isDirectory);
+    if (sessions == null || sessions.length <= MAX_SESSIONS) {
+      return;
+    }
+
+    // Session directories start with their creation time, so sort oldest first.
+    Arrays.sort(sessions);
+    for (int i = 0; i < sessions.length - MAX_SESSIONS; i++) {
+      if (!sessions[i].equals(current)) {
+        deleteSession(sessions[i]);
+      }
+    }
+  }
+
+  private static void deleteSession(File session) {
+    FileLock lock;
+    try {
+      lock = tryLock(session);
+    } catch (IOException e) {
+      LOG.log(WARNING, "Failed to lock the log session " + session, e);
+      return;
+    }
+    if (lock == null) {
+      // The session's instance is still running.
+      return;
+    }
+
+    try {
+      File[] files = session.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (!LOCK_FILE.equals(file.getName())) {
+            file.delete();
+          }
+        }
+      }
+    } finally {
+      try {
+        lock.channel().close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+    // The lock file can only be deleted once closed on some platforms.
+    new File(session, LOCK_FILE).delete();
+    session.delete();
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Asynchronously appends the given messages, the first of which is at the given position.
+   * Never blocks. If the writes fall too far behind, the messages are not persisted.
+   */
+  public void append(long position, List<Log.Message> messages) {
+    if (messages.isEmpty()) {
+      return;
+    } else if (pending.incrementAndGet() > MAX_PENDING_BATCHES) {
+      pending.decrementAndGet();
+      return;
+    }
+
+    List<Log.Message> copy = ImmutableList.copyOf(messages);
+    executor.execute(() -> {
+      pending.decrementAndGet();
+      write(position, copy);
+    });
+  }
+
+  private void write(long position, List<Log.Message> messages) {
+    if (failed) {
+      return;
+    }
+
+    try {
+      for (Log.Message message : messages) {
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.size >= MAX_SEGMENT_SIZE) {
+          segment = rotate();
+        }
+        segment.append(position++, message);
+      }
+      segments.getLast().flush();
+    } catch (IOException e) {
+      failed = true;
+      for (Segment segment : segments) {
+        segment.close();
+      }
+      LOG.log(WARNING, "Failed to write the log segments, no longer persisting the log", e);
+    }
+  }
+
+  private Segment rotate() throws IOException {
+    Segment last = segments.peekLast();
+    if (last != null) {
+      last.close();
+    }
+    while (segments.size() >= maxSegments) {
+      segments.removeFirst().delete();
+      truncated = true;
+    }
+    Segment result = new Segment(new File(directory, String.format("%05d", nextSegment++) +
+        EXTENSION));
+    segments.addLast(result);
+    return result;
+  }
+
+  /**
+   * Queries the persisted messages, newest first.
+   *
+   * @param before the position before which to search, usually the {@link Page#next} of the
+   *     previous page.
+   * @param minSeverity only messages of at least this severity match.
+   * @param sinceMillis only messages logged at or after this time match.
+   * @param count the maximum number of messages returned.
+   */
+  public ListenableFuture<Page> query(
+      long before, Log.Severity minSeverity, long sinceMillis, int count) {
+    return executor.submit(() -> {
+      List<Log.Message> messages = Lists.newArrayList();
+      long[] positions = new long[count];
+      long next = before;
+      for (Iterator<Segment> it = segments.descendingIterator(); it.hasNext(); ) {
+        Segment segment = it.next();
+        for (int b = segment.blocks.size() - 1; b >= 0; b--) {
+          Block block = segment.blocks.get(b);
+          if (block.position >= next) {
+            continue;
+          } else if (!block.matches(minSeverity, sinceMillis)) {
+            next = block.position;
+            continue;
+          }
+
+          List<Log.Message> contents = segment.read(block);
+          for (int i = (int)Math.min(contents.size(), next - block.position) - 1; i >= 0; i--) {
+            Log.Message message = contents.get(i);
+            if (message.getSeverityValue() >= minSeverity.getNumber() &&
+                toMillis(message) >= sinceMillis) {
+              positions[messages.size()] = block.position + i;
+              messages.add(message);
+              if (messages.size() == count) {
+                return new Page(messages, positions, block.position + i, true, false);
+              }
+            }
+          }
+          next = block.position;
+        }
+      }
+      return new Page(
+          messages, Arrays.copyOf(positions, messages.size()), next, false, truncated);
+    });
+  }
+
+  private static long toMillis(Log.Message message) {
+    return message.getTime().getSeconds() * 1000 + message.getTime().getNanos() / 1000000;
+  }
+
+  /**
+   * A page of persisted messages returned by a query.
+   */
+  public static class Page {
+    /** The matching messages, newest first. */
+    public final List<Log.Message> messages;
+    /** The positions of the messages. */
+    public final long[] positions;
+    /** The position before which to continue the query. */
+    public final long next;
+    /** Whether there may be more matching messages before {@link #next}. */
+    public final boolean hasMore;
+    /** Whether the messages before the last page were deleted to limit the size of the log. */
+    public final boolean truncated;
+
+    public Page(List<Log.Message> messages, long[] positions, long next, boolean hasMore,
+        boolean truncated) {
+      this.messages = messages;
+      this.positions = positions;
+      this.next = next;
+      this.hasMore = hasMore;
+      this.truncated = truncated;
+    }
+  }
+
+  /**
+   * A segment file, together with the index of its blocks.
+   */
+  private static class Segment {
+    public final File file;
+    public final List<Block> blocks = Lists.newArrayList();
+    public long size = 0;
+    private OutputStream out;
+
+    public Segment(File file) throws IOException {
+      this.file = file;
+      this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    }
+
+    public void append(long position, Log.Message message) throws IOException {
+      Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+      // Blocks only contain consecutive messages, as dropped batches leave gaps.
+      if (block == null || block.count >= BLOCK_SIZE || block.position + block.count != position) {
+        blocks.add(block = new Block(position, size));
+      }
+      int length = message.getSerializedSize();
+      message.writeDelimitedTo(out);
+      size += CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+      block.add(message);
+    }
+
+    public void flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    public List<Log.Message> read(Block block) throws IOException {
+      flush();
+      List<Log.Message> result = Lists.newArrayListWithCapacity(block.count);
+      try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+        channel.position(block.offset);
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+        for (int i = 0; i < block.count; i++) {
+          Log.Message message = Log.Message.parseDelimitedFrom(in);
+          if (message == null) {
+            break;
+          }
+          result.add(message);
+        }
+      }
+      return result;
+    }
+
+    public void close() {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // Ignored.
+        }
+        out = null;
+      }
+    }
+
+    public void delete() {
+      close();
+      file.delete();
+    }
+  }
+
+  /**
+   * The index entry of a block of consecutive messages in a segment.
+   */
+  private static class Block {
+    public final long position;
+    public final long offset;
+    public int count = 0;
+    public long maxTime = Long.MIN_VALUE;
+    // Bit mask of the severities of the messages in the block.
+    public int severities = 0;
+
+    public Block(long position, long offset) {
+      this.position = position;
+      this.offset = offset;
+    }
+
+    public void add(Log.Message message) {
+      count++;
+      maxTime = Math.max(maxTime, toMillis(message));
+      severities |= 1 << Math.max(0, Math.min(31, message.getSeverityValue()));
+    }
+
+    public boolean matches(Log.Severity minSeverity, long sinceMillis) {
+      return (severities >>> minSeverity.getNumber()) != 0 && maxTime >= sinceMillis;
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.gapid.util;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.gapid.proto.log.Log;
 import com.google.gapid.util.Flags.Flag;
@@ -27,8 +28,18 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.ErrorManager;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
@@ -90,7 +101,9 @@ public class Logging {
   }
 
   /**
-   * Listener is the interface implemented by types that want to listen to log messages.
+   * Listener is the interface implemented by types that want to listen to log messages. Messages
+   * are added to the buffer in batches on a background thread, and the listener is notified once
+   * per batch with the batch's last message.
    */
   public interface Listener {
     void onNewMessage(Log.Message message);
@@ -100,6 +113,10 @@ public class Logging {
       "log-level", LogLevel.INFO, "Logging level [OFF, ERROR, WARNING, INFO, DEBUG, ALL].");
   public static final Flag<String> logDir = Flags.value(
       "log-dir", System.getProperty("java.io.tmpdir"), "Directory for log files.");
+  public static final Flag<Boolean> logSegments = Flags.value(
+      "log-segments", true, "Whether to keep the complete log in segment files in the log dir.");
+  public static final Flag<Integer> logSegmentsSize = Flags.value(
+      "log-segments-size", 128, "Size in MB of a session's log kept in segment files.");
   // Actual default is to use logLevel's value.
   public static final Flag<LogLevel> gapisLogLevel = Flags.value(
       "gapis-log-level", LogLevel.INFO, "Gapis log level [OFF, ERROR, WARNING, INFO, DEBUG, ALL].");
@@ -107,14 +124,16 @@ public class Logging {
   public static final Flag<LogLevel> gapirLogLevel = Flags.value(
       "gapir-log-level", LogLevel.INFO, "Gapir log level [OFF, ERROR, WARNING, INFO, DEBUG, ALL].");
 
-  private static final int BUFFER_SIZE = 1000;
+  private static final int BUFFER_SIZE = 10000;
   private static final long THROTTLE_TIME_MS = 5000;
 
   private static final RingBuffer buffer = new RingBuffer(BUFFER_SIZE);
 
   private static final Listener NULL_LISTENER = (m) -> { /* do nothing */ };
 
-  private static Listener listener = NULL_LISTENER;
+  private static volatile Listener listener = NULL_LISTENER;
+  private static volatile LogSegments segments = null;
+  private static final Ingester ingester = new Ingester();
   private static long timeOfLastThrottledMessage = 0;
 
   /**
@@ -124,10 +143,12 @@ public class Logging {
     LogManager.getLogManager().reset();
     Logger rootLogger = Logger.getLogger("");
 
-    rootLogger.addHandler(new LogToMessageHandler() {{
+    LogToMessageHandler messageHandler = new LogToMessageHandler() {{
       setFormatter(new LogFormatter());
       setLevel(Level.ALL);
-    }});
+    }};
+    rootLogger.addHandler(messageHandler);
+    ingester.setHandler(messageHandler);
 
     ConsoleHandler handler = new ConsoleHandler();
     handler.setFormatter(new LogFormatter());
@@ -143,6 +164,9 @@ public class Logging {
       } catch (IOException e) {
         // Ignore.
       }
+      if (logSegments.get()) {
+        segments = LogSegments.create(new File(logDir.get()), (long)logSegmentsSize.get() << 20);
+      }
     }
 
     Logger.getLogger("com.google.gapid").setLevel(logLevel.get().level);
@@ -164,6 +188,13 @@ public class Logging {
     return buffer.iterator();
   }
 
+  /**
+   * @return the persisted log of this session, or {@code null} if the log is not persisted.
+   */
+  public static LogSegments getLogSegments() {
+    return segments;
+  }
+
   public static void setListener(Listener newListener) {
     listener = (newListener == null) ? NULL_LISTENER : newListener;
   }
@@ -171,11 +202,11 @@ public class Logging {
   /**
    * Adds a {@link com.google.gapid.proto.log.Log.Message} to the buffer, bypassing the Java
    * {@link LogManager}.
-   * This is used to display log messages from other processes such as GAPIS.
+   * This is used to display log messages from other processes such as GAPIS. The message is
+   * added asynchronously and may be dropped if messages are logged faster than they are consumed.
    */
   public static void logMessage(Log.Message message) {
-    buffer.add(message);
-    listener.onNewMessage(message);
+    ingester.add(message.getSeverity(), () -> message);
   }
 
   /**
@@ -240,7 +271,11 @@ public class Logging {
   }
 
   protected static String getTag(LogRecord record) {
-    return "[" + shorten(Thread.currentThread().getName()) + "][" +
+    return getTag(record, Thread.currentThread().getName());
+  }
+
+  protected static String getTag(LogRecord record, String threadName) {
+    return "[" + shorten(threadName) + "][" +
       shorten(record.getSourceClassName()) + "." +
       record.getSourceMethodName() + "]";
   }
@@ -305,25 +340,53 @@ public class Logging {
    */
   public static class MessageIterator {
     private final RingBuffer target;
-    private int generation;
+    private long generation;
 
     MessageIterator(RingBuffer target) {
       this.target = target;
     }
 
+    /**
+     * @return the position of the next message returned by this iterator. Positions count all
+     * messages ever added and are shared with {@link LogSegments}.
+     */
+    public long getPosition() {
+      synchronized (target) {
+        return target.generation - target.remaining(generation);
+      }
+    }
+
     public Log.Message next() {
       synchronized (target) {
-        int remaining = Math.min(target.generation - generation, target.ring.length);
+        int remaining = target.remaining(generation);
         if (remaining == 0) {
           return null;
         }
         // Progress the generation so that it is at least the oldest message.
         generation = target.generation - remaining;
-        Log.Message message = target.ring[generation % target.ring.length];
+        Log.Message message = target.ring[(int)(generation % target.ring.length)];
         generation++;
         return message;
       }
     }
+
+    /**
+     * Adds all the available messages to the given list, oldest first, holding the buffer's lock
+     * only once.
+     * @return the position of the first message added, see {@link #getPosition()}, which is
+     * consistent with the messages, even if more are being logged concurrently.
+     */
+    public long drainTo(List<Log.Message> out) {
+      synchronized (target) {
+        int remaining = target.remaining(generation);
+        long first = target.generation - remaining;
+        for (long g = first; g < target.generation; g++) {
+          out.add(target.ring[(int)(g % target.ring.length)]);
+        }
+        generation = target.generation;
+        return first;
+      }
+    }
   }
 
   /**
@@ -331,25 +394,171 @@ public class Logging {
    */
   protected static class RingBuffer {
     protected final Log.Message[] ring;
-    protected int generation;
+    protected long generation;
 
     public RingBuffer(int maxSize) {
       this.ring = new Log.Message[maxSize];
     }
 
     public synchronized void add(Log.Message message) {
-      ring[generation % ring.length] = message;
+      ring[(int)(generation % ring.length)] = message;
       generation++;
     }
 
+    public synchronized void addAll(List<Log.Message> messages) {
+      for (Log.Message message : messages) {
+        ring[(int)(generation % ring.length)] = message;
+        generation++;
+      }
+    }
+
+    /**
+     * @return the number of messages after the given generation still in the buffer.
+     */
+    protected int remaining(long from) {
+      return (int)Math.min(generation - from, ring.length);
+    }
+
     public MessageIterator iterator() {
       return new MessageIterator(this);
     }
   }
 
+  /**
+   * Lock-free queue between the threads producing log messages and a single consumer thread that
+   * creates the messages and adds them to the {@link RingBuffer} and the {@link LogSegments} in
+   * batches. Producers never block on the buffer, the segments or the listener. Under
+   * overload, messages below warning severity are sampled and, once the queue is full, all
+   * messages are dropped. The number of dropped messages is reported in the log.
+   */
+  private static class Ingester implements Runnable {
+    private static final int BATCH_SIZE = 512;
+    // Once this many messages are queued, only every SAMPLING_RATE-th low severity one is kept.
+    private static final int SAMPLING_THRESHOLD = 5000;
+    private static final int SAMPLING_RATE = 16;
+    private static final int MAX_QUEUED = 20000;
+    private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long DROP_REPORT_INTERVAL_MS = 1000;
+
+    private final Queue<Supplier<Log.Message>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger sampled = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean idle = new AtomicBoolean();
+    private final Thread thread;
+    private long timeOfLastDropReport = 0;
+    // The handler whose ErrorManager is told about failures, as they cannot be logged.
+    private volatile Handler handler = null;
+    private final ErrorManager defaultErrors = new ErrorManager();
+    // The position of the next message added to the buffer.
+    private long position = 0;
+
+    public Ingester() {
+      thread = new Thread(this, "log-ingester");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    public void setHandler(Handler handler) {
+      this.handler = handler;
+    }
+
+    /**
+     * Queues the message, unless it is dropped. The message is created on the ingester's thread,
+     * so the supplier must not depend on state that may change after this call.
+     */
+    public void add(Log.Severity severity, Supplier<Log.Message> message) {
+      int size = queued.get();
+      if (size >= MAX_QUEUED || (size >= SAMPLING_THRESHOLD &&
+          severity.getNumber() < Log.Severity.Warning_VALUE &&
+          sampled.incrementAndGet() % SAMPLING_RATE != 0)) {
+        dropped.incrementAndGet();
+        return;
+      }
+
+      queued.incrementAndGet();
+      queue.add(message);
+      if (idle.get() && idle.compareAndSet(true, false)) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    @Override
+    public void run() {
+      List<Log.Message> batch = Lists.newArrayListWithCapacity(BATCH_SIZE + 1);
+      while (true) {
+        Supplier<Log.Message> next;
+        while (batch.size() < BATCH_SIZE && (next = queue.poll()) != null) {
+          queued.decrementAndGet();
+          try {
+            batch.add(next.get());
+          } catch (RuntimeException e) {
+            reportFailure("Failed to create a log message", e, ErrorManager.FORMAT_FAILURE);
+          }
+        }
+        reportDropped(batch);
+
+        if (!batch.isEmpty()) {
+          try {
+            buffer.addAll(batch);
+            LogSegments persisted = segments;
+            if (persisted != null) {
+              persisted.append(position, batch);
+            }
+            position += batch.size();
+            listener.onNewMessage(batch.get(batch.size() - 1));
+          } catch (RuntimeException e) {
+            reportFailure("Failed to add log messages", e, ErrorManager.GENERIC_FAILURE);
+          }
+          batch.clear();
+          continue;
+        }
+
+        // Producers only wake us up if they see the idle flag, so check the queue after setting it.
+        idle.set(true);
+        if (queue.isEmpty()) {
+          LockSupport.parkNanos(this, IDLE_PARK_NS);
+        }
+        idle.set(false);
+      }
+    }
+
+    /**
+     * Reports a failure to the handler's {@link ErrorManager}, as it cannot be logged. The
+     * ingester keeps running, so later messages are still shown.
+     */
+    private void reportFailure(String message, RuntimeException e, int code) {
+      Handler current = handler;
+      ErrorManager errors = (current == null) ? defaultErrors : current.getErrorManager();
+      errors.error(message, e, code);
+    }
+
+    private void reportDropped(List<Log.Message> batch) {
+      long now = System.currentTimeMillis();
+      if (dropped.get() == 0 ||
+          (!queue.isEmpty() && now - timeOfLastDropReport < DROP_REPORT_INTERVAL_MS)) {
+        return;
+      }
+
+      timeOfLastDropReport = now;
+      long count = dropped.getAndSet(0);
+      batch.add(Log.Message.newBuilder()
+          .setText("Dropped " + count + " log messages, as they were logged too quickly.")
+          .setProcess("gapic")
+          .setSeverity(Log.Severity.Warning)
+          .setTag(getClass().getSimpleName())
+          .setTime(Timestamp.newBuilder()
+              .setSeconds(now / 1000)
+              .setNanos((int)(now % 1000) * 1000000))
+          .build());
+    }
+  }
+
   /**
    * {@link Handler} that handles {@link LogRecord}s converting them to
-   * {@link com.google.gapid.proto.log.Log.Message}s and then broadcasting them to listeners.
+   * {@link com.google.gapid.proto.log.Log.Message}s and then broadcasting them to listeners. The
+   * record's text is formatted on the logging thread, so it captures the parameters at the time of
+   * logging. The message is created and delivered asynchronously.
    */
   protected static class LogToMessageHandler extends Handler {
     private final SimpleFormatter simpleFormatter = new SimpleFormatter();
@@ -361,22 +570,32 @@ public class Logging {
       }
 
       protosToString(record);
+      String threadName = Thread.currentThread().getName();
+      try {
+        String text = simpleFormatter.formatMessage(record);
+        ingester.add(LogLevel.fromLevel(record.getLevel()).severity,
+            () -> toMessage(record, text, threadName));
+      } catch (RuntimeException e) {
+        reportError(null, e, ErrorManager.FORMAT_FAILURE);
+      }
+    }
 
+    private static Log.Message toMessage(LogRecord record, String text, String threadName) {
       long seconds = record.getMillis() / 1000;
       int millis = (int) (record.getMillis() - seconds * 1000);
 
       Log.Message.Builder builder = Log.Message.newBuilder()
-          .setText(simpleFormatter.formatMessage(record))
+          .setText(text)
           .setProcess("gapic")
           .setSeverity(LogLevel.fromLevel(record.getLevel()).severity)
-          .setTag(getTag(record))
+          .setTag(getTag(record, threadName))
           .setTime(Timestamp.newBuilder().setSeconds(seconds).setNanos(millis * 1000000));
 
       Throwable thrown = record.getThrown();
       if (thrown != null) {
         exceptionToCause(thrown, cause -> builder.addCause(cause));
       }
-      Logging.logMessage(builder.build());
+      return builder.build();
     }
 
     private static void exceptionToCause(Throwable thrown, Consumer<Log.Cause.Builder> addCause) {
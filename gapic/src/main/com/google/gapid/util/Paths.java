@@ -108,6 +108,18 @@ public class Paths {
         .build();
   }
 
+  /**
+   * @return a path to the observed ranges, without the data, of the whole pool after the command.
+   */
+  public static Path.Any observedMemoryAfter(Path.Command after, int pool) {
+    if (after == null) {
+      return null;
+    }
+    return Path.Any.newBuilder().setMemory(Path.Memory.newBuilder()
+        .setAfter(after).setPool(pool).setAddress(0).setSize(-1L).setExcludeData(true))
+        .build();
+  }
+
   public static Path.Any memoryAfter(CommandIndex index, int pool, Service.MemoryRange range) {
     if (index == null || range == null) {
       return null;
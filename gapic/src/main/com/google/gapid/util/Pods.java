@@ -17,6 +17,7 @@ package com.google.gapid.util;
 
 import com.google.common.primitives.UnsignedLong;
 import com.google.gapid.proto.core.pod.Pod;
+import com.google.protobuf.ByteString;
 
 /**
  * Plain-Old-Data utilities.
@@ -243,8 +244,12 @@ public class Pods {
   }
 
   public static byte[] getBytes(Pod.Value pod) {
+    return getByteString(pod).toByteArray();
+  }
+
+  public static ByteString getByteString(Pod.Value pod) {
     switch (pod.getValCase()) {
-      case UINT8_ARRAY: return pod.getUint8Array().toByteArray();
+      case UINT8_ARRAY: return pod.getUint8Array();
       default:
         throw new RuntimeException("Don't know how to get bytes out of " + pod.getValCase());
     }
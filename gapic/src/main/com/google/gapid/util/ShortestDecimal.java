@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.util;
+
+import java.math.BigInteger;
+
+/**
+ * Formats floating point values as the shortest decimal that rounds back to the same value, in
+ * the same notation as {@link Double#toString(double)}. Before JDK 19, {@link Double#toString}
+ * and {@link Float#toString} may produce more digits than needed (JDK-4511638).
+ *
+ * The decimal is computed with integer arithmetic only, using the Schubfach algorithm by
+ * Raffaello Giulietti ("The Schubfach way to render doubles"), which is also used by JDK 19.
+ * Of the shortest decimals that round to the value, the one closest to it is chosen. Values are
+ * appended to the given {@link StringBuilder} without allocating intermediate objects.
+ */
+public class ShortestDecimal {
+  private static final int DOUBLE_P = 53;
+  private static final int DOUBLE_Q_MIN = -1074;
+  private static final long DOUBLE_C_MIN = 1L << (DOUBLE_P - 1);
+  // Subnormal significands below this are scaled by 10, so that the result has at least 2 digits.
+  private static final long DOUBLE_C_TINY = 3;
+
+  private static final int FLOAT_P = 24;
+  private static final int FLOAT_Q_MIN = -149;
+  private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+  private static final int FLOAT_C_TINY = 8;
+
+  // The range of the decimal exponents k, for which 10^-k is tabulated in G.
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+  private static final long MASK_63 = (1L << 63) - 1;
+  private static final long MASK_32 = (1L << 32) - 1;
+
+  // Pairs of the high and low 63 bits of g(k) = floor(10^-k * 2^(125 - flog2pow10(-k))) + 1.
+  private static final long[] G = computeG();
+  private static final long[] POWERS_OF_TEN = computePowersOfTen();
+
+  private ShortestDecimal() {
+  }
+
+  public static StringBuilder append(StringBuilder out, float value) {
+    int bits = Float.floatToRawIntBits(value);
+    int t = bits & (FLOAT_C_MIN - 1);
+    int bq = (bits >>> (FLOAT_P - 1)) & 0xFF;
+    if (bq == 0xFF) {
+      return out.append((t != 0) ? "NaN" : (bits > 0) ? "Infinity" : "-Infinity");
+    } else if (bits < 0) {
+      out.append('-');
+    }
+
+    if (bq != 0) {
+      // Normal value, c * 2^-mq.
+      int mq = -FLOAT_Q_MIN + 1 - bq;
+      int c = FLOAT_C_MIN | t;
+      if (0 < mq && mq < FLOAT_P) {
+        int f = c >> mq;
+        if (f << mq == c) {
+          // Small integers are their own shortest decimal.
+          return appendDecimal(out, f, 0);
+        }
+      }
+      return appendFloat(out, -mq, c, 0);
+    } else if (t != 0) {
+      return (t < FLOAT_C_TINY) ?
+          appendFloat(out, FLOAT_Q_MIN, 10 * t, -1) : appendFloat(out, FLOAT_Q_MIN, t, 0);
+    }
+    return out.append("0.0");
+  }
+
+  public static StringBuilder append(StringBuilder out, double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    long t = bits & (DOUBLE_C_MIN - 1);
+    int bq = (int)(bits >>> (DOUBLE_P - 1)) & 0x7FF;
+    if (bq == 0x7FF) {
+      return out.append((t != 0) ? "NaN" : (bits > 0) ? "Infinity" : "-Infinity");
+    } else if (bits < 0) {
+      out.append('-');
+    }
+
+    if (bq != 0) {
+      // Normal value, c * 2^-mq.
+      int mq = -DOUBLE_Q_MIN + 1 - bq;
+      long c = DOUBLE_C_MIN | t;
+      if (0 < mq && mq < DOUBLE_P) {
+        long f = c >> mq;
+        if (f << mq == c) {
+          // Small integers are their own shortest decimal.
+          return appendDecimal(out, f, 0);
+        }
+      }
+      return appendDouble(out, -mq, c, 0);
+    } else if (t != 0) {
+      return (t < DOUBLE_C_TINY) ?
+          appendDouble(out, DOUBLE_Q_MIN, 10 * t, -1) : appendDouble(out, DOUBLE_Q_MIN, t, 0);
+    }
+    return out.append("0.0");
+  }
+
+  public static String toString(float value) {
+    return append(new StringBuilder(), value).toString();
+  }
+
+  public static String toString(double value) {
+    return append(new StringBuilder(), value).toString();
+  }
+
+  /**
+   * Appends the shortest decimal of the positive value c * 2^q. The rounding interval of the
+   * value is scaled by 4 * 10^-k, so that its bounds and the candidate decimals s * 10^k and
+   * (s + 1) * 10^k can be compared as integers. See figures 7 and 9 of the paper.
+   *
+   * @param dk the correction of the decimal exponent, if c has been scaled by 10.
+   */
+  private static StringBuilder appendDouble(StringBuilder out, int q, long c, int dk) {
+    // Whether the bounds of the rounding interval are excluded, i.e. c is odd.
+    int excl = (int)c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != DOUBLE_C_MIN | q == DOUBLE_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      // The interval is narrower below powers of two.
+      cbl = cb - 1;
+      k = flog10ThreeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+
+    long g1 = G[2 * (k - K_MIN)], g0 = G[2 * (k - K_MIN) + 1];
+    long vb = roundToOdd(g1, g0, cb << h);
+    long vbl = roundToOdd(g1, g0, cbl << h);
+    long vbr = roundToOdd(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      // Try one digit less first: s' * 10^(k+1) and (s' + 1) * 10^(k+1), with s' = s / 10.
+      long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + excl <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + excl <= vbr;
+      if (upin != wpin) {
+        return appendDecimal(out, upin ? sp10 : tp10, k);
+      }
+    }
+
+    long t = s + 1;
+    boolean uin = vbl + excl <= s << 2;
+    boolean win = (t << 2) + excl <= vbr;
+    if (uin != win) {
+      return appendDecimal(out, uin ? s : t, k + dk);
+    }
+    // Both are within the interval, pick the closer one, or the even one on ties.
+    long cmp = vb - ((s + t) << 1);
+    return appendDecimal(out, (cmp < 0 || (cmp == 0 && (s & 0x1) == 0)) ? s : t, k + dk);
+  }
+
+  /**
+   * Same as {@link #appendDouble(StringBuilder, int, long, int)}, but with the precision of a
+   * float, which only requires the high 63 bits of g.
+   */
+  private static StringBuilder appendFloat(StringBuilder out, int q, int c, int dk) {
+    int excl = c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != FLOAT_C_MIN | q == FLOAT_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10ThreeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 33;
+
+    long g = G[2 * (k - K_MIN)] + 1;
+    int vb = roundToOdd(g, cb << h);
+    int vbl = roundToOdd(g, cbl << h);
+    int vbr = roundToOdd(g, cbr << h);
+
+    int s = vb >> 2;
+    if (s >= 100) {
+      int sp10 = 10 * (int)((s * 1_717_986_919L) >>> 34);
+      int tp10 = sp10 + 10;
+      boolean upin = vbl + excl <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + excl <= vbr;
+      if (upin != wpin) {
+        return appendDecimal(out, upin ? sp10 : tp10, k);
+      }
+    }
+
+    int t = s + 1;
+    boolean uin = vbl + excl <= s << 2;
+    boolean win = (t << 2) + excl <= vbr;
+    if (uin != win) {
+      return appendDecimal(out, uin ? s : t, k + dk);
+    }
+    int cmp = vb - ((s + t) << 1);
+    return appendDecimal(out, (cmp < 0 || (cmp == 0 && (s & 0x1) == 0)) ? s : t, k + dk);
+  }
+
+  /**
+   * @return g * cp / 2^127, with g = g1 * 2^63 + g0, rounded to odd.
+   */
+  private static long roundToOdd(long g1, long g0, long cp) {
+    long x1 = multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+  }
+
+  /**
+   * @return g * cp / 2^95 rounded to odd.
+   */
+  private static int roundToOdd(long g, long cp) {
+    long x1 = multiplyHigh(g, cp);
+    long vbp = x1 >>> 31;
+    return (int)(vbp | (((x1 & MASK_32) + MASK_32) >>> 32));
+  }
+
+  /**
+   * @return the high 64 bits of the 128 bit product of the signed values, as Math.multiplyHigh of
+   * JDK 9.
+   */
+  private static long multiplyHigh(long x, long y) {
+    long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+    long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+    long z2 = x2 * y2;
+    long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
+  }
+
+  /**
+   * @return floor(log10(2^e)) for |e| <= 5456721.
+   */
+  private static int flog10pow2(int e) {
+    return (int)((e * 661_971_961_083L) >> 41);
+  }
+
+  /**
+   * @return floor(log10(3/4 * 2^e)) for |e| <= 5456721.
+   */
+  private static int flog10ThreeQuartersPow2(int e) {
+    return (int)((e * 661_971_961_083L - 274_743_187_321L) >> 41);
+  }
+
+  /**
+   * @return floor(log2(10^e)) for |e| <= 1838394.
+   */
+  private static int flog2pow10(int e) {
+    return (int)((e * 913_124_641_741L) >> 38);
+  }
+
+  /**
+   * Appends the positive decimal f * 10^e in the notation of {@link Double#toString(double)}:
+   * plain for values in [10^-3, 10^7), computerized scientific notation otherwise.
+   */
+  private static StringBuilder appendDecimal(StringBuilder out, long f, int e) {
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+    int length = 1;
+    while (length < POWERS_OF_TEN.length && f >= POWERS_OF_TEN[length]) {
+      length++;
+    }
+    // The exponent of the first digit.
+    int exponent = e + length - 1;
+
+    if (exponent >= -3 && exponent < 7) {
+      if (exponent < 0) {
+        out.append("0.");
+        for (int i = -1; i > exponent; i--) {
+          out.append('0');
+        }
+        appendDigits(out, f, length, 0, length);
+      } else if (exponent + 1 >= length) {
+        appendDigits(out, f, length, 0, length);
+        for (int i = length; i <= exponent; i++) {
+          out.append('0');
+        }
+        out.append(".0");
+      } else {
+        appendDigits(out, f, length, 0, exponent + 1);
+        out.append('.');
+        appendDigits(out, f, length, exponent + 1, length);
+      }
+    } else {
+      appendDigits(out, f, length, 0, 1);
+      out.append('.');
+      if (length > 1) {
+        appendDigits(out, f, length, 1, length);
+      } else {
+        out.append('0');
+      }
+      out.append('E').append(exponent);
+    }
+    return out;
+  }
+
+  /**
+   * Appends the digits [from, to) of the given number of the given length, counted from the most
+   * significant digit.
+   */
+  private static void appendDigits(StringBuilder out, long f, int length, int from, int to) {
+    for (int i = from; i < to; i++) {
+      out.append((char)('0' + (f / POWERS_OF_TEN[length - 1 - i]) % 10));
+    }
+  }
+
+  private static long[] computeG() {
+    long[] result = new long[2 * (K_MAX - K_MIN + 1)];
+    BigInteger mask63 = BigInteger.valueOf(MASK_63);
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      int shift = 125 - flog2pow10(-k);
+      BigInteger g;
+      if (k <= 0) {
+        BigInteger pow = BigInteger.TEN.pow(-k);
+        g = (shift >= 0) ? pow.shiftLeft(shift) : pow.shiftRight(-shift);
+      } else {
+        g = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+      }
+      g = g.add(BigInteger.ONE);
+      result[2 * (k - K_MIN)] = g.shiftRight(63).longValueExact();
+      result[2 * (k - K_MIN) + 1] = g.and(mask63).longValueExact();
+    }
+    return result;
+  }
+
+  private static long[] computePowersOfTen() {
+    long[] result = new long[19];
+    result[0] = 1;
+    for (int i = 1; i < result.length; i++) {
+      result[i] = 10 * result[i - 1];
+    }
+    return result;
+  }
+}
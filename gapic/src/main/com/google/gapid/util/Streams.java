@@ -102,6 +102,25 @@ public class Streams {
           .setSampling(LINEAR))
       .build();
 
+  public static final Stream.Format FMT_RGBA_HALF = Stream.Format.newBuilder()
+      .addComponents(Stream.Component.newBuilder()
+          .setChannel(Stream.Channel.Red)
+          .setDataType(F16)
+          .setSampling(LINEAR))
+      .addComponents(Stream.Component.newBuilder()
+          .setChannel(Stream.Channel.Green)
+          .setDataType(F16)
+          .setSampling(LINEAR))
+      .addComponents(Stream.Component.newBuilder()
+          .setChannel(Stream.Channel.Blue)
+          .setDataType(F16)
+          .setSampling(LINEAR))
+      .addComponents(Stream.Component.newBuilder()
+          .setChannel(Stream.Channel.Alpha)
+          .setDataType(F16)
+          .setSampling(LINEAR))
+      .build();
+
   public static final Stream.Format FMT_LUMINANCE_FLOAT = Stream.Format.newBuilder()
       .addComponents(Stream.Component.newBuilder()
           .setChannel(Stream.Channel.Luminance)
@@ -109,6 +128,13 @@ public class Streams {
           .setSampling(LINEAR))
       .build();
 
+  public static final Stream.Format FMT_LUMINANCE_HALF = Stream.Format.newBuilder()
+      .addComponents(Stream.Component.newBuilder()
+          .setChannel(Stream.Channel.Luminance)
+          .setDataType(F16)
+          .setSampling(LINEAR))
+      .build();
+
   public static final Stream.Format FMT_DEPTH_U8_NORM = Stream.Format.newBuilder()
       .addComponents(Stream.Component.newBuilder()
           .setChannel(Stream.Channel.Depth)
@@ -17,6 +17,7 @@ package com.google.gapid.util;
 
 import com.google.gapid.proto.service.Service;
 import com.google.gapid.proto.service.api.API;
+import com.google.protobuf.ByteString;
 
 /**
  * Utility functions to deal with {@code Service.Value} protos.
@@ -32,8 +33,15 @@ public class Values {
   }
 
   public static byte[] getBytes(Service.Value value) {
+    return getByteString(value).toByteArray();
+  }
+
+  /**
+   * Returns the bytes of the given value without making a copy.
+   */
+  public static ByteString getByteString(Service.Value value) {
     switch (value.getValCase()) {
-      case BOX: return Boxes.getBytes(value.getBox());
+      case BOX: return Boxes.getByteString(value.getBox());
       default:
         throw new RuntimeException("Don't know how to get bytes out of " + value.getValCase());
     }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.views;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.gapid.models.CommandTextIndex;
+import com.google.gapid.proto.service.Service;
+import com.google.gapid.proto.service.path.Path;
+import com.google.gapid.server.Client;
+import com.google.gapid.util.Scheduler;
+
+/**
+ * A search of the command tree for the commands and groups matching a query. The nodes covered by
+ * the {@link CommandTextIndex} are searched locally, the rest of the tree by a single server
+ * search, so the matches arrive in tree order. The server's result stream is consumed in the
+ * background, a page at a time.
+ */
+public class CommandSearch extends TreeSearch<Path.CommandTreeNode> {
+  // Number of results requested from the server at a time.
+  private static final int PAGE_SIZE = 1000;
+
+  private final Client client;
+  private final CommandTextIndex index;
+  private final Path.CommandTreeNode root;
+  private final String text;
+  private final boolean regex;
+
+  public CommandSearch(Client client, CommandTextIndex index, Path.CommandTreeNode root,
+      String text, boolean regex, Listener listener) {
+    super(listener);
+    this.client = client;
+    this.index = index;
+    this.root = root;
+    this.text = text;
+    this.regex = regex;
+  }
+
+  /**
+   * @return whether this search is for the given query within the given tree.
+   */
+  public boolean isSearchFor(Path.CommandTreeNode otherRoot, String otherText, boolean otherRegex) {
+    return root.getTree().equals(otherRoot.getTree()) && text.equals(otherText) &&
+        regex == otherRegex;
+  }
+
+  /**
+   * Starts searching the text index in the background, then consumes the server's results for
+   * the part of the tree after the nodes the index covers.
+   */
+  @Override
+  public void start() {
+    if (index == null) {
+      requestPage(root);
+      return;
+    }
+    Futures.addCallback(Scheduler.EXECUTOR.submit(() -> index.find(text, regex)),
+        new FutureCallback<CommandTextIndex.Result>() {
+      @Override
+      public void onSuccess(CommandTextIndex.Result result) {
+        if (result == null) {
+          requestPage(root);
+        } else if (result.unindexedAfter == null) {
+          setMatches(result.matches);
+        } else {
+          for (long[] match : result.matches) {
+            addMatch(match);
+          }
+          setKnownUntil(result.unindexedAfter);
+          notifyUpdated();
+          requestPage(toPath(result.unindexedAfter));
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        setFailed(t);
+      }
+    });
+  }
+
+  /**
+   * Requests the next page of results after the given node.
+   */
+  private void requestPage(Path.CommandTreeNode from) {
+    Service.FindRequest request = Service.FindRequest.newBuilder()
+        .setCommandTreeNode(from)
+        .setText(text)
+        .setIsRegex(regex)
+        .setMaxItems(PAGE_SIZE)
+        .build();
+    int[] received = { 0 };
+    long[][] last = { null };
+    Futures.addCallback(client.streamSearch(request, result -> {
+      received[0]++;
+      last[0] = toArray(result.getCommandTreeNode().getIndicesList());
+      addMatch(last[0]);
+    }), new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void ignored) {
+        // Continue the search after the last match, which the server skips.
+        onPageDone((received[0] >= PAGE_SIZE) ? last[0] : null);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        setFailed(t);
+      }
+    });
+  }
+
+  private void onPageDone(long[] last) {
+    if (last == null) {
+      setComplete();
+    } else if (!isCancelled()) {
+      requestPage(toPath(last));
+      notifyUpdated();
+    }
+  }
+
+  @Override
+  protected Path.CommandTreeNode toPath(long[] indices) {
+    Path.CommandTreeNode.Builder result = root.toBuilder().clearIndices();
+    for (long idx : indices) {
+      result.addIndices(idx);
+    }
+    return result.build();
+  }
+}
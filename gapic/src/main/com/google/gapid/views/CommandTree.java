@@ -27,7 +27,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.SettableFuture;
 import com.google.gapid.models.Analytics.View;
 import com.google.gapid.models.ApiContext;
 import com.google.gapid.models.ApiContext.FilteringContext;
@@ -42,12 +41,7 @@ import com.google.gapid.proto.service.Service;
 import com.google.gapid.proto.service.Service.ClientAction;
 import com.google.gapid.proto.service.api.API;
 import com.google.gapid.proto.service.path.Path;
-import com.google.gapid.rpc.Rpc;
-import com.google.gapid.rpc.RpcException;
-import com.google.gapid.rpc.SingleInFlight;
-import com.google.gapid.rpc.UiCallback;
 import com.google.gapid.server.Client;
-import com.google.gapid.util.Events;
 import com.google.gapid.util.Loadable;
 import com.google.gapid.util.Messages;
 import com.google.gapid.util.SelectionHandler;
@@ -56,7 +50,6 @@ import com.google.gapid.widgets.LinkifiedTreeWithImages;
 import com.google.gapid.widgets.LoadableImage;
 import com.google.gapid.widgets.LoadableImageWidget;
 import com.google.gapid.widgets.LoadablePanel;
-import com.google.gapid.widgets.SearchBox;
 import com.google.gapid.widgets.Widgets;
 
 import org.eclipse.jface.viewers.TreePath;
@@ -73,10 +66,10 @@ import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.Shell;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -91,7 +84,7 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
   private final LoadablePanel<Tree> loading;
   protected final Tree tree;
   private final SelectionHandler<Control> selectionHandler;
-  private final SingleInFlight searchController = new SingleInFlight();
+  private final TreeSearchBar<Path.CommandTreeNode, CommandSearch> searchBar;
 
   public CommandTree(Composite parent, Client client, Models models, Widgets widgets) {
     super(parent, SWT.NONE);
@@ -100,11 +93,32 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
 
     setLayout(new GridLayout(1, false));
 
-    SearchBox search = new SearchBox(this, false);
+    searchBar = new TreeSearchBar<>(this, new TreeSearchBar.Callback<Path.CommandTreeNode>() {
+      @Override
+      public void search(String text, boolean regex) {
+        CommandTree.this.search(text, regex);
+      }
+
+      @Override
+      public List<Long> getSelectedIndices() {
+        return CommandTree.this.getSelectedIndices();
+      }
+
+      @Override
+      public ListenableFuture<TreePath> getTreePath(Path.CommandTreeNode match) {
+        return CommandTree.this.getTreePath(
+            models.commands.getData(), Lists.newArrayList(), match.getIndicesList().iterator());
+      }
+
+      @Override
+      public void select(TreePath path) {
+        CommandTree.this.select(path);
+      }
+    });
     loading = LoadablePanel.create(this, widgets, p -> new Tree(p, models, widgets));
     tree = loading.getContents();
 
-    search.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+    searchBar.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
     loading.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 
     models.capture.addListener(this);
@@ -118,8 +132,6 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
       models.thumbs.removeListener(this);
     });
 
-    search.addListener(Events.Search, e -> search(e.text, (e.detail & Events.REGEX) != 0));
-
     selectionHandler = new SelectionHandler<Control>(LOG, tree.getControl()) {
       @Override
       protected void updateModel(Event e) {
@@ -133,6 +145,7 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
             models.commands.selectCommands(index, false);
           }
         }
+        searchBar.onSelectionChanged();
       }
     };
 
@@ -173,48 +186,34 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
     }, true);
   }
 
+  /**
+   * Steps to the next match of the given query, starting a new search if the query differs from
+   * the current one.
+   */
   private void search(String text, boolean regex) {
     models.analytics.postInteraction(View.Commands, ClientAction.Search);
-    CommandStream.Node parent = models.commands.getData();
-    if (parent != null && !text.isEmpty()) {
-      CommandStream.Node selection = tree.getSelection();
-      if (selection != null) {
-        parent = selection;
-      }
-      searchController.start().listen(
-          Futures.transformAsync(search(searchRequest(parent, text, regex)),
-              r -> getTreePath(models.commands.getData(), Lists.newArrayList(),
-                  r.getCommandTreeNode().getIndicesList().iterator())),
-          new UiCallback<TreePath, TreePath>(tree, LOG) {
-        @Override
-        protected TreePath onRpcThread(Rpc.Result<TreePath> result)
-            throws RpcException, ExecutionException {
-          return result.get();
-        }
-
-        @Override
-        protected void onUiThread(TreePath result) {
-          select(result);
-        }
-      });
+    CommandStream.Node root = models.commands.getData();
+    if (root == null || text.isEmpty()) {
+      searchBar.setSearch(null);
+      return;
     }
-  }
 
-  private static Service.FindRequest searchRequest(
-      CommandStream.Node parent, String text, boolean regex) {
-    return Service.FindRequest.newBuilder()
-        .setCommandTreeNode(parent.getPath(Path.CommandTreeNode.newBuilder()))
-        .setText(text)
-        .setIsRegex(regex)
-        .setMaxItems(1)
-        .setWrap(true)
-        .build();
+    Path.CommandTreeNode rootPath = root.getPath(Path.CommandTreeNode.newBuilder()).build();
+    CommandSearch search = searchBar.getSearch();
+    if (search == null || search.isFailed() || !search.isSearchFor(rootPath, text, regex)) {
+      search = new CommandSearch(
+          client, models.commands.getTextIndex(), rootPath, text, regex, searchBar);
+      searchBar.setSearch(search);
+      search.start();
+      searchBar.updateStatus();
+    }
+    searchBar.navigate(false);
   }
 
-  private ListenableFuture<Service.FindResponse> search(Service.FindRequest request) {
-    SettableFuture<Service.FindResponse> result = SettableFuture.create();
-    client.streamSearch(request, result::set);
-    return result;
+  private List<Long> getSelectedIndices() {
+    CommandStream.Node selection = tree.getSelection();
+    return (selection == null) ? Collections.emptyList() :
+        selection.getPath(Path.CommandTreeNode.newBuilder()).getIndicesList();
   }
 
   protected void select(TreePath path) {
@@ -246,11 +245,17 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
   @Override
   public void onCommandsLoaded() {
     updateTree(false);
+    if (models.settings.indexAllCommands) {
+      models.commands.indexAll();
+    }
   }
 
   @Override
   public void onCommandsSelected(CommandIndex index) {
-    selectionHandler.updateSelectionFromModel(() -> getTreePath(index).get(), tree::setSelection);
+    selectionHandler.updateSelectionFromModel(() -> getTreePath(index).get(), path -> {
+      tree.setSelection(path);
+      searchBar.onSelectionChanged();
+    });
   }
 
   @Override
@@ -269,6 +274,7 @@ public class CommandTree extends Composite implements Tab, Capture.Listener, Com
   }
 
   private void updateTree(boolean assumeLoading) {
+    searchBar.setSearch(null);
     if (assumeLoading || !models.commands.isLoaded()) {
       loading.startLoading();
       tree.setInput(null);
@@ -31,16 +31,24 @@ import static java.util.Collections.emptyList;
 import static java.util.logging.Level.WARNING;
 
 import com.google.common.collect.Lists;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.gapid.glviewer.Geometry;
 import com.google.gapid.glviewer.GeometryScene;
 import com.google.gapid.glviewer.camera.CylindricalCameraModel;
 import com.google.gapid.glviewer.camera.IsoSurfaceCameraModel;
+import com.google.gapid.glviewer.geo.BoundingVolumeHierarchy;
 import com.google.gapid.glviewer.geo.Model;
-import com.google.gapid.glviewer.geo.ObjWriter;
+import com.google.gapid.glviewer.geo.MeshExporter;
+import com.google.gapid.glviewer.geo.Simplifier;
 import com.google.gapid.models.Analytics.View;
 import com.google.gapid.models.Capture;
 import com.google.gapid.models.CommandStream;
@@ -59,8 +67,10 @@ import com.google.gapid.rpc.UiErrorCallback;
 import com.google.gapid.server.Client;
 import com.google.gapid.server.Client.DataUnavailableException;
 import com.google.gapid.util.Loadable;
+import com.google.gapid.util.LoggingCallback;
 import com.google.gapid.util.Messages;
 import com.google.gapid.util.Paths;
+import com.google.gapid.util.Scheduler;
 import com.google.gapid.util.Streams;
 import com.google.gapid.widgets.DialogBase;
 import com.google.gapid.widgets.LoadablePanel;
@@ -72,6 +82,7 @@ import com.google.protobuf.ByteString;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Combo;
@@ -82,17 +93,19 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.ToolBar;
 import org.eclipse.swt.widgets.ToolItem;
+import org.lwjgl.BufferUtils;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.ByteBuffer;
+import java.io.File;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
@@ -117,6 +130,10 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
           .setFormat(Streams.FMT_XYZ_F32))
       .build();
   private static final Stringtable.Msg NO_MESH_ERR = Strings.create("ERR_MESH_NOT_AVAILABLE");
+  // Models with more triangles are rendered at a reduced level of detail during interactions.
+  private static final int LOD_MAX_TRIANGLES = 100000;
+  // Mouse moves within this many milliseconds are coalesced into a single pick.
+  private static final int HOVER_PICK_DELAY_MS = 30;
 
   private final Client client;
   private final Models models;
@@ -124,16 +141,25 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
   protected final LoadablePanel<ScenePanel<GeometryScene.Data>> loading;
   protected final ScenePanel<GeometryScene.Data> canvas;
   private final Label statusBar;
+  private final Label exportStatus;
   protected GeometryScene.Data data = GeometryScene.Data.DEFAULTS;
   private final IsoSurfaceCameraModel camera =
       new IsoSurfaceCameraModel(new CylindricalCameraModel());
   private ToolItem originalModelItem, facetedModelItem;
   private VertexSemantics vertexSemantics;
   private Model originalModel, facetedModel;
+  private final MeshCache meshCache = new MeshCache();
+  // Keyed by model identity and only kept while the model is in use.
+  private final Cache<Model, ListenableFuture<Model>> lods =
+      CacheBuilder.newBuilder().weakKeys().build();
   private Geometry.DisplayMode displayMode = Geometry.DisplayMode.TRIANGLES;
   private Geometry.DisplayMode desiredDisplayMode = Geometry.DisplayMode.TRIANGLES;
   private ToolItem renderAsTriangles, renderAsLines, renderAsPoints;
   private ToolItem configureItem, saveItem;
+  private ListenableFuture<Void> export;
+  private final Geometry.Picker picker = new Geometry.Picker();
+  private int hoverX, hoverY;
+  private boolean hoverPickPending;
 
   public GeometryView(Composite parent, Client client, Models models, Widgets widgets) {
     super(parent, SWT.NONE);
@@ -149,18 +175,31 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
         panel -> new ScenePanel<GeometryScene.Data>(panel, scene));
     canvas = loading.getContents();
     scene.bindCamera(canvas);
-    statusBar = createLabel(content, "");
+    canvas.addMouseMoveListener(e -> {
+      if ((e.stateMask & SWT.BUTTON_MASK) == 0) {
+        schedulePick(e.x, e.y);
+      }
+    });
+    Composite status = createComposite(content, withMargin(new GridLayout(2, false), 0, 0));
+    statusBar = createLabel(status, "");
+    exportStatus = createLabel(status, "");
+    exportStatus.setCursor(getDisplay().getSystemCursor(SWT.CURSOR_HAND));
+    exportStatus.addListener(SWT.MouseUp, e -> cancelExport());
 
     toolbar.setLayoutData(new GridData(SWT.LEFT, SWT.FILL, false, true));
     content.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
     loading.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
-    statusBar.setLayoutData(new GridData(SWT.FILL, SWT.BOTTOM, true, false));
+    status.setLayoutData(new GridData(SWT.FILL, SWT.BOTTOM, true, false));
+    statusBar.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+    exportStatus.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false));
+    setExportStatus(null);
 
     models.capture.addListener(this);
     models.commands.addListener(this);
     addListener(SWT.Dispose, e -> {
       models.capture.removeListener(this);
       models.commands.removeListener(this);
+      cancelExport();
     });
 
     originalModelItem.setEnabled(false);
@@ -177,7 +216,8 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
       boolean zUp = !data.geometry.zUp;
       models.analytics.postInteraction(View.Geometry, zUp ? ClientAction.ZUp : ClientAction.YUp);
       ((ToolItem)e.widget).setImage(zUp ? theme.zUp() : theme.yUp());
-      setSceneData(data.withGeometry(new Geometry(data.geometry.model, zUp), displayMode));
+      setSceneData(data.withGeometry(
+          new Geometry(data.geometry.model, data.geometry.lod, zUp), displayMode));
     }, "Toggle Y/Z up");
     createToolItem(bar, theme.windingCCW(), e -> {
       boolean cw = data.winding == GeometryScene.Winding.CCW; // cw represent the new value.
@@ -246,20 +286,23 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
       models.analytics.postInteraction(View.Geometry, ClientAction.Save);
       FileDialog dialog = new FileDialog(getShell(), SWT.SAVE);
       dialog.setText("Save model to...");
-      dialog.setFilterNames(new String[] { "OBJ Files (*.obj)" });
-      dialog.setFilterExtensions(new String[] { "*.obj" });
+      MeshExporter.Format[] formats = MeshExporter.Format.values();
+      dialog.setFilterNames(
+          Arrays.stream(formats).map(f -> f.filterName).toArray(String[]::new));
+      dialog.setFilterExtensions(
+          Arrays.stream(formats).map(f -> "*." + f.extension).toArray(String[]::new));
       dialog.setOverwrite(true);
-      String objFile = dialog.open();
-      if (objFile != null) {
-        try (Writer out = new FileWriter(objFile)) {
-          ObjWriter.write(out, originalModelItem.getSelection() ? originalModel : facetedModel);
-        } catch (IOException ex) {
-          LOG.log(WARNING, "Failed to save model as OBJ", e);
-          showErrorDialog(getShell(), models.analytics,
-              "Failed to save model as OBJ:\n  " + ex.getMessage(), ex);
+      String path = dialog.open();
+      if (path != null) {
+        MeshExporter.Format format = MeshExporter.Format.fromFileName(path);
+        if (format == null) {
+          format = formats[Math.max(0, dialog.getFilterIndex())];
+          path += "." + format.extension;
         }
+        export(originalModelItem.getSelection() ? originalModel : facetedModel,
+            new File(path), format);
       }
-    }, "Save model as OBJ");
+    }, "Save model as OBJ, PLY or glTF");
     return bar;
   }
 
@@ -275,6 +318,7 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
 
   @Override
   public void onCaptureLoadingStart(boolean maintainState) {
+    meshCache.clear();
     updateModels(true);
   }
 
@@ -322,15 +366,14 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
 
     loading.startLoading();
 
-    rpcController.start().listen(Futures.transformAsync(fetchMeshMetadata(command, vertexSemantics),
-        semantics -> {
-          ListenableFuture<Model> originalFuture = fetchModel(
-              meshAfter(command, semantics.getOptions().build(), POS_NORM_XYZ_F32));
-          ListenableFuture<Model> facetedFuture = fetchModel(meshAfter(
-              command, semantics.getOptions().setFaceted(true).build(), POS_NORM_XYZ_F32));
-          return Futures.transform(Futures.successfulAsList(originalFuture, facetedFuture),
-              modelList -> new ModelLoadResult(semantics, modelList, originalFuture));
-        }), new UiErrorCallback<ModelLoadResult, ModelLoadResult, String>(this, LOG) {
+    ListenableFuture<ModelLoadResult> result = Futures.transformAsync(
+        fetchMeshMetadata(command, vertexSemantics),
+        semantics -> Futures.transformAsync(meshCache.get(
+            meshAfter(command, semantics.getOptions().build(), POS_NORM_XYZ_F32), this::fetchMesh),
+            meshes -> Futures.transform(meshes.getModels(),
+                modelList -> new ModelLoadResult(semantics, modelList, meshes.originalFuture))));
+    rpcController.start().listen(result,
+        new UiErrorCallback<ModelLoadResult, ModelLoadResult, String>(this, LOG) {
       @Override
       protected ResultOrError<ModelLoadResult, String> onRpcThread(Rpc.Result<ModelLoadResult> result)
           throws RpcException, ExecutionException {
@@ -350,12 +393,6 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
           }
           // Should not get here, the future cannot both fail and succeed.
           throw new AssertionError("Future both failed and succeeded");
-        } else if (modelList.get(0) != null && modelList.get(0).getNormals() == null) {
-          // The original model has no normals, but the geometry doesn't support faceted normals.
-          return success(loadResult.clearNthModel(0));
-        } else if (modelList.get(0) != null && !isPolygon(modelList.get(0).getPrimitive())) {
-          // TODO: if gapis returns an error for the faceted request, this is not needed.
-          return success(loadResult.clearNthModel(1));
         } else {
           return success(loadResult);
         }
@@ -375,48 +412,24 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
 
   private ListenableFuture<VertexSemantics> fetchMeshMetadata(
       CommandIndex command, VertexSemantics currentSemantics) {
-    return Futures.transform(client.get(meshAfter(command, Paths.NODATA_MESH_OPTIONS)),
-        value -> new VertexSemantics(value.getMesh(), currentSemantics));
+    return Futures.transform(meshCache.getMetadata(meshAfter(command, Paths.NODATA_MESH_OPTIONS),
+        path -> Futures.transform(client.get(path), value -> value.getMesh())),
+        mesh -> new VertexSemantics(mesh, currentSemantics));
   }
 
-  private ListenableFuture<Model> fetchModel(Path.Any path) {
-    return Futures.transformAsync(client.get(path), value -> fetchModel(value.getMesh()));
+  private ListenableFuture<MeshData> fetchMesh(Path.Any path) {
+    return Futures.transform(client.get(path), value -> new MeshData(value.getMesh()));
   }
 
-  private static ListenableFuture<Model> fetchModel(API.Mesh mesh) {
-    Vertex.Buffer vb = mesh.getVertexBuffer();
-    float[] positions = null;
-    float[] normals = null;
-
-    for (Vertex.Stream stream : vb.getStreamsList()) {
-      switch (stream.getSemantic().getType()) {
-        case Position:
-          positions = byteStringToFloatArray(stream.getData());
-          break;
-        case Normal:
-          normals = byteStringToFloatArray(stream.getData());
-          break;
-        default:
-          // Ignore.
-      }
-    }
-
-    API.DrawPrimitive primitive = mesh.getDrawPrimitive();
-    if (positions == null || (normals == null && isPolygon(primitive))) {
-      return Futures.immediateFailedFuture(
-          new DataUnavailableException(NO_MESH_ERR, new Client.Stack(() -> "")));
-    }
-
-    int[] indices = mesh.getIndexBuffer().getIndicesList().stream().mapToInt(x -> x).toArray();
-    Model model = new Model(primitive, mesh.getStats(), positions, normals, indices);
-    return Futures.immediateFuture(model);
+  private static FloatBuffer byteStringToFloatBuffer(ByteString bytes) {
+    return bytes.asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
   }
 
-  private static float[] byteStringToFloatArray(ByteString bytes) {
-    byte[] data = bytes.toByteArray();
-    FloatBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
-    float[] out = new float[data.length / 4];
-    buffer.get(out);
+  private static IntBuffer indexBufferToIntBuffer(API.IndexBuffer indexBuffer) {
+    IntBuffer out = BufferUtils.createIntBuffer(indexBuffer.getIndicesCount());
+    for (int i = 0; i < out.limit(); i++) {
+      out.put(i, indexBuffer.getIndices(i));
+    }
     return out;
   }
 
@@ -432,6 +445,7 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
 
     originalModel = modelList.get(0);
     facetedModel = modelList.get(1);
+    cancelLods(originalModel, facetedModel);
     loading.stopLoading();
     originalModelItem.setEnabled(originalModel != null);
     facetedModelItem.setEnabled(facetedModel != null);
@@ -480,6 +494,173 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
 
     setSceneData(data.withGeometry(new Geometry(model, data.geometry.zUp), displayMode));
     statusBar.setText(model.getStatusMessage());
+    loadLod(model);
+    if (!model.hasBoundingVolumeHierarchy()) {
+      Scheduler.EXECUTOR.execute(model::getBoundingVolumeHierarchy);
+    }
+  }
+
+  /**
+   * Exports the given model in the background, showing the progress next to the status bar.
+   * Starting another export cancels the current one.
+   */
+  private void export(Model model, File file, MeshExporter.Format format) {
+    cancelExport();
+    setExportStatus("Saving model...");
+    ListenableFuture<Void> future = MeshExporter.export(model, file, format, (done, total) ->
+        Widgets.scheduleIfNotDisposed(exportStatus, () -> {
+          if (export != null && !export.isDone()) {
+            setExportStatus("Saving model: " + (100L * done / total) + "% (click to cancel)");
+          }
+        }));
+    export = future;
+    Rpc.listen(future, new UiErrorCallback<Void, Boolean, Exception>(this, LOG) {
+      @Override
+      protected ResultOrError<Boolean, Exception> onRpcThread(Rpc.Result<Void> result) {
+        try {
+          result.get();
+          return success(true);
+        } catch (RpcException | ExecutionException e) {
+          LOG.log(WARNING, "Failed to save model to " + file, e);
+          return error(e);
+        }
+      }
+
+      @Override
+      protected void onUiThreadSuccess(Boolean result) {
+        onExportDone(future);
+      }
+
+      @Override
+      protected void onUiThreadError(Exception error) {
+        if (onExportDone(future)) {
+          Throwable cause = (error.getCause() != null) ? error.getCause() : error;
+          showErrorDialog(getShell(), models.analytics,
+              "Failed to save model as " + format + ":\n  " + cause.getMessage(), cause);
+        }
+      }
+    });
+  }
+
+  /**
+   * @return whether the given export was the current one, rather than one that was cancelled.
+   */
+  private boolean onExportDone(ListenableFuture<Void> future) {
+    if (export != future) {
+      return false;
+    }
+    export = null;
+    setExportStatus(null);
+    return true;
+  }
+
+  private void cancelExport() {
+    if (export != null) {
+      export.cancel(true);
+      export = null;
+    }
+    setExportStatus(null);
+  }
+
+  /**
+   * Shows the given export progress message, or hides it if the message is null.
+   */
+  private void setExportStatus(String message) {
+    if (exportStatus.isDisposed()) {
+      return;
+    }
+    ((GridData)exportStatus.getLayoutData()).exclude = message == null;
+    exportStatus.setVisible(message != null);
+    exportStatus.setText(message == null ? "" : message);
+    exportStatus.requestLayout();
+  }
+
+  /**
+   * Picks at the given canvas location shortly, together with any further mouse moves until then,
+   * rather than picking on the UI thread for every single mouse move.
+   */
+  private void schedulePick(int x, int y) {
+    hoverX = x;
+    hoverY = y;
+    if (!hoverPickPending) {
+      hoverPickPending = true;
+      Widgets.scheduleIfNotDisposed(canvas, HOVER_PICK_DELAY_MS, () -> {
+        hoverPickPending = false;
+        pick(hoverX, hoverY);
+      });
+    }
+  }
+
+  /**
+   * Shows the triangle and vertex of the displayed model under the given canvas location in the
+   * status bar. Does nothing until the model's hierarchy has been built in the background.
+   */
+  private void pick(int x, int y) {
+    Model model = data.geometry.model;
+    if (model == null || !model.hasBoundingVolumeHierarchy()) {
+      return;
+    }
+
+    Point size = canvas.getSize();
+    if (size.x <= 0 || size.y <= 0) {
+      return;
+    }
+    BoundingVolumeHierarchy.Hit hit = picker.pick(
+        data.geometry, camera, 2.0 * x / size.x - 1, 1 - 2.0 * y / size.y);
+    if (hit == null) {
+      statusBar.setText(model.getStatusMessage());
+      return;
+    }
+
+    int vertex = model.getIndices().get(
+        Model.getTriangleIndex(model.getPrimitive(), hit.triangle, hit.getClosestCorner()));
+    FloatBuffer positions = model.getPositions();
+    statusBar.setText(String.format("%s | Triangle %d, vertex %d: (%g, %g, %g)",
+        model.getStatusMessage(), hit.triangle, vertex, positions.get(3 * vertex + 0),
+        positions.get(3 * vertex + 1), positions.get(3 * vertex + 2)));
+  }
+
+  /**
+   * Simplifies the given model in the background, adding the reduced level of detail version to
+   * the scene once available, if the model is still displayed.
+   */
+  private void loadLod(Model model) {
+    ListenableFuture<Model> future = lods.asMap().computeIfAbsent(model,
+        m -> Scheduler.EXECUTOR.submit(() -> Simplifier.simplify(m, LOD_MAX_TRIANGLES)));
+    Futures.addCallback(future, new LoggingCallback<Model>(LOG) {
+      @Override
+      public void onSuccess(Model lod) {
+        if (lod != null) {
+          Widgets.scheduleIfNotDisposed(canvas, () -> {
+            if (data.geometry.model == model && data.geometry.lod == null) {
+              setSceneData(data.withGeometry(data.geometry.withLod(lod), displayMode));
+            }
+          });
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (!(t instanceof CancellationException)) {
+          super.onFailure(t);
+        }
+      }
+    });
+  }
+
+  /**
+   * Cancels the level of detail simplifications still running for models other than the given
+   * ones, which are no longer displayed. Completed levels of detail stay cached with their model.
+   */
+  private void cancelLods(Model keep, Model alsoKeep) {
+    for (Iterator<Map.Entry<Model, ListenableFuture<Model>>> it =
+        lods.asMap().entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Model, ListenableFuture<Model>> entry = it.next();
+      if (entry.getKey() != keep && entry.getKey() != alsoKeep && !entry.getValue().isDone()) {
+        entry.getValue().cancel(true);
+        it.remove();
+      }
+    }
   }
 
   private void updateRenderable() {
@@ -500,6 +681,226 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
     }
   }
 
+  /**
+   * The decoded vertex data of a mesh, from which the original and faceted models are created.
+   */
+  private static class MeshData {
+    // Number of triangles faceted by each task.
+    private static final int FACET_CHUNK_SIZE = 1 << 15;
+
+    public final API.DrawPrimitive primitive;
+    public final API.Mesh.Stats stats;
+    public final FloatBuffer positions;
+    public final FloatBuffer normals;
+    public final IntBuffer indices;
+    // Identifies the mesh by its content.
+    public final HashCode hash;
+
+    public MeshData(API.Mesh mesh) {
+      FloatBuffer meshPositions = null, meshNormals = null;
+      for (Vertex.Stream stream : mesh.getVertexBuffer().getStreamsList()) {
+        switch (stream.getSemantic().getType()) {
+          case Position:
+            meshPositions = byteStringToFloatBuffer(stream.getData());
+            break;
+          case Normal:
+            meshNormals = byteStringToFloatBuffer(stream.getData());
+            break;
+          default:
+            // Ignore.
+        }
+      }
+
+      this.primitive = mesh.getDrawPrimitive();
+      this.stats = mesh.getStats();
+      this.positions = meshPositions;
+      this.normals = meshNormals;
+      this.indices = indexBufferToIntBuffer(mesh.getIndexBuffer());
+      this.hash = hash();
+    }
+
+    private HashCode hash() {
+      Hasher hasher = Hashing.murmur3_128().newHasher()
+          .putInt(primitive.getNumber())
+          .putInt(stats.hashCode());
+      for (FloatBuffer values : new FloatBuffer[] { positions, normals }) {
+        hasher.putInt((values == null) ? -1 : values.limit());
+        for (int i = 0; values != null && i < values.limit(); i++) {
+          hasher.putInt(Float.floatToRawIntBits(values.get(i)));
+        }
+      }
+      hasher.putInt(indices.limit());
+      for (int i = 0; i < indices.limit(); i++) {
+        hasher.putInt(indices.get(i));
+      }
+      return hasher.hash();
+    }
+
+    /**
+     * @return the approximate number of bytes used by the models of this mesh.
+     */
+    public long getSize() {
+      long floats = ((positions == null) ? 0 : positions.limit()) +
+          ((normals == null) ? 0 : normals.limit());
+      // Faceted models have 18 floats and 3 indices per triangle.
+      long faceted = (positions == null || !isPolygon(primitive)) ? 0 :
+          21L * Model.getTriangleCount(primitive, indices.limit());
+      return 4 * (floats + indices.limit() + faceted);
+    }
+
+    public ListenableFuture<Model> createModel() {
+      if (positions == null || (normals == null && isPolygon(primitive))) {
+        return noMesh();
+      }
+      return Futures.immediateFuture(new Model(primitive, stats, positions, normals, indices));
+    }
+
+    /**
+     * @return the model with each shared vertex split and flat normals, equivalent to the
+     * server's faceted mesh. The triangles are faceted in parallel chunks.
+     */
+    public ListenableFuture<Model> createFacetedModel() {
+      if (positions == null || !isPolygon(primitive)) {
+        return noMesh();
+      }
+
+      int triangles = Model.getTriangleCount(primitive, indices.limit());
+      float[] facetedPositions = new float[9 * triangles];
+      float[] facetedNormals = new float[9 * triangles];
+      List<ListenableFuture<?>> chunks = Lists.newArrayList();
+      for (int from = 0; from < triangles; from += FACET_CHUNK_SIZE) {
+        int start = from, end = Math.min(triangles, from + FACET_CHUNK_SIZE);
+        chunks.add(Scheduler.EXECUTOR.submit(() -> Model.facet(
+            primitive, positions, indices, start, end, facetedPositions, facetedNormals)));
+      }
+
+      return Futures.transform(Futures.allAsList(chunks), ignored -> {
+        int[] facetedIndices = new int[3 * triangles];
+        for (int i = 0; i < facetedIndices.length; i++) {
+          facetedIndices[i] = i;
+        }
+        return new Model(API.DrawPrimitive.Triangles, stats,
+            facetedPositions, facetedNormals, facetedIndices);
+      });
+    }
+
+    private static ListenableFuture<Model> noMesh() {
+      return Futures.immediateFailedFuture(
+          new DataUnavailableException(NO_MESH_ERR, new Client.Stack(() -> "")));
+    }
+  }
+
+  /**
+   * The original and faceted models of a mesh, created in the background.
+   */
+  private static class Meshes {
+    public final ListenableFuture<Model> originalFuture;
+    private final ListenableFuture<Model> facetedFuture;
+    private final ListenableFuture<List<Model>> models;
+    public final int size;
+
+    public Meshes(MeshData data) {
+      // The faceted model is derived from the original mesh on the client, rather than
+      // requesting and transferring the mesh a second time.
+      this.originalFuture = Futures.dereference(Scheduler.EXECUTOR.submit(data::createModel));
+      this.facetedFuture =
+          Futures.dereference(Scheduler.EXECUTOR.submit(data::createFacetedModel));
+      this.models = Futures.successfulAsList(originalFuture, facetedFuture);
+      this.size = (int)Math.min(Integer.MAX_VALUE, data.getSize());
+    }
+
+    /**
+     * @return the original and faceted models, {@code null} where creating them failed. Cancelling
+     * the returned future does not cancel the shared creation of the models.
+     */
+    public ListenableFuture<List<Model>> getModels() {
+      return Futures.nonCancellationPropagating(models);
+    }
+
+    /**
+     * @return whether creating the models has been cancelled or failed for a reason other than
+     * the mesh missing the required data, which may not happen again when retried.
+     */
+    public boolean isFailed() {
+      return isFailed(originalFuture) || isFailed(facetedFuture);
+    }
+
+    private static boolean isFailed(ListenableFuture<Model> future) {
+      if (future.isCancelled()) {
+        return true;
+      }
+      try {
+        Futures.getDone(future);
+        return false;
+      } catch (ExecutionException e) {
+        return !(e.getCause() instanceof DataUnavailableException);
+      }
+    }
+  }
+
+  /**
+   * Bounded cache of the models of meshes. Meshes are looked up by their path, which includes the
+   * vertex format, and are shared by their content. Thus, revisiting a draw call, or selecting
+   * another draw call that draws the same vertex and index data, reuses the models, ready to be
+   * uploaded, along with their level of detail and bounding volume hierarchy. The content hash
+   * stands in for the identity of the vertex and index buffers, which meshes do not expose.
+   */
+  private static class MeshCache {
+    private static final int MAX_PATHS = 1024;
+    private static final long MAX_SIZE = 512 << 20;
+
+    private final Cache<Path.Any, API.Mesh> metadata =
+        CacheBuilder.newBuilder().maximumSize(MAX_PATHS).build();
+    private final Cache<Path.Any, HashCode> paths =
+        CacheBuilder.newBuilder().maximumSize(MAX_PATHS).build();
+    private final Cache<HashCode, Meshes> meshes = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_SIZE)
+        .weigher((HashCode hash, Meshes value) -> value.size)
+        .build();
+
+    public ListenableFuture<API.Mesh> getMetadata(
+        Path.Any path, Function<Path.Any, ListenableFuture<API.Mesh>> fetcher) {
+      API.Mesh cached = metadata.getIfPresent(path);
+      if (cached != null) {
+        return Futures.immediateFuture(cached);
+      }
+      return Futures.transform(fetcher.apply(path), mesh -> {
+        metadata.put(path, mesh);
+        return mesh;
+      });
+    }
+
+    public ListenableFuture<Meshes> get(
+        Path.Any path, Function<Path.Any, ListenableFuture<MeshData>> fetcher) {
+      HashCode hash = paths.getIfPresent(path);
+      Meshes cached = (hash == null) ? null : meshes.getIfPresent(hash);
+      if (cached != null) {
+        return Futures.immediateFuture(cached);
+      }
+      return Futures.transform(fetcher.apply(path), data -> {
+        paths.put(path, data.hash);
+        Meshes result = meshes.getIfPresent(data.hash);
+        if (result == null) {
+          Meshes created = result = new Meshes(data);
+          meshes.put(data.hash, created);
+          // Don't keep failed models, so that they are created again on the next request.
+          created.models.addListener(() -> {
+            if (created.isFailed()) {
+              meshes.asMap().remove(data.hash, created);
+            }
+          }, MoreExecutors.directExecutor());
+        }
+        return result;
+      });
+    }
+
+    public void clear() {
+      metadata.invalidateAll();
+      paths.invalidateAll();
+      meshes.invalidateAll();
+    }
+  }
+
   private static class ModelLoadResult {
     public final VertexSemantics semantics;
     public final List<Model> models;
@@ -515,12 +916,6 @@ public class GeometryView extends Composite implements Tab, Capture.Listener, Co
     public ModelLoadResult withoutModels() {
       return new ModelLoadResult(semantics, emptyList(), originalFuture);
     }
-
-    public ModelLoadResult clearNthModel(int n) {
-      List<Model> newModels = Lists.newArrayList(models);
-      newModels.set(n, null);
-      return new ModelLoadResult(semantics, newModels, originalFuture);
-    }
   }
 
   private static class VertexSemantics {
@@ -15,9 +15,22 @@
  */
 package com.google.gapid.views;
 
+import static com.google.gapid.widgets.Widgets.createButton;
+import static com.google.gapid.widgets.Widgets.createComposite;
+import static com.google.gapid.widgets.Widgets.createDropDown;
+import static com.google.gapid.widgets.Widgets.createLabel;
 import static com.google.gapid.widgets.Widgets.createTree;
+import static com.google.gapid.widgets.Widgets.withMargin;
+import static java.util.logging.Level.WARNING;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gapid.proto.log.Log;
+import com.google.gapid.rpc.Rpc;
+import com.google.gapid.rpc.RpcException;
+import com.google.gapid.rpc.UiCallback;
+import com.google.gapid.util.LogSegments;
 import com.google.gapid.util.Logging;
 import com.google.gapid.util.Pods;
 import com.google.gapid.widgets.CopySources;
@@ -27,27 +40,69 @@ import com.google.protobuf.Timestamp;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeColumn;
 import org.eclipse.swt.widgets.TreeItem;
 
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 /**
- * A view that shows log messages.
+ * A view that shows log messages. The messages are shown in a virtual tree, so the tree items of
+ * a message, its causes and stack frames are only created once they are scrolled into view. If the
+ * log is persisted, older messages that are no longer in memory can be paged in from the
+ * {@link LogSegments}.
  */
 public class LogView extends Composite implements Tab {
+  protected static final Logger LOG = Logger.getLogger(LogView.class.getName());
+
+  private static final int MAX_ITEMS = 10000;
+  // Old messages are removed in batches of this size once there are more than MAX_ITEMS.
+  private static final int TRIM_BATCH_SIZE = 1000;
+  // New messages are added to the tree at most this often.
+  private static final int UPDATE_INTERVAL_MS = 100;
+  private static final String ALL_SOURCES = "All Sources";
+  // Number of older messages loaded from the persisted log at a time.
+  private static final int HISTORY_PAGE_SIZE = 1000;
+
   private final Theme theme;
   private final Tree tree;
+  private final Combo severityFilter;
+  private final Combo sourceFilter;
   private final AtomicBoolean dirty = new AtomicBoolean(false);
-  private final int MAX_ITEMS = 10000;
-  private final int MAX_NEW_ITEMS_PER_UPDATE = 100;
+  private final MessageIndex messages = new MessageIndex();
+  private final Set<String> sources = Sets.newHashSet();
+  // Indices of the expanded top level items, so they don't have to be looked up in the tree.
+  private final Set<Integer> expanded = Sets.newHashSet();
+  private final LogSegments segments;
+  private final Button olderButton;
+  private final Label historyStatus;
   private Logging.MessageIterator messageIterator;
+  // The log position of the first message received from the message iterator.
+  private long livePosition = -1;
+  // The view keeps more than MAX_ITEMS messages once older messages have been loaded.
+  private int maxItems = MAX_ITEMS;
+  // The log position before which to load the next page of older messages, or -1 to load the
+  // messages before the oldest message in the view.
+  private long historyPosition = -1;
+  // The most restrictive severity filter used to load the older messages in the view.
+  private Log.Severity historySeverity = null;
+  private ListenableFuture<LogSegments.Page> historyRequest;
 
   private enum Column {
     SEVERITY(0, 35, "Severity"),
@@ -70,23 +125,60 @@ public class LogView extends Composite implements Tab {
     super(parent, SWT.NONE);
     theme = widgets.theme;
 
-    setLayout(new FillLayout(SWT.VERTICAL));
+    setLayout(withMargin(new GridLayout(1, false), 0, 0));
+
+    Composite filters = createComposite(this, new GridLayout(6, false));
+    createLabel(filters, "Severity:");
+    severityFilter = createDropDown(filters);
+    for (Log.Severity severity : Log.Severity.values()) {
+      if (severity != Log.Severity.UNRECOGNIZED) {
+        severityFilter.add(severity.name());
+      }
+    }
+    severityFilter.select(0);
+    createLabel(filters, "Source:");
+    sourceFilter = createDropDown(filters);
+    sourceFilter.add(ALL_SOURCES);
+    sourceFilter.select(0);
+    segments = Logging.getLogSegments();
+    olderButton = (segments == null) ? null : createButton(filters, "Show Older", e -> loadOlder());
+    historyStatus = (segments == null) ? null : createLabel(filters, "");
 
     messageIterator = Logging.getMessageIterator();
 
-    tree = createTree(this, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION);
+    tree = createTree(this,
+        SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.VIRTUAL);
     tree.setHeaderVisible(true);
     tree.setFont(theme.monoSpaceFont());
 
+    filters.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+    tree.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
     for (Column column : Column.values()) {
       TreeColumn treeColumn = new TreeColumn(tree, SWT.LEFT);
       treeColumn.setText(column.name);
       treeColumn.setWidth(column.width);
     }
+    tree.addListener(SWT.SetData, this::materialize);
+    tree.addListener(SWT.Expand, e -> {
+      TreeItem item = (TreeItem)e.item;
+      if (item.getParentItem() == null) {
+        expanded.add(tree.indexOf(item));
+      }
+    });
+    tree.addListener(SWT.Collapse, e -> {
+      TreeItem item = (TreeItem)e.item;
+      if (item.getParentItem() == null) {
+        expanded.remove(tree.indexOf(item));
+      }
+    });
+    severityFilter.addListener(SWT.Selection, e -> updateFilter());
+    sourceFilter.addListener(SWT.Selection, e -> updateFilter());
+
     updateTree();
     Logging.setListener((m) -> {
       if (!dirty.getAndSet(true)) {
-        Widgets.scheduleIfNotDisposed(this, this::updateTree);
+        Widgets.scheduleIfNotDisposed(this, UPDATE_INTERVAL_MS, this::updateTree);
       }
     });
     addListener(SWT.Dispose, e -> Logging.setListener(null));
@@ -101,93 +193,201 @@ public class LogView extends Composite implements Tab {
   }
 
   private void updateTree() {
-    for (int i = 0; i < MAX_NEW_ITEMS_PER_UPDATE; i++) {
-      Log.Message message = messageIterator.next();
-      if (message == null) {
-        // All messages consumed.
-        dirty.set(false);
-        return;
+    dirty.set(false);
+    List<Log.Message> added = Lists.newArrayList();
+    long position = messageIterator.drainTo(added);
+    if (added.isEmpty()) {
+      return;
+    } else if (livePosition < 0) {
+      livePosition = position;
+    }
+
+    tree.setRedraw(false);
+    try {
+      for (Log.Message message : added) {
+        messages.add(message, position++);
+        addSource(message);
       }
-      Log.Severity severity = message.getSeverity();
-      TreeItem item = newItem(tree, severity);
-      String[] lines = message.getText().split("(\r?\n)");
-      item.setText(Column.SEVERITY.index, message.getSeverity().name().substring(0, 1));
-      item.setText(Column.TIME.index, formatTime(message.getTime()));
-      item.setText(Column.PROCESS.index, message.getProcess());
-      item.setText(Column.TEXT.index, lines[0]);
-      // Additional lines
-      for (int l = 1; l < lines.length; l++) {
-        TreeItem line = newItem(item, severity);
-        line.setText(Column.TEXT.index, lines[l]);
+      long oldest = messages.getOldestPosition();
+      int removed = messages.trim(maxItems, TRIM_BATCH_SIZE);
+      if (messages.getOldestPosition() != oldest) {
+        // Continue loading older messages from the new oldest message, without leaving a gap.
+        historyPosition = -1;
       }
+      if (removed > 0) {
+        shiftItems(removed);
+      }
+      tree.setItemCount(messages.getVisibleCount());
+    } finally {
+      tree.setRedraw(true);
+    }
+  }
 
-      boolean groupLabelsRequired = ((lines.length - 1) +
-          (message.getCauseCount() > 0 ? 1 : 0) +
-          (message.getValuesCount() > 0 ? 1 : 0) +
-          (message.getCallstackCount() > 0 ? 1 : 0)) > 1;
-
+  /**
+   * Updates the tree after the given number of visible messages were removed from the front, by
+   * clearing all items, rather than disposing the removed ones one at a time. The expanded items
+   * and the scroll position move up with their messages.
+   */
+  private void shiftItems(int removed) {
+    TreeItem top = tree.getTopItem();
+    int topIndex = (top == null) ? -1 : tree.indexOf(top);
+    List<Integer> shifted = Lists.newArrayList();
+    for (int index : expanded) {
+      tree.getItem(index).setExpanded(false);
+      if (index >= removed) {
+        shifted.add(index - removed);
+      }
+    }
+    expanded.clear();
 
-      if (!message.getTag().isEmpty()) {
-        newItem(item, severity).setText(Column.TEXT.index, message.getTag());
+    tree.setItemCount(messages.getVisibleCount());
+    tree.clearAll(true);
+    for (int index : shifted) {
+      if (index < tree.getItemCount()) {
+        tree.getItem(index).setExpanded(true);
+        expanded.add(index);
       }
-      // Exceptions
-      for (Log.Cause cause : message.getCauseList()) {
-        causeToTreeItem(item, severity, cause);
+    }
+    if (topIndex >= 0 && tree.getItemCount() > 0) {
+      int index = Math.min(topIndex - removed, tree.getItemCount() - 1);
+      tree.setTopItem(tree.getItem(Math.max(0, index)));
+    }
+  }
+
+  private void addSource(Log.Message message) {
+    if (sources.add(message.getProcess())) {
+      sourceFilter.add(message.getProcess());
+    }
+  }
+
+  private Log.Severity getMinSeverity() {
+    return Log.Severity.forNumber(severityFilter.getSelectionIndex());
+  }
+
+  private void updateFilter() {
+    String source = sourceFilter.getText();
+    Log.Severity severity = getMinSeverity();
+    if (historySeverity != null && severity.getNumber() < historySeverity.getNumber()) {
+      // The older messages were loaded with a more restrictive filter, so drop them.
+      messages.removeOlderThan(livePosition);
+      maxItems = MAX_ITEMS;
+      historyPosition = -1;
+      historySeverity = null;
+      olderButton.setEnabled(historyRequest == null || historyRequest.isDone());
+      setHistoryStatus("");
+    }
+    messages.setFilter(severity, ALL_SOURCES.equals(source) ? null : source);
+    tree.setRedraw(false);
+    try {
+      tree.removeAll();
+      expanded.clear();
+      tree.setItemCount(messages.getVisibleCount());
+    } finally {
+      tree.setRedraw(true);
+    }
+  }
+
+  private void loadOlder() {
+    if (historyRequest != null && !historyRequest.isDone()) {
+      return;
+    }
+
+    long before = historyPosition;
+    if (before < 0) {
+      before = messages.getOldestPosition();
+      if (before < 0) {
+        before = messageIterator.getPosition();
       }
-      // Values
-      if (message.getValuesCount() > 0) {
-        TreeItem root = item;
-        if (groupLabelsRequired) {
-          root = newItem(item, severity);
-          root.setText(Column.TEXT.index, "Values");
-        }
-        for (Log.Value value : message.getValuesList()) {
-          TreeItem entry = newItem(root, severity);
-          String name = value.getName();
-          String val = Pods.unpod(value.getValue()).toString();
-          entry.setText(Column.TEXT.index, "  " + name + " = " + val);
+    }
+    Log.Severity severity = getMinSeverity();
+    olderButton.setEnabled(false);
+    historyRequest = segments.query(before, severity, 0, HISTORY_PAGE_SIZE);
+    Rpc.listen(historyRequest, new UiCallback<LogSegments.Page, LogSegments.Page>(this, LOG) {
+      @Override
+      protected LogSegments.Page onRpcThread(Rpc.Result<LogSegments.Page> result)
+          throws RpcException, ExecutionException {
+        try {
+          return result.get();
+        } catch (ExecutionException e) {
+          LOG.log(WARNING, "Failed to load older log messages", e);
+          return null;
         }
       }
-      // Callstack
-      if (message.getCallstackCount() > 0) {
-        TreeItem root = item;
-        if (groupLabelsRequired) {
-          root = newItem(item, severity);
-          root.setText(Column.TEXT.index, "Call Stack");
-        }
-        for (Log.SourceLocation location : message.getCallstackList()) {
-          locationToTreeItem(root, severity, location);
-        }
+
+      @Override
+      protected void onUiThread(LogSegments.Page page) {
+        addOlder(page, severity);
       }
-      while (tree.getItemCount() > MAX_ITEMS) {
-        tree.getTopItem().dispose();
+    });
+  }
+
+  private void addOlder(LogSegments.Page page, Log.Severity severity) {
+    olderButton.setEnabled(page == null || page.hasMore);
+    if (page == null || getMinSeverity().getNumber() < severity.getNumber()) {
+      // The filter was relaxed while the messages were loading, so they are incomplete.
+      return;
+    } else if (historySeverity == null || severity.getNumber() > historySeverity.getNumber()) {
+      historySeverity = severity;
+    }
+    historyPosition = page.next;
+    if (page.truncated) {
+      setHistoryStatus("Older messages were discarded, as the log exceeded its maximum size.");
+    }
+
+    int count = page.messages.size();
+    List<Log.Message> older = Lists.newArrayList(Lists.reverse(page.messages));
+    long[] positions = new long[count];
+    for (int i = 0; i < count; i++) {
+      positions[i] = page.positions[count - 1 - i];
+      addSource(older.get(i));
+    }
+    int added = messages.addOlder(older, positions);
+    maxItems += count;
+
+    tree.setRedraw(false);
+    try {
+      tree.removeAll();
+      expanded.clear();
+      tree.setItemCount(messages.getVisibleCount());
+      if (added < messages.getVisibleCount()) {
+        tree.setTopItem(tree.getItem(added));
       }
+    } finally {
+      tree.setRedraw(true);
     }
-    // Too many new messages to display!
-    // Try again next update.
-    Widgets.scheduleIfNotDisposed(this, this::updateTree);
   }
 
-  private void causeToTreeItem(TreeItem parent, Log.Severity severity, Log.Cause trace) {
-    TreeItem root = newItem(parent, severity);
-    root.setText(3, trace.getMessage());
-    for (Log.SourceLocation location : trace.getCallstackList()) {
-      locationToTreeItem(root, severity, location);
-    }
+  private void setHistoryStatus(String status) {
+    historyStatus.setText(status);
+    historyStatus.requestLayout();
   }
 
-  private void locationToTreeItem(TreeItem parent, Log.Severity severity, Log.SourceLocation loc) {
-    TreeItem line = newItem(parent, severity);
-    String text;
-    if (loc.getFile().isEmpty()) {
-      text = "Unknon Source";
+  /**
+   * Fills in the given virtual tree item once it becomes visible.
+   */
+  private void materialize(Event e) {
+    TreeItem item = (TreeItem)e.item;
+    TreeItem parent = item.getParentItem();
+    Row row;
+    if (parent == null) {
+      Log.Message message = messages.getVisible(e.index);
+      if (message == null) {
+        return;
+      }
+      row = Row.forMessage(message);
     } else {
-      text = loc.getFile() + (loc.getLine() != 0 ? ":" + loc.getLine() : "");
-    }
-    if (!loc.getMethod().isEmpty()) {
-      text = loc.getMethod() + "(" + text + ")";
+      List<Row> siblings = ((Row)parent.getData()).getChildren();
+      if (e.index >= siblings.size()) {
+        return;
+      }
+      row = siblings.get(e.index);
     }
-    line.setText(Column.TEXT.index, "  " + text);
+
+    item.setData(row);
+    item.setBackground(severityBackgroundColor(row.severity));
+    item.setForeground(severityForegroundColor(row.severity));
+    item.setText(row.columns);
+    item.setItemCount(row.getChildCount());
   }
 
   private static String formatTime(Timestamp time) {
@@ -201,20 +401,6 @@ public class LogView extends Composite implements Tab {
     return String.format("%02d:%02d:%02d.%03d", hour, minute, second, millis);
   }
 
-  private TreeItem newItem(Tree parent, Log.Severity severity) {
-    TreeItem item = new TreeItem(parent, 0);
-    item.setBackground(severityBackgroundColor(severity));
-    item.setForeground(severityForegroundColor(severity));
-    return item;
-  }
-
-  private TreeItem newItem(TreeItem parent, Log.Severity severity) {
-    TreeItem item = new TreeItem(parent, 0);
-    item.setBackground(severityBackgroundColor(severity));
-    item.setForeground(severityForegroundColor(severity));
-    return item;
-  }
-
   private Color severityBackgroundColor(Log.Severity severity) {
     switch (severity) {
       case Verbose: return theme.logVerboseBackground();
@@ -243,4 +429,295 @@ public class LogView extends Composite implements Tab {
   public Control getControl() {
     return this;
   }
+
+  /**
+   * The messages shown in the view, together with the filtered subset that is currently visible.
+   */
+  private static class MessageIndex {
+    private final List<Log.Message> all = Lists.newArrayList();
+    // The log positions of the messages in all, see Logging.MessageIterator#getPosition().
+    private long[] positions = new long[1024];
+    // The positions in all of the visible messages, offset by the offset of the first message.
+    private long[] visible = new long[1024];
+    private int visibleCount = 0;
+    private long offset = 0;
+    private Log.Severity minSeverity = Log.Severity.Verbose;
+    private String source = null;
+
+    public MessageIndex() {
+    }
+
+    public void add(Log.Message message, long position) {
+      if (all.size() == positions.length) {
+        positions = Arrays.copyOf(positions, 2 * all.size());
+      }
+      positions[all.size()] = position;
+      long index = offset + all.size();
+      all.add(message);
+      if (matches(message)) {
+        addVisible(index);
+      }
+    }
+
+    private void addVisible(long index) {
+      if (visibleCount == visible.length) {
+        visible = Arrays.copyOf(visible, 2 * visibleCount);
+      }
+      visible[visibleCount++] = index;
+    }
+
+    /**
+     * Adds the given messages, oldest first, before all the current messages.
+     * @return the number of visible messages that were added.
+     */
+    public int addOlder(List<Log.Message> messages, long[] messagePositions) {
+      int count = messages.size();
+      long[] newPositions = new long[Math.max(positions.length, all.size() + count)];
+      System.arraycopy(messagePositions, 0, newPositions, 0, count);
+      System.arraycopy(positions, 0, newPositions, count, all.size());
+      positions = newPositions;
+      all.addAll(0, messages);
+      offset -= count;
+
+      long[] added = new long[count];
+      int addedCount = 0;
+      for (int i = 0; i < count; i++) {
+        if (matches(messages.get(i))) {
+          added[addedCount++] = offset + i;
+        }
+      }
+      long[] newVisible = new long[Math.max(visible.length, visibleCount + addedCount)];
+      System.arraycopy(added, 0, newVisible, 0, addedCount);
+      System.arraycopy(visible, 0, newVisible, addedCount, visibleCount);
+      visible = newVisible;
+      visibleCount += addedCount;
+      return addedCount;
+    }
+
+    /**
+     * Removes the oldest messages once there are more than the given maximum plus batch.
+     * @return the number of visible messages that were removed.
+     */
+    public int trim(int max, int batch) {
+      return (all.size() <= max + batch) ? 0 : remove(all.size() - max);
+    }
+
+    /**
+     * Removes the messages before the given log position.
+     * @return the number of visible messages that were removed.
+     */
+    public int removeOlderThan(long position) {
+      int count = 0;
+      while (count < all.size() && positions[count] < position) {
+        count++;
+      }
+      return remove(count);
+    }
+
+    private int remove(int count) {
+      all.subList(0, count).clear();
+      System.arraycopy(positions, count, positions, 0, all.size());
+      offset += count;
+      int removed = 0;
+      while (removed < visibleCount && visible[removed] < offset) {
+        removed++;
+      }
+      System.arraycopy(visible, removed, visible, 0, visibleCount - removed);
+      visibleCount -= removed;
+      return removed;
+    }
+
+    public void setFilter(Log.Severity newMinSeverity, String newSource) {
+      minSeverity = (newMinSeverity == null) ? Log.Severity.Verbose : newMinSeverity;
+      source = newSource;
+      visibleCount = 0;
+      for (int i = 0; i < all.size(); i++) {
+        if (matches(all.get(i))) {
+          addVisible(offset + i);
+        }
+      }
+    }
+
+    private boolean matches(Log.Message message) {
+      return message.getSeverityValue() >= minSeverity.getNumber() &&
+          (source == null || source.equals(message.getProcess()));
+    }
+
+    public int getVisibleCount() {
+      return visibleCount;
+    }
+
+    public Log.Message getVisible(int index) {
+      return (index < visibleCount) ? all.get((int)(visible[index] - offset)) : null;
+    }
+
+    /**
+     * @return the log position of the oldest message, or -1 if there are no messages.
+     */
+    public long getOldestPosition() {
+      return all.isEmpty() ? -1 : positions[0];
+    }
+  }
+
+  /**
+   * The contents of a single tree item. The rows of a message's lines, causes, values and stack
+   * frames are only created once the message's item is expanded.
+   */
+  private static class Row {
+    public final Log.Severity severity;
+    public final String[] columns;
+    private final Log.Message message;
+    private final Log.Cause cause;
+    private List<Row> children;
+
+    private Row(Log.Severity severity, String[] columns, Log.Message message, Log.Cause cause,
+        List<Row> children) {
+      this.severity = severity;
+      this.columns = columns;
+      this.message = message;
+      this.cause = cause;
+      this.children = children;
+    }
+
+    public static Row forMessage(Log.Message message) {
+      String text = message.getText();
+      int newLine = text.indexOf('\n');
+      String firstLine = (newLine < 0) ? text : text.substring(0, newLine);
+      if (firstLine.endsWith("\r")) {
+        firstLine = firstLine.substring(0, firstLine.length() - 1);
+      }
+      return new Row(message.getSeverity(), new String[] {
+          message.getSeverity().name().substring(0, 1),
+          formatTime(message.getTime()),
+          message.getProcess(),
+          firstLine
+      }, message, null, null);
+    }
+
+    private static Row forText(Log.Severity severity, String text, List<Row> children) {
+      return new Row(severity, new String[] { "", "", "", text }, null, null, children);
+    }
+
+    /**
+     * @return the number of child rows, without creating them.
+     */
+    public int getChildCount() {
+      if (children != null) {
+        return children.size();
+      } else if (message != null) {
+        int lines = getExtraLineCount(message.getText());
+        boolean groupLabelsRequired = isGroupLabelRequired(message, lines);
+        return lines + (message.getTag().isEmpty() ? 0 : 1) + message.getCauseCount() +
+            ((groupLabelsRequired && message.getValuesCount() > 0) ? 1 : message.getValuesCount()) +
+            ((groupLabelsRequired && message.getCallstackCount() > 0) ?
+                1 : message.getCallstackCount());
+      } else if (cause != null) {
+        return cause.getCallstackCount();
+      }
+      return 0;
+    }
+
+    public List<Row> getChildren() {
+      if (children == null) {
+        if (message != null) {
+          children = createChildren(message);
+        } else if (cause != null) {
+          children = Lists.newArrayList();
+          for (Log.SourceLocation location : cause.getCallstackList()) {
+            children.add(forLocation(severity, location));
+          }
+        } else {
+          children = Collections.emptyList();
+        }
+      }
+      return children;
+    }
+
+    private static List<Row> createChildren(Log.Message message) {
+      Log.Severity severity = message.getSeverity();
+      List<Row> result = Lists.newArrayList();
+      String[] lines = message.getText().split("(\r?\n)");
+      // Additional lines
+      for (int l = 1; l < lines.length; l++) {
+        result.add(forText(severity, lines[l], null));
+      }
+
+      boolean groupLabelsRequired = isGroupLabelRequired(message, Math.max(0, lines.length - 1));
+
+      if (!message.getTag().isEmpty()) {
+        result.add(forText(severity, message.getTag(), null));
+      }
+      // Exceptions
+      for (Log.Cause cause : message.getCauseList()) {
+        result.add(new Row(severity, new String[] { "", "", "", cause.getMessage() }, null, cause,
+            null));
+      }
+      // Values
+      if (message.getValuesCount() > 0) {
+        List<Row> values = Lists.newArrayList();
+        for (Log.Value value : message.getValuesList()) {
+          String name = value.getName();
+          String val = Pods.unpod(value.getValue()).toString();
+          values.add(forText(severity, "  " + name + " = " + val, null));
+        }
+        if (groupLabelsRequired) {
+          result.add(forText(severity, "Values", values));
+        } else {
+          result.addAll(values);
+        }
+      }
+      // Callstack
+      if (message.getCallstackCount() > 0) {
+        List<Row> frames = Lists.newArrayList();
+        for (Log.SourceLocation location : message.getCallstackList()) {
+          frames.add(forLocation(severity, location));
+        }
+        if (groupLabelsRequired) {
+          result.add(forText(severity, "Call Stack", frames));
+        } else {
+          result.addAll(frames);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return the number of lines after the first of the given text, ignoring trailing empty
+     * lines, the same as splitting it.
+     */
+    private static int getExtraLineCount(String text) {
+      int end = text.length();
+      while (end > 0 && text.charAt(end - 1) == '\n') {
+        end--;
+        if (end > 0 && text.charAt(end - 1) == '\r') {
+          end--;
+        }
+      }
+      int count = 0;
+      for (int i = text.indexOf('\n'); i >= 0 && i < end; i = text.indexOf('\n', i + 1)) {
+        count++;
+      }
+      return count;
+    }
+
+    private static boolean isGroupLabelRequired(Log.Message message, int extraLines) {
+      return (extraLines +
+          (message.getCauseCount() > 0 ? 1 : 0) +
+          (message.getValuesCount() > 0 ? 1 : 0) +
+          (message.getCallstackCount() > 0 ? 1 : 0)) > 1;
+    }
+
+    private static Row forLocation(Log.Severity severity, Log.SourceLocation loc) {
+      String text;
+      if (loc.getFile().isEmpty()) {
+        text = "Unknon Source";
+      } else {
+        text = loc.getFile() + (loc.getLine() != 0 ? ":" + loc.getLine() : "");
+      }
+      if (!loc.getMethod().isEmpty()) {
+        text = loc.getMethod() + "(" + text + ")";
+      }
+      return forText(severity, "  " + text, null);
+    }
+  }
 }
@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.views;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedLongs;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gapid.proto.service.Service;
+import com.google.gapid.proto.service.path.Path;
+import com.google.gapid.server.Client;
+import com.google.gapid.util.Float16;
+import com.google.gapid.util.Paths;
+import com.google.gapid.util.Scheduler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Searches the observed memory of a pool for a byte pattern or a value. Only the observed ranges
+ * of the pool are fetched, in chunks, a few at a time, and the matches are reported in increasing
+ * address order as the chunks are searched.
+ */
+public class MemorySearch {
+  private static final int CHUNK_SIZE = 0x100000;
+  private static final int MAX_IN_FLIGHT = 4;
+  public static final int MAX_MATCHES = 100000;
+
+  private final Client client;
+  private final Path.Command after;
+  private final int pool;
+  private final Query query;
+  private final Listener listener;
+  private final SettableFuture<Void> result = SettableFuture.create();
+
+  // All of the below are guarded by this.
+  private final Set<ListenableFuture<?>> inFlight = Sets.newHashSet();
+  private final Map<Integer, List<Long>> searched = Maps.newHashMap();
+  private Chunks chunks;
+  private int nextChunk = 0;
+  private int nextToReport = 0;
+  private int matches = 0;
+  private long bytesSearched = 0;
+
+  private MemorySearch(
+      Client client, Path.Command after, int pool, Query query, Listener listener) {
+    this.client = client;
+    this.after = after;
+    this.pool = pool;
+    this.query = query;
+    this.listener = listener;
+  }
+
+  /**
+   * Starts searching the memory of the given pool after the given command. Cancelling the
+   * returned future stops the search.
+   */
+  public static ListenableFuture<Void> search(
+      Client client, Path.Command after, int pool, Query query, Listener listener) {
+    MemorySearch search = new MemorySearch(client, after, pool, query, listener);
+    search.start();
+    return search.result;
+  }
+
+  private void start() {
+    result.addListener(() -> {
+      if (result.isCancelled()) {
+        cancelInFlight();
+      }
+    }, MoreExecutors.directExecutor());
+
+    ListenableFuture<List<Service.MemoryRange>> observed = Futures.transform(
+        client.get(Paths.observedMemoryAfter(after, pool)),
+        value -> merge(value.getMemory().getObservedList()));
+    track(observed);
+    Futures.addCallback(observed, new FutureCallback<List<Service.MemoryRange>>() {
+      @Override
+      public void onSuccess(List<Service.MemoryRange> ranges) {
+        synchronized (MemorySearch.this) {
+          inFlight.remove(observed);
+          chunks = new Chunks(ranges, query.length - 1);
+        }
+        searchNextChunks();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    });
+  }
+
+  private synchronized void track(ListenableFuture<?> future) {
+    inFlight.add(future);
+  }
+
+  private synchronized void cancelInFlight() {
+    for (ListenableFuture<?> future : inFlight) {
+      future.cancel(true);
+    }
+    inFlight.clear();
+  }
+
+  private synchronized void searchNextChunks() {
+    while (!result.isDone() && inFlight.size() < MAX_IN_FLIGHT && chunks.hasNext()) {
+      Chunk chunk = chunks.next();
+      int index = nextChunk++;
+      ListenableFuture<List<Long>> future = Futures.transform(
+          client.get(Paths.memoryAfter(after, pool, chunk.address, chunk.size + chunk.overlap)),
+          value -> chunk.search(value.getMemory(), query), Scheduler.EXECUTOR);
+      inFlight.add(future);
+      Futures.addCallback(future, new FutureCallback<List<Long>>() {
+        @Override
+        public void onSuccess(List<Long> found) {
+          onChunkSearched(future, index, chunk, found);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (!result.isDone()) {
+            result.setException(t);
+            cancelInFlight();
+          }
+        }
+      });
+    }
+
+    if (inFlight.isEmpty() && !chunks.hasNext()) {
+      result.set(null);
+    }
+  }
+
+  private void onChunkSearched(
+      ListenableFuture<?> future, int index, Chunk chunk, List<Long> found) {
+    synchronized (this) {
+      if (result.isDone()) {
+        return;
+      }
+
+      inFlight.remove(future);
+      searched.put(index, found);
+      bytesSearched += chunk.size;
+      // Report the matches in address order, i.e. only once all preceding chunks are done.
+      for (List<Long> next; (next = searched.remove(nextToReport)) != null; nextToReport++) {
+        if (!next.isEmpty()) {
+          if (matches + next.size() >= MAX_MATCHES) {
+            listener.onMatches(next.subList(0, MAX_MATCHES - matches));
+            matches = MAX_MATCHES;
+            result.set(null);
+            cancelInFlight();
+            return;
+          }
+          matches += next.size();
+          listener.onMatches(next);
+        }
+      }
+      listener.onProgress(bytesSearched, chunks.totalSize);
+    }
+    searchNextChunks();
+  }
+
+  /**
+   * Sorts the given ranges and merges adjacent and overlapping ones.
+   */
+  private static List<Service.MemoryRange> merge(List<Service.MemoryRange> ranges) {
+    List<Service.MemoryRange> sorted = Lists.newArrayList(ranges);
+    Collections.sort(sorted, (a, b) -> UnsignedLongs.compare(a.getBase(), b.getBase()));
+    List<Service.MemoryRange> merged = Lists.newArrayList();
+    for (Service.MemoryRange range : sorted) {
+      if (range.getSize() == 0) {
+        continue;
+      }
+      int last = merged.size() - 1;
+      if (last >= 0) {
+        Service.MemoryRange prev = merged.get(last);
+        long prevEnd = prev.getBase() + prev.getSize();
+        if (UnsignedLongs.compare(range.getBase(), prevEnd) <= 0) {
+          long end = range.getBase() + range.getSize();
+          if (UnsignedLongs.compare(end, prevEnd) > 0) {
+            merged.set(last, prev.toBuilder().setSize(end - prev.getBase()).build());
+          }
+          continue;
+        }
+      }
+      merged.add(range);
+    }
+    return merged;
+  }
+
+  /**
+   * Listener notified about the progress of a search.
+   */
+  public static interface Listener {
+    /**
+     * Invoked on a background thread with the next matching addresses. Matches are reported in
+     * increasing address order.
+     */
+    public void onMatches(List<Long> addresses);
+
+    /**
+     * Invoked on a background thread whenever another chunk of memory has been searched.
+     */
+    public void onProgress(long searched, long total);
+  }
+
+  /**
+   * A contiguous range of observed memory that is fetched and searched as one. Chunks also fetch
+   * the overlapping bytes needed to find matches that start within, but end past, the chunk.
+   */
+  private static class Chunk {
+    public final long address;
+    public final int size;
+    public final int overlap;
+
+    public Chunk(long address, int size, int overlap) {
+      this.address = address;
+      this.size = size;
+      this.overlap = overlap;
+    }
+
+    public List<Long> search(Service.Memory memory, Query query) {
+      ByteBuffer data = memory.getData().asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+      List<Long> found = Lists.newArrayList();
+      IntConsumer onMatch = offset -> found.add(address + offset);
+      for (Service.MemoryRange range : merge(memory.getObservedList())) {
+        int from = (int)range.getBase();
+        int to = (int)Math.min(range.getBase() + range.getSize(), data.limit());
+        query.search(data, address, from, to, Math.min(to, size), onMatch);
+      }
+      return found;
+    }
+  }
+
+  /**
+   * Splits the observed ranges of a pool into {@link Chunk chunks}.
+   */
+  private static class Chunks {
+    public final long totalSize;
+    private final List<Service.MemoryRange> ranges;
+    private final int overlap;
+    private int range = 0;
+    private long offset = 0;
+
+    public Chunks(List<Service.MemoryRange> ranges, int overlap) {
+      this.ranges = ranges;
+      this.overlap = overlap;
+      long size = 0;
+      for (Service.MemoryRange r : ranges) {
+        size += r.getSize();
+      }
+      this.totalSize = size;
+    }
+
+    public boolean hasNext() {
+      return range < ranges.size();
+    }
+
+    public Chunk next() {
+      Service.MemoryRange current = ranges.get(range);
+      long left = current.getSize() - offset;
+      int size = (int)Math.min(CHUNK_SIZE, left);
+      Chunk chunk =
+          new Chunk(current.getBase() + offset, size, (int)Math.min(overlap, left - size));
+      offset += size;
+      if (offset >= current.getSize()) {
+        range++;
+        offset = 0;
+      }
+      return chunk;
+    }
+  }
+
+  /**
+   * A search query.
+   */
+  public abstract static class Query {
+    public final int length;
+
+    protected Query(int length) {
+      this.length = length;
+    }
+
+    /**
+     * Reports the offsets of all matches in the given data that start within [from, limit) and end
+     * before to. The data starts at the given base address.
+     */
+    protected abstract void search(
+        ByteBuffer data, long base, int from, int to, int limit, IntConsumer out);
+
+    /**
+     * @return the first offset at or after from, whose address is a multiple of the given size.
+     */
+    protected static int align(long base, int from, int size) {
+      int misalignment = (int)UnsignedLongs.remainder(base + from, size);
+      return (misalignment == 0) ? from : from + size - misalignment;
+    }
+
+    /**
+     * @return a query matching the given bytes.
+     */
+    public static Query bytes(byte[] pattern) {
+      return new BytesQuery(pattern);
+    }
+
+    /**
+     * @return a query matching the size bytes long, little endian, integer value at addresses
+     * aligned to its size.
+     */
+    public static Query integer(long value, int size) {
+      return new IntegerQuery(value, size);
+    }
+
+    /**
+     * @return a query matching 16bit floats within the given tolerance of the value.
+     */
+    public static Query float16(double value, double tolerance) {
+      return new ValueQuery(2, value, tolerance) {
+        @Override
+        protected double get(ByteBuffer data, int offset) {
+          return Float16.shortBitsToFloat(data.getShort(offset) & 0xFFFF);
+        }
+      };
+    }
+
+    /**
+     * @return a query matching 32bit floats within the given tolerance of the value.
+     */
+    public static Query float32(double value, double tolerance) {
+      return new ValueQuery(4, value, tolerance) {
+        @Override
+        protected double get(ByteBuffer data, int offset) {
+          return data.getFloat(offset);
+        }
+      };
+    }
+
+    /**
+     * @return a query matching 64bit floats within the given tolerance of the value.
+     */
+    public static Query float64(double value, double tolerance) {
+      return new ValueQuery(8, value, tolerance) {
+        @Override
+        protected double get(ByteBuffer data, int offset) {
+          return data.getDouble(offset);
+        }
+      };
+    }
+  }
+
+  /**
+   * {@link Query} matching a byte pattern using the Boyer-Moore-Horspool algorithm.
+   */
+  private static class BytesQuery extends Query {
+    private final byte[] pattern;
+    private final int[] shift = new int[256];
+
+    public BytesQuery(byte[] pattern) {
+      super(pattern.length);
+      this.pattern = pattern;
+      Arrays.fill(shift, pattern.length);
+      for (int i = 0; i < pattern.length - 1; i++) {
+        shift[pattern[i] & 0xFF] = pattern.length - 1 - i;
+      }
+    }
+
+    @Override
+    protected void search(
+        ByteBuffer data, long base, int from, int to, int limit, IntConsumer out) {
+      int last = pattern.length - 1;
+      for (int i = from; i < limit && i + last < to; i += shift[data.get(i + last) & 0xFF]) {
+        int j = last;
+        while (j >= 0 && data.get(i + j) == pattern[j]) {
+          j--;
+        }
+        if (j < 0) {
+          out.accept(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * {@link Query} matching an aligned, little endian, integer value.
+   */
+  private static class IntegerQuery extends Query {
+    private final long value;
+    private final long mask;
+
+    public IntegerQuery(long value, int size) {
+      super(size);
+      this.mask = (size == 8) ? -1L : (1L << (8 * size)) - 1;
+      this.value = value & mask;
+    }
+
+    @Override
+    protected void search(
+        ByteBuffer data, long base, int from, int to, int limit, IntConsumer out) {
+      for (int i = align(base, from, length); i < limit && i + length <= to; i += length) {
+        if (get(data, i) == value) {
+          out.accept(i);
+        }
+      }
+    }
+
+    private long get(ByteBuffer data, int offset) {
+      switch (length) {
+        case 2:
+          return data.getShort(offset) & mask;
+        case 4:
+          return data.getInt(offset) & mask;
+        case 8:
+          return data.getLong(offset);
+        default:
+          long result = 0;
+          for (int i = length - 1; i >= 0; i--) {
+            result = (result << 8) | (data.get(offset + i) & 0xFF);
+          }
+          return result;
+      }
+    }
+  }
+
+  /**
+   * {@link Query} matching numerical values, aligned to their size, within a tolerance.
+   */
+  private abstract static class ValueQuery extends Query {
+    private final double value;
+    private final double tolerance;
+
+    public ValueQuery(int length, double value, double tolerance) {
+      super(length);
+      this.value = value;
+      this.tolerance = tolerance;
+    }
+
+    @Override
+    protected void search(
+        ByteBuffer data, long base, int from, int to, int limit, IntConsumer out) {
+      for (int i = align(base, from, length); i < limit && i + length <= to; i += length) {
+        double v = get(data, i);
+        if (v == value || Math.abs(v - value) <= tolerance) {
+          out.accept(i);
+        }
+      }
+    }
+
+    protected abstract double get(ByteBuffer data, int offset);
+  }
+}
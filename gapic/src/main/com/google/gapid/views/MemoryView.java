@@ -21,7 +21,7 @@ import static com.google.gapid.util.Loadable.Message.info;
 import static com.google.gapid.util.Loadable.MessageType.Error;
 import static com.google.gapid.util.Loadable.MessageType.Info;
 import static com.google.gapid.util.Logging.throttleLogRpcError;
-import static com.google.gapid.util.Ranges.memory;
+import static com.google.gapid.widgets.Widgets.createCheckbox;
 import static com.google.gapid.widgets.Widgets.createDropDown;
 import static com.google.gapid.widgets.Widgets.createDropDownViewer;
 import static com.google.gapid.widgets.Widgets.createLabel;
@@ -29,8 +29,8 @@ import static com.google.gapid.widgets.Widgets.ifNotDisposed;
 import static com.google.gapid.widgets.Widgets.scheduleIfNotDisposed;
 import static java.util.Collections.emptyList;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.primitives.UnsignedLong;
 import com.google.common.primitives.UnsignedLongs;
 import com.google.common.util.concurrent.Futures;
@@ -51,6 +51,7 @@ import com.google.gapid.rpc.Rpc;
 import com.google.gapid.rpc.RpcException;
 import com.google.gapid.rpc.SingleInFlight;
 import com.google.gapid.rpc.UiCallback;
+import com.google.gapid.rpc.UiErrorCallback;
 import com.google.gapid.server.Client;
 import com.google.gapid.server.Client.DataUnavailableException;
 import com.google.gapid.util.BigPoint;
@@ -61,6 +62,7 @@ import com.google.gapid.util.LongPoint;
 import com.google.gapid.util.Messages;
 import com.google.gapid.util.MouseAdapter;
 import com.google.gapid.util.Paths;
+import com.google.gapid.util.ShortestDecimal;
 import com.google.gapid.widgets.CopyPaste;
 import com.google.gapid.widgets.CopyPaste.CopyData;
 import com.google.gapid.widgets.CopyPaste.CopySource;
@@ -68,6 +70,7 @@ import com.google.gapid.widgets.InfiniteScrolledComposite;
 import com.google.gapid.widgets.LoadablePanel;
 import com.google.gapid.widgets.Theme;
 import com.google.gapid.widgets.Widgets;
+import com.google.protobuf.ByteString;
 
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.ComboViewer;
@@ -82,25 +85,29 @@ import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
 
-import java.lang.ref.SoftReference;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
@@ -120,6 +127,7 @@ public class MemoryView extends Composite
   private final State uiState = new State();
   private final SingleInFlight rpcController = new SingleInFlight();
   private MemoryDataModel memoryData;
+  private Search search;
 
   public MemoryView(Composite parent, Client client, Models models, Widgets widgets) {
     super(parent, SWT.NONE);
@@ -149,7 +157,8 @@ public class MemoryView extends Composite
     }, widgets);
     setLayout(new GridLayout(1, true));
 
-    selections = new Selections(this, this::setDataType, this::setObservation);
+    selections = new Selections(
+        this, this::setDataType, this::setObservation, this::setDiff, this::search);
     loading = LoadablePanel.create(this, widgets,
         panel -> new InfiniteScrolledComposite(panel, SWT.H_SCROLL | SWT.V_SCROLL, memoryPanel));
     memoryScroll = loading.getContents();
@@ -164,6 +173,7 @@ public class MemoryView extends Composite
       models.capture.removeListener(this);
       models.commands.removeListener(this);
       models.follower.removeListener(this);
+      cancelSearch();
     });
     memoryPanel.registerMouseEvents(memoryScroll, models.analytics);
   }
@@ -187,6 +197,8 @@ public class MemoryView extends Composite
   @Override
   public void onCaptureLoadingStart(boolean maintainState) {
     loading.showMessage(Info, Messages.LOADING_CAPTURE);
+    uiState.setDiffBase(null);
+    selections.setDiffBase(null);
   }
 
   @Override
@@ -241,6 +253,13 @@ public class MemoryView extends Composite
     }
   }
 
+  private void setDiff(boolean enabled) {
+    if (uiState.setDiffBase(enabled ? uiState.commandPath : null)) {
+      selections.setDiffBase(uiState.diffBase);
+      update(getCurrentAddress());
+    }
+  }
+
   private void setObservation(Observation obs) {
     models.analytics.postInteraction(View.Memory, ClientAction.SelectObservation);
     Path.Memory memoryPath = obs.getPath();
@@ -255,6 +274,7 @@ public class MemoryView extends Composite
     }
 
     loading.stopLoading();
+    cancelSearch();
     selections.setPool(uiState.pool);
     memoryData = uiState.createMemoryDataModel(client);
     selections.setDataType(uiState.dataType);
@@ -264,6 +284,108 @@ public class MemoryView extends Composite
     selections.updateSelectedObservation(address);
   }
 
+  private void search(String text, boolean forward) {
+    if (search != null && search.isFor(text, uiState)) {
+      if (!search.matches.isEmpty()) {
+        search.move(forward);
+        showMatch(search);
+      }
+      return;
+    }
+
+    cancelSearch();
+    if (text.isEmpty() || !uiState.isComplete()) {
+      return;
+    }
+
+    MemorySearch.Query query;
+    try {
+      query = uiState.dataType.getSearchQuery(text.trim());
+    } catch (IllegalArgumentException e) {
+      selections.setSearchStatus("Invalid " + uiState.dataType.name() + " value");
+      return;
+    }
+
+    models.analytics.postInteraction(View.Memory, ClientAction.Search);
+    Search current = search = new Search(text, uiState, query.length);
+    current.future = MemorySearch.search(
+        client, uiState.commandPath, uiState.pool, query, new MemorySearch.Listener() {
+      @Override
+      public void onMatches(List<Long> addresses) {
+        scheduleIfNotDisposed(MemoryView.this, () -> {
+          if (search == current) {
+            boolean first = current.matches.isEmpty();
+            current.matches.addAll(addresses);
+            if (first) {
+              current.move(true);
+              showMatch(current);
+            } else {
+              selections.setSearchStatus(current.getStatus());
+            }
+          }
+        });
+      }
+
+      @Override
+      public void onProgress(long searched, long total) {
+        scheduleIfNotDisposed(MemoryView.this, () -> {
+          if (search == current) {
+            current.progress = (total == 0) ? 100 : (int)(100 * searched / total);
+            selections.setSearchStatus(current.getStatus());
+          }
+        });
+      }
+    });
+    selections.setSearchStatus(current.getStatus());
+
+    Rpc.listen(current.future, new UiErrorCallback<Void, Boolean, String>(this, LOG) {
+      @Override
+      protected ResultOrError<Boolean, String> onRpcThread(Rpc.Result<Void> result) {
+        try {
+          result.get();
+          return success(Boolean.TRUE);
+        } catch (RpcException e) {
+          return error(e.getMessage());
+        } catch (ExecutionException e) {
+          throttleLogRpcError(LOG, "Unexpected error searching memory", e);
+          return error(String.valueOf(e.getCause()));
+        }
+      }
+
+      @Override
+      protected void onUiThreadSuccess(Boolean ignored) {
+        if (search == current) {
+          current.done = true;
+          selections.setSearchStatus(current.getStatus());
+        }
+      }
+
+      @Override
+      protected void onUiThreadError(String error) {
+        if (search == current) {
+          current.done = true;
+          selections.setSearchStatus("Search failed: " + error);
+        }
+      }
+    });
+  }
+
+  private void cancelSearch() {
+    if (search != null) {
+      search.future.cancel(true);
+      search = null;
+      selections.setSearchStatus("");
+    }
+  }
+
+  private void showMatch(Search current) {
+    long address = current.matches.get(current.index);
+    goToAddress(address);
+    memoryPanel.setSelection(memoryPanel.model.getSelection(address, current.length));
+    memoryScroll.redraw();
+    selections.setSearchStatus(current.getStatus());
+  }
+
   private void goToAddress(long address) {
     memoryScroll.scrollTo(BigInteger.ZERO, UnsignedLong.fromLongBits(address).bigIntegerValue()
         .divide(BigInteger.valueOf(FixedMemoryModel.BYTES_PER_ROW))
@@ -289,11 +411,14 @@ public class MemoryView extends Composite
     private final Combo typeCombo;
     private final Label obsLabel;
     private final ComboViewer obsCombo;
+    private final Button diff;
+    private final Label searchStatus;
 
     public Selections(Composite parent, Consumer<DataType> dataTypeListener,
-        Consumer<Observation> observationListener) {
+        Consumer<Observation> observationListener, Consumer<Boolean> diffListener,
+        BiConsumer<String, Boolean> searchListener) {
       super(parent, SWT.NONE);
-      setLayout(new GridLayout(6, false));
+      setLayout(new GridLayout(9, false));
 
       createLabel(this, "Pool:").setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
       poolLabel = createLabel(this, "0");
@@ -320,6 +445,28 @@ public class MemoryView extends Composite
 
       obsLabel.setVisible(false);
       obsCombo.getCombo().setVisible(false);
+
+      diff = createCheckbox(this, "Show Changes", false,
+          e -> diffListener.accept(((Button)e.widget).getSelection()));
+      diff.setToolTipText("Highlight the bytes changed since the currently selected command");
+      diff.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+      Text search = new Text(this, SWT.SINGLE | SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
+      search.setMessage("Find value (Enter: next, Shift+Enter: previous)");
+      search.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+      searchStatus = createLabel(this, "");
+      searchStatus.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+      search.addListener(SWT.KeyDown, e -> {
+        if (e.keyCode == SWT.CR || e.keyCode == SWT.KEYPAD_CR) {
+          searchListener.accept(search.getText(), (e.stateMask & SWT.SHIFT) == 0);
+        }
+      });
+      search.addListener(SWT.DefaultSelection, e -> {
+        if (e.detail == SWT.ICON_CANCEL) {
+          searchListener.accept("", true);
+        }
+      });
     }
 
     private ComboViewer createObservationSelector() {
@@ -364,6 +511,18 @@ public class MemoryView extends Composite
       poolLabel.setText(String.valueOf(pool));
       poolLabel.requestLayout();
     }
+
+    public void setDiffBase(Path.Command base) {
+      diff.setSelection(base != null);
+      diff.setText(
+          (base == null) ? "Show Changes" : "Changes Since " + Formatter.commandIndex(base));
+      diff.requestLayout();
+    }
+
+    public void setSearchStatus(String status) {
+      searchStatus.setText(status);
+      searchStatus.requestLayout();
+    }
   }
 
   /**
@@ -375,6 +534,9 @@ public class MemoryView extends Composite
     public int pool = -1;
     public long offset = -1;
     public long lastAddress;
+    public Path.Command diffBase;
+    private PagedMemoryDataModel diffData;
+    private int diffPool;
 
     public State() {
     }
@@ -394,6 +556,15 @@ public class MemoryView extends Composite
       }
     }
 
+    public boolean setDiffBase(Path.Command newDiffBase) {
+      if (!Objects.equal(diffBase, newDiffBase)) {
+        diffBase = newDiffBase;
+        diffData = null;
+        return true;
+      }
+      return false;
+    }
+
     public boolean setDataType(DataType newType) {
       if (dataType != newType) {
         dataType = newType;
@@ -407,14 +578,30 @@ public class MemoryView extends Composite
     }
 
     public MemoryDataModel createMemoryDataModel(Client client) {
-      final Path.Command curcommandPath = commandPath;
-      final int curPool = pool;
-      PagedMemoryDataModel.MemoryFetcher fetcher = (address, count) ->
-          Futures.transform(client.get(Paths.memoryAfter(curcommandPath, curPool, address, count)),
-              value -> value.getMemory());
+      return new PagedMemoryDataModel(
+          fetcher(client, commandPath, pool), offset, lastAddress, getDiffData(client));
+    }
 
+    /**
+     * @return the model of the memory to compare against, which is kept across commands, so its
+     * pages only need to be fetched once.
+     */
+    private PagedMemoryDataModel getDiffData(Client client) {
+      if (diffBase == null || diffBase.equals(commandPath)) {
+        return null;
+      }
+      if (diffData == null || diffPool != pool || diffData.getAddress() != offset) {
+        diffData = new PagedMemoryDataModel(
+            fetcher(client, diffBase, pool), offset, lastAddress, null);
+        diffPool = pool;
+      }
+      return diffData;
+    }
 
-      return new PagedMemoryDataModel(fetcher, offset, lastAddress);
+    private static PagedMemoryDataModel.MemoryFetcher fetcher(
+        Client client, Path.Command command, int pool) {
+      return (address, count) -> Futures.transform(
+          client.get(Paths.memoryAfter(command, pool, address, count)), value -> value.getMemory());
     }
 
     public MemoryModel getMemoryModel(MemoryDataModel data) {
@@ -422,6 +609,52 @@ public class MemoryView extends Composite
     }
   }
 
+  /**
+   * The state of the current memory search.
+   */
+  private static class Search {
+    public final String text;
+    public final DataType dataType;
+    public final Path.Command commandPath;
+    public final int pool;
+    public final int length;
+    public final List<Long> matches = Lists.newArrayList();
+    public ListenableFuture<Void> future;
+    public int index = -1;
+    public int progress = 0;
+    public boolean done = false;
+
+    public Search(String text, State state, int length) {
+      this.text = text;
+      this.dataType = state.dataType;
+      this.commandPath = state.commandPath;
+      this.pool = state.pool;
+      this.length = length;
+    }
+
+    public boolean isFor(String newText, State state) {
+      return text.equals(newText) && dataType == state.dataType &&
+          commandPath.equals(state.commandPath) && pool == state.pool;
+    }
+
+    public void move(boolean forward) {
+      index = (index + (forward ? 1 : matches.size() - 1)) % matches.size();
+    }
+
+    public String getStatus() {
+      if (matches.isEmpty()) {
+        return done ? "No matches" : "Searching... " + progress + "%";
+      }
+      String status = (index + 1) + " of " + matches.size();
+      if (!done) {
+        return status + "+ (" + progress + "%)";
+      } else if (matches.size() >= MemorySearch.MAX_MATCHES) {
+        return status + " (too many matches)";
+      }
+      return status;
+    }
+  }
+
   /**
    * The memory data can be visualized as different atomic data types to ease buffer inspection.
    */
@@ -431,40 +664,156 @@ public class MemoryView extends Composite
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new ByteMemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        return MemorySearch.Query.bytes(parseBytes(text));
+      }
     }, Int16() {
       @Override
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new Int16MemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        return MemorySearch.Query.integer(parseInteger(text, 2), 2);
+      }
     }, Int32() {
       @Override
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new Int32MemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        return MemorySearch.Query.integer(parseInteger(text, 4), 4);
+      }
     }, Int64() {
       @Override
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new Int64MemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        return MemorySearch.Query.integer(parseInteger(text, 8), 8);
+      }
     }, Float16() {
       @Override
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new Float16MemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        double[] value = parseFloat(text, FLOAT16_EPSILON);
+        return MemorySearch.Query.float16(value[0], value[1]);
+      }
     }, Float32() {
       @Override
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new Float32MemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        double[] value = parseFloat(text, FLOAT32_EPSILON);
+        return MemorySearch.Query.float32(value[0], value[1]);
+      }
     }, Float64() {
       @Override
       public MemoryModel getMemoryModel(MemoryDataModel memory) {
         return new Float64MemoryModel(memory);
       }
+
+      @Override
+      public MemorySearch.Query getSearchQuery(String text) {
+        double[] value = parseFloat(text, FLOAT64_EPSILON);
+        return MemorySearch.Query.float64(value[0], value[1]);
+      }
     };
 
+    // Default relative search tolerances, half a unit in the last place.
+    protected static final double FLOAT16_EPSILON = Math.scalb(1.0, -11);
+    protected static final double FLOAT32_EPSILON = Math.scalb(1.0, -24);
+    protected static final double FLOAT64_EPSILON = Math.scalb(1.0, -53);
+
     public abstract MemoryModel getMemoryModel(MemoryDataModel memory);
 
+    /**
+     * @return a search query for the given value, formatted as displayed by this type.
+     * @throws IllegalArgumentException if the given value cannot be parsed.
+     */
+    public abstract MemorySearch.Query getSearchQuery(String text);
+
+    /**
+     * Parses either a quoted ASCII string or a sequence of hex bytes, such as "de ad be ef".
+     */
+    protected static byte[] parseBytes(String text) {
+      if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")) {
+        byte[] result = text.substring(1, text.length() - 1).getBytes(Charset.forName("US-ASCII"));
+        if (result.length == 0) {
+          throw new IllegalArgumentException("Empty search");
+        }
+        return result;
+      }
+
+      String hex = text.replaceAll("\\s+", "");
+      if (hex.startsWith("0x")) {
+        hex = hex.substring(2);
+      }
+      if (hex.isEmpty() || (hex.length() % 2) != 0) {
+        throw new IllegalArgumentException("Invalid hex bytes: " + text);
+      }
+      byte[] result = new byte[hex.length() / 2];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = (byte)Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+      }
+      return result;
+    }
+
+    /**
+     * Parses a signed or unsigned, decimal or hex (0x), integer that fits into size bytes.
+     */
+    protected static long parseInteger(String text, int size) {
+      long value;
+      if (text.startsWith("0x") || text.startsWith("0X")) {
+        value = UnsignedLongs.parseUnsignedLong(text.substring(2), 16);
+      } else if (text.startsWith("-")) {
+        value = Long.parseLong(text);
+      } else {
+        value = UnsignedLongs.parseUnsignedLong(text);
+      }
+
+      if (size < 8) {
+        // Negative values must fit the signed range, others the unsigned range of the type.
+        boolean inRange = text.startsWith("-") ? value >= -(1L << (8 * size - 1)) :
+            (value >>> (8 * size)) == 0;
+        if (!inRange) {
+          throw new IllegalArgumentException("Value out of range: " + text);
+        }
+      }
+      return value;
+    }
+
+    /**
+     * Parses a floating point value with an optional tolerance, such as "1.5~0.01". If no
+     * tolerance is given, the given relative tolerance is used.
+     * @return the value and the absolute tolerance.
+     */
+    protected static double[] parseFloat(String text, double epsilon) {
+      int sep = text.indexOf('~');
+      if (sep < 0) {
+        double value = Double.parseDouble(text);
+        return new double[] { value, Math.abs(value) * epsilon };
+      }
+      return new double[] {
+          Double.parseDouble(text.substring(0, sep).trim()),
+          Math.abs(Double.parseDouble(text.substring(sep + 1).trim()))
+      };
+    }
+
     public static Combo createCombo(Composite parent) {
       Combo combo = createDropDown(parent);
       String[] names = new String[values().length];
@@ -624,6 +973,11 @@ public class MemoryView extends Composite
       selection = null;
     }
 
+    public void setSelection(Selection selection) {
+      this.selection = selection;
+      copyPaste.updateCopyState();
+    }
+
     @Override
     public BigInteger getWidth() {
       return (model == null) ?
@@ -662,6 +1016,11 @@ public class MemoryView extends Composite
         highlight(gc, yOffset, write);
       }
 
+      gc.setBackground(theme.memoryChangedHighlight());
+      for (Selection change : model.getChanges(startRow, endRow, loadable)) {
+        highlight(gc, yOffset, change);
+      }
+
       if (selection != null && selection.isSelectionVisible(startRow, endRow)) {
         gc.setBackground(theme.memorySelectionHighlight());
         highlight(gc, yOffset, selection);
@@ -672,7 +1031,7 @@ public class MemoryView extends Composite
       Iterator<Segment> it = model.getLines(startRow, endRow, loadable);
       for (; it.hasNext(); y += lineHeight) {
         Segment segment = it.next();
-        gc.drawString(new String(segment.array, segment.offset, segment.count), 0, y, true);
+        gc.drawString(segment.toString(), 0, y, true);
       }
     }
 
@@ -727,23 +1086,35 @@ public class MemoryView extends Composite
   }
 
   /**
-   * {@link MemoryDataModel} that requests segments as equally sized pages and maintains a cache of
-   * fetched pages.
+   * {@link MemoryDataModel} that requests segments as equally sized pages and maintains a bounded
+   * cache of fetched pages. The pages ahead of the visible area, in the direction the user is
+   * scrolling, are read ahead of time once the visible pages have been loaded.
    */
   private static class PagedMemoryDataModel implements MemoryDataModel {
     private static final int PAGE_SIZE = 0x10000;
+    private static final long MAX_CACHE_SIZE = 256L * PAGE_SIZE;
+    private static final int MAX_READ_AHEAD = 8;
+    // The read ahead tries to cover this many seconds of scrolling at the current velocity.
+    private static final double READ_AHEAD_SECONDS = 0.5;
 
     private final MemoryFetcher fetcher;
     private final long address;
     private final long lastAddress;
+    private final long lastPage;
+    // The memory to compare against to highlight changes, may be null.
+    private final PagedMemoryDataModel diffBase;
 
-    private final Map<Long, SoftReference<ListenableFuture<Service.Memory>>> cache =
-        Maps.newHashMap();
+    private final PageCache cache = new PageCache(MAX_CACHE_SIZE);
+    private final ScrollTracker scroll = new ScrollTracker();
+    private final AtomicInteger readAheadGeneration = new AtomicInteger();
 
-    public PagedMemoryDataModel(MemoryFetcher fetcher, long address, long lastAddress) {
+    public PagedMemoryDataModel(MemoryFetcher fetcher, long address, long lastAddress,
+        PagedMemoryDataModel diffBase) {
       this.fetcher = fetcher;
       this.address = address;
       this.lastAddress = lastAddress;
+      this.lastPage = getPageForOffset(lastAddress - address);
+      this.diffBase = diffBase;
     }
 
     @Override
@@ -764,14 +1135,21 @@ public class MemoryView extends Composite
       long firstPage = getPageForOffset(offset);
       long lastPage = getPageForOffset(offset + length - 1);
       if (firstPage == lastPage) {
-        return getPage(firstPage, getOffsetInPage(offset), length);
+        ListenableFuture<MemorySegment> page = getPage(firstPage, false);
+        readAhead(firstPage, lastPage, Collections.singletonList(page));
+        return getSegment(page, getOffsetInPage(offset), length);
       }
+      List<ListenableFuture<MemorySegment>> pages = Lists.newArrayList();
       List<ListenableFuture<MemorySegment>> futures = Lists.newArrayList();
-      futures.add(getPage(firstPage, getOffsetInPage(offset), PAGE_SIZE - getOffsetInPage(offset)));
+      pages.add(getPage(firstPage, false));
+      futures.add(getSegment(
+          pages.get(0), getOffsetInPage(offset), PAGE_SIZE - getOffsetInPage(offset)));
       for (long page = firstPage + 1, left = length - PAGE_SIZE + getOffsetInPage(offset);
           page <= lastPage; page++, left -= PAGE_SIZE) {
-        futures.add(getPage(page, 0, (int)Math.min(left, PAGE_SIZE)));
+        pages.add(getPage(page, false));
+        futures.add(getSegment(pages.get(pages.size() - 1), 0, (int)Math.min(left, PAGE_SIZE)));
       }
+      readAhead(firstPage, lastPage, pages);
 
       final int totalLength = length;
       return Futures.transform(
@@ -790,33 +1168,69 @@ public class MemoryView extends Composite
       return (int)Long.remainderUnsigned(offset, PAGE_SIZE);
     }
 
-    private ListenableFuture<MemorySegment> getPage(long page, int offset, int length) {
-      ListenableFuture<Service.Memory> mem = getFromCache(page);
-      if (mem == null) {
-        long base = address + getOffsetForPage(page);
-        mem = fetcher.get(base, (int)UnsignedLongs.min(lastAddress - base, PAGE_SIZE - 1) + 1);
-        addToCache(page, mem);
-      }
-      return Futures.transform(mem, memory -> new MemorySegment(memory).subSegment(offset, length));
+    private static ListenableFuture<MemorySegment> getSegment(
+        ListenableFuture<MemorySegment> page, int offset, int length) {
+      return Futures.transform(page, segment -> segment.subSegment(offset, length));
     }
 
-    private ListenableFuture<Service.Memory> getFromCache(long page) {
-      ListenableFuture<Service.Memory> result = null;
+    private ListenableFuture<MemorySegment> getPage(long page, boolean isReadAhead) {
       synchronized (cache) {
-        SoftReference<ListenableFuture<Service.Memory>> reference = cache.get(page);
-        if (reference != null) {
-          result = reference.get();
-          if (result == null) {
-            cache.remove(page);
+        ListenableFuture<MemorySegment> mem = cache.get(page, isReadAhead);
+        if (mem == null) {
+          long base = address + getOffsetForPage(page);
+          int size = (int)UnsignedLongs.min(lastAddress - base, PAGE_SIZE - 1) + 1;
+          mem = Futures.transform(fetcher.get(base, size), MemorySegment::new);
+          if (diffBase != null) {
+            mem = Futures.transform(Futures.allAsList(mem, diffBase.getPage(page, false)),
+                pages -> pages.get(0).diff(pages.get(1)));
           }
+          cache.put(page, mem, size, isReadAhead);
         }
+        return mem;
       }
-      return result;
     }
 
-    private void addToCache(long page, ListenableFuture<Service.Memory> data) {
+    /**
+     * Updates the read ahead window, given the currently requested pages. Pending read aheads
+     * outside the new window are cancelled, and the pages within it are requested one at a time
+     * once the requested pages have been loaded, so they never compete with them.
+     */
+    private void readAhead(
+        long firstPage, long lastPage, List<ListenableFuture<MemorySegment>> visible) {
+      long from, to;
+      synchronized (scroll) {
+        if (!scroll.update(firstPage, lastPage, System.nanoTime())) {
+          return;
+        }
+        int count = scroll.getReadAheadCount();
+        if (scroll.direction >= 0) {
+          from = Math.min(this.lastPage, lastPage + 1);
+          to = Math.min(this.lastPage, lastPage + count);
+        } else {
+          from = Math.max(0, firstPage - 1);
+          to = Math.max(0, firstPage - count);
+        }
+      }
+
+      int generation = readAheadGeneration.incrementAndGet();
       synchronized (cache) {
-        cache.put(page, new SoftReference<ListenableFuture<Service.Memory>>(data));
+        cache.cancelReadAheads(Math.min(to, firstPage), Math.max(to, lastPage));
+      }
+      if (from > lastPage || from < firstPage) {
+        Futures.successfulAsList(visible).addListener(
+            () -> readAhead(from, to, generation), MoreExecutors.directExecutor());
+      }
+    }
+
+    private void readAhead(long page, long to, int generation) {
+      int step = (to >= page) ? 1 : -1;
+      for (; readAheadGeneration.get() == generation && page != to + step; page += step) {
+        ListenableFuture<MemorySegment> mem = getPage(page, true);
+        if (!mem.isDone()) {
+          long next = page + step;
+          mem.addListener(() -> readAhead(next, to, generation), MoreExecutors.directExecutor());
+          return;
+        }
       }
     }
 
@@ -828,6 +1242,131 @@ public class MemoryView extends Composite
     public interface MemoryFetcher {
       ListenableFuture<Service.Memory> get(long address, long count);
     }
+
+    /**
+     * Least recently used cache of memory pages, bounded by the total size of the pages.
+     */
+    private static class PageCache {
+      private final long maxSize;
+      private final LinkedHashMap<Long, Entry> pages =
+          new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+      private long size = 0;
+
+      public PageCache(long maxSize) {
+        this.maxSize = maxSize;
+      }
+
+      public ListenableFuture<MemorySegment> get(long page, boolean isReadAhead) {
+        Entry entry = pages.get(page);
+        if (entry == null) {
+          return null;
+        } else if (entry.data.isCancelled()) {
+          remove(page);
+          return null;
+        }
+        entry.isReadAhead &= isReadAhead;
+        return entry.data;
+      }
+
+      public void put(
+          long page, ListenableFuture<MemorySegment> data, int dataSize, boolean isReadAhead) {
+        Entry old = pages.put(page, new Entry(data, dataSize, isReadAhead));
+        if (old != null) {
+          size -= old.size;
+        }
+        size += dataSize;
+
+        for (Iterator<Map.Entry<Long, Entry>> it = pages.entrySet().iterator();
+            size > maxSize && it.hasNext(); ) {
+          Map.Entry<Long, Entry> eldest = it.next();
+          if (eldest.getKey() == page) {
+            continue;
+          }
+          it.remove();
+          size -= eldest.getValue().size;
+          eldest.getValue().cancelReadAhead();
+        }
+      }
+
+      /**
+       * Cancels all pending read aheads of pages outside the given (inclusive) range.
+       */
+      public void cancelReadAheads(long from, long to) {
+        for (Iterator<Map.Entry<Long, Entry>> it = pages.entrySet().iterator(); it.hasNext(); ) {
+          Map.Entry<Long, Entry> entry = it.next();
+          long page = entry.getKey();
+          if ((page < from || page > to) && entry.getValue().cancelReadAhead()) {
+            it.remove();
+            size -= entry.getValue().size;
+          }
+        }
+      }
+
+      private void remove(long page) {
+        Entry entry = pages.remove(page);
+        if (entry != null) {
+          size -= entry.size;
+        }
+      }
+
+      private static class Entry {
+        public final ListenableFuture<MemorySegment> data;
+        public final int size;
+        public boolean isReadAhead;
+
+        public Entry(ListenableFuture<MemorySegment> data, int size, boolean isReadAhead) {
+          this.data = data;
+          this.size = size;
+          this.isReadAhead = isReadAhead;
+        }
+
+        /**
+         * @return whether this entry was a pending read ahead and has been cancelled.
+         */
+        public boolean cancelReadAhead() {
+          return isReadAhead && !data.isDone() && data.cancel(true);
+        }
+      }
+    }
+
+    /**
+     * Tracks the direction and velocity, in pages per second, at which the user is scrolling
+     * through the memory to determine how far ahead to read.
+     */
+    private static class ScrollTracker {
+      private static final double SMOOTHING = 0.5;
+
+      private long firstPage = -1, lastPage = -1;
+      private long lastTime;
+      public int direction = 1;
+      private double velocity = 0;
+
+      /**
+       * @return whether the visible pages have changed.
+       */
+      public boolean update(long newFirstPage, long newLastPage, long now) {
+        if (newFirstPage == firstPage && newLastPage == lastPage) {
+          return false;
+        }
+
+        if (firstPage >= 0) {
+          long delta = (newFirstPage != firstPage) ?
+              newFirstPage - firstPage : newLastPage - lastPage;
+          direction = (delta < 0) ? -1 : 1;
+          double seconds = Math.max(1, now - lastTime) / 1e9;
+          velocity = SMOOTHING * velocity + (1 - SMOOTHING) * Math.abs(delta) / seconds;
+        }
+        firstPage = newFirstPage;
+        lastPage = newLastPage;
+        lastTime = now;
+        return true;
+      }
+
+      public int getReadAheadCount() {
+        return (int)Math.max(1,
+            Math.min(MAX_READ_AHEAD, Math.ceil(velocity * READ_AHEAD_SECONDS)));
+      }
+    }
   }
 
   /**
@@ -864,10 +1403,20 @@ public class MemoryView extends Composite
      */
     public Selection[] getWrites(long startRow, long endRow, Loadable loadable);
 
+    /**
+     * @return the selections of the changed bytes within the given range of rows.
+     */
+    public Selection[] getChanges(long startRow, long endRow, Loadable loadable);
+
     /**
      * @return the given selected memory area as copy-paste content.
      */
     public CopyData[] getCopyData(Selection selection);
+
+    /**
+     * @return the selection covering the given number of bytes at the given address.
+     */
+    public Selection getSelection(long address, int length);
   }
 
   /**
@@ -940,7 +1489,6 @@ public class MemoryView extends Composite
       return new Iterator<Segment>() {
         private long pos = startRow;
         private int offset = 0;
-        private final Segment segment = new Segment(null, 0, 0);
 
         @Override
         public boolean hasNext() {
@@ -952,7 +1500,7 @@ public class MemoryView extends Composite
           if (!hasNext()) {
             throw new NoSuchElementException();
           }
-          getLine(segment, memory.subSegment(offset, BYTES_PER_ROW), pos);
+          Segment segment = getLine(memory.subSegment(offset, BYTES_PER_ROW), pos);
           pos++;
           offset += BYTES_PER_ROW;
           return segment;
@@ -965,40 +1513,66 @@ public class MemoryView extends Composite
       };
     }
 
-    protected abstract void getLine(Segment segment, MemorySegment memory, long line);
+    /**
+     * @return the formatted line. The returned segment must not be modified.
+     */
+    protected abstract Segment getLine(MemorySegment memory, long line);
 
     protected abstract IntRange[] getDataRanges();
 
     @Override
     public Selection[] getReads(long startRow, long endRow, Loadable loadable) {
       MemorySegment memory = getMemorySegment(startRow, endRow, loadable);
-      return memory == null || memory.reads == null || memory.reads.isEmpty() ? NO_SELECTIONS
-          : getSelections(memory.reads, (startRow * BYTES_PER_ROW) - memory.offset);
+      return memory == null || memory.reads.isEmpty() ? NO_SELECTIONS
+          : getSelections(memory, startRow, out ->
+              memory.reads.query(memory.offset, memory.offset + memory.length, out));
     }
 
     @Override
     public Selection[] getWrites(long startRow, long endRow, Loadable loadable) {
       MemorySegment memory = getMemorySegment(startRow, endRow, loadable);
-      return memory == null || memory.writes == null || memory.writes.isEmpty() ? NO_SELECTIONS
-          : getSelections(memory.writes, (startRow * BYTES_PER_ROW) - memory.offset);
+      return memory == null || memory.writes.isEmpty() ? NO_SELECTIONS
+          : getSelections(memory, startRow, out ->
+              memory.writes.query(memory.offset, memory.offset + memory.length, out));
+    }
+
+    @Override
+    public Selection[] getChanges(long startRow, long endRow, Loadable loadable) {
+      MemorySegment memory = getMemorySegment(startRow, endRow, loadable);
+      return memory == null || memory.changed == null ? NO_SELECTIONS
+          : getSelections(memory, startRow, memory::getChanges);
     }
 
-    private Selection[] getSelections(List<Service.MemoryRange> operation, long offset) {
+    /**
+     * @return the selections of the data relative memory ranges reported by the given query.
+     */
+    private Selection[] getSelections(
+        MemorySegment memory, long startRow, Consumer<RangeIndex.RangeConsumer> query) {
+      long offset = (startRow * BYTES_PER_ROW) - memory.offset;
       IntRange[] ranges = getDataRanges();
-      Selection[] shapes = new Selection[operation.size() * ranges.length];
-      for (int ri = 0; ri < ranges.length; ri++) {
-        for (int oi = 0; oi < operation.size(); oi++) {
-          Service.MemoryRange memoryRange = operation.get(oi);
-          long startOffset = offset + memoryRange.getBase();
-          int startCol = getColForOffset(ranges[ri], startOffset, true);
-          long endOffset = offset + memoryRange.getBase() + memoryRange.getSize();
-          int endCol = getColForOffset(ranges[ri], endOffset, false);
-          shapes[ri * operation.size() + oi] = new Selection(ranges[ri], startCol,
-              Long.divideUnsigned(startOffset, BYTES_PER_ROW), endCol,
-              Long.divideUnsigned(endOffset, BYTES_PER_ROW));
+      List<Selection> shapes = Lists.newArrayList();
+      query.accept((start, end) -> {
+        // Clip the ranges to the segment, since they may extend past the visible rows.
+        long startOffset = offset + Math.max(start, memory.offset);
+        long endOffset = offset + Math.min(end, memory.offset + memory.length);
+        for (IntRange range : ranges) {
+          shapes.add(new Selection(range,
+              getColForOffset(range, startOffset, true),
+              Long.divideUnsigned(startOffset, BYTES_PER_ROW),
+              getColForOffset(range, endOffset, false),
+              Long.divideUnsigned(endOffset, BYTES_PER_ROW)));
         }
-      }
-      return shapes;
+      });
+      return shapes.toArray(new Selection[shapes.size()]);
+    }
+
+    @Override
+    public Selection getSelection(long address, int length) {
+      IntRange range = getDataRanges()[0];
+      long start = address - data.getAddress(), end = start + length;
+      return new Selection(range, getColForOffset(range, start, true),
+          Long.divideUnsigned(start, BYTES_PER_ROW), getColForOffset(range, end, false),
+          Long.divideUnsigned(end, BYTES_PER_ROW));
     }
 
     private static int getColForOffset(IntRange range, long offset, boolean start) {
@@ -1018,9 +1592,22 @@ public class MemoryView extends Composite
     protected static final IntRange ADDRESS_RANGE = new IntRange(0, CHARS_PER_ADDRESS);
     protected static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
+    // Enough to hold a page worth of rows.
+    private static final int MAX_CACHED_LINES = 4096;
+
     protected final int charsPerRow;
     protected final IntRange memoryRange;
 
+    // Cache of formatted lines, as the data shown by a model never changes. Guarded by this.
+    private final Map<Long, Segment> lines = new LinkedHashMap<Long, Segment>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Segment> eldest) {
+        return size() > MAX_CACHED_LINES;
+      }
+    };
+    // Reused to format numbers without creating intermediate strings. Guarded by this.
+    private final StringBuilder numberBuffer = new StringBuilder(32);
+
     public CharBufferMemoryModel(MemoryDataModel data, int charsPerRow, IntRange memoryRange) {
       super(data);
       this.charsPerRow = charsPerRow;
@@ -1032,18 +1619,45 @@ public class MemoryView extends Composite
       return charsPerRow;
     }
 
-    protected static void appendUnknown(StringBuilder str, int n) {
-      for (int i = 0; i < n; i++) {
-        str.append(UNKNOWN_CHAR);
-      }
+    protected static void fillUnknown(char[] buffer, int pos, int width) {
+      Arrays.fill(buffer, pos, pos + width, UNKNOWN_CHAR);
+    }
+
+    /**
+     * Writes the shortest representation of the value that uniquely identifies it right aligned
+     * into the width characters of the buffer starting at pos.
+     */
+    protected void formatFloat(char[] buffer, int pos, int width, float value) {
+      numberBuffer.setLength(0);
+      ShortestDecimal.append(numberBuffer, value);
+      copyNumber(buffer, pos, width);
+    }
+
+    /**
+     * Writes the shortest representation of the value that uniquely identifies it right aligned
+     * into the width characters of the buffer starting at pos.
+     */
+    protected void formatDouble(char[] buffer, int pos, int width, double value) {
+      numberBuffer.setLength(0);
+      ShortestDecimal.append(numberBuffer, value);
+      copyNumber(buffer, pos, width);
+    }
+
+    private void copyNumber(char[] buffer, int pos, int width) {
+      int count = Math.min(width, numberBuffer.length());
+      numberBuffer.getChars(0, count, buffer, pos + width - count);
     }
 
     @Override
-    protected void getLine(Segment segment, MemorySegment memory, long line) {
-      segment.array = new char[charsPerRow];
-      segment.offset = 0;
-      segment.count = charsPerRow;
-      formatLine(segment.array, memory, line);
+    protected synchronized Segment getLine(MemorySegment memory, long line) {
+      Segment segment = lines.get(line);
+      if (segment == null) {
+        char[] array = new char[charsPerRow];
+        formatLine(array, memory, line);
+        segment = new Segment(array, 0, charsPerRow);
+        lines.put(line, segment);
+      }
+      return segment;
     }
 
     private void formatLine(char[] array, MemorySegment memory, long line) {
@@ -1241,9 +1855,7 @@ public class MemoryView extends Composite
             buffer[j + chOff + 2] = HEX_DIGITS[val & 0xF];
           }
         } else {
-          for (int k = 0; k < charsPerItem; ++k) {
-            buffer[j + k + 1] = UNKNOWN_CHAR;
-          }
+          fillUnknown(buffer, j + 1, charsPerItem);
         }
       }
     }
@@ -1297,17 +1909,13 @@ public class MemoryView extends Composite
 
     @Override
     protected void formatMemory(char[] buffer, MemorySegment memory) {
-      StringBuilder sb = new StringBuilder(50);
       for (int i = 0, j = ADDRESS_CHARS; i + 1 < memory.length;
           i += 2, j += CHARS_PER_FLOAT + FLOAT_SEPARATOR) {
-        sb.setLength(0);
         if (memory.getShortKnown(i)) {
-          sb.append(Float16.shortBitsToFloat(memory.getShort(i)));
+          formatFloat(buffer, j + 1, CHARS_PER_FLOAT, Float16.shortBitsToFloat(memory.getShort(i)));
         } else {
-          appendUnknown(sb, CHARS_PER_FLOAT);
+          fillUnknown(buffer, j + 1, CHARS_PER_FLOAT);
         }
-        int count = Math.min(CHARS_PER_FLOAT, sb.length());
-        sb.getChars(0, count, buffer, j + CHARS_PER_FLOAT - count + 1);
       }
     }
   }
@@ -1333,17 +1941,13 @@ public class MemoryView extends Composite
 
     @Override
     protected void formatMemory(char[] buffer, MemorySegment memory) {
-      StringBuilder sb = new StringBuilder(50);
       for (int i = 0, j = ADDRESS_CHARS; i + 3 < memory.length;
           i += 4, j += CHARS_PER_FLOAT + FLOAT_SEPARATOR) {
-        sb.setLength(0);
         if (memory.getIntKnown(i)) {
-          sb.append(Float.intBitsToFloat(memory.getInt(i)));
+          formatFloat(buffer, j + 1, CHARS_PER_FLOAT, Float.intBitsToFloat(memory.getInt(i)));
         } else {
-          appendUnknown(sb, CHARS_PER_FLOAT);
+          fillUnknown(buffer, j + 1, CHARS_PER_FLOAT);
         }
-        int count = Math.min(CHARS_PER_FLOAT, sb.length());
-        sb.getChars(0, count, buffer, j + CHARS_PER_FLOAT - count + 1);
       }
     }
   }
@@ -1370,17 +1974,14 @@ public class MemoryView extends Composite
 
     @Override
     protected void formatMemory(char[] buffer, MemorySegment memory) {
-      StringBuilder sb = new StringBuilder(50);
       for (int i = 0, j = ADDRESS_CHARS; i + 7 < memory.length;
           i += 8, j += CHARS_PER_DOUBLE + DOUBLE_SEPARATOR) {
-        sb.setLength(0);
         if (memory.getLongKnown(i)) {
-          sb.append(Double.longBitsToDouble(memory.getLong(i)));
+          formatDouble(
+              buffer, j + 1, CHARS_PER_DOUBLE, Double.longBitsToDouble(memory.getLong(i)));
         } else {
-          appendUnknown(sb, CHARS_PER_DOUBLE);
+          fillUnknown(buffer, j + 1, CHARS_PER_DOUBLE);
         }
-        int count = Math.min(CHARS_PER_DOUBLE, sb.length());
-        sb.getChars(0, count, buffer, j + CHARS_PER_DOUBLE - count + 1);
       }
     }
   }
@@ -1432,89 +2033,162 @@ public class MemoryView extends Composite
   }
 
   /**
-   * A segment of memory data.
+   * A segment of memory data. Segments are views over the fetched {@link ByteString ByteStrings}
+   * and combining segments does not copy the data.
    */
   private static class MemorySegment {
-    private final byte[] data;
-    private final BitSet known;
+    private final ByteString data;
+    // Bit mask of the known bytes, null if all bytes are known.
+    private final long[] known;
+    // Bit mask of the bytes changed compared to another segment, null if none have changed.
+    protected final long[] changed;
     protected final int offset;
     protected final int length;
 
-    protected final List<Service.MemoryRange> reads;
-    protected final List<Service.MemoryRange> writes;
+    protected final RangeIndex reads;
+    protected final RangeIndex writes;
 
-    private MemorySegment(byte[] data, BitSet known, int offset, int length,
-        List<Service.MemoryRange> reads, List<Service.MemoryRange> writes) {
+    private MemorySegment(ByteString data, long[] known, long[] changed, int offset, int length,
+        RangeIndex reads, RangeIndex writes) {
       this.data = data;
       this.offset = offset;
       this.length = length;
       this.known = known;
+      this.changed = changed;
       this.reads = reads;
       this.writes = writes;
     }
 
     public MemorySegment(Service.Memory info) {
-      data = info.getData().toByteArray();
+      data = info.getData();
       offset = 0;
-      known = computeKnown(info);
-      length = data.length;
-      reads = info.getReadsList();
-      writes = info.getWritesList();
+      length = data.size();
+      known = computeKnown(info, length);
+      changed = null;
+      reads = RangeIndex.of(info.getReadsList());
+      writes = RangeIndex.of(info.getWritesList());
     }
 
     public static MemorySegment combine(List<MemorySegment> segments, int length) {
-      byte[] data = new byte[length];
-      BitSet known = new BitSet(length);
+      ByteString data = ByteString.EMPTY;
+      long[] known = null, changed = null;
       int done = 0;
 
-      List<Service.MemoryRange> reads = Lists.newArrayList();
-      List<Service.MemoryRange> writes = Lists.newArrayList();
+      List<RangeIndex> reads = Lists.newArrayList(), writes = Lists.newArrayList();
+      List<Long> shifts = Lists.newArrayList();
 
       for (Iterator<MemorySegment> it = segments.iterator(); it.hasNext() && done < length; ) {
         MemorySegment segment = it.next();
         int count = Math.min(length - done, segment.length);
-        System.arraycopy(segment.data, segment.offset, data, done, count);
-        for (int i = 0; i < count; ++i) {
-          known.set(done + i, segment.known.get(segment.offset + i));
-        }
-
-        for (Service.MemoryRange range : segment.reads) {
-          reads.add((done == 0 && segment.offset == 0) ?
-              range : memory(done - segment.offset + range.getBase(), range.getSize()));
+        data = data.concat(segment.data.substring(segment.offset, segment.offset + count));
+        if (segment.known != null) {
+          if (known == null) {
+            known = new long[words(length)];
+            setBits(known, 0, done);
+          }
+          copyBits(segment.known, segment.offset, known, done, count);
+        } else if (known != null) {
+          setBits(known, done, done + count);
         }
-        for (Service.MemoryRange range : segment.writes) {
-          writes.add((done == 0 && segment.offset == 0) ?
-              range : memory(done - segment.offset + range.getBase(), range.getSize()));
+        if (segment.changed != null) {
+          if (changed == null) {
+            changed = new long[words(length)];
+          }
+          copyBits(segment.changed, segment.offset, changed, done, count);
         }
 
+        reads.add(segment.reads);
+        writes.add(segment.writes);
+        shifts.add((long)(done - segment.offset));
+
         done += count;
       }
-      return new MemorySegment(data, known, 0, done, reads, writes);
+      return new MemorySegment(data, known, changed, 0, done,
+          RangeIndex.combine(reads, shifts), RangeIndex.combine(writes, shifts));
     }
 
     public MemorySegment subSegment(int start, int count) {
       return new MemorySegment(
-          data, known, offset + start, Math.min(count, length - start), reads, writes);
+          data, known, changed, offset + start, Math.min(count, length - start), reads, writes);
     }
 
-    public String asString(int start, int count) {
-      return new String(
-          data, offset + start, Math.min(count, length - start), Charset.forName("US-ASCII"));
+    /**
+     * @return a copy of this page with the bytes that differ from the given page of the same
+     * memory marked as changed.
+     */
+    public MemorySegment diff(MemorySegment base) {
+      return new MemorySegment(data, known, computeChanges(base), offset, length, reads, writes);
     }
 
-    public boolean getByteKnown(int off, int size) {
-      if (off < 0 || size < 0 || offset + off + size > data.length) {
-        return false;
+    /**
+     * Reports the ranges of the changed bytes as data relative offsets.
+     */
+    public void getChanges(RangeIndex.RangeConsumer out) {
+      for (int from = nextBit(changed, offset, offset + length, true); from < offset + length; ) {
+        int to = nextBit(changed, from, offset + length, false);
+        out.accept(from, to);
+        from = nextBit(changed, to, offset + length, true);
       }
-      if (known == null) {
-        return true;
+    }
+
+    private long[] computeChanges(MemorySegment base) {
+      long[] result = new long[words(length)];
+      ByteBuffer a = data.asReadOnlyByteBuffer(), b = base.data.asReadOnlyByteBuffer();
+      int common = Math.min(length, base.length), i = 0;
+      for (; i + 8 <= common; i += 8) {
+        if (a.getLong(offset + i) != b.getLong(base.offset + i)) {
+          for (int j = i; j < i + 8; j++) {
+            if (a.get(offset + j) != b.get(base.offset + j)) {
+              result[j >>> 6] |= 1L << j;
+            }
+          }
+        }
       }
-      for (int o = off; o < off + size; o++) {
-        if (!known.get(offset + o)) {
-          return false;
+      for (; i < common; i++) {
+        if (a.get(offset + i) != b.get(base.offset + i)) {
+          result[i >>> 6] |= 1L << i;
         }
       }
-      return true;
+      setBits(result, common, length);
+
+      // Bytes that are only known in one of the pages have changed as well.
+      if (known != null || base.known != null) {
+        long[] otherKnown = new long[result.length];
+        if (base.known != null) {
+          copyBits(base.known, base.offset, otherKnown, 0, common);
+        } else {
+          setBits(otherKnown, 0, common);
+        }
+        long[] thisKnown = new long[result.length];
+        if (known != null) {
+          copyBits(known, offset, thisKnown, 0, length);
+        } else {
+          setBits(thisKnown, 0, length);
+        }
+        for (int w = 0; w < result.length; w++) {
+          result[w] |= thisKnown[w] ^ otherKnown[w];
+        }
+      }
+
+      for (long word : result) {
+        if (word != 0) {
+          return shift(result, offset);
+        }
+      }
+      return null;
+    }
+
+    public String asString(int start, int count) {
+      int from = offset + start;
+      return data.substring(from, from + Math.min(count, length - start))
+          .toString(Charset.forName("US-ASCII"));
+    }
+
+    public boolean getByteKnown(int off, int size) {
+      if (off < 0 || size < 0 || offset + off + size > data.size()) {
+        return false;
+      }
+      return known == null || allBitsSet(known, offset + off, offset + off + size);
     }
 
     public boolean getByteKnown(int off) {
@@ -1522,7 +2196,7 @@ public class MemoryView extends Composite
     }
 
     public int getByte(int off) {
-      return data[offset + off] & 0xFF;
+      return data.byteAt(offset + off) & 0xFF;
     }
 
     public boolean getShortKnown(int off) {
@@ -1536,17 +2210,17 @@ public class MemoryView extends Composite
     public int getShort(int off) {
       off += offset;
       // TODO: figure out BigEndian vs LittleEndian.
-      return (data[off + 0] & 0xFF) |
-          ((data[off + 1] & 0xFF) << 8);
+      return (data.byteAt(off + 0) & 0xFF) |
+          ((data.byteAt(off + 1) & 0xFF) << 8);
     }
 
     public int getInt(int off) {
       off += offset;
       // TODO: figure out BigEndian vs LittleEndian.
-      return (data[off + 0] & 0xFF) |
-          ((data[off + 1] & 0xFF) << 8) |
-          ((data[off + 2] & 0xFF) << 16) |
-          (data[off + 3] << 24);
+      return (data.byteAt(off + 0) & 0xFF) |
+          ((data.byteAt(off + 1) & 0xFF) << 8) |
+          ((data.byteAt(off + 2) & 0xFF) << 16) |
+          (data.byteAt(off + 3) << 24);
     }
 
     public boolean getLongKnown(int off) {
@@ -1558,12 +2232,233 @@ public class MemoryView extends Composite
       return (getInt(off) & 0xFFFFFFFFL) | ((long)getInt(off + 4) << 32);
     }
 
-    private static BitSet computeKnown(Service.Memory data) {
-      BitSet known = new BitSet(data.getData().size());
+    private static long[] computeKnown(Service.Memory data, int size) {
+      long[] known = new long[words(size)];
       for (Service.MemoryRange rng : data.getObservedList()) {
-        known.set((int)rng.getBase(), (int)rng.getBase() + (int)rng.getSize());
+        int from = (int)Math.min(rng.getBase(), size);
+        setBits(known, from, (int)Math.min(from + rng.getSize(), size));
+      }
+      return allBitsSet(known, 0, size) ? null : known;
+    }
+
+    private static int words(int bits) {
+      return (bits + 63) >>> 6;
+    }
+
+    /**
+     * @return the bits moved up by the given number of bits.
+     */
+    private static long[] shift(long[] bits, int by) {
+      if (by == 0) {
+        return bits;
+      }
+      long[] result = new long[words(bits.length * 64 + by)];
+      copyBits(bits, 0, result, by, bits.length * 64);
+      return result;
+    }
+
+    /**
+     * @return the index of the next set, or clear, bit in the range [from, to) or to if none.
+     */
+    private static int nextBit(long[] bits, int from, int to, boolean set) {
+      while (from < to) {
+        long word = (set ? bits[from >>> 6] : ~bits[from >>> 6]) & (-1L << from);
+        if (word != 0) {
+          return Math.min(to, (from & ~63) + Long.numberOfTrailingZeros(word));
+        }
+        from = (from & ~63) + 64;
+      }
+      return to;
+    }
+
+    /**
+     * Sets the bits in the range [from, to).
+     */
+    private static void setBits(long[] bits, int from, int to) {
+      if (from >= to) {
+        return;
+      }
+      int first = from >>> 6, last = (to - 1) >>> 6;
+      long firstMask = -1L << from, lastMask = -1L >>> -to;
+      if (first == last) {
+        bits[first] |= firstMask & lastMask;
+      } else {
+        bits[first] |= firstMask;
+        Arrays.fill(bits, first + 1, last, -1L);
+        bits[last] |= lastMask;
+      }
+    }
+
+    /**
+     * @return whether all the bits in the range [from, to) are set.
+     */
+    private static boolean allBitsSet(long[] bits, int from, int to) {
+      if (from >= to) {
+        return true;
+      }
+      int first = from >>> 6, last = (to - 1) >>> 6;
+      long firstMask = -1L << from, lastMask = -1L >>> -to;
+      if (first == last) {
+        return (bits[first] & firstMask & lastMask) == (firstMask & lastMask);
+      } else if ((bits[first] & firstMask) != firstMask || (bits[last] & lastMask) != lastMask) {
+        return false;
+      }
+      for (int i = first + 1; i < last; i++) {
+        if (bits[i] != -1L) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * ORs count bits starting at srcPos in src into dst starting at dstPos, a word at a time.
+     */
+    private static void copyBits(long[] src, int srcPos, long[] dst, int dstPos, int count) {
+      while (count > 0) {
+        int n = Math.min(count, 64 - Math.max(srcPos & 63, dstPos & 63));
+        long mask = (n == 64) ? -1L : (1L << n) - 1;
+        dst[dstPos >>> 6] |= ((src[srcPos >>> 6] >>> srcPos) & mask) << dstPos;
+        srcPos += n;
+        dstPos += n;
+        count -= n;
+      }
+    }
+  }
+
+  /**
+   * Index of memory ranges, such as the reads or writes of a command, that efficiently finds the
+   * ranges overlapping a queried range.
+   */
+  private abstract static class RangeIndex {
+    public static final RangeIndex EMPTY = new Sorted(new long[0], new long[0]);
+
+    public static RangeIndex of(List<Service.MemoryRange> ranges) {
+      if (ranges.isEmpty()) {
+        return EMPTY;
+      }
+
+      Service.MemoryRange[] sorted = ranges.toArray(new Service.MemoryRange[ranges.size()]);
+      Arrays.sort(sorted, (a, b) -> Long.compare(a.getBase(), b.getBase()));
+      long[] starts = new long[sorted.length], ends = new long[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        starts[i] = sorted[i].getBase();
+        ends[i] = starts[i] + sorted[i].getSize();
+      }
+      return new Sorted(starts, ends);
+    }
+
+    /**
+     * @return an index containing the ranges of the given indices, with the ranges of each index
+     * moved by the corresponding shift.
+     */
+    public static RangeIndex combine(List<RangeIndex> indices, List<Long> shifts) {
+      List<RangeIndex> parts = Lists.newArrayList();
+      List<Long> partShifts = Lists.newArrayList();
+      for (int i = 0; i < indices.size(); i++) {
+        if (!indices.get(i).isEmpty()) {
+          parts.add(indices.get(i));
+          partShifts.add(shifts.get(i));
+        }
+      }
+      if (parts.isEmpty()) {
+        return EMPTY;
+      } else if (parts.size() == 1 && partShifts.get(0) == 0) {
+        return parts.get(0);
+      }
+      return new Combined(parts, partShifts);
+    }
+
+    public abstract boolean isEmpty();
+
+    /**
+     * Reports all ranges that overlap the range [from, to).
+     */
+    public abstract void query(long from, long to, RangeConsumer out);
+
+    public static interface RangeConsumer {
+      public void accept(long start, long end);
+    }
+
+    /**
+     * {@link RangeIndex} over a sorted array of ranges. The array is treated as an implicit
+     * balanced binary tree, where each node stores the maximum end of the ranges in its subtree,
+     * so a query only visits the subtrees containing overlapping ranges.
+     */
+    private static class Sorted extends RangeIndex {
+      private final long[] starts;
+      private final long[] ends;
+      private final long[] maxEnds;
+
+      public Sorted(long[] starts, long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+        this.maxEnds = new long[starts.length];
+        computeMaxEnds(0, starts.length);
+      }
+
+      private long computeMaxEnds(int lo, int hi) {
+        if (lo >= hi) {
+          return Long.MIN_VALUE;
+        }
+        int mid = (lo + hi) >>> 1;
+        maxEnds[mid] = Math.max(ends[mid],
+            Math.max(computeMaxEnds(lo, mid), computeMaxEnds(mid + 1, hi)));
+        return maxEnds[mid];
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return starts.length == 0;
+      }
+
+      @Override
+      public void query(long from, long to, RangeConsumer out) {
+        query(0, starts.length, from, to, out);
+      }
+
+      private void query(int lo, int hi, long from, long to, RangeConsumer out) {
+        while (lo < hi) {
+          int mid = (lo + hi) >>> 1;
+          if (maxEnds[mid] <= from) {
+            return;
+          }
+          query(lo, mid, from, to, out);
+          if (starts[mid] >= to) {
+            return;
+          }
+          if (ends[mid] > from) {
+            out.accept(starts[mid], ends[mid]);
+          }
+          lo = mid + 1;
+        }
+      }
+    }
+
+    /**
+     * {@link RangeIndex} combining the indices of consecutive memory segments.
+     */
+    private static class Combined extends RangeIndex {
+      private final List<RangeIndex> parts;
+      private final List<Long> shifts;
+
+      public Combined(List<RangeIndex> parts, List<Long> shifts) {
+        this.parts = parts;
+        this.shifts = shifts;
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return false;
+      }
+
+      @Override
+      public void query(long from, long to, RangeConsumer out) {
+        for (int i = 0; i < parts.size(); i++) {
+          long shift = shifts.get(i);
+          parts.get(i).query(from - shift, to - shift, (s, e) -> out.accept(s + shift, e + shift));
+        }
       }
-      return known;
     }
   }
 
@@ -1571,14 +2466,23 @@ public class MemoryView extends Composite
    * A segment of character data.
    */
   private static class Segment {
-    public char[] array;
-    public int offset;
-    public int count;
+    public final char[] array;
+    public final int offset;
+    public final int count;
+    private String string;
 
     public Segment(char[] array, int offset, int count) {
       this.array = array;
       this.offset = offset;
       this.count = count;
     }
+
+    @Override
+    public String toString() {
+      if (string == null) {
+        string = new String(array, offset, count);
+      }
+      return string;
+    }
   }
 }
@@ -61,6 +61,7 @@ import com.google.gapid.widgets.LoadablePanel;
 import com.google.gapid.widgets.Theme;
 import com.google.gapid.widgets.Widgets;
 
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.ITextOperationTarget;
 import org.eclipse.jface.text.source.SourceViewer;
 import org.eclipse.jface.viewers.ArrayContentProvider;
@@ -370,7 +371,7 @@ public class ShaderView extends Composite
       textWidget.setFont(theme.monoSpaceFont());
       textWidget.setKeyBinding(ST.SELECT_ALL, ST.SELECT_ALL);
       viewer.configure(new GlslSourceConfiguration(theme));
-      viewer.setDocument(GlslSourceConfiguration.createDocument(source.source));
+      viewer.setDocument(source.document);
       textWidget.addListener(SWT.KeyDown, e -> {
         if (isKey(e, SWT.MOD1, 'z')) {
           viewer.doOperation(ITextOperationTarget.UNDO);
@@ -484,18 +485,24 @@ public class ShaderView extends Composite
       }
     }
 
+    /**
+     * The source of a shader. The source's document is created, and so tokenized for highlighting,
+     * on construction, which should happen off the UI thread.
+     */
     public static class Source {
-      private static final Source EMPTY_PROGRAM = new Source("Program",
-          "// No shaders attached to this program at this point in the trace.");
+      private static final String EMPTY_PROGRAM =
+          "// No shaders attached to this program at this point in the trace.";
       private static final String EMPTY_SHADER =
           "// No source attached to this shader at this point in the trace.";
 
       public final String label;
       public final String source;
+      public final IDocument document;
 
       public Source(String label, String source) {
         this.label = label;
         this.source = source;
+        this.document = GlslSourceConfiguration.createDocument(source);
       }
 
       public static Source of(API.Shader shader) {
@@ -505,7 +512,7 @@ public class ShaderView extends Composite
 
       public static Source[] of(API.Program program) {
         if (program.getShadersCount() == 0) {
-          return new Source[] { EMPTY_PROGRAM };
+          return new Source[] { new Source("Program", EMPTY_PROGRAM) };
         }
 
         Source[] source = new Source[program.getShadersCount()];
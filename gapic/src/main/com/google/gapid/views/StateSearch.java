@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.views;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.gapid.models.ApiState;
+import com.google.gapid.models.Info;
+import com.google.gapid.proto.service.Service;
+import com.google.gapid.proto.service.path.Path;
+import com.google.gapid.server.Client;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A search of the state tree for the nodes matching a query. The matches are streamed from a
+ * single server search starting at the root of the tree, so no nodes need to be loaded to find
+ * them. If the server cannot search the tree, the search can be answered from the nodes that have
+ * been loaded already instead.
+ */
+public class StateSearch extends TreeSearch<Path.StateTreeNode> {
+  // The server feature indicating that find requests may search state trees.
+  private static final String SERVER_FEATURE = "find-state-tree";
+
+  private final Client client;
+  private final Path.StateTreeNode root;
+  private final String text;
+  private final boolean regex;
+  private boolean local;
+
+  public StateSearch(
+      Client client, Path.StateTreeNode root, String text, boolean regex, Listener listener) {
+    super(listener);
+    this.client = client;
+    this.root = root;
+    this.text = text;
+    this.regex = regex;
+  }
+
+  /**
+   * @return whether this search is for the given query within the given tree.
+   */
+  public boolean isSearchFor(Path.StateTreeNode otherRoot, String otherText, boolean otherRegex) {
+    return root.getTree().equals(otherRoot.getTree()) && text.equals(otherText) &&
+        regex == otherRegex;
+  }
+
+  /**
+   * Starts consuming the server's search results in the background. If the server cannot search
+   * state trees, no request is sent and the search is marked as {@link #isLocal() local}, to be
+   * answered by {@link #searchLoaded} instead.
+   */
+  @Override
+  public void start() {
+    if (!Info.hasServerFeature(SERVER_FEATURE)) {
+      synchronized (this) {
+        local = true;
+      }
+      return;
+    }
+
+    Service.FindRequest request = Service.FindRequest.newBuilder()
+        .setStateTreeNode(root)
+        .setText(text)
+        .setIsRegex(regex)
+        .build();
+    int[] received = { 0 };
+    Futures.addCallback(client.streamSearch(request, result -> {
+      addMatch(toArray(result.getStateTreeNode().getIndicesList()));
+      // Notify periodically, rather than for every match.
+      if ((++received[0] & 0xff) == 1) {
+        notifyUpdated();
+      }
+    }), new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void ignored) {
+        setComplete();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        setFailed(t);
+      }
+    });
+  }
+
+  /**
+   * Answers this search from the already loaded nodes of the given tree, replacing any results
+   * received from the server. Must be called on the UI thread, which owns the loaded nodes.
+   */
+  public void searchLoaded(ApiState.Node rootNode, Predicate<Service.StateTreeNode> matcher) {
+    List<long[]> result = Lists.newArrayList();
+    searchLoaded(rootNode, matcher, new long[0], result);
+    synchronized (this) {
+      local = true;
+    }
+    setMatches(result);
+  }
+
+  private static void searchLoaded(ApiState.Node node, Predicate<Service.StateTreeNode> matcher,
+      long[] indices, List<long[]> result) {
+    Service.StateTreeNode data = node.getData();
+    if (data == null) {
+      return;
+    }
+    if (indices.length > 0 && matcher.test(data)) {
+      result.add(indices);
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      long[] childIndices = Arrays.copyOf(indices, indices.length + 1);
+      childIndices[indices.length] = i;
+      searchLoaded(node.getChild(i), matcher, childIndices, result);
+    }
+  }
+
+  @Override
+  public synchronized boolean isLocal() {
+    return local;
+  }
+
+  @Override
+  protected Path.StateTreeNode toPath(long[] indices) {
+    Path.StateTreeNode.Builder result = root.toBuilder().clearIndices();
+    for (long idx : indices) {
+      result.addIndices(idx);
+    }
+    return result.build();
+  }
+}
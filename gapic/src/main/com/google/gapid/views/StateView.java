@@ -26,6 +26,7 @@ import static java.util.stream.Collectors.toList;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gapid.models.Analytics.View;
 import com.google.gapid.models.ApiState;
 import com.google.gapid.models.ApiState.Node;
 import com.google.gapid.models.Capture;
@@ -34,6 +35,7 @@ import com.google.gapid.models.CommandStream.CommandIndex;
 import com.google.gapid.models.Follower;
 import com.google.gapid.models.Models;
 import com.google.gapid.proto.service.Service;
+import com.google.gapid.proto.service.Service.ClientAction;
 import com.google.gapid.proto.service.path.Path;
 import com.google.gapid.rpc.Rpc;
 import com.google.gapid.rpc.RpcException;
@@ -46,6 +48,7 @@ import com.google.gapid.util.SelectionHandler;
 import com.google.gapid.views.Formatter.StylingString;
 import com.google.gapid.widgets.LinkifiedTree;
 import com.google.gapid.widgets.LoadablePanel;
+import com.google.gapid.widgets.SearchBox;
 import com.google.gapid.widgets.TextViewer;
 import com.google.gapid.widgets.Widgets;
 
@@ -53,18 +56,21 @@ import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Menu;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 /**
  * View that displays the API state as a tree.
@@ -73,22 +79,56 @@ public class StateView extends Composite
     implements Tab, Capture.Listener, CommandStream.Listener, ApiState.Listener {
   private static final Logger LOG = Logger.getLogger(StateView.class.getName());
 
+  private final Client client;
   private final Models models;
   private final LoadablePanel<StateTree> loading;
   protected final StateTree tree;
   private final SelectionHandler<Control> selectionHandler;
+  private final TreeSearchBar<Path.StateTreeNode, StateSearch> searchBar;
   protected List<Path.Any> scheduledExpandedPaths;
   protected Point scheduledScrollPos;
 
   public StateView(Composite parent, Client client, Models models, Widgets widgets) {
     super(parent, SWT.NONE);
+    this.client = client;
     this.models = models;
 
-    setLayout(new FillLayout(SWT.VERTICAL));
+    setLayout(new GridLayout(1, false));
 
+    searchBar = new TreeSearchBar<>(this, new TreeSearchBar.Callback<Path.StateTreeNode>() {
+      @Override
+      public void search(String text, boolean regex) {
+        StateView.this.search(text, regex);
+      }
+
+      @Override
+      public List<Long> getSelectedIndices() {
+        return StateView.this.getSelectedIndices();
+      }
+
+      @Override
+      public ListenableFuture<TreePath> getTreePath(Path.StateTreeNode match) {
+        return StateView.this.getTreePath(models.state.getData(), match);
+      }
+
+      @Override
+      public void select(TreePath path) {
+        // Only select the match if the state has not been reloaded in the meantime.
+        if (path.getSegmentCount() > 0 &&
+            ((ApiState.Node)path.getFirstSegment()).getParent() == models.state.getData()) {
+          if (path.getSegmentCount() > 1) {
+            tree.setExpandedState(path.getParentPath(), true);
+          }
+          tree.setSelection(path);
+        }
+      }
+    });
     loading = LoadablePanel.create(this, widgets, panel -> new StateTree(panel, models, widgets));
     tree = loading.getContents();
 
+    searchBar.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+    loading.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
     models.capture.addListener(this);
     models.commands.addListener(this);
     models.state.addListener(this);
@@ -108,6 +148,7 @@ public class StateView extends Composite
             models.state.selectPath(node.getValuePath(), false);
           }
         }
+        searchBar.onSelectionChanged();
       }
     };
 
@@ -202,6 +243,7 @@ public class StateView extends Composite
 
   @Override
   public void onStateLoadingStart() {
+    searchBar.setSearch(null);
     loading.startLoading();
   }
 
@@ -229,6 +271,63 @@ public class StateView extends Composite
     updateSelectionState();
   }
 
+  /**
+   * Steps to the next match of the given query, starting a new search if the query differs from
+   * the current one.
+   */
+  private void search(String text, boolean regex) {
+    models.analytics.postInteraction(View.State, ClientAction.Search);
+    ApiState.Node root = models.state.isLoaded() ? models.state.getData() : null;
+    if (root == null || text.isEmpty()) {
+      searchBar.setSearch(null);
+      return;
+    }
+
+    Path.StateTreeNode rootPath = root.getPath(Path.StateTreeNode.newBuilder()).build();
+    StateSearch search = searchBar.getSearch();
+    if (search == null || search.isFailed() || !search.isSearchFor(rootPath, text, regex)) {
+      search = new StateSearch(client, rootPath, text, regex, s ->
+          Widgets.scheduleIfNotDisposed(searchBar, () -> onSearchUpdated(s, root, text, regex)));
+      searchBar.setSearch(search);
+      search.start();
+      if (search.isLocal()) {
+        // The server cannot search the state tree, so answer the search right away.
+        searchLoaded(search, root, text, regex);
+      }
+      searchBar.updateStatus();
+    } else if (search.isLocal()) {
+      // More nodes may have been loaded since.
+      searchLoaded(search, root, text, regex);
+    }
+    searchBar.navigate(false);
+  }
+
+  private void onSearchUpdated(
+      TreeSearch<?> updated, ApiState.Node root, String text, boolean regex) {
+    StateSearch search = searchBar.getSearch();
+    if (updated != search) {
+      return;
+    }
+    if (search.isFailed() && !search.isLocal()) {
+      LOG.log(Level.FINE, "Server state search unavailable, searching the loaded nodes only");
+      searchLoaded(search, root, text, regex);
+    }
+    searchBar.updateStatus();
+  }
+
+  private void searchLoaded(StateSearch search, ApiState.Node root, String text, boolean regex) {
+    Pattern pattern = SearchBox.getPattern(text, regex);
+    search.searchLoaded(root, data -> pattern.matcher(data.getName()).find() ||
+        (data.hasPreview() && pattern.matcher(Formatter.toString(data.getPreview(),
+            models.constants.getConstants(data.getConstants()), data.getPreviewIsValue())).find()));
+  }
+
+  private List<Long> getSelectedIndices() {
+    ApiState.Node selection = tree.getSelection();
+    return (selection == null) ? Collections.emptyList() :
+        selection.getPath(Path.StateTreeNode.newBuilder()).getIndicesList();
+  }
+
   private void updateSelectionState() {
     ApiState.Node root = models.state.getData();
     selectionHandler.updateSelectionFromModel(
@@ -21,7 +21,12 @@ import static com.google.gapid.util.Loadable.MessageType.Error;
 import static com.google.gapid.util.Loadable.MessageType.Info;
 import static com.google.gapid.widgets.Widgets.scheduleIfNotDisposed;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gapid.image.CompressedImageData;
 import com.google.gapid.models.ApiContext;
 import com.google.gapid.models.ApiContext.FilteringContext;
 import com.google.gapid.models.Capture;
@@ -33,6 +38,7 @@ import com.google.gapid.models.Timeline;
 import com.google.gapid.proto.service.Service;
 import com.google.gapid.util.Loadable;
 import com.google.gapid.util.Messages;
+import com.google.gapid.util.Scheduler;
 import com.google.gapid.widgets.HorizontalList;
 import com.google.gapid.widgets.LoadableImage;
 import com.google.gapid.widgets.LoadablePanel;
@@ -42,6 +48,7 @@ import com.google.gapid.widgets.Widgets;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.internal.DPIUtil;
@@ -49,6 +56,7 @@ import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -219,22 +227,31 @@ public class ThumbnailScrubber extends Composite
 
     public void dispose() {
       if (image != null) {
-        image.dispose();
+        image.unload().dispose();
+        image = null;
       }
     }
   }
 
   /**
-   * Renders the frame thumbnails.
+   * Renders the frame thumbnails. Only the thumbnails of the retained items are kept as images, the
+   * others are kept compressed in a bounded cache, from which they are restored when scrolled back
+   * into view, so the number of images does not grow with the number of frames.
    */
   private static class Carousel extends HorizontalList
       implements LoadingIndicator.Repaintable, Thumbnails.Listener {
     private static final int MIN_SIZE = 80;
+    private static final long CACHE_SIZE = 32 << 20;
 
     private final Thumbnails thumbs;
     private final Widgets widgets;
     private List<Data> datas = Collections.emptyList();
     private int selectedIndex = -1;
+    // The indices of the frames that currently have an image.
+    private final BitSet loaded = new BitSet();
+    // Replaced, rather than cleared, whenever the thumbnails change, so loads still in flight
+    // cannot add stale thumbnails.
+    private Cache<Integer, CompressedImageData> cache = createCache();
 
     public Carousel(Composite parent, Thumbnails thumbs, Widgets widgets) {
       super(parent);
@@ -262,11 +279,24 @@ public class ThumbnailScrubber extends Composite
     }
 
     private void load(Data data, int index) {
+      Cache<Integer, CompressedImageData> target = cache;
+      CompressedImageData cached = target.getIfPresent(index);
+      ListenableFuture<ImageData> future;
+      if (cached != null) {
+        future = Scheduler.EXECUTOR.submit(cached::decompress);
+      } else {
+        future = Futures.transform(noAlpha(thumbs.getThumbnail(data.range.getCommand(), THUMB_SIZE,
+            info -> scheduleIfNotDisposed(this, () -> setItemSize(index,
+                Math.max(MIN_SIZE, DPIUtil.autoScaleDown(info.getWidth())),
+                Math.max(MIN_SIZE, DPIUtil.autoScaleDown(info.getHeight())))))), image -> {
+          target.put(index, CompressedImageData.compress(image));
+          return image;
+        }, Scheduler.EXECUTOR);
+      }
+
+      loaded.set(index);
       data.image = LoadableImage.newBuilder(widgets.loading)
-          .forImageData(noAlpha(thumbs.getThumbnail(data.range.getCommand(), THUMB_SIZE,
-              info -> scheduleIfNotDisposed(this, () -> setItemSize(index,
-                  Math.max(MIN_SIZE, DPIUtil.autoScaleDown(info.getWidth())),
-                  Math.max(MIN_SIZE, DPIUtil.autoScaleDown(info.getHeight())))))))
+          .forImageData(future)
           .onErrorShowErrorIcon(widgets.theme)
           .build(this, this);
       data.image.addListener(new LoadableImage.Listener() {
@@ -278,6 +308,30 @@ public class ThumbnailScrubber extends Composite
       });
     }
 
+    @Override
+    protected void onRetainedRangeChanged(int from, int to) {
+      for (int i = loaded.nextSetBit(0); i >= 0; i = loaded.nextSetBit(i + 1)) {
+        if (i < from || i >= to) {
+          datas.get(i).dispose();
+          loaded.clear(i);
+        }
+      }
+    }
+
+    private void releaseAll() {
+      for (int i = loaded.nextSetBit(0); i >= 0; i = loaded.nextSetBit(i + 1)) {
+        datas.get(i).dispose();
+      }
+      loaded.clear();
+    }
+
+    private static Cache<Integer, CompressedImageData> createCache() {
+      return CacheBuilder.newBuilder()
+          .maximumWeight(CACHE_SIZE)
+          .<Integer, CompressedImageData>weigher((index, image) -> image.getSize())
+          .build();
+    }
+
     public Data selectFrame(int frame) {
       if (frame < 0 || frame >= datas.size()) {
         return null;
@@ -307,9 +361,8 @@ public class ThumbnailScrubber extends Composite
     @Override
     public void dispose() {
       thumbs.removeListener(this);
-      for (Data data : datas) {
-        data.dispose();
-      }
+      releaseAll();
+      cache = createCache();
       datas = Collections.emptyList();
       selectedIndex = -1;
       setItemCount(0, THUMB_SIZE, THUMB_SIZE);
@@ -317,12 +370,8 @@ public class ThumbnailScrubber extends Composite
 
     @Override
     public void onThumbnailsChanged() {
-      for (Data data : datas) {
-        if (data.image != null) {
-          data.image.dispose();
-          data.image = null;
-        }
-      }
+      releaseAll();
+      cache = createCache();
       repaint();
     }
 
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.views;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Base class of the searches of a tree for the nodes matching a query. The matches are identified
+ * by their child indices and arrive in tree order, so that stepping through and counting them is
+ * answered locally, without another server search. Until the search completes, requests are only
+ * answered once all the matches they depend on are known.
+ *
+ * @param <P> the type of the path of a node in the searched tree.
+ */
+public abstract class TreeSearch<P> {
+  private final Listener listener;
+  // The indices of the matching nodes, in tree order.
+  private final List<long[]> matches = Lists.newArrayList();
+  private final List<Request> requests = Lists.newArrayList();
+  // All matches up to and including the node with these indices are known, null if none are.
+  private long[] frontier;
+  private boolean complete;
+  private boolean cancelled;
+  private Throwable error;
+
+  public TreeSearch(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Starts consuming the search results in the background.
+   */
+  public abstract void start();
+
+  /**
+   * @return the path of the node with the given indices.
+   */
+  protected abstract P toPath(long[] indices);
+
+  /**
+   * Stops accepting further results and cancels all pending requests.
+   */
+  public void cancel() {
+    List<Request> toCancel;
+    synchronized (this) {
+      cancelled = true;
+      toCancel = Lists.newArrayList(requests);
+      requests.clear();
+    }
+    for (Request request : toCancel) {
+      request.result.cancel(true);
+    }
+  }
+
+  protected synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Adds a match. Matches have to be added in tree order, so all the matches before it are known.
+   */
+  protected void addMatch(long[] indices) {
+    synchronized (this) {
+      if (cancelled || (frontier != null && compare(frontier, indices) >= 0)) {
+        // Known already.
+        return;
+      }
+      matches.add(indices);
+      frontier = indices;
+      resolveRequests();
+    }
+  }
+
+  /**
+   * Marks all the matches up to and including the node with the given indices as known, i.e. they
+   * have all been added.
+   */
+  protected void setKnownUntil(long[] indices) {
+    synchronized (this) {
+      if (cancelled || (frontier != null && compare(frontier, indices) >= 0)) {
+        return;
+      }
+      frontier = indices;
+      resolveRequests();
+    }
+  }
+
+  /**
+   * Replaces all matches with the given ones, in tree order, and completes the search.
+   */
+  protected void setMatches(List<long[]> newMatches) {
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      matches.clear();
+      matches.addAll(newMatches);
+      error = null;
+      complete = true;
+      resolveRequests();
+    }
+    notifyUpdated();
+  }
+
+  protected void setComplete() {
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      complete = true;
+      resolveRequests();
+    }
+    notifyUpdated();
+  }
+
+  protected void setFailed(Throwable t) {
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      error = t;
+      for (Request request : requests) {
+        request.result.setException(t);
+      }
+      requests.clear();
+    }
+    notifyUpdated();
+  }
+
+  protected void notifyUpdated() {
+    listener.onSearchUpdated(this);
+  }
+
+  /**
+   * @return the path of the first match after the given node indices, wrapping around at the end.
+   * The returned future resolves to {@code null} if there are no matches, and waits for the
+   * results if they are not known yet.
+   */
+  public ListenableFuture<P> next(List<Long> from) {
+    return find(from, false);
+  }
+
+  /**
+   * @return the path of the last match before the given node indices, wrapping around at the
+   * start. The returned future resolves to {@code null} if there are no matches, and waits for the
+   * results if they are not known yet.
+   */
+  public ListenableFuture<P> previous(List<Long> from) {
+    return find(from, true);
+  }
+
+  private synchronized ListenableFuture<P> find(List<Long> from, boolean backwards) {
+    if (error != null) {
+      return Futures.immediateFailedFuture(error);
+    }
+    Request request = new Request(toArray(from), backwards);
+    if (!request.resolve()) {
+      requests.add(request);
+    }
+    return request.result;
+  }
+
+  private void resolveRequests() {
+    for (Iterator<Request> it = requests.iterator(); it.hasNext(); ) {
+      if (it.next().resolve()) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the number of matches found so far.
+   */
+  public synchronized int getCount() {
+    return matches.size();
+  }
+
+  /**
+   * @return whether all the matches have been found.
+   */
+  public synchronized boolean isComplete() {
+    return complete;
+  }
+
+  public synchronized boolean isFailed() {
+    return error != null;
+  }
+
+  /**
+   * @return whether this search only covers the nodes of the tree that have been loaded.
+   */
+  public boolean isLocal() {
+    return false;
+  }
+
+  /**
+   * @return the zero based position of the node with the given indices among the matches, or -1
+   * if it is not a known match.
+   */
+  public synchronized int indexOf(List<Long> indices) {
+    long[] key = toArray(indices);
+    int idx = lowerBound(key);
+    return (idx < matches.size() && compare(matches.get(idx), key) == 0) ? idx : -1;
+  }
+
+  /**
+   * @return the index of the first match that is not before the given indices.
+   */
+  private int lowerBound(long[] key) {
+    int lo = 0, hi = matches.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compare(matches.get(mid), key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * @return the index of the first match after the given indices.
+   */
+  private int upperBound(long[] key) {
+    int lo = 0, hi = matches.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compare(matches.get(mid), key) <= 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Compares node indices in tree order, where a node comes before its children.
+   */
+  protected static int compare(long[] a, long[] b) {
+    for (int i = 0; i < a.length && i < b.length; i++) {
+      if (a[i] != b[i]) {
+        return Long.compare(a[i], b[i]);
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  protected static long[] toArray(List<Long> indices) {
+    long[] result = new long[indices.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = indices.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * A request for the next or previous match, waiting for the results needed to answer it.
+   */
+  private class Request {
+    public final long[] from;
+    public final boolean backwards;
+    public final SettableFuture<P> result = SettableFuture.create();
+
+    public Request(long[] from, boolean backwards) {
+      this.from = from;
+      this.backwards = backwards;
+    }
+
+    /**
+     * @return whether this request is done, either because it has been answered or cancelled.
+     * Must be called while holding the search's lock.
+     */
+    public boolean resolve() {
+      if (result.isDone()) {
+        return true;
+      }
+
+      int count = matches.size();
+      int idx;
+      if (backwards) {
+        if (!complete && (frontier == null || compare(frontier, from) < 0)) {
+          // Matches before the node may still arrive.
+          return false;
+        }
+        idx = lowerBound(from) - 1;
+        if (idx < 0) {
+          // Wrapping around to the last match requires all of them.
+          if (!complete) {
+            return false;
+          }
+          idx = count - 1;
+        }
+      } else {
+        // A known match after the node is the next one, as all the matches before it are known.
+        idx = upperBound(from);
+        if (idx >= count) {
+          if (!complete) {
+            return false;
+          }
+          idx = 0;
+        }
+      }
+      result.set((idx >= 0 && idx < count) ? toPath(matches.get(idx)) : null);
+      return true;
+    }
+  }
+
+  /**
+   * Listener notified as the search progresses.
+   */
+  public static interface Listener {
+    /**
+     * Invoked on a background thread whenever results have been received, the search completed or
+     * failed.
+     */
+    public void onSearchUpdated(TreeSearch<?> search);
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.views;
+
+import static com.google.gapid.widgets.Widgets.createButton;
+import static com.google.gapid.widgets.Widgets.createLabel;
+import static com.google.gapid.widgets.Widgets.withMargin;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gapid.rpc.Rpc;
+import com.google.gapid.rpc.RpcException;
+import com.google.gapid.rpc.SingleInFlight;
+import com.google.gapid.rpc.UiCallback;
+import com.google.gapid.util.Events;
+import com.google.gapid.widgets.SearchBox;
+import com.google.gapid.widgets.Widgets;
+
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Search bar of a tree view, showing the query, the position of the selection among the matches
+ * of the current {@link TreeSearch}, and buttons to step through them. The view starts the
+ * searches, the bar keeps track of the current one and selects its matches.
+ *
+ * @param <P> the type of the path of a node in the searched tree.
+ * @param <S> the type of the search.
+ */
+public class TreeSearchBar<P, S extends TreeSearch<P>> extends Composite
+    implements TreeSearch.Listener {
+  private static final Logger LOG = Logger.getLogger(TreeSearchBar.class.getName());
+
+  private final Callback<P> callback;
+  private final SingleInFlight searchController = new SingleInFlight();
+  private final Label status;
+  private S search;
+
+  public TreeSearchBar(Composite parent, Callback<P> callback) {
+    super(parent, SWT.NONE);
+    this.callback = callback;
+
+    setLayout(withMargin(new GridLayout(4, false), 0, 0));
+    SearchBox query = new SearchBox(this, false);
+    status = createLabel(this, "");
+    Button previous = createButton(this, "Prev", e -> navigate(true));
+    Button next = createButton(this, "Next", e -> navigate(false));
+
+    query.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+    status.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false));
+    previous.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false));
+    next.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false));
+
+    query.addListener(
+        Events.Search, e -> callback.search(e.text, (e.detail & Events.REGEX) != 0));
+    addListener(SWT.Dispose, e -> setSearch(null));
+  }
+
+  /**
+   * @return the current search, or {@code null} if there is none.
+   */
+  public S getSearch() {
+    return search;
+  }
+
+  /**
+   * Replaces the current search, cancelling the previous one. New searches should be created with
+   * this bar as their {@link TreeSearch.Listener}.
+   */
+  public void setSearch(S newSearch) {
+    if (search != null) {
+      search.cancel();
+    }
+    search = newSearch;
+    searchController.start().cancel();
+    if (!status.isDisposed()) {
+      updateStatus();
+    }
+  }
+
+  @Override
+  public void onSearchUpdated(TreeSearch<?> updated) {
+    Widgets.scheduleIfNotDisposed(status, () -> {
+      if (updated == search) {
+        updateStatus();
+      }
+    });
+  }
+
+  /**
+   * Selects the next or previous match of the current search relative to the selection.
+   */
+  public void navigate(boolean backwards) {
+    if (search == null) {
+      return;
+    }
+
+    List<Long> from = callback.getSelectedIndices();
+    searchController.start().listen(
+        Futures.transformAsync(backwards ? search.previous(from) : search.next(from),
+            r -> (r == null) ? Futures.immediateFuture(null) : callback.getTreePath(r)),
+        new UiCallback<TreePath, TreePath>(this, LOG) {
+      @Override
+      protected TreePath onRpcThread(Rpc.Result<TreePath> result)
+          throws RpcException, ExecutionException {
+        return result.get();
+      }
+
+      @Override
+      protected void onUiThread(TreePath result) {
+        if (result != null) {
+          callback.select(result);
+        }
+        updateStatus();
+      }
+    });
+  }
+
+  /**
+   * Updates the position of the selection among the matches, if there is a current search.
+   */
+  public void onSelectionChanged() {
+    if (search != null) {
+      updateStatus();
+    }
+  }
+
+  /**
+   * Shows the progress of the current search and the position of the selection among its matches.
+   */
+  public void updateStatus() {
+    String text;
+    if (search == null) {
+      text = "";
+    } else if (search.isFailed()) {
+      text = "Search failed";
+    } else {
+      int count = search.getCount();
+      int index = search.indexOf(callback.getSelectedIndices());
+      String total = count + (search.isComplete() ? "" : "+");
+      if (index >= 0) {
+        text = (index + 1) + " of " + total;
+      } else if (search.isComplete()) {
+        text = (count == 1) ? "1 match" : count + " matches";
+      } else {
+        text = "Searching... " + count;
+      }
+      if (search.isLocal()) {
+        text += " (loaded nodes)";
+      }
+    }
+    status.setText(text);
+    status.requestLayout();
+  }
+
+  /**
+   * The tree view a {@link TreeSearchBar} searches.
+   */
+  public static interface Callback<P> {
+    /**
+     * Steps to the next match of the given query, starting a new search if the query differs from
+     * the current one.
+     */
+    public void search(String text, boolean regex);
+
+    /**
+     * @return the child indices of the selected node, empty if there is no selection.
+     */
+    public List<Long> getSelectedIndices();
+
+    /**
+     * @return the tree path of the given match, once the nodes on it have been loaded.
+     */
+    public ListenableFuture<TreePath> getTreePath(P match);
+
+    /**
+     * Selects the match at the given tree path.
+     */
+    public void select(TreePath path);
+  }
+}
@@ -28,17 +28,22 @@ import java.util.Arrays;
 
 /**
  * A widget that displays custom drawn items in a horizontal row. Allows for an arbitrary number of
- * items with arbitrary sizes.
+ * items with arbitrary sizes. The items around the visible ones are tracked as the retained range,
+ * and subclasses are notified when it changes, so they can release the resources of the items
+ * outside of it.
  *
  * Note: do not interact with the {@link Composite} interface, as it will break the functionality.
  */
 public abstract class HorizontalList extends Composite {
   private static final int MARGIN = 5;
+  // Number of items on either side of the visible ones that are retained.
+  private static final int RETAINED_ITEMS = 16;
 
   private final ScrollBar hBar, vBar;
   private final Canvas canvas;
   private Item[] items = new Item[0];
   private int maxHeight = 0;
+  private int retainedFrom = 0, retainedTo = 0;
 
   public HorizontalList(Composite parent) {
     super(parent, SWT.H_SCROLL | SWT.V_SCROLL);
@@ -57,10 +62,12 @@ public abstract class HorizontalList extends Composite {
       int y = MARGIN - vBar.getSelection();
       Rectangle size = getClientArea();
 
-      for (int i = start; i < items.length && (items[i].x - offset) < size.width ; i++) {
-        Item item = items[i];
-        paint(e.gc, i, item.x - offset, y, item.width, item.height);
+      int end = start;
+      for (; end < items.length && (items[end].x - offset) < size.width ; end++) {
+        Item item = items[end];
+        paint(e.gc, end, item.x - offset, y, item.width, item.height);
       }
+      updateRetainedRange(start, end);
     });
     hBar.addListener(SWT.Selection, e -> canvas.redraw());
     vBar.addListener(SWT.Selection, e -> canvas.redraw());
@@ -71,12 +78,31 @@ public abstract class HorizontalList extends Composite {
 
   protected abstract void paint(GC gc, int index, int x, int y, int w, int h);
 
+  /**
+   * Called when the range [from, to) of retained items changes. Items outside of this range are not
+   * about to be painted and should release any resources held for painting them.
+   */
+  protected void onRetainedRangeChanged(int from, int to) {
+    // Do nothing by default.
+  }
+
+  private void updateRetainedRange(int start, int end) {
+    int from = Math.max(0, start - RETAINED_ITEMS);
+    int to = Math.min(items.length, end + RETAINED_ITEMS);
+    if (from != retainedFrom || to != retainedTo) {
+      retainedFrom = from;
+      retainedTo = to;
+      onRetainedRangeChanged(from, to);
+    }
+  }
+
   public void setItemCount(int count, int initWidth, int initHeight) {
     items = new Item[count];
     for (int i = 0, x = MARGIN; i < count; i++, x += initWidth + MARGIN) {
       items[i] = new Item(initWidth, initHeight, x);
     }
     maxHeight = initHeight;
+    retainedFrom = retainedTo = 0;
 
     if (isVisible()) {
       updateScrollbar();
@@ -27,7 +27,9 @@ import static com.google.gapid.widgets.Widgets.createLabel;
 import static com.google.gapid.widgets.Widgets.createSeparator;
 import static com.google.gapid.widgets.Widgets.createToggleToolItem;
 import static com.google.gapid.widgets.Widgets.createToolItem;
+import static com.google.gapid.widgets.Widgets.scheduleIfNotDisposed;
 import static com.google.gapid.widgets.Widgets.withSpans;
+import static java.util.logging.Level.WARNING;
 import static org.eclipse.swt.widgets.SwtUtil.disableAutoHideScrollbars;
 
 import com.google.common.cache.Cache;
@@ -47,6 +49,7 @@ import com.google.gapid.image.Histogram;
 import com.google.gapid.image.Image;
 import com.google.gapid.image.Image.PixelInfo;
 import com.google.gapid.image.Image.PixelValue;
+import com.google.gapid.image.ImageExporter;
 import com.google.gapid.image.MultiLayerAndLevelImage;
 import com.google.gapid.models.Analytics;
 import com.google.gapid.models.Analytics.View;
@@ -66,8 +69,6 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Rectangle;
@@ -92,6 +93,7 @@ import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL30;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -132,6 +134,8 @@ public class ImagePanel extends Composite implements Loadable {
   private ToolItem zoomFitItem, zoomActualItem, backgroundItem, saveItem, colorChanelsItem;
   private MultiLayerAndLevelImage image = MultiLayerAndLevelImage.EMPTY;
   private Image[] layers = NO_LAYERS;
+  private PartialLevel partialLevel = null;
+  private ListenableFuture<Void> export = null;
 
   public enum ZoomMode {
     ZOOM_TO_FIT,
@@ -151,7 +155,8 @@ public class ImagePanel extends Composite implements Loadable {
 
     loading = LoadablePanel.create(this, widgets, panel ->
         new ImageComponent(panel, widgets.theme, this::showAlphaWarning, naturallyFlipped));
-    status = new StatusBar(this, widgets.theme, this::loadLevel, this::setAlphaEnabled);
+    status = new StatusBar(
+        this, widgets.theme, this::loadLevel, this::setAlphaEnabled, this::cancelExport);
     imageComponent = loading.getContents();
 
     loading.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
@@ -467,17 +472,69 @@ public class ImagePanel extends Composite implements Loadable {
     analytics.postInteraction(view, ClientAction.Save);
     FileDialog dialog = new FileDialog(getShell(), SWT.SAVE);
     dialog.setText("Save image to...");
-    dialog.setFilterNames(new String[] { "PNG Images" });
-    dialog.setFilterExtensions(new String[] { "*.png" });
+    dialog.setFilterNames(new String[] { "PNG Images", "PFM Images (HDR)" });
+    dialog.setFilterExtensions(new String[] { "*.png", "*.pfm" });
     dialog.setOverwrite(true);
     String path = dialog.open();
     if (path != null) {
-      ImageLoader saver = new ImageLoader();
-      saver.data = new ImageData[] { layers[0].getImageData() }; // TODO: Save each layer
-      saver.save(path, SWT.IMAGE_PNG);
+      boolean pfm = path.toLowerCase().endsWith(".pfm") ||
+          (dialog.getFilterIndex() == 1 && !path.toLowerCase().endsWith(".png"));
+      export(new File(path), pfm ? ImageExporter.Format.PFM : ImageExporter.Format.PNG);
     }
   }
 
+  /**
+   * Exports all layers and levels of the current image in the background, showing the progress
+   * in the status bar.
+   */
+  private void export(File file, ImageExporter.Format format) {
+    cancelExport();
+    status.setExportStatus("Saving image...");
+    ListenableFuture<Void> future = ImageExporter.export(image, file, format, (done, total) ->
+        scheduleIfNotDisposed(status, () -> {
+          if (export != null && !export.isDone()) {
+            status.setExportStatus("Saving image: " + done + " of " + total + " (click to cancel)");
+          }
+        }));
+    export = future;
+    Rpc.listen(future, new UiErrorCallback<Void, Boolean, String>(this, LOG) {
+      @Override
+      protected ResultOrError<Boolean, String> onRpcThread(Rpc.Result<Void> result) {
+        try {
+          result.get();
+          return success(true);
+        } catch (RpcException | ExecutionException e) {
+          LOG.log(WARNING, "Failed to save image to " + file, e);
+          return error("Failed to save image: " + e.getMessage());
+        }
+      }
+
+      @Override
+      protected void onUiThreadSuccess(Boolean result) {
+        if (export == future) {
+          export = null;
+          status.setExportStatus(null);
+        }
+      }
+
+      @Override
+      protected void onUiThreadError(String error) {
+        if (export == future) {
+          export = null;
+          status.setExportStatus(error);
+        }
+      }
+    });
+  }
+
+  private void cancelExport() {
+    if (export != null) {
+      export.cancel(true);
+      export = null;
+    }
+    status.setExportStatus(null);
+  }
+
   public void setImage(MultiLayerAndLevelImage image) {
     if (image == null || image == MultiLayerAndLevelImage.EMPTY) {
       clearImage();
@@ -492,6 +549,7 @@ public class ImagePanel extends Composite implements Loadable {
   public void clearImage() {
     this.image = MultiLayerAndLevelImage.EMPTY;
     this.layers = NO_LAYERS;
+    this.partialLevel = null;
     if (saveItem != null) {
       saveItem.setEnabled(false);
     }
@@ -512,9 +570,24 @@ public class ImagePanel extends Composite implements Loadable {
     int level = Math.min(image.getLevelCount() - 1, requestedLecel);
     startLoading();
 
+    PartialLevel partial = new PartialLevel(image.getLayerCount());
+    partialLevel = partial;
     List<ListenableFuture<Image>> layerFutures = Lists.newArrayList();
     for (int layer = 0; layer < image.getLayerCount(); layer++) {
-      layerFutures.add(image.getImage(layer, level));
+      int idx = layer;
+      layerFutures.add(Futures.transform(image.getImage(layer, level, img -> {
+        LevelData data = partial.update(idx, img);
+        if (data != null) {
+          Widgets.scheduleIfNotDisposed(this, () -> {
+            if (partialLevel == partial) {
+              updatePartialLayers(data);
+            }
+          });
+        }
+      }), img -> {
+        partial.complete(idx, img);
+        return img;
+      }));
     }
     ListenableFuture<LevelData> future = Futures.transform(Futures.allAsList(layerFutures), imageList -> {
       Image[] images = imageList.toArray(new Image[imageList.size()]);
@@ -540,11 +613,17 @@ public class ImagePanel extends Composite implements Loadable {
 
       @Override
       protected void onUiThreadSuccess(LevelData data) {
+        if (partialLevel == partial) {
+          partialLevel = null;
+        }
         updateLayers(data);
       }
 
       @Override
       protected void onUiThreadError(Loadable.Message message) {
+        if (partialLevel == partial) {
+          partialLevel = null;
+        }
         clearImage();
         showMessage(message);
       }
@@ -574,6 +653,49 @@ public class ImagePanel extends Composite implements Loadable {
     imageComponent.setHistogram(data.histogram);
   }
 
+  /**
+   * Shows the given incomplete level data, while the full level is still loading.
+   */
+  protected void updatePartialLayers(LevelData data) {
+    stopLoading();
+    imageComponent.setImages(data.images);
+    imageComponent.setHistogram(data.histogram);
+  }
+
+  /**
+   * Tracks the partially loaded layers of a level that is being loaded.
+   */
+  private static final class PartialLevel {
+    private final Image[] layers;
+
+    public PartialLevel(int layerCount) {
+      this.layers = new Image[layerCount];
+    }
+
+    /**
+     * Records the given partial layer image and returns the {@link LevelData} to display, or
+     * {@code null} if not every layer has something to show yet.
+     */
+    public LevelData update(int layer, Image image) {
+      Image[] images;
+      synchronized (this) {
+        layers[layer] = image;
+        for (Image i : layers) {
+          if (i == null) {
+            return null;
+          }
+        }
+        images = layers.clone();
+      }
+      // Partial data is not cached, as it is only shown for a short time.
+      return new LevelData(images, new Histogram(images, NUM_HISTOGRAM_BINS, isHDR(images)));
+    }
+
+    public synchronized void complete(int layer, Image image) {
+      layers[layer] = image;
+    }
+  }
+
   private static final class LevelData {
     public final boolean valid;
     public final Image[] layers;
@@ -1478,11 +1600,12 @@ public class ImagePanel extends Composite implements Loadable {
     private final Label levelSize;
     private final Label pixelLabel;
     private final Label warning;
+    private final Label exportStatus;
     private int lastSelection = 0;
     private AlphaWarning lastWarning = AlphaWarning.NONE;
 
-    public StatusBar(
-        Composite parent, Theme theme, IntConsumer levelListener, Consumer<Boolean> enableAlpha) {
+    public StatusBar(Composite parent, Theme theme, IntConsumer levelListener,
+        Consumer<Boolean> enableAlpha, Runnable cancelExport) {
       super(parent, SWT.NONE);
       setLayout(new GridLayout(3, false));
 
@@ -1495,12 +1618,17 @@ public class ImagePanel extends Composite implements Loadable {
       warning = createLabel(this, "");
       warning.setForeground(theme.imageWarning());
       warning.setCursor(getDisplay().getSystemCursor(SWT.CURSOR_HAND));
+      exportStatus = createLabel(this, "");
+      exportStatus.setCursor(getDisplay().getSystemCursor(SWT.CURSOR_HAND));
 
       levelComposite.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, true));
       levelSize.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, true));
       pixelLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, true));
       warning.setLayoutData(withSpans(new GridData(SWT.CENTER, SWT.CENTER, true, false), 3, 1));
+      exportStatus.setLayoutData(
+          withSpans(new GridData(SWT.CENTER, SWT.CENTER, true, false), 3, 1));
       showAlphaWarning(AlphaWarning.NONE);
+      setExportStatus(null);
 
       levelScale.addListener(SWT.Selection, e -> {
         int selection = levelScale.getSelection();
@@ -1513,6 +1641,7 @@ public class ImagePanel extends Composite implements Loadable {
       });
       warning.addListener(SWT.MouseUp,
           e -> enableAlpha.accept(lastWarning == AlphaWarning.ALPHA_DISABLED));
+      exportStatus.addListener(SWT.MouseUp, e -> cancelExport.run());
 
       setLevelCount(0);
     }
@@ -1555,6 +1684,16 @@ public class ImagePanel extends Composite implements Loadable {
       requestLayout();
     }
 
+    /**
+     * Shows the given image export status message, or hides it if the message is null.
+     */
+    public void setExportStatus(String message) {
+      ((GridData)exportStatus.getLayoutData()).exclude = message == null;
+      exportStatus.setVisible(message != null);
+      exportStatus.setText(message == null ? "" : message);
+      requestLayout();
+    }
+
     private static Scale createScale(Composite parent) {
       Scale scale = new Scale(parent, SWT.HORIZONTAL);
       scale.setMinimum(0);
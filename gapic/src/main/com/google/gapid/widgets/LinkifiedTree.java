@@ -20,6 +20,8 @@ import static com.google.gapid.util.Arrays.last;
 import static com.google.gapid.widgets.Widgets.createTreeViewer;
 import static com.google.gapid.widgets.Widgets.withAsyncRefresh;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gapid.models.Follower;
 import com.google.gapid.proto.service.path.Path;
 import com.google.gapid.util.Events;
@@ -59,6 +61,8 @@ import java.util.function.Predicate;
 /**
  * A {@link TreeViewer} where each label can have rich formatting (using
  * {@link com.google.gapid.views.Formatter.StylingString}), links, and custom background color.
+ * The formatted labels and their measurements are cached per node, so scrolling, resizing and
+ * redrawing only format the labels of nodes that have changed.
  */
 public abstract class LinkifiedTree<T, F> extends Composite {
   private final TreeViewer viewer;
@@ -150,6 +154,7 @@ public abstract class LinkifiedTree<T, F> extends Composite {
     // don't want JFace's selection preserving, as it appears to be broken on input
     // change (see https://github.com/google/gapid/issues/1264)
     setSelection(null);
+    labelProvider.clear();
     viewer.setInput(root);
     if (root != null && viewer.getTree().getItemCount() > 0) {
       viewer.getTree().setSelection(viewer.getTree().getItem(0));
@@ -272,11 +277,21 @@ public abstract class LinkifiedTree<T, F> extends Composite {
    */
   protected class LabelProvider extends OwnerDrawLabelProvider
       implements VisibilityTrackingTreeViewer.Listener {
+    private static final int MAX_CACHED_LABELS = 20000;
 
     private final Theme theme;
     private final TextLayout layout;
+    // The labels of the nodes, keyed by node identity. The labels are formatted with this
+    // provider's theme, so the cache is owned by the provider.
+    private final Cache<T, Label> labels =
+        CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_CACHED_LABELS).build();
     private TreeItem lastHovered;
     private Follower.Prefetcher<F> lastPrefetcher = nullPrefetcher();
+    // The hovered label formatted with its link targets, built on demand.
+    private LinkableStyledString lastHoveredLinks;
+    // The string and coloring currently set on the layout.
+    private StyledString layoutString;
+    private boolean layoutIgnoresColors;
 
     public LabelProvider(Theme theme) {
       this.theme = theme;
@@ -366,6 +381,11 @@ public abstract class LinkifiedTree<T, F> extends Composite {
     }
 
     private void updateLayout(StyledString string, boolean ignoreColors) {
+      if (string == layoutString && ignoreColors == layoutIgnoresColors) {
+        return;
+      }
+      layoutString = string;
+      layoutIgnoresColors = ignoreColors;
       layout.setText(string.getString());
       for (StyleRange range : string.getStyleRanges()) {
         if (ignoreColors && (range.foreground != null || range.background != null)) {
@@ -386,12 +406,14 @@ public abstract class LinkifiedTree<T, F> extends Composite {
     }
 
     private void update(TreeItem item) {
-      Label label = getLabelNoUpdate(item);
       T element = getElement(item);
+      Label label = getLabelNoUpdate(element);
+      update(item, label, element);
+    }
 
+    private void update(TreeItem item, Label label, T element) {
       label.background = getBackgroundColor(element);
       updateText(item, label, element);
-      label.bounds = null;
       label.loaded = contentProvider.isLoaded(element);
       item.setText(label.string.getString());
     }
@@ -399,16 +421,21 @@ public abstract class LinkifiedTree<T, F> extends Composite {
     private void updateText(TreeItem item, Label label, T element) {
       label.string = format(element, LinkableStyledString.ignoring(theme),
           (item == lastHovered) ? lastPrefetcher : nullPrefetcher()).getString();
+      label.bounds = null;
+      if (item == lastHovered) {
+        lastHoveredLinks = null;
+      }
     }
 
     public boolean hoverItem(TreeItem item, @SuppressWarnings("unused") Point location) {
       if (item != lastHovered) {
         TreeItem tmp = lastHovered;
         lastHovered = item;
+        lastHoveredLinks = null;
         lastPrefetcher.cancel();
 
         if (tmp != null && !tmp.isDisposed()) {
-          updateText(tmp, getLabelNoUpdate(tmp), getElement(tmp));
+          updateText(tmp, getLabelNoUpdate(getElement(tmp)), getElement(tmp));
         }
 
         if (item == null) {
@@ -416,7 +443,7 @@ public abstract class LinkifiedTree<T, F> extends Composite {
         } else {
           lastPrefetcher = prepareFollower(getElement(item), () -> {
             Widgets.scheduleIfNotDisposed(item, () -> {
-              updateText(item, getLabelNoUpdate(item), getElement(item));
+              updateText(item, getLabelNoUpdate(getElement(item)), getElement(item));
               refresher.refresh();
             });
           });
@@ -435,10 +462,13 @@ public abstract class LinkifiedTree<T, F> extends Composite {
         return null;
       }
 
-      LinkableStyledString string =
-          format(getElement(item), LinkableStyledString.create(theme), lastPrefetcher);
-      string.endLink();
-      string.append("dummy", string.defaultStyle());
+      LinkableStyledString string = lastHoveredLinks;
+      if (string == null) {
+        string = format(getElement(item), LinkableStyledString.create(theme), lastPrefetcher);
+        string.endLink();
+        string.append("dummy", string.defaultStyle());
+        lastHoveredLinks = string;
+      }
       updateLayout(string.getString(), false);
 
       Rectangle textBounds = layout.getBounds();
@@ -457,25 +487,37 @@ public abstract class LinkifiedTree<T, F> extends Composite {
     }
 
     private Label getLabel(Widget item) {
-      Label result = (Label)item.getData(Label.KEY);
+      T element = getElement(item);
+      Label result = labels.getIfPresent(element);
       if (result == null) {
-        item.setData(Label.KEY, result = new Label(theme));
-        update((TreeItem)item);
-      } else if (contentProvider.isLoaded(getElement(item)) != result.loaded) {
-        update((TreeItem)item);
+        labels.put(element, result = new Label(theme));
+        update((TreeItem)item, result, element);
+      } else if (contentProvider.isLoaded(element) != result.loaded) {
+        // The node has loaded since it was formatted.
+        update((TreeItem)item, result, element);
       }
       return result;
     }
 
-    private Label getLabelNoUpdate(Widget item) {
-      Label result = (Label)item.getData(Label.KEY);
+    private Label getLabelNoUpdate(T element) {
+      Label result = labels.getIfPresent(element);
       if (result == null) {
-        item.setData(Label.KEY, result = new Label(theme));
+        labels.put(element, result = new Label(theme));
       }
       return result;
     }
 
+    /**
+     * Discards all cached labels.
+     */
+    public void clear() {
+      labels.invalidateAll();
+      lastHoveredLinks = null;
+      layoutString = null;
+    }
+
     public void reset() {
+      clear();
       layout.dispose();
     }
   }
@@ -484,8 +526,6 @@ public abstract class LinkifiedTree<T, F> extends Composite {
    * POJO containing cached rendering information for a label.
    */
   protected static class Label {
-    public static String KEY = Label.class.getName();
-
     public Color background;
     public StyledString string;
     public Rectangle bounds;
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.camera;
+
+import com.google.gapid.glviewer.geo.BoundingBox;
+import com.google.gapid.glviewer.vec.VecD;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures the allocations, garbage collections and time of orbiting the
+ * {@link IsoSurfaceCameraModel} and of casting rays with the {@link RayCaster}. Prints the
+ * allocated bytes per operation, measured with the HotSpot per-thread allocation counter, and the
+ * number and total time of the collections during each run. Run with a small heap, e.g.
+ * {@code -Xmx64m}, so that the allocations result in collections.
+ */
+public class IsoSurfaceCameraModelBenchmark {
+  private static final int WARMUP = 50000;
+  private static final int ITERATIONS = 1000000;
+
+  public static void main(String[] args) {
+    BoundingBox bounds = new BoundingBox();
+    bounds.add(-1, -0.5, -2);
+    bounds.add(1.5, 0.5, 2);
+    Emitter emitter = Emitter.BoxEmitter.fromBoundingBox(bounds);
+
+    IsoSurfaceCameraModel camera = new IsoSurfaceCameraModel(new CylindricalCameraModel());
+    camera.setEmitter(emitter);
+    camera.updateViewport(800, 600);
+    // Zoom most of the way in, where the camera follows the iso-surface.
+    camera.onZoom(-1000);
+    camera.onZoom(0.5);
+
+    Random random = new Random(42);
+    run("camera drag", WARMUP, ITERATIONS,
+        () -> camera.onDrag(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5));
+
+    RayCaster rayCaster = new RayCaster(emitter);
+    VecD[] sources = new VecD[1024], directions = new VecD[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = new VecD(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())
+          .normalize().multiply(10);
+      directions[i] = sources[i].multiply(-1).normalize();
+    }
+    int[] next = { 0 };
+    run("ray cast", WARMUP, ITERATIONS, () -> {
+      int i = next[0]++ & (sources.length - 1);
+      rayCaster.getIntersection(sources[i], directions[i]);
+    });
+  }
+
+  private static void run(String name, int warmup, int iterations, Runnable op) {
+    for (int i = 0; i < warmup; i++) {
+      op.run();
+    }
+    System.gc();
+
+    long collections = getCollectionCount(), collectionTime = getCollectionTime();
+    long allocated = getAllocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      op.run();
+    }
+    long time = System.nanoTime() - start;
+    allocated = getAllocatedBytes() - allocated;
+    collections = getCollectionCount() - collections;
+    collectionTime = getCollectionTime() - collectionTime;
+
+    System.out.println(String.format("%s: %.0f bytes/op, %.2f us/op, %d GCs taking %d ms in total",
+        name, (double)allocated / iterations, time / 1000.0 / iterations, collections,
+        collectionTime));
+  }
+
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long getCollectionCount() {
+    long result = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      result += bean.getCollectionCount();
+    }
+    return result;
+  }
+
+  private static long getCollectionTime() {
+    long result = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      result += bean.getCollectionTime();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.glviewer.geo;
+
+import com.google.common.collect.Maps;
+import com.google.gapid.proto.service.api.API;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Map;
+
+/**
+ * Tests for {@link Simplifier}. Runs as a plain main, failing with an {@link AssertionError}.
+ */
+public class SimplifierTest {
+  private static final API.Mesh.Stats STATS = API.Mesh.Stats.getDefaultInstance();
+
+  public static void main(String[] args) {
+    testHonoursTriangleTargets();
+    testNothingToSimplify();
+    testDeterministic();
+    testEmptyMesh();
+    testDegenerateMesh();
+    testOutOfRangeIndices();
+    testPreservesBoundaryEdges();
+    System.out.println("PASSED");
+  }
+
+  private static void testHonoursTriangleTargets() {
+    Model model = grid(200, 200, true);
+    int triangles = triangleCount(model);
+    for (int target : new int[] { 20000, 5000, 1000, 100, 10 }) {
+      Model result = Simplifier.simplify(model, target);
+      assertTrue(result != null, "no result for target " + target);
+      int count = triangleCount(result);
+      assertTrue(count > 0, "no triangles left for target " + target);
+      assertTrue(count <= target, count + " triangles exceed target " + target);
+      assertTrue(count < triangles, "not simplified for target " + target);
+      assertTrue(result.getPrimitive() == API.DrawPrimitive.Triangles, "not a triangle list");
+      assertTrue(result.getNormals() != null &&
+          result.getNormals().limit() == result.getPositions().limit(), "normals not kept");
+      assertValidIndices(result);
+    }
+  }
+
+  private static void testNothingToSimplify() {
+    Model model = grid(10, 10, false);
+    int triangles = triangleCount(model);
+    assertTrue(Simplifier.simplify(model, triangles) == null, "simplified to the same count");
+    assertTrue(Simplifier.simplify(model, 2 * triangles) == null, "simplified to a larger count");
+    assertTrue(Simplifier.simplify(model, 0) == null, "simplified to no triangles");
+    assertTrue(Simplifier.simplify(model, -1) == null, "simplified to negative triangles");
+
+    Model points = new Model(API.DrawPrimitive.Triangles, STATS, new float[9], null, null);
+    assertTrue(Simplifier.simplify(points, 1) == null, "simplified a non-indexed model");
+  }
+
+  private static void testDeterministic() {
+    Model first = Simplifier.simplify(grid(120, 80, true), 500);
+    Model second = Simplifier.simplify(grid(120, 80, true), 500);
+    assertTrue(first.getPositions().equals(second.getPositions()), "positions differ");
+    assertTrue(first.getNormals().equals(second.getNormals()), "normals differ");
+    assertTrue(first.getIndices().equals(second.getIndices()), "indices differ");
+  }
+
+  private static void testEmptyMesh() {
+    Model empty = new Model(API.DrawPrimitive.Triangles, STATS, new float[0], null, new int[0]);
+    assertTrue(Simplifier.simplify(empty, 1) == null, "simplified an empty mesh");
+  }
+
+  private static void testDegenerateMesh() {
+    // All vertices at the same point: the bounds have no extent and every triangle collapses.
+    float[] positions = new float[3 * 300];
+    int[] indices = new int[300];
+    for (int i = 0; i < positions.length; i += 3) {
+      positions[i + 0] = 1;
+      positions[i + 1] = 2;
+      positions[i + 2] = 3;
+    }
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = i;
+    }
+    Model collapsed = Simplifier.simplify(
+        new Model(API.DrawPrimitive.Triangles, STATS, positions, null, indices), 10);
+    assertTrue(collapsed != null, "no result for a collapsed mesh");
+    assertTrue(triangleCount(collapsed) == 0, "collapsed mesh kept triangles");
+
+    // Triangles that repeat a vertex have no area and are dropped.
+    Model grid = grid(50, 50, false);
+    IntBuffer gridIndices = grid.getIndices();
+    int[] degenerate = new int[gridIndices.limit()];
+    for (int i = 0; i < degenerate.length; i += 3) {
+      degenerate[i + 0] = degenerate[i + 1] = gridIndices.get(i);
+      degenerate[i + 2] = gridIndices.get(i + 2);
+    }
+    Model result = Simplifier.simplify(new Model(
+        API.DrawPrimitive.Triangles, STATS, array(grid.getPositions()), null, degenerate), 100);
+    assertTrue(result != null, "no result for a degenerate mesh");
+    assertTrue(triangleCount(result) == 0, "degenerate mesh kept triangles");
+  }
+
+  private static void testOutOfRangeIndices() {
+    Model grid = grid(40, 40, false);
+    int[] indices = array(grid.getIndices());
+    indices[0] = -1;
+    indices[4] = grid.getPositions().limit();
+    Model result = Simplifier.simplify(new Model(
+        API.DrawPrimitive.Triangles, STATS, array(grid.getPositions()), null, indices), 200);
+    assertTrue(result != null && triangleCount(result) > 0, "no triangles left");
+    assertValidIndices(result);
+  }
+
+  private static void testPreservesBoundaryEdges() {
+    int size = 100;
+    Model result = Simplifier.simplify(grid(size + 1, size + 1, false), 2000);
+    FloatBuffer positions = result.getPositions();
+    IntBuffer indices = result.getIndices();
+
+    // Count the uses of each undirected edge. Edges used by a single triangle are boundary edges.
+    Map<Long, Integer> edges = Maps.newHashMap();
+    for (int i = 0; i < indices.limit(); i += 3) {
+      for (int c = 0; c < 3; c++) {
+        int a = indices.get(i + c), b = indices.get(i + (c + 1) % 3);
+        edges.merge(((long)Math.min(a, b) << 32) | Math.max(a, b), 1, Integer::sum);
+      }
+    }
+
+    // The grid cells of the simplified mesh are about this large.
+    double tolerance = 2 * size / Math.sqrt(2000 / 2.0);
+    double boundaryLength = 0;
+    for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+      assertTrue(edge.getValue() <= 2, "non-manifold edge");
+      if (edge.getValue() != 1) {
+        continue;
+      }
+      int a = (int)(edge.getKey() >>> 32), b = (int)(long)edge.getKey();
+      float ax = positions.get(3 * a), ay = positions.get(3 * a + 1);
+      float bx = positions.get(3 * b), by = positions.get(3 * b + 1);
+      // No holes: every boundary edge lies on the boundary of the original grid.
+      assertTrue(distanceToBorder(ax, ay, size) <= tolerance &&
+          distanceToBorder(bx, by, size) <= tolerance, "boundary edge inside the mesh");
+      boundaryLength += Math.hypot(bx - ax, by - ay);
+    }
+    // The boundary still encloses the grid, rather than parts of it being lost.
+    assertTrue(boundaryLength >= 4 * (size - 2 * tolerance), "boundary too short");
+    assertTrue(boundaryLength <= 4 * size * Math.sqrt(2), "boundary too long");
+
+    BoundingBox bounds = result.getBounds();
+    for (int axis = 0; axis < 2; axis++) {
+      assertTrue(bounds.min[axis] <= tolerance, "boundary moved in on axis " + axis);
+      assertTrue(bounds.max[axis] >= size - tolerance, "boundary moved in on axis " + axis);
+    }
+  }
+
+  /**
+   * @return a grid of the given number of vertices in the x-y plane, with two triangles per cell,
+   * optionally displaced in z to form a wavy surface.
+   */
+  private static Model grid(int width, int height, boolean wavy) {
+    float[] positions = new float[3 * width * height];
+    float[] normals = new float[positions.length];
+    for (int y = 0, p = 0; y < height; y++) {
+      for (int x = 0; x < width; x++, p += 3) {
+        positions[p + 0] = x;
+        positions[p + 1] = y;
+        positions[p + 2] = wavy ? (float)(5 * Math.sin(x * 0.1) * Math.cos(y * 0.07)) : 0;
+        normals[p + 2] = 1;
+      }
+    }
+    int[] indices = new int[6 * (width - 1) * (height - 1)];
+    for (int y = 0, i = 0; y < height - 1; y++) {
+      for (int x = 0; x < width - 1; x++) {
+        int v = y * width + x;
+        indices[i++] = v;
+        indices[i++] = v + 1;
+        indices[i++] = v + width;
+        indices[i++] = v + 1;
+        indices[i++] = v + width + 1;
+        indices[i++] = v + width;
+      }
+    }
+    return new Model(API.DrawPrimitive.Triangles, STATS, positions, normals, indices);
+  }
+
+  private static int triangleCount(Model model) {
+    return Model.getTriangleCount(model.getPrimitive(), model.getIndices().limit());
+  }
+
+  private static double distanceToBorder(float x, float y, int size) {
+    return Math.min(Math.min(x, size - x), Math.min(y, size - y));
+  }
+
+  private static void assertValidIndices(Model model) {
+    int vertices = model.getPositions().limit() / 3;
+    IntBuffer indices = model.getIndices();
+    for (int i = 0; i < indices.limit(); i++) {
+      assertTrue(indices.get(i) >= 0 && indices.get(i) < vertices, "index out of range");
+    }
+  }
+
+  private static float[] array(FloatBuffer buffer) {
+    float[] result = new float[buffer.remaining()];
+    buffer.get(result);
+    return result;
+  }
+
+  private static int[] array(IntBuffer buffer) {
+    int[] result = new int[buffer.remaining()];
+    buffer.get(result);
+    return result;
+  }
+
+  private static void assertTrue(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+}
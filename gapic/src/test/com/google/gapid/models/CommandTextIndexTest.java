@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link CommandTextIndex}. Runs as a plain main, failing with an {@link AssertionError}.
+ */
+public class CommandTextIndexTest {
+  public static void main(String[] args) {
+    testLiterals();
+    testEndAnchor();
+    testWordBoundary();
+    testSpaces();
+    testOptionalLiterals();
+    testUnsupportedRegexes();
+    testSupportedRegexes();
+    testUnindexedNodes();
+    System.out.println("PASSED");
+  }
+
+  private static void testLiterals() {
+    CommandTextIndex index = index("glDrawArrays(count: 3)", "glClear()", "Frame 1");
+    assertMatches(index.find("DRAW", false), 0);
+    assertMatches(index.find("gl", false), 0, 1);
+    assertMatches(index.find("(", false), 0, 1);
+    assertMatches(index.find("frame 2", false));
+    assertMatches(index.find("[a-z]+\\(\\)", true), 1);
+  }
+
+  private static void testEndAnchor() {
+    // Without the multi-line flag, RE2's $ does not match before a final line break.
+    CommandTextIndex index = index("foo", "foo\n", "foo bar");
+    assertMatches(index.find("foo$", true), 0);
+    assertMatches(index.find("^foo", true), 0, 1, 2);
+  }
+
+  private static void testWordBoundary() {
+    // RE2's \b only considers ASCII word characters.
+    CommandTextIndex index = index("a foo", "afoo", "\u00e9foo", "foo_");
+    assertMatches(index.find("\\bfoo", true), 0, 2, 3);
+    assertMatches(index.find("foo\\b", true), 0, 1, 2);
+  }
+
+  private static void testSpaces() {
+    // RE2's \s does not include the vertical tab.
+    CommandTextIndex index = index("a b", "a\tb", "a\u000bb");
+    assertMatches(index.find("a\\sb", true), 0, 1);
+    assertMatches(index.find("a[\\s]b", true), 0, 1);
+    assertMatches(index.find("a[^\\s]b", true), 2);
+  }
+
+  private static void testOptionalLiterals() {
+    CommandTextIndex index = index("xac", "abc", "ab", "bar");
+    assertMatches(index.find("ab?c", true), 0, 1);
+    assertMatches(index.find("ab*c", true), 0, 1);
+    assertMatches(index.find("a(bc)?", true), 0, 1, 2, 3);
+    assertMatches(index.find("abc|bar", true), 1, 3);
+    assertMatches(index.find("a.c", true), 1);
+  }
+
+  private static void testUnsupportedRegexes() {
+    CommandTextIndex index = index("a");
+    for (String regex : new String[] {
+        "(?=a)", "(?!a)", "(?<=a)b", "(?<!a)b", "(a)\\1", "(?i)a", "(?P<x>a)",
+        "a++", "a*+", "a**", "a?+", "a{2}+", "a{2}{3}",
+        "[[a]]", "[a&&b]", "[]a]", "[a", "[\\b]",
+        "a{2,1}", "a{1001}", "a{,2}", "a{x}", "a{",
+        "^*", "$+", "\\b*", "(*", "|*", "*a",
+        "(a", "a)", "((a)",
+        "\\p{L}", "\\pL", "\\Qa\\E", "\\z", "\\", "\\x", "\\x{}", "\\xg1",
+    }) {
+      assertTrue(index.find(regex, true) == null, "expected " + regex + " to be unsupported");
+    }
+  }
+
+  private static void testSupportedRegexes() {
+    CommandTextIndex index = index("aa", "{}", "]", "xA");
+    for (String regex : new String[] {
+        "a{2}", "a{1,}", "a{1,2}", "a{1000}", "a*?", "a+?", "a??", "a{1,2}?",
+        "(?:a)+", "[a-z]", "[^a]", "[\\]]", "[a&b]", "\\.", "\\x41", "\\x{41}", "\\d\\w",
+        "}", "]", "^$", "a|",
+    }) {
+      assertTrue(index.find(regex, true) != null, "expected " + regex + " to be supported");
+    }
+    assertMatches(index.find("a{2}", true), 0);
+    assertMatches(index.find("\\{}", true), 1);
+    assertMatches(index.find("]", true), 2);
+    // Like the server, only the expression's text is lower cased, not the characters it encodes.
+    assertMatches(index.find("x\\x61", true), 3);
+    assertMatches(index.find("x\\x41", true));
+  }
+
+  private static void testUnindexedNodes() {
+    CommandTextIndex index = new CommandTextIndex();
+    index.add(Collections.emptyList(), null, 3);
+    index.add(Arrays.asList(0L), "foo(x: 1)", 2);
+    index.add(Arrays.asList(0L, 0L), "foo(x: 2)", 0);
+    index.add(Arrays.asList(2L), "foo(x: 3)", 0);
+    assertTrue(!index.isComplete(), "expected the index to be incomplete");
+    // The second child of the first node, and with it the second top level node, are missing.
+    CommandTextIndex.Result result = index.find("foo", false);
+    assertTrue(result.matches.size() == 2, "expected 2 matches");
+    assertEquals(new long[] { 0 }, result.matches.get(0));
+    assertEquals(new long[] { 0, 0 }, result.matches.get(1));
+    assertEquals(new long[] { 0, 0 }, result.unindexedAfter);
+
+    index.add(Arrays.asList(0L, 1L), "bar", 0);
+    index.addUnknown(Arrays.asList(1L), 0);
+    assertTrue(index.isComplete(), "expected the index to be complete");
+    // The second top level node is not known, so the server searches from it on.
+    result = index.find("foo", false);
+    assertTrue(result.matches.size() == 2, "expected 2 matches");
+    assertEquals(new long[] { 0, 1 }, result.unindexedAfter);
+
+    index = index("foo");
+    result = index.find("foo", false);
+    assertMatches(result, 0);
+    assertTrue(result.unindexedAfter == null, "expected the whole tree to be indexed");
+  }
+
+  /**
+   * @return an index of a tree whose root has one child with each of the given texts.
+   */
+  private static CommandTextIndex index(String... texts) {
+    CommandTextIndex index = new CommandTextIndex();
+    index.add(Collections.emptyList(), null, texts.length);
+    for (int i = 0; i < texts.length; i++) {
+      index.add(Arrays.asList((long)i), texts[i], 0);
+    }
+    return index;
+  }
+
+  /**
+   * Checks that the result has the given matches, by their child index in an {@link #index}.
+   */
+  private static void assertMatches(CommandTextIndex.Result result, int... expected) {
+    assertTrue(result != null, "expected the query to be supported");
+    List<long[]> matches = result.matches;
+    assertTrue(matches.size() == expected.length,
+        "expected " + expected.length + " matches, but got " + matches.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(new long[] { expected[i] }, matches.get(i));
+    }
+  }
+
+  private static void assertEquals(long[] expected, long[] actual) {
+    assertTrue(Arrays.equals(expected, actual),
+        "expected " + Arrays.toString(expected) + ", but got " + Arrays.toString(actual));
+  }
+
+  private static void assertTrue(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.gapid.util;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * Tests for {@link ShortestDecimal}. Runs as a plain main, failing with an {@link AssertionError}.
+ */
+public class ShortestDecimalTest {
+  private static final int RANDOM_VALUES = 100000;
+
+  public static void main(String[] args) {
+    testSpecialValues();
+    testExtremeValues();
+    testPowersOfTen();
+    testNotation();
+    testReusesBuilder();
+    testRandomDoubles();
+    testRandomFloats();
+    System.out.println("PASSED");
+  }
+
+  private static void testSpecialValues() {
+    assertEquals("NaN", ShortestDecimal.toString(Double.NaN));
+    assertEquals("NaN", ShortestDecimal.toString(Double.longBitsToDouble(0xFFF8000000000001L)));
+    assertEquals("Infinity", ShortestDecimal.toString(Double.POSITIVE_INFINITY));
+    assertEquals("-Infinity", ShortestDecimal.toString(Double.NEGATIVE_INFINITY));
+    assertEquals("0.0", ShortestDecimal.toString(0.0));
+    assertEquals("-0.0", ShortestDecimal.toString(-0.0));
+
+    assertEquals("NaN", ShortestDecimal.toString(Float.NaN));
+    assertEquals("NaN", ShortestDecimal.toString(Float.intBitsToFloat(0xFFC00001)));
+    assertEquals("Infinity", ShortestDecimal.toString(Float.POSITIVE_INFINITY));
+    assertEquals("-Infinity", ShortestDecimal.toString(Float.NEGATIVE_INFINITY));
+    assertEquals("0.0", ShortestDecimal.toString(0.0f));
+    assertEquals("-0.0", ShortestDecimal.toString(-0.0f));
+  }
+
+  private static void testExtremeValues() {
+    assertEquals("4.9E-324", ShortestDecimal.toString(Double.MIN_VALUE));
+    assertEquals("-4.9E-324", ShortestDecimal.toString(-Double.MIN_VALUE));
+    assertEquals("9.9E-324", ShortestDecimal.toString(2 * Double.MIN_VALUE));
+    assertEquals("1.5E-323", ShortestDecimal.toString(3 * Double.MIN_VALUE));
+    assertEquals("2.225073858507201E-308",
+        ShortestDecimal.toString(Math.nextDown(Double.MIN_NORMAL)));
+    assertEquals("2.2250738585072014E-308", ShortestDecimal.toString(Double.MIN_NORMAL));
+    assertEquals("1.7976931348623157E308", ShortestDecimal.toString(Double.MAX_VALUE));
+    assertEquals("-1.7976931348623157E308", ShortestDecimal.toString(-Double.MAX_VALUE));
+
+    assertEquals("1.4E-45", ShortestDecimal.toString(Float.MIN_VALUE));
+    assertEquals("-1.4E-45", ShortestDecimal.toString(-Float.MIN_VALUE));
+    assertEquals("1.1754942E-38", ShortestDecimal.toString(Math.nextDown(Float.MIN_NORMAL)));
+    assertEquals("1.1754944E-38", ShortestDecimal.toString(Float.MIN_NORMAL));
+    assertEquals("3.4028235E38", ShortestDecimal.toString(Float.MAX_VALUE));
+    assertEquals("-3.4028235E38", ShortestDecimal.toString(-Float.MAX_VALUE));
+
+    for (long bits = 1; bits < 1000; bits++) {
+      assertRoundTrips(Double.longBitsToDouble(bits));
+      assertRoundTrips(Float.intBitsToFloat((int)bits));
+    }
+  }
+
+  private static void testPowersOfTen() {
+    for (int e = -307; e <= 308; e++) {
+      assertEquals(powerOfTen(e), ShortestDecimal.toString(Double.parseDouble("1E" + e)));
+    }
+    for (int e = -37; e <= 38; e++) {
+      assertEquals(powerOfTen(e), ShortestDecimal.toString(Float.parseFloat("1E" + e)));
+    }
+  }
+
+  private static void testNotation() {
+    assertEquals("1.0", ShortestDecimal.toString(1.0));
+    assertEquals("0.1", ShortestDecimal.toString(0.1));
+    assertEquals("0.3", ShortestDecimal.toString(0.3f));
+    assertEquals("0.30000000000000004", ShortestDecimal.toString(0.1 + 0.2));
+    assertEquals("123.456", ShortestDecimal.toString(123.456));
+    assertEquals("1234567.0", ShortestDecimal.toString(1234567.0));
+    assertEquals("1.2345678E7", ShortestDecimal.toString(12345678.0));
+    assertEquals("0.00123", ShortestDecimal.toString(0.00123));
+    assertEquals("1.23E-4", ShortestDecimal.toString(0.000123));
+    assertEquals("9.007199254740992E15", ShortestDecimal.toString(9007199254740992.0));
+    assertEquals("-2.5", ShortestDecimal.toString(-2.5f));
+    assertEquals("0.002", ShortestDecimal.toString(2.0E-3));
+    // Needs fewer digits than Double.toString before JDK 19.
+    assertEquals("2.0E23", ShortestDecimal.toString(2.0E23));
+    assertEquals("1.0E23", ShortestDecimal.toString(1.0E23));
+    assertEquals("8.41E21", ShortestDecimal.toString(8.41E21));
+  }
+
+  private static void testReusesBuilder() {
+    StringBuilder out = new StringBuilder("x=");
+    ShortestDecimal.append(out, 1.5).append(", y=");
+    ShortestDecimal.append(out, -0.25f);
+    assertEquals("x=1.5, y=-0.25", out.toString());
+  }
+
+  private static void testRandomDoubles() {
+    Random random = new Random(42);
+    for (int i = 0; i < RANDOM_VALUES; i++) {
+      double value = Double.longBitsToDouble(random.nextLong());
+      if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+        assertRoundTrips(value);
+        assertShortest(value, ShortestDecimal.toString(value),
+            Math.abs(value) < 3 * Double.MIN_VALUE);
+      }
+    }
+  }
+
+  private static void testRandomFloats() {
+    Random random = new Random(42);
+    for (int i = 0; i < RANDOM_VALUES; i++) {
+      float value = Float.intBitsToFloat(random.nextInt());
+      if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+        assertRoundTrips(value);
+        assertShortest(value, ShortestDecimal.toString(value),
+            Math.abs(value) < 8 * Float.MIN_VALUE);
+      }
+    }
+  }
+
+  private static String powerOfTen(int e) {
+    if (e >= 0 && e < 7) {
+      return "1" + repeat('0', e) + ".0";
+    } else if (e < 0 && e >= -3) {
+      return "0." + repeat('0', -e - 1) + "1";
+    }
+    return "1.0E" + e;
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      result.append(c);
+    }
+    return result.toString();
+  }
+
+  private static void assertRoundTrips(double value) {
+    String text = ShortestDecimal.toString(value);
+    assertTrue(Double.doubleToRawLongBits(Double.parseDouble(text)) ==
+        Double.doubleToRawLongBits(value), text + " does not round trip to " + value);
+  }
+
+  private static void assertRoundTrips(float value) {
+    String text = ShortestDecimal.toString(value);
+    assertTrue(Float.floatToRawIntBits(Float.parseFloat(text)) == Float.floatToRawIntBits(value),
+        text + " does not round trip to " + value);
+  }
+
+  /**
+   * Checks that none of the decimals with one digit less than the text rounds to the value, and
+   * that the text is at least as close to the value as its neighbours of the same length.
+   */
+  private static void assertShortest(double value, String text, boolean twoDigits) {
+    BigDecimal result = new BigDecimal(text).stripTrailingZeros();
+    BigDecimal exact = new BigDecimal(value);
+    int digits = result.precision();
+    if (digits > (twoDigits ? 2 : 1)) {
+      for (RoundingMode mode : new RoundingMode[] { RoundingMode.FLOOR, RoundingMode.CEILING }) {
+        BigDecimal shorter = exact.round(new MathContext(digits - 1, mode));
+        assertTrue(!roundsTo(shorter, value), text + " is not the shortest for " + value +
+            ", " + shorter + " is shorter");
+      }
+    }
+    BigDecimal ulp = result.ulp();
+    for (BigDecimal other : new BigDecimal[] { result.subtract(ulp), result.add(ulp) }) {
+      assertTrue(!roundsTo(other, value) || other.subtract(exact).abs()
+          .compareTo(result.subtract(exact).abs()) >= 0,
+          text + " is not the closest for " + value + ", " + other + " is closer");
+    }
+  }
+
+  private static boolean roundsTo(BigDecimal decimal, double value) {
+    return Double.parseDouble(decimal.toString()) == value;
+  }
+
+  private static void assertShortest(float value, String text, boolean twoDigits) {
+    BigDecimal result = new BigDecimal(text).stripTrailingZeros();
+    BigDecimal exact = new BigDecimal(value);
+    int digits = result.precision();
+    if (digits > (twoDigits ? 2 : 1)) {
+      for (RoundingMode mode : new RoundingMode[] { RoundingMode.FLOOR, RoundingMode.CEILING }) {
+        BigDecimal shorter = exact.round(new MathContext(digits - 1, mode));
+        assertTrue(!roundsTo(shorter, value), text + " is not the shortest for " + value +
+            ", " + shorter + " is shorter");
+      }
+    }
+    BigDecimal ulp = result.ulp();
+    for (BigDecimal other : new BigDecimal[] { result.subtract(ulp), result.add(ulp) }) {
+      assertTrue(!roundsTo(other, value) || other.subtract(exact).abs()
+          .compareTo(result.subtract(exact).abs()) >= 0,
+          text + " is not the closest for " + value + ", " + other + " is closer");
+    }
+  }
+
+  private static boolean roundsTo(BigDecimal decimal, float value) {
+    return Float.parseFloat(decimal.toString()) == value;
+  }
+
+  private static void assertEquals(String expected, String actual) {
+    assertTrue(expected.equals(actual), "expected " + expected + ", but got " + actual);
+  }
+
+  private static void assertTrue(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+}
@@ -30,6 +30,7 @@ import (
 	"github.com/google/gapid/gapis/capture"
 	"github.com/google/gapid/gapis/database"
 	"github.com/google/gapid/gapis/service"
+	"github.com/google/gapid/gapis/service/box"
 	"github.com/google/gapid/gapis/service/path"
 )
 
@@ -143,7 +144,35 @@ func Find(ctx context.Context, req *service.FindRequest, h service.FindHandler)
 		}
 
 	case *path.StateTreeNode:
-		return fault.Const("TODO: Implement StateTreeNode searching") // TODO
+		if req.Backwards || req.Wrap {
+			return fmt.Errorf("Backwards and wrapping searches of state trees are not supported")
+		}
+
+		boxedStateTree, err := database.Resolve(ctx, from.Tree.ID())
+		if err != nil {
+			return err
+		}
+
+		tree := boxedStateTree.(*stateTree)
+		searcher := &stateSearcher{
+			ctx:       ctx,
+			req:       req,
+			from:      from,
+			h:         h,
+			pred:      pred,
+			tree:      tree,
+			budget:    maxStateSearchNodes,
+			ancestors: map[stateVisitKey]bool{},
+		}
+		err = searcher.searchAfter(tree.root, []uint64{}, from.Indices)
+
+		switch err {
+		case nil, stop:
+			return nil
+		default:
+			return err
+		}
+
 	default:
 		return fmt.Errorf("Unsupported FindRequest.From type %T", from)
 	}
@@ -204,3 +233,169 @@ func (c *commandEmitter) shouldStop(indices []uint64) bool {
 	// Stop searching if we're wrapping and have arrived back where we started.
 	return c.wrapping && reflect.DeepEqual(c.from.Indices, indices)
 }
+
+const (
+	// maxStateSearchDepth is the depth below which the state tree is not
+	// searched.
+	maxStateSearchDepth = 64
+	// maxStateSearchNodes is the number of state tree nodes a search visits
+	// before it gives up.
+	maxStateSearchNodes = 1 << 20
+)
+
+// stateVisitKey identifies a value in the state tree, so that cycles formed by
+// pointers, maps and slices are only followed once.
+type stateVisitKey struct {
+	ty   reflect.Type
+	addr uintptr
+	len  int
+}
+
+type stateSearcher struct {
+	ctx       context.Context
+	req       *service.FindRequest
+	from      *path.StateTreeNode
+	h         service.FindHandler
+	count     uint32
+	pred      func(s string) bool
+	tree      *stateTree
+	budget    int
+	ancestors map[stateVisitKey]bool
+}
+
+// searchAfter searches the nodes that follow the node at the indices from,
+// relative to n, in a pre-order traversal of the tree. indices are the indices
+// of n.
+func (s *stateSearcher) searchAfter(n *stn, indices, from []uint64) error {
+	if len(from) == 0 {
+		// n is the node the search starts at, which is skipped.
+		return s.searchChildren(n, indices, 0)
+	}
+
+	children := s.children(n)
+	i := from[0]
+	if i >= uint64(len(children)) {
+		return nil
+	}
+	if err := s.searchAfter(children[i], append(indices, i), from[1:]); err != nil {
+		return err
+	}
+	return s.searchChildren(n, indices, i+1)
+}
+
+// searchChildren searches the sub-trees of the children of n, starting with
+// the child at index start.
+func (s *stateSearcher) searchChildren(n *stn, indices []uint64, start uint64) error {
+	if n.value.IsValid() && box.IsMemorySlice(n.value.Type()) {
+		// Don't load and search the contents of memory slices.
+		return nil
+	}
+	children := s.children(n)
+	for i := start; i < uint64(len(children)); i++ {
+		if err := s.search(children[i], append(indices, i)); err != nil {
+			return err
+		}
+	}
+	return nil
+}
+
+// search searches the sub-tree of n, which has the given indices.
+func (s *stateSearcher) search(n *stn, indices []uint64) error {
+	if err := task.StopReason(s.ctx); err != nil {
+		return err
+	}
+	if s.budget--; s.budget < 0 {
+		log.W(s.ctx, "State search stopped after %d nodes", maxStateSearchNodes)
+		return stop
+	}
+
+	if s.matches(n) {
+		if err := s.emit(indices); err != nil {
+			return err
+		}
+	}
+
+	if len(indices) >= maxStateSearchDepth {
+		return nil
+	}
+	if key, ok := stateVisitKeyOf(n.value); ok {
+		if s.ancestors[key] {
+			// The value contains itself, don't search it again.
+			return nil
+		}
+		s.ancestors[key] = true
+		defer delete(s.ancestors, key)
+	}
+	return s.searchChildren(n, indices, 0)
+}
+
+// children returns the children of n, or no children if they could not be
+// built, e.g. because memory they refer to could not be loaded.
+func (s *stateSearcher) children(n *stn) (children []*stn) {
+	defer func() {
+		if r := recover(); r != nil {
+			log.W(s.ctx, "Couldn't search the state of %v: %v", n.path, r)
+			children = nil
+		}
+	}()
+	n.buildChildren(s.ctx, s.tree)
+	return n.children
+}
+
+// matches returns true if the name of n or the value of a leaf n matches the
+// search.
+func (s *stateSearcher) matches(n *stn) bool {
+	if s.pred(n.name) {
+		return true
+	}
+	v := n.value
+	if !v.IsValid() || !v.CanInterface() {
+		return false
+	}
+	switch v.Kind() {
+	case reflect.Bool,
+		reflect.Int, reflect.Int8, reflect.Int16, reflect.Int32, reflect.Int64,
+		reflect.Uint, reflect.Uint8, reflect.Uint16, reflect.Uint32, reflect.Uint64,
+		reflect.Float32, reflect.Float64, reflect.String:
+		return s.pred(fmt.Sprint(v.Interface()))
+	default:
+		return false
+	}
+}
+
+func (s *stateSearcher) emit(indices []uint64) error {
+	err := s.h(&service.FindResponse{
+		Result: &service.FindResponse_StateTreeNode{
+			StateTreeNode: &path.StateTreeNode{
+				Tree:    s.from.Tree,
+				Indices: append([]uint64{}, indices...),
+			},
+		},
+	})
+	if err != nil {
+		return err
+	}
+	s.count++
+	if s.req.MaxItems != 0 && s.count >= s.req.MaxItems {
+		return stop
+	}
+	return nil
+}
+
+// stateVisitKeyOf returns the key identifying v, if v is addressable or
+// refers to shared storage, i.e. is a map or a slice.
+func stateVisitKeyOf(v reflect.Value) (stateVisitKey, bool) {
+	switch {
+	case !v.IsValid():
+		return stateVisitKey{}, false
+	case v.CanAddr():
+		return stateVisitKey{v.Type(), v.UnsafeAddr(), 0}, true
+	case v.Kind() == reflect.Map && !v.IsNil():
+		return stateVisitKey{v.Type(), v.Pointer(), 0}, true
+	case v.Kind() == reflect.Slice && !v.IsNil():
+		// Sub-groups of a slice share its storage, but differ in length.
+		return stateVisitKey{v.Type(), v.Pointer(), v.Len()}, true
+	default:
+		return stateVisitKey{}, false
+	}
+}
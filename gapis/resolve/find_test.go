@@ -0,0 +1,127 @@
+// Copyright (C) 2018 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package resolve
+
+import (
+	"context"
+	"reflect"
+	"strings"
+	"testing"
+
+	"github.com/google/gapid/core/assert"
+	"github.com/google/gapid/core/log"
+	"github.com/google/gapid/gapis/service"
+	"github.com/google/gapid/gapis/service/path"
+)
+
+func stateLeaf(name string, value interface{}) *stn {
+	return &stn{name: name, value: reflect.ValueOf(value), children: []*stn{}}
+}
+
+func stateGroup(name string, value interface{}, children ...*stn) *stn {
+	return &stn{name: name, value: reflect.ValueOf(value), children: children}
+}
+
+// searchState returns the indices of the nodes of the tree with the given
+// root that follow from and contain text.
+func searchState(ctx context.Context, root *stn, from []uint64, text string, budget int) ([][]uint64, error) {
+	found := [][]uint64{}
+	s := &stateSearcher{
+		ctx:  ctx,
+		req:  &service.FindRequest{Text: text, IsCaseSensitive: true},
+		from: &path.StateTreeNode{Indices: from},
+		h: func(r *service.FindResponse) error {
+			found = append(found, r.GetStateTreeNode().Indices)
+			return nil
+		},
+		pred:      func(s string) bool { return strings.Contains(s, text) },
+		tree:      &stateTree{},
+		budget:    budget,
+		ancestors: map[stateVisitKey]bool{},
+	}
+	err := s.searchAfter(root, []uint64{}, from)
+	if err == stop {
+		err = nil
+	}
+	return found, err
+}
+
+func TestStateSearch(t *testing.T) {
+	ctx := log.Testing(t)
+	root := stateGroup("root", struct{}{},
+		stateGroup("Foo", struct{}{},
+			stateLeaf("A", 1),
+			stateLeaf("B", "foo"),
+		),
+		stateLeaf("C", "food"),
+		stateLeaf("D", 2),
+	)
+	for _, test := range []struct {
+		from     []uint64
+		expected [][]uint64
+	}{
+		{[]uint64{}, [][]uint64{{0, 1}, {1}}},
+		{[]uint64{0}, [][]uint64{{0, 1}, {1}}},
+		{[]uint64{0, 1}, [][]uint64{{1}}},
+		{[]uint64{1}, [][]uint64{}},
+	} {
+		found, err := searchState(ctx, root, test.from, "foo", maxStateSearchNodes)
+		assert.For(ctx, "err").ThatError(err).Succeeded()
+		assert.For(ctx, "search from %v", test.from).That(found).DeepEquals(test.expected)
+	}
+}
+
+func TestStateSearchSkipsBrokenNodes(t *testing.T) {
+	ctx := log.Testing(t)
+	// Building the children of an invalid value panics.
+	root := stateGroup("root", struct{}{},
+		&stn{name: "broken"},
+		stateLeaf("after", "foo"),
+	)
+	found, err := searchState(ctx, root, []uint64{}, "foo", maxStateSearchNodes)
+	assert.For(ctx, "err").ThatError(err).Succeeded()
+	assert.For(ctx, "found").That(found).DeepEquals([][]uint64{{1}})
+}
+
+func TestStateSearchBudget(t *testing.T) {
+	ctx := log.Testing(t)
+	children := []*stn{}
+	for i := 0; i < 10; i++ {
+		children = append(children, stateLeaf("foo", i))
+	}
+	root := stateGroup("root", struct{}{}, children...)
+	found, err := searchState(ctx, root, []uint64{}, "foo", 4)
+	assert.For(ctx, "err").ThatError(err).Succeeded()
+	assert.For(ctx, "found").That(found).DeepEquals([][]uint64{{0}, {1}, {2}, {3}})
+}
+
+func TestStateSearchCycles(t *testing.T) {
+	ctx := log.Testing(t)
+	m := map[string]int{"a": 1}
+	s := []int{1, 2, 3}
+	root := stateGroup("root", struct{}{},
+		// The map contains itself, its second occurrence isn't searched.
+		stateGroup("map", m,
+			stateGroup("self", m, stateLeaf("cycle", "foo")),
+		),
+		// Sub-groups share the storage of the slice, but aren't cycles.
+		stateGroup("slice", s,
+			stateGroup("[0 - 1]", s[:2], stateLeaf("0", "foo")),
+		),
+	)
+	found, err := searchState(ctx, root, []uint64{}, "foo", maxStateSearchNodes)
+	assert.For(ctx, "err").ThatError(err).Succeeded()
+	assert.For(ctx, "found").That(found).DeepEquals([][]uint64{{1, 0, 0}})
+}